@@ -97,7 +97,14 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         return connection;
     }
 
-    protected void tryCreate(int maxPending)
+    /**
+     * <p>Tries to open a new connection, provided that the maximum number of connections
+     * and the maximum number of pending connections have not been reached.</p>
+     *
+     * @param maxPending the maximum number of pending connections, or a negative value for no limit
+     * @return whether a new connection is being opened
+     */
+    protected boolean tryCreate(int maxPending)
     {
         while (true)
         {
@@ -109,10 +116,10 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
                 LOG.debug("tryCreate {}/{} connections {}/{} pending", total, maxConnections, pending, maxPending);
 
             if (total >= maxConnections)
-                return;
+                return false;
 
             if (maxPending >= 0 && pending >= maxPending)
-                return;
+                return false;
 
             if (connections.compareAndSet(encoded, pending + 1, total + 1))
             {
@@ -141,7 +148,7 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
                     }
                 });
 
-                return;
+                return true;
             }
         }
     }
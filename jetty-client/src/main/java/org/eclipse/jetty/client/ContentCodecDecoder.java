@@ -0,0 +1,75 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.ContentCodec;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * {@link ContentDecoder} for a {@link ContentCodec}, such as "br" or "zstd".
+ */
+public class ContentCodecDecoder implements ContentDecoder, Destroyable
+{
+    private final ContentCodec.Decoder decoder;
+
+    public ContentCodecDecoder(ContentCodec codec)
+    {
+        this.decoder = codec.newDecoder();
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        return decoder.decode(buffer);
+    }
+
+    @Override
+    public void release(ByteBuffer decoded)
+    {
+        decoder.release(decoded);
+    }
+
+    @Override
+    public void destroy()
+    {
+        decoder.end();
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the encoding of a {@link ContentCodec}.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final ContentCodec codec;
+
+        public Factory(ContentCodec codec)
+        {
+            super(codec.getEncoding());
+            this.codec = codec;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new ContentCodecDecoder(codec);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.Closeable;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.io.ClientConnector;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Races connection attempts to the addresses of a host, as specified by
+ * RFC 8305 (Happy Eyeballs Version 2).</p>
+ * <p>The addresses are interleaved by address family, starting with the family
+ * of the first address returned by the resolver; a connection attempt is started
+ * for the first address, and if it does not complete within the
+ * {@link #setConnectionAttemptDelay(long) connection attempt delay}, or if it fails,
+ * another connection attempt is started for the next address, while the previous
+ * attempts are still in progress.
+ * The first connection that is established wins, and the other attempts are cancelled,
+ * so that an unreachable address family does not delay connection establishment
+ * by a whole connect timeout.</p>
+ * <p>Typical usage:</p>
+ * <pre>
+ * HttpClient client = new HttpClient();
+ * client.setHappyEyeballs(new HappyEyeballs(client));
+ * client.start();
+ * </pre>
+ */
+@ManagedObject("Happy Eyeballs connection racing")
+public class HappyEyeballs
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HappyEyeballs.class);
+
+    private final Stats ipv4 = new Stats();
+    private final Stats ipv6 = new Stats();
+    private final HttpClient client;
+    private long connectionAttemptDelay = 250;
+
+    public HappyEyeballs(HttpClient client)
+    {
+        this.client = client;
+    }
+
+    /**
+     * @return the delay in milliseconds before starting the next connection attempt
+     */
+    @ManagedAttribute("The delay in ms before starting the next connection attempt")
+    public long getConnectionAttemptDelay()
+    {
+        return connectionAttemptDelay;
+    }
+
+    /**
+     * <p>Sets the delay in milliseconds before starting the next connection attempt,
+     * if the previous attempt has not completed yet.</p>
+     * <p>RFC 8305 recommends 250 ms, and no less than 100 ms.</p>
+     *
+     * @param connectionAttemptDelay the delay in milliseconds before starting the next connection attempt
+     */
+    public void setConnectionAttemptDelay(long connectionAttemptDelay)
+    {
+        this.connectionAttemptDelay = connectionAttemptDelay;
+    }
+
+    @ManagedAttribute(value = "The number of IPv4 connection attempts", readonly = true)
+    public long getIPv4Attempts()
+    {
+        return ipv4.attempts.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of IPv4 connection attempts that won the race", readonly = true)
+    public long getIPv4Successes()
+    {
+        return ipv4.successes.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of failed IPv4 connection attempts", readonly = true)
+    public long getIPv4Failures()
+    {
+        return ipv4.failures.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of IPv4 connection attempts cancelled because they lost the race", readonly = true)
+    public long getIPv4Cancellations()
+    {
+        return ipv4.cancellations.longValue();
+    }
+
+    @ManagedAttribute(value = "The average latency in ms of the IPv4 connection attempts that won the race", readonly = true)
+    public double getIPv4AverageLatency()
+    {
+        return ipv4.getAverageLatency();
+    }
+
+    @ManagedAttribute(value = "The number of IPv6 connection attempts", readonly = true)
+    public long getIPv6Attempts()
+    {
+        return ipv6.attempts.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of IPv6 connection attempts that won the race", readonly = true)
+    public long getIPv6Successes()
+    {
+        return ipv6.successes.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of failed IPv6 connection attempts", readonly = true)
+    public long getIPv6Failures()
+    {
+        return ipv6.failures.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of IPv6 connection attempts cancelled because they lost the race", readonly = true)
+    public long getIPv6Cancellations()
+    {
+        return ipv6.cancellations.longValue();
+    }
+
+    @ManagedAttribute(value = "The average latency in ms of the IPv6 connection attempts that won the race", readonly = true)
+    public double getIPv6AverageLatency()
+    {
+        return ipv6.getAverageLatency();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        ipv4.reset();
+        ipv6.reset();
+    }
+
+    /**
+     * <p>Races connection attempts to the given addresses.</p>
+     *
+     * @param addresses the addresses to connect to
+     * @param context the context for the connection attempts
+     * @param promise the promise to complete with the first connection established
+     */
+    public void connect(List<InetSocketAddress> addresses, Map<String, Object> context, Promise<Connection> promise)
+    {
+        new Race(interleave(addresses), context, promise).next();
+    }
+
+    /**
+     * <p>Interleaves the given addresses by address family, as specified by RFC 8305, section 4.</p>
+     *
+     * @param addresses the addresses to interleave
+     * @return the interleaved addresses
+     */
+    static List<InetSocketAddress> interleave(List<InetSocketAddress> addresses)
+    {
+        if (addresses.isEmpty())
+            return addresses;
+        boolean firstIPv6 = isIPv6(addresses.get(0));
+        Deque<InetSocketAddress> preferred = new ArrayDeque<>();
+        Deque<InetSocketAddress> others = new ArrayDeque<>();
+        for (InetSocketAddress address : addresses)
+        {
+            if (isIPv6(address) == firstIPv6)
+                preferred.offer(address);
+            else
+                others.offer(address);
+        }
+        List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+        while (!preferred.isEmpty() || !others.isEmpty())
+        {
+            if (!preferred.isEmpty())
+                result.add(preferred.poll());
+            if (!others.isEmpty())
+                result.add(others.poll());
+        }
+        return result;
+    }
+
+    private static boolean isIPv6(InetSocketAddress address)
+    {
+        return address.getAddress() instanceof Inet6Address;
+    }
+
+    private Stats statsOf(InetSocketAddress address)
+    {
+        return isIPv6(address) ? ipv6 : ipv4;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[delay=%dms]", getClass().getSimpleName(), hashCode(), getConnectionAttemptDelay());
+    }
+
+    private class Race
+    {
+        private final List<Attempt> attempts = new ArrayList<>();
+        private final List<InetSocketAddress> addresses;
+        private final Map<String, Object> context;
+        private final Promise<Connection> promise;
+        private Scheduler.Task task;
+        private int index;
+        private boolean complete;
+        private Throwable failure;
+
+        private Race(List<InetSocketAddress> addresses, Map<String, Object> context, Promise<Connection> promise)
+        {
+            this.addresses = addresses;
+            this.context = context;
+            this.promise = promise;
+        }
+
+        private void next()
+        {
+            Attempt attempt;
+            synchronized (this)
+            {
+                if (complete || index == addresses.size())
+                    return;
+                if (task != null)
+                    task.cancel();
+                attempt = new Attempt(this, addresses.get(index++));
+                attempts.add(attempt);
+                if (index < addresses.size())
+                    task = client.getScheduler().schedule(this::next, getConnectionAttemptDelay(), TimeUnit.MILLISECONDS);
+            }
+            attempt.connect();
+        }
+
+        private void succeeded(Attempt attempt, Connection connection)
+        {
+            List<Attempt> losers;
+            synchronized (this)
+            {
+                if (complete)
+                {
+                    losers = null;
+                }
+                else
+                {
+                    complete = true;
+                    if (task != null)
+                        task.cancel();
+                    losers = new ArrayList<>(attempts);
+                    losers.remove(attempt);
+                }
+            }
+
+            if (losers == null)
+            {
+                // Another attempt already won the race.
+                statsOf(attempt.address).cancellations.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Closing connection that lost the race {}", connection);
+                connection.close();
+                return;
+            }
+
+            Stats stats = statsOf(attempt.address);
+            stats.successes.increment();
+            stats.latency.add(System.nanoTime() - attempt.begin);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection to {} won the race, cancelling {}", attempt.address, losers);
+            losers.forEach(Attempt::cancel);
+            promise.succeeded(connection);
+        }
+
+        private void failed(Attempt attempt, Throwable x)
+        {
+            boolean next;
+            boolean fail;
+            synchronized (this)
+            {
+                attempts.remove(attempt);
+                if (complete)
+                    return;
+                if (failure == null)
+                    failure = x;
+                else if (failure != x)
+                    failure.addSuppressed(x);
+                next = index < addresses.size();
+                fail = !next && attempts.isEmpty();
+                if (fail)
+                    complete = true;
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection to {} failed", attempt.address, x);
+            if (next)
+                next();
+            else if (fail)
+                promise.failed(failure);
+        }
+    }
+
+    private class Attempt implements Promise<Connection>
+    {
+        private final Map<String, Object> context;
+        private final Race race;
+        private final InetSocketAddress address;
+        private final long begin = System.nanoTime();
+        private volatile boolean cancelled;
+
+        private Attempt(Race race, InetSocketAddress address)
+        {
+            // Each attempt has its own context, that may be accessed
+            // concurrently by the connect and by the cancellation.
+            this.context = Collections.synchronizedMap(new HashMap<>(race.context));
+            this.race = race;
+            this.address = address;
+        }
+
+        private void connect()
+        {
+            statsOf(address).attempts.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connecting to {}", address);
+            context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, this);
+            client.getTransport().connect(address, context);
+        }
+
+        private void cancel()
+        {
+            cancelled = true;
+            // Closing the channel fails the connect, if it is still in progress.
+            IO.close((Closeable)context.get(ClientConnector.SOCKET_CHANNEL_CONTEXT_KEY));
+        }
+
+        @Override
+        public void succeeded(Connection connection)
+        {
+            race.succeeded(this, connection);
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            Stats stats = statsOf(address);
+            if (cancelled)
+                stats.cancellations.increment();
+            else
+                stats.failures.increment();
+            race.failed(this, x);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), address);
+        }
+    }
+
+    private static class Stats
+    {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder cancellations = new LongAdder();
+        private final LongAdder latency = new LongAdder();
+
+        private double getAverageLatency()
+        {
+            long count = successes.longValue();
+            return count == 0 ? 0 : latency.doubleValue() / count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        private void reset()
+        {
+            attempts.reset();
+            successes.reset();
+            failures.reset();
+            cancellations.reset();
+            latency.reset();
+        }
+    }
+}
@@ -0,0 +1,624 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Sends idempotent requests with retries and hedging, to protect against tail latency.</p>
+ * <p>A request is first sent normally; if it has not completed after the hedging delay, a
+ * duplicate request is sent, and the first response received is used, while the other
+ * exchanges are aborted.
+ * The hedging delay is the configured {@link #setHedgingPercentile(double) percentile} of
+ * a live latency histogram of the responses received via this policy.
+ * A request that fails, or that receives a retryable response such as a {@code 503},
+ * is retried if no other attempt is in-flight.</p>
+ * <p>Hedges and retries draw from a retry budget, replenished by a
+ * {@link #setRetryBudgetRatio(double) fraction} of the successful requests, so that
+ * hedges and retries cannot overload a server that is already struggling.</p>
+ * <p>Since a {@link Request} can be sent only once, requests are created by a factory,
+ * which receives the attempt number (0 for the original request) so that a hedge can
+ * be sent to a different destination:</p>
+ * <pre>
+ * HedgingRetryPolicy policy = new HedgingRetryPolicy(httpClient);
+ * ContentResponse response = policy.send(attempt -&gt; httpClient.newRequest(uris[attempt % uris.length])).get();
+ * </pre>
+ * <p>Requests with a non-idempotent method are sent once, without hedging or retries.</p>
+ */
+@ManagedObject("Request hedging and retry policy")
+public class HedgingRetryPolicy
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingRetryPolicy.class);
+    private static final int TOKEN = 1000;
+
+    private final LatencyHistogram histogram = new LatencyHistogram(TimeUnit.SECONDS.toNanos(30));
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final AtomicLong budget = new AtomicLong();
+    private final Scheduler scheduler;
+    private double hedgingPercentile = 95;
+    private long minHedgingDelay = 5;
+    private int minSamples = 100;
+    private int maxHedges = 1;
+    private int maxRetries = 2;
+    private double retryBudgetRatio = 0.1;
+    private int maxRetryTokens = 100;
+    private int maxContentLength = 2 * 1024 * 1024;
+
+    public HedgingRetryPolicy(HttpClient client)
+    {
+        this(client.getScheduler());
+    }
+
+    public HedgingRetryPolicy(Scheduler scheduler)
+    {
+        this.scheduler = scheduler;
+        this.budget.set((long)maxRetryTokens * TOKEN);
+    }
+
+    /**
+     * @return the latency percentile after which a hedged request is sent
+     */
+    @ManagedAttribute("The latency percentile after which a hedged request is sent")
+    public double getHedgingPercentile()
+    {
+        return hedgingPercentile;
+    }
+
+    public void setHedgingPercentile(double hedgingPercentile)
+    {
+        if (hedgingPercentile <= 0 || hedgingPercentile >= 100)
+            throw new IllegalArgumentException("Invalid percentile " + hedgingPercentile);
+        this.hedgingPercentile = hedgingPercentile;
+    }
+
+    /**
+     * @return the min delay in milliseconds after which a hedged request is sent
+     */
+    @ManagedAttribute("The min delay in ms after which a hedged request is sent")
+    public long getMinHedgingDelay()
+    {
+        return minHedgingDelay;
+    }
+
+    public void setMinHedgingDelay(long minHedgingDelay)
+    {
+        this.minHedgingDelay = minHedgingDelay;
+    }
+
+    /**
+     * @return the min number of latency samples before requests are hedged
+     */
+    @ManagedAttribute("The min number of latency samples before requests are hedged")
+    public int getMinSamples()
+    {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples)
+    {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @return the max number of hedged requests per request, or 0 to disable hedging
+     */
+    @ManagedAttribute("The max number of hedged requests per request")
+    public int getMaxHedges()
+    {
+        return maxHedges;
+    }
+
+    public void setMaxHedges(int maxHedges)
+    {
+        this.maxHedges = maxHedges;
+    }
+
+    /**
+     * @return the max number of retries per request, or 0 to disable retries
+     */
+    @ManagedAttribute("The max number of retries per request")
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the fraction of a retry token earned by each request
+     */
+    @ManagedAttribute("The fraction of a retry token earned by each request")
+    public double getRetryBudgetRatio()
+    {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * <p>Sets the fraction of a retry token earned by each request; each hedge or
+     * retry spends a whole token, so a ratio of {@code 0.1} allows at most 10%
+     * additional requests in the long run.</p>
+     *
+     * @param retryBudgetRatio the fraction of a retry token earned by each request
+     */
+    public void setRetryBudgetRatio(double retryBudgetRatio)
+    {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+
+    /**
+     * @return the max number of retry tokens that can be accumulated
+     */
+    @ManagedAttribute("The max number of retry tokens that can be accumulated")
+    public int getMaxRetryTokens()
+    {
+        return maxRetryTokens;
+    }
+
+    public void setMaxRetryTokens(int maxRetryTokens)
+    {
+        this.maxRetryTokens = maxRetryTokens;
+        budget.accumulateAndGet((long)maxRetryTokens * TOKEN, Math::min);
+    }
+
+    /**
+     * @return the max length in bytes of the response content
+     */
+    @ManagedAttribute("The max length in bytes of the response content")
+    public int getMaxContentLength()
+    {
+        return maxContentLength;
+    }
+
+    public void setMaxContentLength(int maxContentLength)
+    {
+        this.maxContentLength = maxContentLength;
+    }
+
+    @ManagedAttribute(value = "The number of retry tokens available", readonly = true)
+    public double getRetryTokens()
+    {
+        return (double)budget.get() / TOKEN;
+    }
+
+    @ManagedAttribute(value = "The current hedging delay in ms, or -1 if requests are not hedged", readonly = true)
+    public long getHedgingDelay()
+    {
+        long delay = hedgingDelay();
+        return delay < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+    }
+
+    @ManagedAttribute(value = "The number of requests", readonly = true)
+    public long getRequestCount()
+    {
+        return requests.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of hedged requests", readonly = true)
+    public long getHedgeCount()
+    {
+        return hedges.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of hedged requests that completed first", readonly = true)
+    public long getHedgeWinCount()
+    {
+        return hedgeWins.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of retried requests", readonly = true)
+    public long getRetryCount()
+    {
+        return retries.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of hedges or retries not sent because the budget was exhausted", readonly = true)
+    public long getBudgetExhaustedCount()
+    {
+        return budgetExhausted.longValue();
+    }
+
+    public LatencyHistogram getLatencyHistogram()
+    {
+        return histogram;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        requests.reset();
+        hedges.reset();
+        hedgeWins.reset();
+        retries.reset();
+        budgetExhausted.reset();
+    }
+
+    /**
+     * <p>Sends a request created by the given factory, hedging and retrying it if necessary.</p>
+     *
+     * @param factory the factory of requests, that receives the attempt number
+     * @return a future completed with the first successful response, or with the last failure
+     */
+    public CompletableFuture<ContentResponse> send(IntFunction<Request> factory)
+    {
+        requests.increment();
+        deposit();
+        Attempts attempts = new Attempts(factory);
+        Request request = attempts.attempt();
+        if (request != null && isIdempotent(request))
+            attempts.scheduleHedge();
+        return attempts.result;
+    }
+
+    /**
+     * @param request the request
+     * @return whether the request can be sent more than once
+     */
+    protected boolean isIdempotent(Request request)
+    {
+        String method = request.getMethod();
+        return HttpMethod.GET.is(method) ||
+            HttpMethod.HEAD.is(method) ||
+            HttpMethod.OPTIONS.is(method) ||
+            HttpMethod.TRACE.is(method) ||
+            HttpMethod.PUT.is(method) ||
+            HttpMethod.DELETE.is(method);
+    }
+
+    /**
+     * <p>Returns whether the given response, or the given failure, should be retried.</p>
+     *
+     * @param response the response, or null if the request failed
+     * @param failure the failure, or null if a response was received
+     * @return whether the request should be retried
+     */
+    protected boolean isRetryable(ContentResponse response, Throwable failure)
+    {
+        if (failure != null)
+            return true;
+        int status = response.getStatus();
+        return status == HttpStatus.BAD_GATEWAY_502 ||
+            status == HttpStatus.SERVICE_UNAVAILABLE_503 ||
+            status == HttpStatus.GATEWAY_TIMEOUT_504;
+    }
+
+    private long hedgingDelay()
+    {
+        if (maxHedges <= 0 || histogram.getCount() < minSamples)
+            return -1;
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(minHedgingDelay), histogram.getPercentile(hedgingPercentile));
+    }
+
+    private void deposit()
+    {
+        long max = (long)maxRetryTokens * TOKEN;
+        long amount = (long)(retryBudgetRatio * TOKEN);
+        budget.accumulateAndGet(amount, (current, x) -> Math.min(max, current + x));
+    }
+
+    private boolean withdraw()
+    {
+        while (true)
+        {
+            long current = budget.get();
+            if (current < TOKEN)
+            {
+                budgetExhausted.increment();
+                return false;
+            }
+            if (budget.compareAndSet(current, current - TOKEN))
+                return true;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[p%s=%dms,tokens=%.1f]", getClass().getSimpleName(), hashCode(), hedgingPercentile, getHedgingDelay(), getRetryTokens());
+    }
+
+    private class Attempts
+    {
+        private final CompletableFuture<ContentResponse> result = new CompletableFuture<>();
+        private final List<Request> inflight = new ArrayList<>();
+        private final IntFunction<Request> factory;
+        private int count;
+        private int hedged;
+        private int retried;
+
+        private Attempts(IntFunction<Request> factory)
+        {
+            this.factory = factory;
+        }
+
+        private Request attempt()
+        {
+            Request request;
+            int attempt;
+            synchronized (this)
+            {
+                if (result.isDone())
+                    return null;
+                attempt = count++;
+                try
+                {
+                    request = factory.apply(attempt);
+                }
+                catch (Throwable x)
+                {
+                    result.completeExceptionally(x);
+                    return null;
+                }
+                inflight.add(request);
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Sending attempt #{} {}", attempt, request);
+            long begin = System.nanoTime();
+            request.send(new BufferingResponseListener(getMaxContentLength())
+            {
+                @Override
+                public void onComplete(Result r)
+                {
+                    ContentResponse response = r.isFailed() ? null : new HttpContentResponse(r.getResponse(), getContent(), getMediaType(), getEncoding());
+                    onAttemptComplete(request, attempt, System.nanoTime() - begin, response, r.getFailure());
+                }
+            });
+            return request;
+        }
+
+        private void scheduleHedge()
+        {
+            long delay = hedgingDelay();
+            if (delay < 0)
+                return;
+            scheduler.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void hedge()
+        {
+            synchronized (this)
+            {
+                if (result.isDone() || hedged >= maxHedges)
+                    return;
+                if (!withdraw())
+                    return;
+                ++hedged;
+            }
+            hedges.increment();
+            if (attempt() != null)
+                scheduleHedge();
+        }
+
+        private void onAttemptComplete(Request request, int attempt, long latency, ContentResponse response, Throwable failure)
+        {
+            if (failure instanceof CancellationException && result.isDone())
+                return;
+            if (response != null)
+                histogram.record(latency);
+
+            List<Request> losers;
+            boolean retry = false;
+            synchronized (this)
+            {
+                inflight.remove(request);
+                if (result.isDone())
+                    return;
+                if (isIdempotent(request) && isRetryable(response, failure))
+                {
+                    // Another attempt is in-flight, wait for it.
+                    if (!inflight.isEmpty())
+                        return;
+                    if (retried < maxRetries && withdraw())
+                    {
+                        ++retried;
+                        retry = true;
+                    }
+                }
+                losers = retry ? List.of() : new ArrayList<>(inflight);
+                inflight.clear();
+            }
+
+            if (retry)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Retrying attempt #{} {}", attempt, request, failure);
+                retries.increment();
+                attempt();
+                return;
+            }
+
+            if (attempt > 0 && response != null)
+                hedgeWins.increment();
+            // Complete the result before aborting the losers,
+            // so that their failures are not retried.
+            if (response != null)
+                result.complete(response);
+            else
+                result.completeExceptionally(failure);
+            CancellationException cancelled = new CancellationException("Lost hedged request");
+            for (Request loser : losers)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Aborting {}", loser);
+                loser.abort(cancelled);
+            }
+        }
+    }
+
+    /**
+     * <p>A latency histogram with logarithmic buckets, covering latencies from
+     * 1 microsecond to about 18 minutes with a relative error of about 20%.</p>
+     * <p>Samples older than one to two windows are discarded, so that the
+     * histogram tracks the recent latencies.</p>
+     */
+    public static class LatencyHistogram
+    {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 30 * SUB_BUCKETS;
+
+        private final AtomicReference<Window> window = new AtomicReference<>();
+        private final long windowNanos;
+
+        public LatencyHistogram(long windowNanos)
+        {
+            this.windowNanos = windowNanos;
+            this.window.set(new Window(System.nanoTime(), null));
+        }
+
+        /**
+         * @param latency the latency in nanoseconds
+         */
+        public void record(long latency)
+        {
+            current().buckets.incrementAndGet(indexOf(latency));
+        }
+
+        /**
+         * @return the number of samples in the histogram
+         */
+        public long getCount()
+        {
+            Window current = current();
+            long count = current.count();
+            if (current.previous != null)
+                count += current.previous.count();
+            return count;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency in nanoseconds at the given percentile, or 0 if there are no samples
+         */
+        public long getPercentile(double percentile)
+        {
+            Window current = current();
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; ++i)
+            {
+                counts[i] = current.buckets.get(i);
+                if (current.previous != null)
+                    counts[i] += current.previous.buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0)
+                return 0;
+            long rank = (long)Math.ceil(total * percentile / 100);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; ++i)
+            {
+                cumulative += counts[i];
+                if (cumulative >= rank)
+                    return upperBoundOf(i);
+            }
+            return upperBoundOf(BUCKETS - 1);
+        }
+
+        private Window current()
+        {
+            while (true)
+            {
+                Window current = window.get();
+                long now = System.nanoTime();
+                if (now - current.begin < windowNanos)
+                    return current;
+                // Keep only the window that just ended, if it is recent.
+                Window previous = now - current.begin < 2 * windowNanos ? new Window(current.begin, null, current.buckets) : null;
+                Window next = new Window(now, previous);
+                if (window.compareAndSet(current, next))
+                    return next;
+            }
+        }
+
+        private static int indexOf(long latency)
+        {
+            long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(latency));
+            int log2 = 63 - Long.numberOfLeadingZeros(micros);
+            // Linear interpolation between powers of two.
+            int sub = log2 < 2 ? 0 : (int)((micros >>> (log2 - 2)) & (SUB_BUCKETS - 1));
+            return Math.min(BUCKETS - 1, log2 * SUB_BUCKETS + sub);
+        }
+
+        private static long upperBoundOf(int index)
+        {
+            int log2 = index / SUB_BUCKETS;
+            int sub = index % SUB_BUCKETS;
+            long micros = (1L << log2) + ((1L << log2) * (sub + 1) / SUB_BUCKETS);
+            return TimeUnit.MICROSECONDS.toNanos(micros);
+        }
+
+        private static class Window
+        {
+            private final long begin;
+            private final Window previous;
+            private final AtomicLongArray buckets;
+
+            private Window(long begin, Window previous)
+            {
+                this(begin, previous, new AtomicLongArray(BUCKETS));
+            }
+
+            private Window(long begin, Window previous, AtomicLongArray buckets)
+            {
+                this.begin = begin;
+                this.previous = previous;
+                this.buckets = buckets;
+            }
+
+            private long count()
+            {
+                long count = 0;
+                for (int i = 0; i < BUCKETS; ++i)
+                {
+                    count += buckets.get(i);
+                }
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,1189 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A client-side HTTP cache, following RFC 7234.</p>
+ * <p>{@link ProtocolHandler}s and {@link Request.Listener}s are notified only after a
+ * request has been sent, so they cannot answer a request from a cache; instead, requests
+ * are sent through this class, which either answers them from the cache, or revalidates
+ * the cached response with a conditional request, or forwards them to the server:</p>
+ * <pre>
+ * HttpCache cache = new HttpCache();
+ * httpClient.addBean(cache);
+ *
+ * ContentResponse response = cache.send(httpClient.newRequest("http://host/config")).get();
+ * </pre>
+ * <p>Only responses to {@code GET} requests are cached, and only when they are cacheable
+ * as specified by RFC 7234, section 3 for a shared cache: {@code no-store} and {@code private}
+ * are honored, freshness is computed from {@code max-age}, {@code Expires} or heuristically
+ * from {@code Last-Modified}, and stale responses are revalidated via {@code ETag} and {@code Last-Modified}.
+ * Only one variant, selected by the {@code Vary} response header, is cached per URI.
+ * Since a cache may be shared by many users of the same {@link HttpClient}, requests
+ * with an {@code Authorization} header and requests that are already conditional
+ * bypass the cache.
+ * Unsafe requests, such as {@code POST}, invalidate the cached response for their URI.</p>
+ * <p>Concurrent cache misses and revalidations for the same URI are coalesced into a single
+ * request to the server, whose response, if cacheable, is used to answer the coalesced requests.</p>
+ * <p>Cached responses are stored in a {@link Store}, by default a {@link MemoryStore}
+ * bounded in number of entries and bytes; a {@link PathStore} can be used to store cached
+ * responses on disk.</p>
+ */
+@ManagedObject("Client-side HTTP cache")
+public class HttpCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCache.class);
+    private static final long HEURISTIC_MAX_LIFETIME = TimeUnit.DAYS.toMillis(1);
+
+    private final Map<String, CompletableFuture<ContentResponse>> misses = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder revalidationCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder storeCount = new LongAdder();
+    private final Store store;
+    private int maxContentLength = 2 * 1024 * 1024;
+    private boolean coalesceMisses = true;
+
+    public HttpCache()
+    {
+        this(new MemoryStore(1024, 64 * 1024 * 1024));
+    }
+
+    public HttpCache(Store store)
+    {
+        this.store = Objects.requireNonNull(store);
+    }
+
+    public Store getStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return the max length in bytes of the response content that can be cached
+     */
+    @ManagedAttribute("The max length in bytes of the response content that can be cached")
+    public int getMaxContentLength()
+    {
+        return maxContentLength;
+    }
+
+    /**
+     * <p>Sets the max length in bytes of the response content that can be cached.</p>
+     * <p>As with {@link Request#send()}, responses with content larger than this value fail.</p>
+     *
+     * @param maxContentLength the max length in bytes of the response content that can be cached
+     */
+    public void setMaxContentLength(int maxContentLength)
+    {
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * @return whether concurrent cache misses and revalidations for the same URI are coalesced into a single request
+     */
+    @ManagedAttribute("Whether concurrent cache misses and revalidations for the same URI are coalesced")
+    public boolean isCoalesceMisses()
+    {
+        return coalesceMisses;
+    }
+
+    public void setCoalesceMisses(boolean coalesceMisses)
+    {
+        this.coalesceMisses = coalesceMisses;
+    }
+
+    @ManagedAttribute(value = "The number of responses served from the cache", readonly = true)
+    public long getHitCount()
+    {
+        return hitCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of requests not found in the cache", readonly = true)
+    public long getMissCount()
+    {
+        return missCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of conditional requests sent to revalidate stale responses", readonly = true)
+    public long getRevalidationCount()
+    {
+        return revalidationCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of revalidations that confirmed the cached response", readonly = true)
+    public long getNotModifiedCount()
+    {
+        return notModifiedCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of cache misses and revalidations coalesced with a concurrent request", readonly = true)
+    public long getCoalescedCount()
+    {
+        return coalescedCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of responses stored in the cache", readonly = true)
+    public long getStoreCount()
+    {
+        return storeCount.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of cached responses", readonly = true)
+    public int getEntryCount()
+    {
+        return store.size();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hitCount.reset();
+        missCount.reset();
+        revalidationCount.reset();
+        notModifiedCount.reset();
+        coalescedCount.reset();
+        storeCount.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the cached responses", impact = "ACTION")
+    public void clear()
+    {
+        store.clear();
+    }
+
+    /**
+     * <p>Sends the given request, or answers it from the cache.</p>
+     *
+     * @param request the request to send
+     * @return a future completed with the response
+     */
+    public CompletableFuture<ContentResponse> send(Request request)
+    {
+        String method = request.getMethod();
+        String key = keyOf(request);
+        if (!HttpMethod.GET.is(method))
+        {
+            if (HttpMethod.HEAD.is(method) || HttpMethod.OPTIONS.is(method) || HttpMethod.TRACE.is(method))
+                return fetch(request);
+            // RFC 7234, section 4.4.
+            return fetch(request).thenApply(response ->
+            {
+                if (response.getStatus() < HttpStatus.BAD_REQUEST_400)
+                    store.remove(key);
+                return response;
+            });
+        }
+
+        HttpFields requestHeaders = request.getHeaders();
+        CacheControl cacheControl = CacheControl.from(requestHeaders);
+        if (cacheControl.noStore ||
+            requestHeaders.containsKey(HttpHeader.AUTHORIZATION.asString()) ||
+            requestHeaders.containsKey(HttpHeader.IF_NONE_MATCH.asString()) ||
+            requestHeaders.containsKey(HttpHeader.IF_MODIFIED_SINCE.asString()))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Bypassing cache for {}", request);
+            return fetch(request);
+        }
+
+        Entry entry = store.get(key);
+        if (entry != null && !entry.matches(request))
+            entry = null;
+
+        long now = System.currentTimeMillis();
+        if (entry != null)
+        {
+            if (!cacheControl.noCache && entry.isFresh(cacheControl, now))
+            {
+                hitCount.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache hit {} for {}", entry, request);
+                return CompletableFuture.completedFuture(entry.toContentResponse(request, now));
+            }
+            if (entry.hasValidators())
+            {
+                Entry stale = entry;
+                return coalesce(request, key, cacheControl, now, () -> revalidate(request, key, stale));
+            }
+        }
+
+        missCount.increment();
+        return coalesce(request, key, cacheControl, now, () -> fetchAndStore(request, key));
+    }
+
+    private CompletableFuture<ContentResponse> coalesce(Request request, String key, CacheControl cacheControl, long now, Supplier<CompletableFuture<ContentResponse>> fetcher)
+    {
+        if (!coalesceMisses)
+            return fetcher.get();
+
+        CompletableFuture<ContentResponse> miss = new CompletableFuture<>();
+        CompletableFuture<ContentResponse> existing = misses.putIfAbsent(key, miss);
+        if (existing != null)
+        {
+            coalescedCount.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Coalescing {}", request);
+            // Only a stored response can be shared, as the response to the other
+            // request may be uncacheable or for a different variant; a stale entry
+            // can only be shared if it has been revalidated by the other request.
+            return existing.handle((r, x) -> store.get(key))
+                .thenCompose(stored ->
+                {
+                    long time = System.currentTimeMillis();
+                    if (stored != null && stored.matches(request) &&
+                        (stored.responseTime >= now || (!cacheControl.noCache && stored.isFresh(cacheControl, time))))
+                        return CompletableFuture.completedFuture(stored.toContentResponse(request, time));
+                    return fetchAndStore(request, key);
+                });
+        }
+
+        fetcher.get().whenComplete((response, failure) ->
+        {
+            misses.remove(key, miss);
+            if (failure == null)
+                miss.complete(response);
+            else
+                miss.completeExceptionally(failure);
+        });
+        return miss;
+    }
+
+    private CompletableFuture<ContentResponse> revalidate(Request request, String key, Entry entry)
+    {
+        revalidationCount.increment();
+        Request conditional = newConditionalRequest(request, entry);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Revalidating {} for {}", entry, request);
+
+        long requestTime = System.currentTimeMillis();
+        return fetch(conditional).thenApply(response ->
+        {
+            if (response.getStatus() != HttpStatus.NOT_MODIFIED_304)
+            {
+                // RFC 7234, section 4.3.3: the new response replaces
+                // the stale one, even when it cannot be stored.
+                if (!store(key, request, response, requestTime))
+                    store.remove(key);
+                return response;
+            }
+
+            notModifiedCount.increment();
+            // RFC 7234, section 4.3.4.
+            Entry updated = entry.update(response.getHeaders(), requestTime, System.currentTimeMillis());
+            store.put(key, updated);
+            return updated.toContentResponse(request, System.currentTimeMillis());
+        });
+    }
+
+    private Request newConditionalRequest(Request request, Entry entry)
+    {
+        // The application's request is left unmodified, as it may be sent again.
+        HttpRequest httpRequest = (HttpRequest)request;
+        Request conditional = httpRequest.getHttpClient().copyRequest(httpRequest, request.getURI());
+        request.getCookies().forEach(conditional::cookie);
+        request.getAttributes().forEach(conditional::attribute);
+        String etag = entry.headers.get(HttpHeader.ETAG);
+        if (etag != null)
+            conditional.header(HttpHeader.IF_NONE_MATCH, etag);
+        String lastModified = entry.headers.get(HttpHeader.LAST_MODIFIED);
+        if (lastModified != null)
+            conditional.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        return conditional;
+    }
+
+    private CompletableFuture<ContentResponse> fetchAndStore(Request request, String key)
+    {
+        long requestTime = System.currentTimeMillis();
+        return fetch(request).thenApply(response ->
+        {
+            store(key, request, response, requestTime);
+            return response;
+        });
+    }
+
+    private CompletableFuture<ContentResponse> fetch(Request request)
+    {
+        CompletableFuture<ContentResponse> result = new CompletableFuture<>();
+        request.send(new BufferingResponseListener(getMaxContentLength())
+        {
+            @Override
+            public void onComplete(Result r)
+            {
+                if (r.isFailed())
+                    result.completeExceptionally(r.getFailure());
+                else
+                    result.complete(new HttpContentResponse(r.getResponse(), getContent(), getMediaType(), getEncoding()));
+            }
+        });
+        return result;
+    }
+
+    private boolean store(String key, Request request, ContentResponse response, long requestTime)
+    {
+        if (!isCacheable(request, response))
+            return false;
+        Entry entry = new Entry(request, response, requestTime, System.currentTimeMillis());
+        store.put(key, entry);
+        storeCount.increment();
+        if (LOG.isDebugEnabled())
+            LOG.debug("Stored {} for {}", entry, request);
+        return true;
+    }
+
+    /**
+     * <p>Returns whether the given response to the given request can be stored, as specified by RFC 7234, section 3.</p>
+     *
+     * @param request the request
+     * @param response the response
+     * @return whether the response can be stored
+     */
+    protected boolean isCacheable(Request request, ContentResponse response)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return false;
+        int status = response.getStatus();
+        boolean heuristic = isHeuristicallyCacheable(status);
+        // Partial responses are not supported.
+        if (!heuristic && status != HttpStatus.TEMPORARY_REDIRECT_307 && status != HttpStatus.PERMANENT_REDIRECT_308)
+            return false;
+        HttpFields headers = response.getHeaders();
+        if (headers.getCSV(HttpHeader.VARY, false).contains("*"))
+            return false;
+        CacheControl cacheControl = CacheControl.from(headers);
+        if (cacheControl.noStore || CacheControl.from(request.getHeaders()).noStore)
+            return false;
+        // RFC 7234, section 3: the cache may be shared by many users.
+        if (cacheControl.isPrivate)
+            return false;
+        return cacheControl.maxAge >= 0 ||
+            headers.containsKey(HttpHeader.EXPIRES.asString()) ||
+            headers.containsKey(HttpHeader.ETAG.asString()) ||
+            (heuristic && headers.containsKey(HttpHeader.LAST_MODIFIED.asString()));
+    }
+
+    private static boolean isHeuristicallyCacheable(int status)
+    {
+        // RFC 7231, section 6.1.
+        switch (status)
+        {
+            case HttpStatus.OK_200:
+            case HttpStatus.NON_AUTHORITATIVE_INFORMATION_203:
+            case HttpStatus.NO_CONTENT_204:
+            case HttpStatus.MULTIPLE_CHOICES_300:
+            case HttpStatus.MOVED_PERMANENTLY_301:
+            case HttpStatus.NOT_FOUND_404:
+            case HttpStatus.METHOD_NOT_ALLOWED_405:
+            case HttpStatus.GONE_410:
+            case HttpStatus.URI_TOO_LONG_414:
+            case HttpStatus.NOT_IMPLEMENTED_501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String keyOf(Request request)
+    {
+        return request.getURI().toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[store=%s]", getClass().getSimpleName(), hashCode(), store);
+    }
+
+    /**
+     * <p>The storage of cached responses.</p>
+     * <p>Implementations must be thread-safe.</p>
+     */
+    public interface Store
+    {
+        /**
+         * @param key the cache key
+         * @return the entry for the given key, or null if there is no such entry
+         */
+        Entry get(String key);
+
+        /**
+         * @param key the cache key
+         * @param entry the entry to store, replacing the existing entry for the given key
+         */
+        void put(String key, Entry entry);
+
+        /**
+         * @param key the cache key
+         */
+        void remove(String key);
+
+        /**
+         * <p>Removes all the entries.</p>
+         */
+        void clear();
+
+        /**
+         * @return the number of entries
+         */
+        int size();
+    }
+
+    /**
+     * <p>A cached response.</p>
+     */
+    public static class Entry
+    {
+        private final HttpVersion version;
+        private final int status;
+        private final String reason;
+        private final HttpFields headers;
+        private final byte[] content;
+        private final String mediaType;
+        private final String encoding;
+        private final Map<String, String> variants;
+        private final long requestTime;
+        private final long responseTime;
+
+        private Entry(Request request, ContentResponse response, long requestTime, long responseTime)
+        {
+            this(response.getVersion(), response.getStatus(), response.getReason(), new HttpFields(response.getHeaders()),
+                response.getContent(), response.getMediaType(), response.getEncoding(),
+                variantsOf(request.getHeaders(), response.getHeaders()), requestTime, responseTime);
+        }
+
+        private Entry(HttpVersion version, int status, String reason, HttpFields headers, byte[] content, String mediaType, String encoding, Map<String, String> variants, long requestTime, long responseTime)
+        {
+            this.version = version;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.content = content;
+            this.mediaType = mediaType;
+            this.encoding = encoding;
+            this.variants = variants;
+            this.requestTime = requestTime;
+            this.responseTime = responseTime;
+        }
+
+        private static Map<String, String> variantsOf(HttpFields requestHeaders, HttpFields responseHeaders)
+        {
+            List<String> vary = responseHeaders.getCSV(HttpHeader.VARY, false);
+            if (vary.isEmpty())
+                return Collections.emptyMap();
+            Map<String, String> result = new HashMap<>();
+            for (String name : vary)
+            {
+                result.put(name.toLowerCase(Locale.ENGLISH), variantOf(requestHeaders, name));
+            }
+            return result;
+        }
+
+        private static String variantOf(HttpFields requestHeaders, String name)
+        {
+            List<String> values = requestHeaders.getValuesList(name);
+            return values.isEmpty() ? null : String.join(",", values);
+        }
+
+        /**
+         * @return the length in bytes of the cached content
+         */
+        public int getContentLength()
+        {
+            return content.length;
+        }
+
+        private boolean matches(Request request)
+        {
+            // RFC 7234, section 4.1.
+            for (Map.Entry<String, String> variant : variants.entrySet())
+            {
+                if (!Objects.equals(variant.getValue(), variantOf(request.getHeaders(), variant.getKey())))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean hasValidators()
+        {
+            return headers.containsKey(HttpHeader.ETAG.asString()) || headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+
+        private long freshnessLifetime()
+        {
+            // RFC 7234, section 4.2.1.
+            CacheControl cacheControl = CacheControl.from(headers);
+            if (cacheControl.maxAge >= 0)
+                return TimeUnit.SECONDS.toMillis(cacheControl.maxAge);
+            long date = date();
+            // RFC 7234, section 5.3: an invalid Expires, such as "0", represents a time in the past.
+            if (headers.containsKey(HttpHeader.EXPIRES.asString()))
+                return Math.max(0, dateOf(HttpHeader.EXPIRES) - date);
+            long lastModified = dateOf(HttpHeader.LAST_MODIFIED);
+            if (lastModified >= 0 && isHeuristicallyCacheable(status))
+                return Math.min(HEURISTIC_MAX_LIFETIME, Math.max(0, date - lastModified) / 10);
+            return 0;
+        }
+
+        private long date()
+        {
+            long date = dateOf(HttpHeader.DATE);
+            return date < 0 ? responseTime : date;
+        }
+
+        private long dateOf(HttpHeader header)
+        {
+            try
+            {
+                return headers.getDateField(header.asString());
+            }
+            catch (IllegalArgumentException x)
+            {
+                return -1;
+            }
+        }
+
+        private long ageOf()
+        {
+            try
+            {
+                return Math.max(0, headers.getLongField(HttpHeader.AGE.asString()));
+            }
+            catch (NumberFormatException x)
+            {
+                return 0;
+            }
+        }
+
+        private long currentAge(long now)
+        {
+            // RFC 7234, section 4.2.3.
+            long apparentAge = Math.max(0, responseTime - date());
+            long ageValue = TimeUnit.SECONDS.toMillis(ageOf());
+            long correctedAgeValue = ageValue + (responseTime - requestTime);
+            return Math.max(apparentAge, correctedAgeValue) + (now - responseTime);
+        }
+
+        private boolean isFresh(CacheControl requestCacheControl, long now)
+        {
+            CacheControl cacheControl = CacheControl.from(headers);
+            if (cacheControl.noCache)
+                return false;
+            long lifetime = freshnessLifetime();
+            if (requestCacheControl.maxAge >= 0)
+                lifetime = Math.min(lifetime, TimeUnit.SECONDS.toMillis(requestCacheControl.maxAge));
+            long age = currentAge(now);
+            if (requestCacheControl.minFresh > 0)
+                age += TimeUnit.SECONDS.toMillis(requestCacheControl.minFresh);
+            if (age < lifetime)
+                return true;
+            // RFC 7234, section 4.2.4.
+            if (cacheControl.mustRevalidate || requestCacheControl.maxStale < 0)
+                return false;
+            return requestCacheControl.maxStale == Long.MAX_VALUE || age < lifetime + TimeUnit.SECONDS.toMillis(requestCacheControl.maxStale);
+        }
+
+        private Entry update(HttpFields notModified, long requestTime, long responseTime)
+        {
+            HttpFields updated = new HttpFields(headers);
+            for (HttpField field : notModified)
+            {
+                HttpHeader header = field.getHeader();
+                if (header == HttpHeader.CONTENT_LENGTH || header == HttpHeader.TRANSFER_ENCODING || header == HttpHeader.CONTENT_ENCODING)
+                    continue;
+                updated.put(field.getName(), notModified.getValuesList(field.getName()));
+            }
+            return new Entry(version, status, reason, updated, content, mediaType, encoding, variants, requestTime, responseTime);
+        }
+
+        private ContentResponse toContentResponse(Request request, long now)
+        {
+            HttpResponse response = new HttpResponse(request, Collections.emptyList())
+                .version(version)
+                .status(status)
+                .reason(reason);
+            response.getHeaders().add(headers);
+            response.getHeaders().putLongField(HttpHeader.AGE, TimeUnit.MILLISECONDS.toSeconds(currentAge(now)));
+            return new HttpContentResponse(response, content, mediaType, encoding);
+        }
+
+        private void writeTo(String key, OutputStream stream) throws IOException
+        {
+            DataOutputStream output = new DataOutputStream(stream);
+            output.writeUTF(key);
+            output.writeUTF(version == null ? "" : version.asString());
+            output.writeInt(status);
+            output.writeUTF(reason == null ? "" : reason);
+            output.writeInt(headers.size());
+            for (HttpField field : headers)
+            {
+                output.writeUTF(field.getName());
+                output.writeUTF(field.getValue());
+            }
+            output.writeUTF(mediaType == null ? "" : mediaType);
+            output.writeUTF(encoding == null ? "" : encoding);
+            output.writeInt(variants.size());
+            for (Map.Entry<String, String> variant : variants.entrySet())
+            {
+                output.writeUTF(variant.getKey());
+                output.writeBoolean(variant.getValue() != null);
+                if (variant.getValue() != null)
+                    output.writeUTF(variant.getValue());
+            }
+            output.writeLong(requestTime);
+            output.writeLong(responseTime);
+            output.writeInt(content.length);
+            output.write(content);
+            output.flush();
+        }
+
+        private static Entry readFrom(String key, InputStream stream) throws IOException
+        {
+            DataInputStream input = new DataInputStream(stream);
+            if (!key.equals(input.readUTF()))
+                return null;
+            String version = input.readUTF();
+            int status = input.readInt();
+            String reason = input.readUTF();
+            HttpFields headers = new HttpFields();
+            for (int i = input.readInt(); i > 0; --i)
+            {
+                headers.add(input.readUTF(), input.readUTF());
+            }
+            String mediaType = input.readUTF();
+            String encoding = input.readUTF();
+            Map<String, String> variants = new HashMap<>();
+            for (int i = input.readInt(); i > 0; --i)
+            {
+                String name = input.readUTF();
+                variants.put(name, input.readBoolean() ? input.readUTF() : null);
+            }
+            long requestTime = input.readLong();
+            long responseTime = input.readLong();
+            byte[] content = new byte[input.readInt()];
+            input.readFully(content);
+            return new Entry(version.isEmpty() ? null : HttpVersion.fromString(version), status, reason.isEmpty() ? null : reason, headers, content,
+                mediaType.isEmpty() ? null : mediaType, encoding.isEmpty() ? null : encoding, variants, requestTime, responseTime);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s %d,%d bytes]", getClass().getSimpleName(), hashCode(), version, status, content.length);
+        }
+    }
+
+    /**
+     * <p>A {@link Store} that keeps entries in memory, evicting the least recently used
+     * entries when either the max number of entries or the max number of bytes is exceeded.</p>
+     */
+    @ManagedObject("In-memory LRU cache store")
+    public static class MemoryStore implements Store
+    {
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes;
+        private long evictions;
+
+        public MemoryStore(int maxEntries, long maxBytes)
+        {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        @ManagedAttribute("The max number of entries")
+        public int getMaxEntries()
+        {
+            return maxEntries;
+        }
+
+        @ManagedAttribute("The max number of content bytes")
+        public long getMaxBytes()
+        {
+            return maxBytes;
+        }
+
+        @ManagedAttribute(value = "The number of content bytes", readonly = true)
+        public long getBytes()
+        {
+            synchronized (this)
+            {
+                return bytes;
+            }
+        }
+
+        @ManagedAttribute(value = "The number of evicted entries", readonly = true)
+        public long getEvictions()
+        {
+            synchronized (this)
+            {
+                return evictions;
+            }
+        }
+
+        @Override
+        public Entry get(String key)
+        {
+            synchronized (this)
+            {
+                return entries.get(key);
+            }
+        }
+
+        @Override
+        public void put(String key, Entry entry)
+        {
+            if (entry.getContentLength() > maxBytes)
+                return;
+            synchronized (this)
+            {
+                Entry existing = entries.put(key, entry);
+                if (existing != null)
+                    bytes -= existing.getContentLength();
+                bytes += entry.getContentLength();
+                Iterator<Entry> iterator = entries.values().iterator();
+                while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext())
+                {
+                    Entry eldest = iterator.next();
+                    iterator.remove();
+                    bytes -= eldest.getContentLength();
+                    ++evictions;
+                }
+            }
+        }
+
+        @Override
+        public void remove(String key)
+        {
+            synchronized (this)
+            {
+                Entry existing = entries.remove(key);
+                if (existing != null)
+                    bytes -= existing.getContentLength();
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            synchronized (this)
+            {
+                entries.clear();
+                bytes = 0;
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            synchronized (this)
+            {
+                return entries.size();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            synchronized (this)
+            {
+                return String.format("%s@%x[entries=%d/%d,bytes=%d/%d]", getClass().getSimpleName(), hashCode(), entries.size(), maxEntries, bytes, maxBytes);
+            }
+        }
+    }
+
+    /**
+     * <p>A {@link Store} that keeps entries in files in a directory, so that they
+     * survive a restart and do not occupy heap memory, evicting the least recently used
+     * entries when either the max number of entries or the max number of bytes is exceeded.</p>
+     * <p>Entries are written to a temporary file and then atomically moved, so that
+     * concurrent readers never see partially written entries.</p>
+     * <p>The recency of the entries is tracked in memory; entries found in the directory
+     * when this store is created are ordered by their last modified time.</p>
+     */
+    @ManagedObject("File system LRU cache store")
+    public static class PathStore implements Store
+    {
+        private static final String SUFFIX = ".cache";
+
+        // Maps the file names of the entries to the file sizes, in access order.
+        private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75F, true);
+        private final Path directory;
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes;
+        private long evictions;
+
+        public PathStore(Path directory) throws IOException
+        {
+            this(directory, 1024, 64 * 1024 * 1024);
+        }
+
+        public PathStore(Path directory, int maxEntries, long maxBytes) throws IOException
+        {
+            this.directory = Files.createDirectories(directory);
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+            try (Stream<Path> paths = Files.list(directory))
+            {
+                paths.filter(PathStore::isEntry)
+                    .sorted(Comparator.comparing(PathStore::lastModified))
+                    .forEach(path -> files.put(path.getFileName().toString(), size(path)));
+            }
+            bytes = files.values().stream().mapToLong(Long::longValue).sum();
+            evict();
+        }
+
+        public Path getDirectory()
+        {
+            return directory;
+        }
+
+        @ManagedAttribute("The max number of entries")
+        public int getMaxEntries()
+        {
+            return maxEntries;
+        }
+
+        @ManagedAttribute("The max number of bytes of the entry files")
+        public long getMaxBytes()
+        {
+            return maxBytes;
+        }
+
+        @ManagedAttribute(value = "The number of bytes of the entry files", readonly = true)
+        public long getBytes()
+        {
+            synchronized (this)
+            {
+                return bytes;
+            }
+        }
+
+        @ManagedAttribute(value = "The number of evicted entries", readonly = true)
+        public long getEvictions()
+        {
+            synchronized (this)
+            {
+                return evictions;
+            }
+        }
+
+        @Override
+        public Entry get(String key)
+        {
+            Path path = pathOf(key);
+            try (InputStream input = Files.newInputStream(path))
+            {
+                Entry entry = Entry.readFrom(key, input);
+                synchronized (this)
+                {
+                    // Updates the access order.
+                    files.get(path.getFileName().toString());
+                }
+                return entry;
+            }
+            catch (NoSuchFileException x)
+            {
+                synchronized (this)
+                {
+                    Long size = files.remove(path.getFileName().toString());
+                    if (size != null)
+                        bytes -= size;
+                }
+                return null;
+            }
+            catch (IOException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not read cache entry for {}", key, x);
+                return null;
+            }
+        }
+
+        @Override
+        public void put(String key, Entry entry)
+        {
+            if (entry.getContentLength() > maxBytes)
+                return;
+            Path path = pathOf(key);
+            try
+            {
+                Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+                try (OutputStream output = Files.newOutputStream(temp))
+                {
+                    entry.writeTo(key, output);
+                }
+                long size = Files.size(temp);
+                synchronized (this)
+                {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Long existing = files.put(path.getFileName().toString(), size);
+                    if (existing != null)
+                        bytes -= existing;
+                    bytes += size;
+                    evict();
+                }
+            }
+            catch (IOException x)
+            {
+                LOG.warn("Could not write cache entry for {}", key, x);
+            }
+        }
+
+        private void evict()
+        {
+            Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+            while ((files.size() > maxEntries || bytes > maxBytes) && iterator.hasNext())
+            {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                bytes -= eldest.getValue();
+                ++evictions;
+                delete(directory.resolve(eldest.getKey()));
+            }
+        }
+
+        @Override
+        public void remove(String key)
+        {
+            Path path = pathOf(key);
+            synchronized (this)
+            {
+                Long size = files.remove(path.getFileName().toString());
+                if (size != null)
+                    bytes -= size;
+                delete(path);
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            synchronized (this)
+            {
+                files.clear();
+                bytes = 0;
+                try (Stream<Path> paths = Files.list(directory))
+                {
+                    paths.filter(PathStore::isEntry).forEach(PathStore::delete);
+                }
+                catch (IOException x)
+                {
+                    LOG.warn("Could not clear cache directory {}", directory, x);
+                }
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            synchronized (this)
+            {
+                return files.size();
+            }
+        }
+
+        private Path pathOf(String key)
+        {
+            try
+            {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return directory.resolve(TypeUtil.toHexString(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX);
+            }
+            catch (NoSuchAlgorithmException x)
+            {
+                throw new IllegalStateException(x);
+            }
+        }
+
+        private static boolean isEntry(Path path)
+        {
+            return path.getFileName().toString().endsWith(SUFFIX);
+        }
+
+        private static long size(Path path)
+        {
+            try
+            {
+                return Files.size(path);
+            }
+            catch (IOException x)
+            {
+                return 0;
+            }
+        }
+
+        private static FileTime lastModified(Path path)
+        {
+            try
+            {
+                return Files.getLastModifiedTime(path);
+            }
+            catch (IOException x)
+            {
+                return FileTime.fromMillis(0);
+            }
+        }
+
+        private static void delete(Path path)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException x)
+            {
+                LOG.warn("Could not remove cache entry {}", path, x);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            synchronized (this)
+            {
+                return String.format("%s@%x[%s,entries=%d/%d,bytes=%d/%d]", getClass().getSimpleName(), hashCode(), directory, files.size(), maxEntries, bytes, maxBytes);
+            }
+        }
+    }
+
+    private static class CacheControl
+    {
+        private static final CacheControl EMPTY = new CacheControl();
+
+        private boolean noStore;
+        private boolean noCache;
+        private boolean isPrivate;
+        private boolean mustRevalidate;
+        private long maxAge = -1;
+        private long maxStale = -1;
+        private long minFresh = -1;
+
+        private static CacheControl from(HttpFields headers)
+        {
+            List<String> directives = headers.getCSV(HttpHeader.CACHE_CONTROL, false);
+            boolean pragmaNoCache = headers.getCSV(HttpHeader.PRAGMA, false).stream().anyMatch("no-cache"::equalsIgnoreCase);
+            if (directives.isEmpty() && !pragmaNoCache)
+                return EMPTY;
+
+            CacheControl result = new CacheControl();
+            // RFC 7234, section 5.4: Pragma is only used in absence of Cache-Control.
+            result.noCache = directives.isEmpty() && pragmaNoCache;
+            for (String directive : directives)
+            {
+                int equals = directive.indexOf('=');
+                String name = (equals < 0 ? directive : directive.substring(0, equals)).trim().toLowerCase(Locale.ENGLISH);
+                String value = equals < 0 ? null : directive.substring(equals + 1).trim();
+                switch (name)
+                {
+                    case "no-store":
+                        result.noStore = true;
+                        break;
+                    case "no-cache":
+                        result.noCache = true;
+                        break;
+                    case "private":
+                        result.isPrivate = true;
+                        break;
+                    case "must-revalidate":
+                    case "proxy-revalidate":
+                        result.mustRevalidate = true;
+                        break;
+                    case "max-age":
+                        result.maxAge = seconds(value, -1);
+                        break;
+                    case "max-stale":
+                        result.maxStale = seconds(value, Long.MAX_VALUE);
+                        break;
+                    case "min-fresh":
+                        result.minFresh = seconds(value, -1);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return result;
+        }
+
+        private static long seconds(String value, long defaultValue)
+        {
+            if (value == null)
+                return defaultValue;
+            try
+            {
+                // RFC 7234, section 1.2.1: values that overflow are treated as the largest value.
+                return Math.min(Integer.MAX_VALUE, Math.max(0, Long.parseLong(value.replace("\"", ""))));
+            }
+            catch (NumberFormatException x)
+            {
+                return !value.isEmpty() && value.chars().allMatch(Character::isDigit) ? Integer.MAX_VALUE : defaultValue;
+            }
+        }
+    }
+}
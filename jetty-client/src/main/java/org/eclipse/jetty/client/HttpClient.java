@@ -54,6 +54,7 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.util.FormRequestContent;
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.http.HttpCompliance;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
@@ -135,6 +136,7 @@ public class HttpClient extends ContainerLifeCycle
     private CookieManager cookieManager;
     private CookieStore cookieStore;
     private SocketAddressResolver resolver;
+    private HappyEyeballs happyEyeballs;
     private HttpField agentField = new HttpField(HttpHeader.USER_AGENT, USER_AGENT);
     private boolean followRedirects = true;
     private int maxConnectionsPerDestination = 64;
@@ -219,6 +221,10 @@ public class HttpClient extends ContainerLifeCycle
         handlers.put(new UpgradeProtocolHandler());
 
         decoderFactories.add(new GZIPContentDecoder.Factory(byteBufferPool));
+        for (ContentCodec codec : ContentCodec.getContentCodecs())
+        {
+            decoderFactories.add(new ContentCodecDecoder.Factory(codec));
+        }
 
         cookieManager = newCookieManager();
         cookieStore = cookieManager.getCookieStore();
@@ -568,7 +574,11 @@ public class HttpClient extends ContainerLifeCycle
                 Map<String, Object> context = new HashMap<>();
                 context.put(ClientConnectionFactory.CLIENT_CONTEXT_KEY, HttpClient.this);
                 context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
-                connect(socketAddresses, 0, context);
+                HappyEyeballs happyEyeballs = getHappyEyeballs();
+                if (happyEyeballs != null && socketAddresses.size() > 1)
+                    happyEyeballs.connect(socketAddresses, context, promise);
+                else
+                    connect(socketAddresses, 0, context);
             }
 
             @Override
@@ -813,6 +823,31 @@ public class HttpClient extends ContainerLifeCycle
         this.resolver = resolver;
     }
 
+    /**
+     * @return the {@link HappyEyeballs} that races connection attempts, or null
+     * if connection attempts are performed sequentially
+     */
+    public HappyEyeballs getHappyEyeballs()
+    {
+        return happyEyeballs;
+    }
+
+    /**
+     * <p>Sets the {@link HappyEyeballs} that races connection attempts when
+     * a host resolves to multiple addresses.</p>
+     * <p>When null (the default), the addresses are tried sequentially, in
+     * the order returned by the {@link #getSocketAddressResolver() resolver}.</p>
+     *
+     * @param happyEyeballs the {@link HappyEyeballs} of this HttpClient, or null
+     */
+    public void setHappyEyeballs(HappyEyeballs happyEyeballs)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        updateBean(this.happyEyeballs, happyEyeballs);
+        this.happyEyeballs = happyEyeballs;
+    }
+
     /**
      * @return the max number of connections that this HttpClient opens to {@link Destination}s
      */
@@ -113,6 +113,11 @@ public class HttpRequest implements Request
             headers.put(userAgentField);
     }
 
+    HttpClient getHttpClient()
+    {
+        return client;
+    }
+
     public HttpConversation getConversation()
     {
         return conversation;
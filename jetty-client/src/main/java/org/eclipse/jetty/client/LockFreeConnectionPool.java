@@ -0,0 +1,331 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.thread.Sweeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link ConnectionPool} for non-multiplexed connections that does not use locks
+ * to acquire and release connections.</p>
+ * <p>Connections are stored in a fixed array of {@code maxConnections} slots. Each slot holds
+ * an entry that knows its slot index and transitions atomically between the idle, active and
+ * removed states; connections are mapped to their entries, so that releasing or removing a
+ * connection does not scan the slots. Since an entry is never reused, a slot freed and reused
+ * concurrently cannot be mistaken for the entry of another connection.</p>
+ * <p>Acquiring a connection first tries the slot last used by the current thread, so that
+ * a thread that released a connection gets the same connection back, then scans the
+ * slots from the first, so that "hot" connections are preferred over "cold" ones.</p>
+ * <p>This pool is a drop-in replacement for {@link DuplexConnectionPool} when many threads
+ * contend on the same destination, for example:</p>
+ * <pre>
+ * transport.setConnectionPoolFactory(destination -&gt;
+ *     new LockFreeConnectionPool(destination, client.getMaxConnectionsPerDestination(), destination));
+ * </pre>
+ */
+@ManagedObject
+public class LockFreeConnectionPool extends AbstractConnectionPool implements Sweeper.Sweepable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LockFreeConnectionPool.class);
+    private static final int IDLE = 0;
+    private static final int ACTIVE = 1;
+    private static final int REMOVED = 2;
+
+    private final ThreadLocal<Affinity> affinity = ThreadLocal.withInitial(Affinity::new);
+    private final AtomicReferenceArray<Entry> slots;
+    private final Map<Connection, Entry> entries = new ConcurrentHashMap<>();
+
+    public LockFreeConnectionPool(Destination destination, int maxConnections, Callback requester)
+    {
+        super(destination, maxConnections, requester);
+        this.slots = new AtomicReferenceArray<>(maxConnections);
+    }
+
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    public int getIdleConnectionCount()
+    {
+        return count(IDLE);
+    }
+
+    @ManagedAttribute(value = "The number of active connections", readonly = true)
+    public int getActiveConnectionCount()
+    {
+        return count(ACTIVE);
+    }
+
+    private int count(int state)
+    {
+        int result = 0;
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.state.get() == state)
+                ++result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isActive(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        return entry != null && entry.state.get() == ACTIVE;
+    }
+
+    @Override
+    public boolean accept(Connection connection)
+    {
+        boolean accepted = super.accept(connection);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Accepted {} {}", accepted, connection);
+        if (accepted)
+        {
+            if (!insert(connection, ACTIVE))
+            {
+                removed(connection);
+                return false;
+            }
+            active(connection);
+        }
+        return accepted;
+    }
+
+    @Override
+    protected void onCreated(Connection connection)
+    {
+        if (insert(connection, IDLE))
+            idle(connection, false);
+        else
+            connection.close();
+    }
+
+    private boolean insert(Connection connection, int state)
+    {
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            if (slots.get(i) != null)
+                continue;
+            Entry entry = new Entry(connection, i, state);
+            // Map the entry before publishing it, so that a thread that
+            // activates it from the slot can release it.
+            entries.put(connection, entry);
+            if (slots.compareAndSet(i, null, entry))
+                return true;
+        }
+        entries.remove(connection);
+        // Should not happen, since the connection count is bounded by maxConnections.
+        LOG.warn("No free slot for {} in {}", connection, this);
+        return false;
+    }
+
+    @Override
+    protected Connection activate()
+    {
+        // Try first the connection last used by this thread.
+        Affinity affinity = this.affinity.get();
+        int index = affinity.index;
+        if (index >= 0)
+        {
+            Entry entry = slots.get(index);
+            if (entry != null && entry.state.compareAndSet(IDLE, ACTIVE))
+                return active(entry.connection);
+        }
+
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.state.compareAndSet(IDLE, ACTIVE))
+            {
+                affinity.index = i;
+                return active(entry.connection);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean release(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        if (entry == null)
+            return false;
+        boolean closed = isClosed();
+        if (!closed)
+        {
+            if (!entry.state.compareAndSet(ACTIVE, IDLE))
+                return false;
+            // The releasing thread gets this connection back first.
+            affinity.get().index = entry.index;
+        }
+        else if (entry.state.get() != ACTIVE)
+        {
+            return false;
+        }
+        released(connection);
+        return idle(connection, closed);
+    }
+
+    @Override
+    public boolean remove(Connection connection)
+    {
+        return remove(connection, false);
+    }
+
+    protected boolean remove(Connection connection, boolean force)
+    {
+        boolean activeRemoved = false;
+        boolean idleRemoved = false;
+        Entry entry = entries.get(connection);
+        if (entry != null)
+        {
+            int state = entry.remove();
+            activeRemoved = state == ACTIVE;
+            idleRemoved = state == IDLE;
+        }
+
+        if (activeRemoved || force)
+            released(connection);
+        boolean removed = activeRemoved || idleRemoved || force;
+        if (removed)
+            removed(connection);
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+
+        List<Connection> toClose = new ArrayList<>();
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.remove() != REMOVED)
+                toClose.add(entry.connection);
+        }
+
+        close(toClose);
+    }
+
+    private List<Connection> collect(int state)
+    {
+        List<Connection> result = new ArrayList<>();
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.state.get() == state)
+                result.add(entry.connection);
+        }
+        return result;
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        DumpableCollection active = new DumpableCollection("active", collect(ACTIVE));
+        DumpableCollection idle = new DumpableCollection("idle", collect(IDLE));
+        Dumpable.dumpObjects(out, indent, this, active, idle);
+    }
+
+    @Override
+    public boolean sweep()
+    {
+        for (Connection connection : collect(ACTIVE))
+        {
+            if (connection instanceof Sweeper.Sweepable && ((Sweeper.Sweepable)connection).sweep())
+            {
+                boolean removed = remove(connection, true);
+                LOG.warn("Connection swept: {}{}{} from active connections{}{}",
+                    connection,
+                    System.lineSeparator(),
+                    removed ? "Removed" : "Not removed",
+                    System.lineSeparator(),
+                    dump());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[c=%d/%d/%d,a=%d,i=%d]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getPendingConnectionCount(),
+            getConnectionCount(),
+            getMaxConnectionCount(),
+            getActiveConnectionCount(),
+            getIdleConnectionCount());
+    }
+
+    private class Entry
+    {
+        private final AtomicInteger state;
+        private final Connection connection;
+        private final int index;
+
+        private Entry(Connection connection, int index, int state)
+        {
+            this.state = new AtomicInteger(state);
+            this.connection = connection;
+            this.index = index;
+        }
+
+        /**
+         * @return the state of this entry before it was removed
+         */
+        private int remove()
+        {
+            while (true)
+            {
+                int current = state.get();
+                if (current == REMOVED)
+                    return REMOVED;
+                if (state.compareAndSet(current, REMOVED))
+                {
+                    entries.remove(connection, this);
+                    slots.compareAndSet(index, this, null);
+                    return current;
+                }
+            }
+        }
+    }
+
+    private static class Affinity
+    {
+        private int index = -1;
+    }
+}
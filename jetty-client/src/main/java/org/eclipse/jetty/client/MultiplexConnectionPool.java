@@ -26,24 +26,50 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.thread.Sweeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>A {@link ConnectionPool} for multiplexed connections.</p>
+ * <p>By default, a new exchange is assigned to the first active connection that
+ * has spare multiplex capacity.
+ * When {@link #setLeastLatencySelection(boolean) least latency selection} is enabled,
+ * each connection tracks the number of in-flight exchanges and an exponentially weighted
+ * moving average (EWMA) of the exchange latency, and a new exchange is assigned to the
+ * connection with the lowest estimated cost, so that a slow connection (for example, one
+ * that is stuck behind a large download) is avoided.
+ * A connection that has no latency samples yet is assumed to have the average latency
+ * of the other connections, so that it is neither favored nor avoided.
+ * Additionally, a new connection may be opened proactively when the estimated queueing
+ * delay of the best connection exceeds the {@link #setQueueingDelayThreshold(long) threshold}.</p>
+ */
+@ManagedObject
 public class MultiplexConnectionPool extends AbstractConnectionPool implements ConnectionPool.Multiplexable, Sweeper.Sweepable
 {
     private static final Logger LOG = LoggerFactory.getLogger(MultiplexConnectionPool.class);
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
 
     private final HttpDestination destination;
     private final Deque<Holder> idleConnections;
     private final Map<Connection, Holder> activeConnections;
     private int maxMultiplex;
+    private boolean leastLatencySelection;
+    private long queueingDelayThreshold = -1;
+    private long nextQueueingDelayCheck;
+    private long selections;
+    private long rerouted;
+    private long proactiveConnections;
 
     public MultiplexConnectionPool(HttpDestination destination, int maxConnections, Callback requester, int maxMultiplex)
     {
@@ -52,6 +78,7 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
         this.idleConnections = new ArrayDeque<>(maxConnections);
         this.activeConnections = new LinkedHashMap<>(maxConnections);
         this.maxMultiplex = maxMultiplex;
+        this.nextQueueingDelayCheck = System.nanoTime();
     }
 
     @Override
@@ -64,9 +91,189 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
             tryCreate(maxPending);
             connection = activate();
         }
+        else if (isQueueingDelayExceeded())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Queueing delay threshold exceeded, opening connection proactively {}", this);
+            if (tryCreate(1))
+            {
+                synchronized (this)
+                {
+                    ++proactiveConnections;
+                }
+            }
+        }
         return connection;
     }
 
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    public int getIdleConnectionCount()
+    {
+        synchronized (this)
+        {
+            return idleConnections.size();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of active connections", readonly = true)
+    public int getActiveConnectionCount()
+    {
+        synchronized (this)
+        {
+            return activeConnections.size();
+        }
+    }
+
+    /**
+     * @return whether exchanges are assigned to the connection with the lowest estimated latency
+     * @see #setLeastLatencySelection(boolean)
+     */
+    @ManagedAttribute("Whether exchanges are assigned to the connection with the lowest estimated latency")
+    public boolean isLeastLatencySelection()
+    {
+        synchronized (this)
+        {
+            return leastLatencySelection;
+        }
+    }
+
+    /**
+     * <p>Sets whether exchanges are assigned to the connection with the lowest estimated
+     * latency, rather than to the first connection that has spare multiplex capacity.</p>
+     * <p>The estimated latency of a connection is the EWMA of its exchange latency, multiplied
+     * by the number of exchanges in-flight on that connection plus one.</p>
+     *
+     * @param leastLatencySelection whether exchanges are assigned to the connection with the lowest estimated latency
+     */
+    public void setLeastLatencySelection(boolean leastLatencySelection)
+    {
+        synchronized (this)
+        {
+            this.leastLatencySelection = leastLatencySelection;
+        }
+    }
+
+    /**
+     * @return the queueing delay threshold in milliseconds, or a negative value if disabled
+     * @see #setQueueingDelayThreshold(long)
+     */
+    @ManagedAttribute("The estimated queueing delay in ms above which a new connection is opened proactively")
+    public long getQueueingDelayThreshold()
+    {
+        synchronized (this)
+        {
+            return queueingDelayThreshold < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(queueingDelayThreshold);
+        }
+    }
+
+    /**
+     * <p>Sets the estimated queueing delay, in milliseconds, above which a new connection is
+     * opened proactively, provided that {@link #setLeastLatencySelection(boolean) least latency
+     * selection} is enabled and that there are no idle or pending connections.</p>
+     * <p>The queueing delay is checked at most once per threshold period.</p>
+     *
+     * @param queueingDelayThreshold the queueing delay threshold in milliseconds, or a negative value to disable
+     */
+    public void setQueueingDelayThreshold(long queueingDelayThreshold)
+    {
+        synchronized (this)
+        {
+            this.queueingDelayThreshold = queueingDelayThreshold < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(queueingDelayThreshold);
+        }
+    }
+
+    @ManagedAttribute(value = "The number of connection selections", readonly = true)
+    public long getSelectionCount()
+    {
+        synchronized (this)
+        {
+            return selections;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of selections that did not pick the first connection with spare capacity", readonly = true)
+    public long getReroutedSelectionCount()
+    {
+        synchronized (this)
+        {
+            return rerouted;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of connections opened proactively", readonly = true)
+    public long getProactiveConnectionCount()
+    {
+        synchronized (this)
+        {
+            return proactiveConnections;
+        }
+    }
+
+    @ManagedAttribute(value = "The average of the connections latency EWMA in ms", readonly = true)
+    public double getAverageLatency()
+    {
+        synchronized (this)
+        {
+            return averageLatency() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    private double averageLatency()
+    {
+        double total = 0;
+        int sampled = 0;
+        for (Holder holder : activeConnections.values())
+        {
+            if (holder.sampled)
+            {
+                total += holder.latency;
+                ++sampled;
+            }
+        }
+        for (Holder holder : idleConnections)
+        {
+            if (holder.sampled)
+            {
+                total += holder.latency;
+                ++sampled;
+            }
+        }
+        return sampled == 0 ? 0 : total / sampled;
+    }
+
+    @ManagedOperation(value = "Resets the selection statistics", impact = "ACTION")
+    public void resetSelectionStatistics()
+    {
+        synchronized (this)
+        {
+            selections = 0;
+            rerouted = 0;
+            proactiveConnections = 0;
+        }
+    }
+
+    private boolean isQueueingDelayExceeded()
+    {
+        synchronized (this)
+        {
+            if (!leastLatencySelection || queueingDelayThreshold < 0 || !idleConnections.isEmpty())
+                return false;
+            // A connection being opened takes time to become available,
+            // so there is no point checking more than once per threshold period.
+            long now = System.nanoTime();
+            if (now - nextQueueingDelayCheck < 0 || getPendingConnectionCount() > 0)
+                return false;
+            nextQueueingDelayCheck = now + queueingDelayThreshold;
+            double prior = averageLatency();
+            double delay = Double.MAX_VALUE;
+            for (Holder holder : activeConnections.values())
+            {
+                delay = Math.min(delay, holder.latency(prior) * holder.count);
+            }
+            return delay != Double.MAX_VALUE && delay > queueingDelayThreshold;
+        }
+    }
+
     @Override
     public int getMaxMultiplex()
     {
@@ -130,12 +337,19 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
         Holder result = null;
         synchronized (this)
         {
-            for (Holder holder : activeConnections.values())
+            if (leastLatencySelection)
             {
-                if (holder.count < maxMultiplex)
+                result = selectLeastLatency();
+            }
+            else
+            {
+                for (Holder holder : activeConnections.values())
                 {
-                    result = holder;
-                    break;
+                    if (holder.count < maxMultiplex)
+                    {
+                        result = holder;
+                        break;
+                    }
                 }
             }
 
@@ -148,11 +362,60 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
                 result = holder;
             }
 
+            ++selections;
+            if (leastLatencySelection)
+                result.onActivated(System.nanoTime());
             ++result.count;
         }
         return active(result.connection);
     }
 
+    private Holder selectLeastLatency()
+    {
+        Holder first = null;
+        Holder result = null;
+        double prior = averageLatency();
+        double minCost = Double.MAX_VALUE;
+        for (Holder holder : activeConnections.values())
+        {
+            if (holder.count < maxMultiplex)
+            {
+                if (first == null)
+                    first = holder;
+                double cost = holder.latency(prior) * (holder.count + 1);
+                if (cost < minCost)
+                {
+                    minCost = cost;
+                    result = holder;
+                }
+            }
+        }
+
+        // An idle connection has no in-flight exchanges, so its cost is just its latency.
+        Holder idle = null;
+        for (Holder holder : idleConnections)
+        {
+            if (first == null)
+                first = holder;
+            double cost = holder.latency(prior);
+            if (cost < minCost)
+            {
+                minCost = cost;
+                idle = holder;
+            }
+        }
+        if (idle != null)
+        {
+            idleConnections.remove(idle);
+            activeConnections.put(idle.connection, idle);
+            result = idle;
+        }
+
+        if (result != first)
+            ++rerouted;
+        return result;
+    }
+
     @Override
     public boolean release(Connection connection)
     {
@@ -164,6 +427,8 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
             holder = activeConnections.get(connection);
             if (holder != null)
             {
+                if (leastLatencySelection)
+                    holder.onReleased(System.nanoTime());
                 int count = --holder.count;
                 if (count == 0)
                 {
@@ -299,16 +564,53 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
     {
         private final Connection connection;
         private int count;
+        // Activation time of the first in-flight exchange, and sum of the time elapsed from
+        // it to the activation of each in-flight exchange, for latency tracking.
+        private long activationBase;
+        private long activationOffsets;
+        private int tracked;
+        private boolean sampled;
+        private double latency;
 
         private Holder(Connection connection)
         {
             this.connection = connection;
         }
 
+        private double latency(double prior)
+        {
+            return sampled ? latency : prior;
+        }
+
+        private void onActivated(long now)
+        {
+            if (tracked == 0)
+            {
+                activationBase = now;
+                activationOffsets = 0;
+            }
+            activationOffsets += now - activationBase;
+            ++tracked;
+        }
+
+        private void onReleased(long now)
+        {
+            if (tracked == 0)
+                return;
+            // Exchanges on a multiplexed connection may complete in any order,
+            // so the latency sample is the average age of the in-flight exchanges.
+            long averageOffset = activationOffsets / tracked;
+            activationOffsets -= averageOffset;
+            --tracked;
+            long sample = Math.max(0, now - activationBase - averageOffset);
+            latency = sampled ? latency + LATENCY_EWMA_WEIGHT * (sample - latency) : sample;
+            sampled = true;
+        }
+
         @Override
         public String toString()
         {
-            return String.format("%s[%d]", connection, count);
+            return String.format("%s[%d,latency=%.3fms]", connection, count, latency / TimeUnit.MILLISECONDS.toNanos(1));
         }
     }
 }
@@ -0,0 +1,173 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jetty.client.api.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Request.Content} that subscribes to a {@link Flow.Publisher}
+ * when the request is sent, and sends the items published as request content.</p>
+ * <p>The demand of the request content is forwarded to the publisher, one item
+ * for each content demand, so that the publisher produces content only as fast
+ * as it can be written to the network.</p>
+ * <p>Items are not copied; {@link #fromBuffers(String, Flow.Publisher) buffers} must
+ * not be modified after having been published, while {@link #fromChunks(String, Flow.Publisher)
+ * chunks} are released when they have been written, so that the response content of a
+ * {@link PublisherResponseListener} can be streamed as request content without copying:</p>
+ * <pre>
+ * PublisherResponseListener listener = new PublisherResponseListener();
+ * client.newRequest(source).send(listener);
+ * client.newRequest(target)
+ *     .method(HttpMethod.POST)
+ *     .body(PublisherRequestContent.fromChunks("application/octet-stream", listener))
+ *     .send(result -&gt; ...);
+ * </pre>
+ */
+public class PublisherRequestContent extends AsyncRequestContent
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PublisherRequestContent.class);
+
+    private final AtomicLong pendingDemand = new AtomicLong();
+    private final Runnable subscriber;
+    private volatile Flow.Subscription subscription;
+
+    /**
+     * @param contentType the content type
+     * @param publisher the publisher of the content buffers
+     * @return a request content that sends the buffers published by the given publisher
+     */
+    public static PublisherRequestContent fromBuffers(String contentType, Flow.Publisher<ByteBuffer> publisher)
+    {
+        return new PublisherRequestContent(contentType, publisher, PublisherRequestContent::offer);
+    }
+
+    /**
+     * @param contentType the content type
+     * @param publisher the publisher of the content chunks
+     * @return a request content that sends the chunks published by the given publisher,
+     * releasing them when they have been written
+     */
+    public static PublisherRequestContent fromChunks(String contentType, Flow.Publisher<PublisherResponseListener.Chunk> publisher)
+    {
+        return new PublisherRequestContent(contentType, publisher, (content, chunk) -> content.offer(chunk.getByteBuffer(), chunk.asCallback()));
+    }
+
+    private <T> PublisherRequestContent(String contentType, Flow.Publisher<T> publisher, BiConsumer<PublisherRequestContent, T> onNext)
+    {
+        super(contentType);
+        this.subscriber = () -> publisher.subscribe(new Bridge<>(onNext));
+    }
+
+    @Override
+    public Subscription subscribe(Consumer consumer, boolean emitInitialContent)
+    {
+        Subscription result = super.subscribe(consumer, emitInitialContent);
+        subscriber.run();
+        return result;
+    }
+
+    @Override
+    public void demand()
+    {
+        super.demand();
+        Flow.Subscription subscription = this.subscription;
+        if (subscription != null)
+        {
+            subscription.request(1);
+        }
+        else
+        {
+            pendingDemand.incrementAndGet();
+            // The subscription may have arrived concurrently.
+            requestPending();
+        }
+    }
+
+    @Override
+    public void fail(Throwable failure)
+    {
+        super.fail(failure);
+        Flow.Subscription subscription = this.subscription;
+        if (subscription != null)
+            subscription.cancel();
+    }
+
+    private void requestPending()
+    {
+        Flow.Subscription subscription = this.subscription;
+        if (subscription == null)
+            return;
+        long pending = pendingDemand.getAndSet(0);
+        if (pending > 0)
+            subscription.request(pending);
+    }
+
+    private class Bridge<T> implements Flow.Subscriber<T>
+    {
+        private final BiConsumer<PublisherRequestContent, T> onNext;
+
+        private Bridge(BiConsumer<PublisherRequestContent, T> onNext)
+        {
+            this.onNext = onNext;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            if (PublisherRequestContent.this.subscription != null)
+            {
+                // Reactive Streams rule 2.5.
+                subscription.cancel();
+                return;
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Publisher subscription {} for {}", subscription, PublisherRequestContent.this);
+            PublisherRequestContent.this.subscription = subscription;
+            requestPending();
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            onNext.accept(PublisherRequestContent.this, item);
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Publisher failure for {}", PublisherRequestContent.this, failure);
+            PublisherRequestContent.super.fail(failure == null ? new CancellationException() : failure);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            close();
+        }
+    }
+}
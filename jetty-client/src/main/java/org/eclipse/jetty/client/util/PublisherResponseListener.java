@@ -0,0 +1,310 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Response.Listener;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Implementation of {@link Listener} that publishes the response content
+ * as a {@link Flow.Publisher} of {@link Chunk}s.</p>
+ * <p>The demand of the {@link Flow.Subscriber} is forwarded to the demand of the
+ * response content, so that content is read from the network only when the
+ * subscriber requests it, without buffering and without blocking threads.</p>
+ * <p>Content buffers are handed over to the subscriber without copying; the
+ * subscriber must {@link Chunk#release() release} each chunk when it has consumed
+ * its buffer, possibly asynchronously, so that the buffer can be returned to the pool.
+ * A chunk can be released after having requested more chunks, but the response
+ * content cannot make progress until the chunk is released.</p>
+ * <p>Typical usage is:</p>
+ * <pre>
+ * PublisherResponseListener listener = new PublisherResponseListener();
+ * client.newRequest(...).send(listener);
+ * listener.getResponse().thenAccept(response -&gt; listener.subscribe(subscriber));
+ * </pre>
+ * <p>The response content can be streamed, without copying, as the content of another
+ * request via {@link PublisherRequestContent#fromChunks(String, Flow.Publisher)}.</p>
+ */
+public class PublisherResponseListener extends Listener.Adapter implements Flow.Publisher<PublisherResponseListener.Chunk>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PublisherResponseListener.class);
+
+    private final CompletableFuture<Response> responseFuture = new CompletableFuture<>();
+    private Response response;
+    private Flow.Subscriber<? super Chunk> subscriber;
+    private LongConsumer demand;
+    private long pendingDemand;
+    private Result result;
+    private boolean terminated;
+
+    /**
+     * @return a future completed when the response headers have been received
+     */
+    public CompletableFuture<Response> getResponse()
+    {
+        return responseFuture;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Chunk> subscriber)
+    {
+        boolean subscribed;
+        synchronized (this)
+        {
+            subscribed = this.subscriber == null;
+            if (subscribed)
+                this.subscriber = subscriber;
+        }
+        if (!subscribed)
+        {
+            // Reactive Streams rule 1.9: onSubscribe() must be called before onError().
+            subscriber.onSubscribe(new Flow.Subscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                }
+
+                @Override
+                public void cancel()
+                {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Multiple subscriptions not supported on " + this));
+            return;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Subscription for {}: {}", this, subscriber);
+        subscriber.onSubscribe(new Subscription());
+        notifyTermination();
+    }
+
+    @Override
+    public void onHeaders(Response response)
+    {
+        synchronized (this)
+        {
+            this.response = response;
+        }
+        responseFuture.complete(response);
+    }
+
+    @Override
+    public void onBeforeContent(Response response, LongConsumer demand)
+    {
+        long pending;
+        synchronized (this)
+        {
+            this.demand = demand;
+            pending = pendingDemand;
+            pendingDemand = 0;
+        }
+        if (pending > 0)
+            demand.accept(pending);
+    }
+
+    @Override
+    public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Publishing content {} for {}", BufferUtil.toDetailString(content), this);
+        Flow.Subscriber<? super Chunk> subscriber;
+        synchronized (this)
+        {
+            subscriber = this.subscriber;
+        }
+        // Content is only produced on demand, so there must be a subscriber.
+        try
+        {
+            subscriber.onNext(new Chunk(content, callback));
+        }
+        catch (Throwable x)
+        {
+            // Reactive Streams rule 2.13: the subscriber is
+            // considered cancelled when onNext() throws.
+            response.abort(x);
+        }
+    }
+
+    @Override
+    public void onComplete(Result result)
+    {
+        if (result.isFailed())
+            responseFuture.completeExceptionally(result.getFailure());
+        else
+            responseFuture.complete(result.getResponse());
+        synchronized (this)
+        {
+            this.result = result;
+        }
+        notifyTermination();
+    }
+
+    private void notifyTermination()
+    {
+        Flow.Subscriber<? super Chunk> subscriber;
+        Result result;
+        synchronized (this)
+        {
+            subscriber = this.subscriber;
+            result = this.result;
+            if (subscriber == null || result == null || terminated)
+                return;
+            terminated = true;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Notifying termination {} for {}", result, this);
+        if (result.isFailed())
+            subscriber.onError(result.getFailure());
+        else
+            subscriber.onComplete();
+    }
+
+    private void request(long n)
+    {
+        if (n <= 0)
+        {
+            // Reactive Streams rule 3.9.
+            cancel(new IllegalArgumentException("Invalid demand " + n));
+            return;
+        }
+        LongConsumer demand;
+        synchronized (this)
+        {
+            demand = this.demand;
+            if (demand == null)
+                pendingDemand = pendingDemand + n < 0 ? Long.MAX_VALUE : pendingDemand + n;
+        }
+        if (demand != null)
+            demand.accept(n);
+    }
+
+    private void cancel(Throwable failure)
+    {
+        Response response;
+        synchronized (this)
+        {
+            response = this.response;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cancelling {}", this, failure);
+        if (response != null)
+            response.abort(failure);
+        else
+            responseFuture.thenAccept(r -> r.abort(failure));
+    }
+
+    @Override
+    public String toString()
+    {
+        long pendingDemand;
+        boolean terminated;
+        synchronized (this)
+        {
+            pendingDemand = this.pendingDemand;
+            terminated = this.terminated;
+        }
+        return String.format("%s@%x[pending=%d,terminated=%b]", getClass().getSimpleName(), hashCode(), pendingDemand, terminated);
+    }
+
+    private class Subscription implements Flow.Subscription
+    {
+        @Override
+        public void request(long n)
+        {
+            PublisherResponseListener.this.request(n);
+        }
+
+        @Override
+        public void cancel()
+        {
+            PublisherResponseListener.this.cancel(new CancellationException());
+        }
+    }
+
+    /**
+     * <p>A chunk of response content.</p>
+     * <p>The chunk buffer is not copied and belongs to the response; it must not be
+     * used after the chunk has been {@link #release() released}.</p>
+     */
+    public static class Chunk
+    {
+        private final ByteBuffer buffer;
+        private final Callback callback;
+
+        private Chunk(ByteBuffer buffer, Callback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+
+        /**
+         * @return the content buffer
+         */
+        public ByteBuffer getByteBuffer()
+        {
+            return buffer;
+        }
+
+        /**
+         * <p>Releases this chunk, signaling that its buffer has been consumed.</p>
+         */
+        public void release()
+        {
+            callback.succeeded();
+        }
+
+        /**
+         * <p>Releases this chunk, signaling that its buffer could not be consumed,
+         * which aborts the response.</p>
+         *
+         * @param failure the reason why the buffer could not be consumed
+         */
+        public void release(Throwable failure)
+        {
+            callback.failed(failure);
+        }
+
+        /**
+         * @return a callback that releases this chunk when completed
+         */
+        public Callback asCallback()
+        {
+            return callback;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), BufferUtil.toDetailString(buffer));
+        }
+    }
+}
@@ -71,6 +71,11 @@ public class ConnectionPoolTest
             (ConnectionPool.Factory)
                 destination -> new RoundRobinConnectionPool(destination, 8, destination)
         });
+        pools.add(new Object[]{
+            LockFreeConnectionPool.class,
+            (ConnectionPool.Factory)
+                destination -> new LockFreeConnectionPool(destination, 8, destination)
+        });
         return pools.stream().map(Arguments::of);
     }
 
@@ -0,0 +1,144 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HappyEyeballsTest extends AbstractHttpClientServerTest
+{
+    @Test
+    public void testInterleaveByAddressFamily() throws Exception
+    {
+        InetSocketAddress ipv6a = new InetSocketAddress(InetAddress.getByAddress(new byte[16]), 80);
+        InetSocketAddress ipv6b = new InetSocketAddress(InetAddress.getByName("::1"), 80);
+        InetSocketAddress ipv4a = new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 1}), 80);
+        InetSocketAddress ipv4b = new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 2}), 80);
+        InetSocketAddress ipv4c = new InetSocketAddress(InetAddress.getByAddress(new byte[]{127, 0, 0, 3}), 80);
+
+        List<InetSocketAddress> result = HappyEyeballs.interleave(Arrays.asList(ipv6a, ipv6b, ipv4a, ipv4b, ipv4c));
+        assertEquals(Arrays.asList(ipv6a, ipv4a, ipv6b, ipv4b, ipv4c), result);
+
+        result = HappyEyeballs.interleave(Arrays.asList(ipv4a, ipv4b, ipv6a));
+        assertEquals(Arrays.asList(ipv4a, ipv6a, ipv4b), result);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testFailedAttemptStartsNextAttempt(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+        InetAddress loopback = InetAddress.getByAddress(new byte[]{127, 0, 0, 1});
+        List<InetSocketAddress> addresses = Arrays.asList(
+            new InetSocketAddress(loopback, closedPort),
+            new InetSocketAddress(loopback, connector.getLocalPort()));
+
+        long delay = TimeUnit.SECONDS.toMillis(5);
+        startClient(scenario, httpClient ->
+        {
+            httpClient.setSocketAddressResolver(new AddressesResolver(addresses));
+            HappyEyeballs happyEyeballs = new HappyEyeballs(httpClient);
+            happyEyeballs.setConnectionAttemptDelay(delay);
+            httpClient.setHappyEyeballs(happyEyeballs);
+        });
+
+        long begin = System.nanoTime();
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(delay / 2, TimeUnit.MILLISECONDS)
+            .send();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        // The refused connection must not wait for the connection attempt delay.
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertTrue(elapsed < delay);
+        HappyEyeballs happyEyeballs = client.getHappyEyeballs();
+        assertEquals(2, happyEyeballs.getIPv4Attempts());
+        assertEquals(1, happyEyeballs.getIPv4Failures());
+        assertEquals(1, happyEyeballs.getIPv4Successes());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testFirstConnectionWinsTheRace(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+
+        InetAddress loopback = InetAddress.getByAddress(new byte[]{127, 0, 0, 1});
+        InetSocketAddress address = new InetSocketAddress(loopback, connector.getLocalPort());
+        List<InetSocketAddress> addresses = Arrays.asList(address, address, address);
+        startClient(scenario, httpClient ->
+        {
+            httpClient.setSocketAddressResolver(new AddressesResolver(addresses));
+            HappyEyeballs happyEyeballs = new HappyEyeballs(httpClient);
+            // Start all the attempts immediately.
+            happyEyeballs.setConnectionAttemptDelay(0);
+            httpClient.setHappyEyeballs(happyEyeballs);
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        HappyEyeballs happyEyeballs = client.getHappyEyeballs();
+        assertEquals(1, happyEyeballs.getIPv4Successes());
+        // Only the winner is pooled.
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        assertEquals(1, destination.getConnectionPool().getConnectionCount());
+    }
+
+    private static class AddressesResolver implements SocketAddressResolver
+    {
+        private final List<InetSocketAddress> addresses;
+
+        private AddressesResolver(List<InetSocketAddress> addresses)
+        {
+            this.addresses = addresses;
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            promise.succeeded(addresses);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgingRetryPolicyTest extends AbstractHttpClientServerTest
+{
+    private static final String ATTEMPT = "X-Attempt";
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testHedgedRequestWins(Scenario scenario) throws Exception
+    {
+        CountDownLatch slowLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                if ("0".equals(request.getHeader(ATTEMPT)))
+                {
+                    try
+                    {
+                        slowLatch.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new IOException(x);
+                    }
+                }
+                response.getOutputStream().print(request.getHeader(ATTEMPT));
+            }
+        });
+        HedgingRetryPolicy policy = new HedgingRetryPolicy(client);
+        policy.setMinSamples(0);
+        policy.setMinHedgingDelay(100);
+
+        ContentResponse response = policy.send(attempt -> newRequest(scenario, attempt)).get(5, TimeUnit.SECONDS);
+        slowLatch.countDown();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("1", response.getContentAsString());
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetryableResponseIsRetried(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                if (requests.incrementAndGet() == 1)
+                    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+        HedgingRetryPolicy policy = new HedgingRetryPolicy(client);
+        policy.setMaxHedges(0);
+
+        ContentResponse response = policy.send(attempt -> newRequest(scenario, attempt)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(2, requests.get());
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetryBudgetExhausted(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+        HedgingRetryPolicy policy = new HedgingRetryPolicy(client);
+        policy.setMaxHedges(0);
+        policy.setMaxRetryTokens(0);
+
+        ContentResponse response = policy.send(attempt -> newRequest(scenario, attempt)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals(1, requests.get());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNonIdempotentRequestIsNotRetried(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+        HedgingRetryPolicy policy = new HedgingRetryPolicy(client);
+
+        ContentResponse response = policy.send(attempt -> newRequest(scenario, attempt).method(HttpMethod.POST)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals(1, requests.get());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    public void testLatencyHistogramPercentile()
+    {
+        HedgingRetryPolicy.LatencyHistogram histogram = new HedgingRetryPolicy.LatencyHistogram(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(0, histogram.getPercentile(99));
+
+        for (int i = 1; i <= 100; ++i)
+        {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, histogram.getCount());
+        long p50 = TimeUnit.NANOSECONDS.toMillis(histogram.getPercentile(50));
+        assertTrue(p50 >= 50 && p50 <= 65, "p50=" + p50);
+        long p99 = TimeUnit.NANOSECONDS.toMillis(histogram.getPercentile(99));
+        assertTrue(p99 >= 99 && p99 <= 125, "p99=" + p99);
+    }
+
+    private Request newRequest(Scenario scenario, int attempt)
+    {
+        return client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .header(ATTEMPT, String.valueOf(attempt))
+            .timeout(5, TimeUnit.SECONDS);
+    }
+}
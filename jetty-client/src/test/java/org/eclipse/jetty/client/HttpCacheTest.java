@@ -0,0 +1,464 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(WorkDirExtension.class)
+public class HttpCacheTest extends AbstractHttpClientServerTest
+{
+    public WorkDir testdir;
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testFreshResponseIsServedFromCache(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+                response.getOutputStream().write("config".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = send(cache, scenario);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("config", response.getContentAsString());
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testStaleResponseIsRevalidated(Scenario scenario) throws Exception
+    {
+        String etag = "\"v1\"";
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache");
+                response.setHeader(HttpHeader.ETAG.asString(), etag);
+                if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                else
+                    response.getOutputStream().write("config".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        assertEquals("config", send(cache, scenario).getContentAsString());
+        org.eclipse.jetty.client.api.Request request = newRequest(scenario);
+        ContentResponse response = cache.send(request).get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("config", response.getContentAsString());
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(1, cache.getNotModifiedCount());
+        // The conditional request is a copy of the application's request.
+        assertNull(request.getHeaders().get(HttpHeader.IF_NONE_MATCH));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testVary(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+                response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_LANGUAGE.asString());
+                response.getOutputStream().write(request.getHeader(HttpHeader.ACCEPT_LANGUAGE.asString()).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        assertEquals("en", cache.send(newRequest(scenario).header(HttpHeader.ACCEPT_LANGUAGE, "en")).get(5, TimeUnit.SECONDS).getContentAsString());
+        assertEquals("en", cache.send(newRequest(scenario).header(HttpHeader.ACCEPT_LANGUAGE, "en")).get(5, TimeUnit.SECONDS).getContentAsString());
+        assertEquals("it", cache.send(newRequest(scenario).header(HttpHeader.ACCEPT_LANGUAGE, "it")).get(5, TimeUnit.SECONDS).getContentAsString());
+
+        assertEquals(2, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNoStoreIsNotCached(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60, no-store");
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        send(cache, scenario);
+        send(cache, scenario);
+
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPrivateIsNotCached(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "private, max-age=60");
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        send(cache, scenario);
+        send(cache, scenario);
+
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRequestNoStoreIsNotCached(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        cache.send(newRequest(scenario).header(HttpHeader.CACHE_CONTROL, "no-store")).get(5, TimeUnit.SECONDS);
+        send(cache, scenario);
+
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testUnsafeRequestInvalidatesCachedResponse(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        send(cache, scenario);
+        assertEquals(1, cache.getEntryCount());
+        cache.send(newRequest(scenario).method(HttpMethod.POST)).get(5, TimeUnit.SECONDS);
+        assertEquals(0, cache.getEntryCount());
+        send(cache, scenario);
+
+        assertEquals(3, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testConcurrentMissesAreCoalesced(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                try
+                {
+                    assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+                response.getOutputStream().write("config".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        int count = 8;
+        List<CompletableFuture<ContentResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            responses.add(cache.send(newRequest(scenario)));
+        }
+        serverLatch.countDown();
+
+        for (CompletableFuture<ContentResponse> response : responses)
+        {
+            assertEquals("config", response.get(5, TimeUnit.SECONDS).getContentAsString());
+        }
+        assertEquals(1, requests.get());
+        assertEquals(count - 1, cache.getCoalescedCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testConcurrentRevalidationsAreCoalesced(Scenario scenario) throws Exception
+    {
+        String etag = "\"v1\"";
+        AtomicInteger revalidations = new AtomicInteger();
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache");
+                response.setHeader(HttpHeader.ETAG.asString(), etag);
+                if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+                {
+                    revalidations.incrementAndGet();
+                    try
+                    {
+                        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new IOException(x);
+                    }
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                }
+                else
+                {
+                    response.getOutputStream().write("config".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        HttpCache cache = new HttpCache();
+        assertEquals("config", send(cache, scenario).getContentAsString());
+
+        int count = 8;
+        List<CompletableFuture<ContentResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            responses.add(cache.send(newRequest(scenario)));
+        }
+        serverLatch.countDown();
+
+        for (CompletableFuture<ContentResponse> response : responses)
+        {
+            assertEquals("config", response.get(5, TimeUnit.SECONDS).getContentAsString());
+        }
+        assertEquals(1, revalidations.get());
+        assertEquals(1, cache.getNotModifiedCount());
+        assertEquals(count - 1, cache.getCoalescedCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testUncacheableRevalidationRemovesStaleEntry(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                if (requests.incrementAndGet() == 1)
+                {
+                    response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-cache");
+                    response.setHeader(HttpHeader.ETAG.asString(), "\"v1\"");
+                }
+                else
+                {
+                    response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-store");
+                }
+            }
+        });
+        HttpCache cache = new HttpCache();
+
+        send(cache, scenario);
+        assertEquals(1, cache.getEntryCount());
+        send(cache, scenario);
+
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPathStore(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                response.setContentType("text/plain;charset=UTF-8");
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+                response.getOutputStream().write("config".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpCache.PathStore store = new HttpCache.PathStore(testdir.getEmptyPathDir());
+
+        assertEquals("config", send(new HttpCache(store), scenario).getContentAsString());
+        // A new cache using the same directory finds the stored response.
+        HttpCache cache = new HttpCache(store);
+        ContentResponse response = send(cache, scenario);
+
+        assertEquals("config", response.getContentAsString());
+        assertEquals("text/plain", response.getMediaType());
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+
+        cache.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get(newRequest(scenario).getURI().toString()));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testMemoryStoreEvictsLeastRecentlyUsed(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+            }
+        });
+        HttpCache.MemoryStore store = new HttpCache.MemoryStore(2, 1024);
+        HttpCache cache = new HttpCache(store);
+
+        cache.send(newRequest(scenario).path("/1")).get(5, TimeUnit.SECONDS);
+        cache.send(newRequest(scenario).path("/2")).get(5, TimeUnit.SECONDS);
+        // Access /1 so that /2 becomes the least recently used.
+        cache.send(newRequest(scenario).path("/1")).get(5, TimeUnit.SECONDS);
+        cache.send(newRequest(scenario).path("/3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.getEvictions());
+        assertNotNull(store.get(newRequest(scenario).path("/1").getURI().toString()));
+        assertNull(store.get(newRequest(scenario).path("/2").getURI().toString()));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPathStoreEvictsLeastRecentlyUsed(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+            }
+        });
+        HttpCache.PathStore store = new HttpCache.PathStore(testdir.getEmptyPathDir(), 2, 1024 * 1024);
+        HttpCache cache = new HttpCache(store);
+
+        cache.send(newRequest(scenario).path("/1")).get(5, TimeUnit.SECONDS);
+        cache.send(newRequest(scenario).path("/2")).get(5, TimeUnit.SECONDS);
+        // Access /1 so that /2 becomes the least recently used.
+        cache.send(newRequest(scenario).path("/1")).get(5, TimeUnit.SECONDS);
+        cache.send(newRequest(scenario).path("/3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.getEvictions());
+        assertNotNull(store.get(newRequest(scenario).path("/1").getURI().toString()));
+        assertNull(store.get(newRequest(scenario).path("/2").getURI().toString()));
+
+        // A new store using the same directory applies its own limits.
+        HttpCache.PathStore smaller = new HttpCache.PathStore(store.getDirectory(), 1, 1024 * 1024);
+        assertEquals(1, smaller.size());
+    }
+
+    private org.eclipse.jetty.client.api.Request newRequest(Scenario scenario)
+    {
+        return client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS);
+    }
+
+    private ContentResponse send(HttpCache cache, Scenario scenario) throws Exception
+    {
+        return cache.send(newRequest(scenario)).get(5, TimeUnit.SECONDS);
+    }
+}
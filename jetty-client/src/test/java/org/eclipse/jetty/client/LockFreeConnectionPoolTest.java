@@ -0,0 +1,191 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LockFreeConnectionPoolTest
+{
+    @Test
+    public void testAcquireReleaseRemove()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new MockDestination(), 2, Callback.NOOP);
+
+        Connection connection1 = pool.acquire();
+        assertNotNull(connection1);
+        assertTrue(pool.isActive(connection1));
+        Connection connection2 = pool.acquire();
+        assertNotNull(connection2);
+        assertEquals(2, pool.getActiveConnectionCount());
+
+        // Max connections reached.
+        assertNull(pool.acquire());
+
+        assertTrue(pool.release(connection1));
+        assertFalse(pool.isActive(connection1));
+        assertEquals(1, pool.getIdleConnectionCount());
+        // Releasing twice must fail.
+        assertFalse(pool.release(connection1));
+
+        assertTrue(pool.remove(connection2));
+        assertEquals(1, pool.getConnectionCount());
+        assertFalse(pool.remove(connection2));
+
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertEquals(0, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testReleasingThreadGetsConnectionBack()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new MockDestination(), 4, Callback.NOOP);
+
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 4; ++i)
+        {
+            connections.add(pool.acquire());
+        }
+        connections.forEach(pool::release);
+
+        // The last connection released by this thread is acquired first.
+        Connection last = connections.get(connections.size() - 1);
+        assertSame(last, pool.acquire());
+    }
+
+    @Test
+    public void testRemovedConnectionSlotIsReused()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new MockDestination(), 1, Callback.NOOP);
+
+        Connection connection1 = pool.acquire();
+        assertNotNull(connection1);
+        assertTrue(pool.remove(connection1));
+
+        // The new connection takes the slot of the removed one.
+        Connection connection2 = pool.acquire();
+        assertNotNull(connection2);
+        assertNotSame(connection1, connection2);
+
+        // The removed connection cannot release nor remove the new one.
+        assertFalse(pool.release(connection1));
+        assertFalse(pool.remove(connection1));
+        assertFalse(pool.isActive(connection1));
+        assertTrue(pool.isActive(connection2));
+        assertTrue(pool.release(connection2));
+        assertEquals(1, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Exception
+    {
+        int maxConnections = 4;
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new MockDestination(), maxConnections, Callback.NOOP);
+
+        int threads = 8;
+        int iterations = 10_000;
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t)
+        {
+            new Thread(() ->
+            {
+                for (int i = 0; i < iterations; ++i)
+                {
+                    Connection connection = pool.acquire();
+                    if (connection != null && !pool.release(connection))
+                        failures.incrementAndGet();
+                }
+                latch.countDown();
+            }).start();
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        assertEquals(0, pool.getActiveConnectionCount());
+        assertTrue(pool.getConnectionCount() <= maxConnections);
+        assertEquals(pool.getConnectionCount(), pool.getIdleConnectionCount());
+    }
+
+    private static class MockDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 8080;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new MockConnection());
+        }
+    }
+
+    private static class MockConnection implements Connection
+    {
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return false;
+        }
+    }
+}
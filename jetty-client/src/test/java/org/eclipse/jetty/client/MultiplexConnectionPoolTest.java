@@ -0,0 +1,176 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MultiplexConnectionPoolTest
+{
+    @Test
+    public void testLeastLatencySelectionAvoidsSlowConnection() throws Exception
+    {
+        MultiplexConnectionPool pool = new MultiplexConnectionPool(new MockDestination(), 2, Callback.NOOP, 1);
+        pool.setLeastLatencySelection(true);
+
+        Connection slow = pool.acquire();
+        assertNotNull(slow);
+        Connection fast = pool.acquire();
+        assertNotNull(fast);
+        assertNotSame(slow, fast);
+        pool.setMaxMultiplex(4);
+
+        assertTrue(pool.release(fast));
+        Thread.sleep(50);
+        assertTrue(pool.release(slow));
+        assertEquals(2, pool.getIdleConnectionCount());
+
+        // The slow connection is at the head of the idle queue,
+        // but the fast connection has the lowest latency.
+        assertSame(fast, pool.acquire());
+        // The fast connection is still cheaper even with one exchange in-flight.
+        assertSame(fast, pool.acquire());
+        assertEquals(4, pool.getSelectionCount());
+        assertTrue(pool.getReroutedSelectionCount() >= 1);
+        assertTrue(pool.getAverageLatency() > 0);
+    }
+
+    @Test
+    public void testQueueingDelayThresholdOpensConnectionProactively() throws Exception
+    {
+        MultiplexConnectionPool pool = new MultiplexConnectionPool(new MockDestination(), 2, Callback.NOOP, 4);
+        pool.setLeastLatencySelection(true);
+        pool.setQueueingDelayThreshold(10);
+
+        Connection connection = pool.acquire();
+        assertNotNull(connection);
+        Thread.sleep(50);
+        assertTrue(pool.release(connection));
+        assertEquals(1, pool.getConnectionCount());
+
+        // The estimated queueing delay of the only connection exceeds the threshold.
+        assertSame(connection, pool.acquire());
+        assertEquals(1, pool.getProactiveConnectionCount());
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(1, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testNewConnectionStartsAtAverageLatency() throws Exception
+    {
+        MultiplexConnectionPool pool = new MultiplexConnectionPool(new MockDestination(), 3, Callback.NOOP, 1);
+        pool.setLeastLatencySelection(true);
+
+        Connection slow = pool.acquire();
+        assertNotNull(slow);
+        Connection fast = pool.acquire();
+        assertNotNull(fast);
+        pool.setMaxMultiplex(4);
+
+        assertTrue(pool.release(fast));
+        Thread.sleep(50);
+        assertTrue(pool.release(slow));
+
+        // Open a connection that has no latency samples yet.
+        assertTrue(pool.tryCreate(-1));
+        assertEquals(3, pool.getIdleConnectionCount());
+
+        // The new connection is assumed to have the average latency,
+        // so the fast connection is still preferred.
+        assertSame(fast, pool.acquire());
+    }
+
+    @Test
+    public void testProactiveConnectionCountOnlyCountsCreatedConnections() throws Exception
+    {
+        MultiplexConnectionPool pool = new MultiplexConnectionPool(new MockDestination(), 1, Callback.NOOP, 4);
+        pool.setLeastLatencySelection(true);
+        pool.setQueueingDelayThreshold(10);
+
+        Connection connection = pool.acquire();
+        assertNotNull(connection);
+        Thread.sleep(50);
+        assertTrue(pool.release(connection));
+
+        // The queueing delay threshold is exceeded, but the pool is full.
+        assertSame(connection, pool.acquire());
+        assertEquals(0, pool.getProactiveConnectionCount());
+        assertEquals(1, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testFirstAvailableSelectionByDefault() throws Exception
+    {
+        MultiplexConnectionPool pool = new MultiplexConnectionPool(new MockDestination(), 2, Callback.NOOP, 4);
+        pool.setQueueingDelayThreshold(10);
+
+        Connection connection = pool.acquire();
+        assertNotNull(connection);
+        Thread.sleep(50);
+        assertSame(connection, pool.acquire());
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(0, pool.getProactiveConnectionCount());
+        assertEquals(0, pool.getReroutedSelectionCount());
+    }
+
+    private static class MockDestination extends MultiplexHttpDestination
+    {
+        private MockDestination()
+        {
+            super(new HttpClient(), new Origin("http", "localhost", 8080));
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new MockConnection());
+        }
+    }
+
+    private static class MockConnection implements Connection
+    {
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.AbstractHttpClientServerTest;
+import org.eclipse.jetty.client.EmptyServerHandler;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublisherContentTest extends AbstractHttpClientServerTest
+{
+    private static final int CONTENT_LENGTH = 4 * 1024 * 1024;
+
+    private final AtomicLong received = new AtomicLong();
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testResponseContentPublisher(Scenario scenario) throws Exception
+    {
+        start(scenario, new ContentHandler());
+
+        PublisherResponseListener listener = new PublisherResponseListener();
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/source")
+            .send(listener);
+
+        assertEquals(HttpStatus.OK_200, listener.getResponse().get(5, TimeUnit.SECONDS).getStatus());
+        CompletableFuture<Long> total = new CompletableFuture<>();
+        listener.subscribe(new Flow.Subscriber<>()
+        {
+            private Flow.Subscription subscription;
+            private long length;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription)
+            {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(PublisherResponseListener.Chunk chunk)
+            {
+                length += chunk.getByteBuffer().remaining();
+                chunk.release();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable failure)
+            {
+                total.completeExceptionally(failure);
+            }
+
+            @Override
+            public void onComplete()
+            {
+                total.complete(length);
+            }
+        });
+
+        assertEquals(CONTENT_LENGTH, total.get(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRequestContentPublisher(Scenario scenario) throws Exception
+    {
+        start(scenario, new ContentHandler());
+
+        SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+        CompletableFuture<Result> completable = new CompletableFuture<>();
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .method(HttpMethod.POST)
+            .path("/sink")
+            .body(PublisherRequestContent.fromBuffers("application/octet-stream", publisher))
+            .send(completable::complete);
+
+        int chunks = 128;
+        for (int i = 0; i < chunks; ++i)
+        {
+            publisher.submit(ByteBuffer.allocate(1024));
+        }
+        publisher.close();
+
+        Result result = completable.get(5, TimeUnit.SECONDS);
+        assertTrue(result.isSucceeded());
+        assertEquals(HttpStatus.OK_200, result.getResponse().getStatus());
+        assertEquals(chunks * 1024, received.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testResponseContentStreamedAsRequestContent(Scenario scenario) throws Exception
+    {
+        start(scenario, new ContentHandler());
+
+        PublisherResponseListener listener = new PublisherResponseListener();
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/source")
+            .send(listener);
+
+        CompletableFuture<Result> completable = new CompletableFuture<>();
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .method(HttpMethod.POST)
+            .path("/sink")
+            .body(PublisherRequestContent.fromChunks("application/octet-stream", listener))
+            .send(completable::complete);
+
+        Result result = completable.get(10, TimeUnit.SECONDS);
+        assertTrue(result.isSucceeded());
+        assertEquals(CONTENT_LENGTH, received.get());
+    }
+
+    private class ContentHandler extends EmptyServerHandler
+    {
+        @Override
+        protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+        {
+            if ("/source".equals(target))
+            {
+                response.setContentLength(CONTENT_LENGTH);
+                ServletOutputStream output = response.getOutputStream();
+                byte[] bytes = new byte[1024];
+                for (int i = 0; i < CONTENT_LENGTH / bytes.length; ++i)
+                {
+                    output.write(bytes);
+                }
+            }
+            else
+            {
+                InputStream input = request.getInputStream();
+                byte[] bytes = new byte[1024];
+                long total = 0;
+                while (true)
+                {
+                    int read = input.read(bytes);
+                    if (read < 0)
+                        break;
+                    total += read;
+                }
+                received.set(total);
+            }
+        }
+    }
+}
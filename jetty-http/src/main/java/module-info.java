@@ -16,6 +16,7 @@
 // ========================================================================
 //
 
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.http.Http1FieldPreEncoder;
 import org.eclipse.jetty.http.HttpFieldPreEncoder;
 
@@ -27,6 +28,7 @@ module org.eclipse.jetty.http
     requires transitive org.eclipse.jetty.io;
     requires org.slf4j;
 
+    uses ContentCodec;
     uses HttpFieldPreEncoder;
 
     provides HttpFieldPreEncoder with Http1FieldPreEncoder;
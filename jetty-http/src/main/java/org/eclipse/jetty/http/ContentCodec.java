@@ -0,0 +1,168 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import org.eclipse.jetty.util.TypeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A content coding, such as {@code br} or {@code zstd}, that encodes and decodes HTTP content.</p>
+ * <p>The JVM only implements the deflate algorithm, so other content codings are provided
+ * by libraries that implement this interface and register the implementation with the
+ * {@link ServiceLoader}. The codecs discovered by {@link #getContentCodecs()} are used by
+ * the server to compress responses and by the client to decode responses.</p>
+ * <p>Implementations must be thread safe, while the {@link Encoder}s and {@link Decoder}s
+ * they create are used by one thread at a time, for a single content.</p>
+ */
+public interface ContentCodec
+{
+    /**
+     * @return the format of the content coding, with its encoding name and ETag suffix
+     */
+    CompressedContentFormat getFormat();
+
+    /**
+     * @return the name of the content coding, as used in the {@code Accept-Encoding}
+     * and {@code Content-Encoding} headers
+     */
+    default String getEncoding()
+    {
+        return getFormat()._encoding;
+    }
+
+    /**
+     * <p>Returns an encoder for a content; the encoder may be pooled by the implementation
+     * and is returned by {@link Encoder#end()}.</p>
+     *
+     * @return a new encoder
+     */
+    Encoder newEncoder();
+
+    /**
+     * <p>Returns a decoder for a content; the decoder may be pooled by the implementation
+     * and is returned by {@link Decoder#end()}.</p>
+     *
+     * @return a new decoder
+     */
+    Decoder newDecoder();
+
+    /**
+     * @return the content codecs discovered with the {@link ServiceLoader}
+     */
+    static List<ContentCodec> getContentCodecs()
+    {
+        List<ContentCodec> codecs = new ArrayList<>();
+        TypeUtil.serviceProviderStream(ServiceLoader.load(ContentCodec.class)).forEach(provider ->
+        {
+            try
+            {
+                codecs.add(provider.get());
+            }
+            catch (Error | RuntimeException e)
+            {
+                Logger log = LoggerFactory.getLogger(ContentCodec.class);
+                if (log.isDebugEnabled())
+                    log.debug("Unable to load ContentCodec", e);
+            }
+        });
+        return codecs;
+    }
+
+    /**
+     * The flushing mode of {@link Encoder#encode(ByteBuffer, ByteBuffer, Flush)}.
+     */
+    enum Flush
+    {
+        /**
+         * The encoder may retain encoded bytes to improve compression.
+         */
+        NONE,
+        /**
+         * All the input is encoded and flushed, so that it can be decoded by the receiver.
+         */
+        SYNC,
+        /**
+         * The input is the last of the content, and the encoded stream is terminated.
+         */
+        FINISH
+    }
+
+    /**
+     * An encoder of a single content.
+     */
+    interface Encoder
+    {
+        /**
+         * <p>Encodes the bytes of the {@code input} buffer, appending the encoded bytes
+         * to the space of the {@code output} buffer.</p>
+         * <p>The input buffer position is advanced past the bytes consumed, and the
+         * output buffer limit is advanced past the bytes produced; both buffers are
+         * in flush mode. When this method returns {@code false}, it must be called
+         * again with the same input once the output buffer has been consumed.</p>
+         *
+         * @param input the bytes to encode
+         * @param output the buffer to append the encoded bytes to
+         * @param flush the flushing mode
+         * @return true if all the input has been consumed and, unless the flush mode
+         * is {@link Flush#NONE}, all the encoded bytes have been produced
+         */
+        boolean encode(ByteBuffer input, ByteBuffer output, Flush flush);
+
+        /**
+         * Releases the resources of this encoder.
+         */
+        void end();
+    }
+
+    /**
+     * A decoder of a single content.
+     */
+    interface Decoder
+    {
+        /**
+         * <p>Decodes the bytes of the {@code input} buffer, advancing its position past
+         * the bytes consumed.</p>
+         *
+         * @param input the bytes to decode
+         * @return a buffer with the decoded bytes, possibly empty
+         */
+        ByteBuffer decode(ByteBuffer input);
+
+        /**
+         * <p>Releases a buffer returned by {@link #decode(ByteBuffer)} once its
+         * bytes have been consumed.</p>
+         *
+         * @param decoded the buffer returned by {@link #decode(ByteBuffer)}
+         */
+        default void release(ByteBuffer decoded)
+        {
+        }
+
+        /**
+         * Releases the resources of this decoder.
+         */
+        void end();
+    }
+}
@@ -30,11 +30,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,7 @@ import org.slf4j.LoggerFactory;
 public abstract class HTTP2StreamEndPoint implements EndPoint
 {
     private static final Logger LOG = LoggerFactory.getLogger(HTTP2StreamEndPoint.class);
+    private static final int MAX_GATHER_COPY = 4096;
 
     private final Deque<Entry> dataQueue = new ArrayDeque<>();
     private final AtomicReference<WriteState> writeState = new AtomicReference<>(WriteState.IDLE);
@@ -246,7 +249,7 @@ public abstract class HTTP2StreamEndPoint implements EndPoint
                         // We must copy the buffers because, differently from
                         // write(), the semantic of flush() is that it does not
                         // own them, but stream.data() needs to own them.
-                        ByteBuffer buffer = coalesce(buffers, true);
+                        ByteBuffer buffer = coalesce(buffers);
                         Callback.Completable callback = new Callback.Completable(Invocable.InvocationType.NON_BLOCKING);
                         stream.data(new DataFrame(stream.getId(), buffer, false), callback);
                         callback.whenComplete((nothing, failure) ->
@@ -377,9 +380,10 @@ public abstract class HTTP2StreamEndPoint implements EndPoint
                     case IDLE:
                         if (!writeState.compareAndSet(current, WriteState.PENDING))
                             break;
-                        // TODO: we really need a Stream primitive to write multiple frames.
-                        ByteBuffer result = coalesce(buffers, false);
-                        stream.data(new DataFrame(stream.getId(), result, false), Callback.from(() -> writeSuccess(callback), x -> writeFailure(x, callback)));
+                        if (buffers.length == 1)
+                            stream.data(new DataFrame(stream.getId(), buffers[0], false), Callback.from(() -> writeSuccess(callback), x -> writeFailure(x, callback)));
+                        else
+                            new GatheringWrite(callback, buffers).iterate();
                         return;
                     case PENDING:
                         callback.failed(new WritePendingException());
@@ -446,6 +450,107 @@ public abstract class HTTP2StreamEndPoint implements EndPoint
         }
     }
 
+    /**
+     * <p>Writes multiple buffers as a sequence of DATA frames, since a stream
+     * can only have one DATA frame pending at a time.</p>
+     * <p>Large buffers are written without copying them; consecutive small buffers,
+     * such as the headers of the frames of tunnelled protocols, are copied together
+     * with the beginning of the large buffer that follows them, up to the max frame
+     * size, to avoid a DATA frame per small buffer.</p>
+     */
+    private class GatheringWrite extends IteratingCallback
+    {
+        private final Callback callback;
+        private final ByteBuffer[] buffers;
+        private final int maxFrameSize;
+        private int index;
+
+        private GatheringWrite(Callback callback, ByteBuffer[] buffers)
+        {
+            this.callback = callback;
+            this.buffers = buffers;
+            this.maxFrameSize = getMaxFrameSize();
+        }
+
+        @Override
+        protected Action process()
+        {
+            ByteBuffer buffer = next();
+            if (buffer == null)
+                return Action.SUCCEEDED;
+            stream.data(new DataFrame(stream.getId(), buffer, false), this);
+            return Action.SCHEDULED;
+        }
+
+        private ByteBuffer next()
+        {
+            while (index < buffers.length && !buffers[index].hasRemaining())
+            {
+                ++index;
+            }
+            if (index == buffers.length)
+                return null;
+
+            ByteBuffer buffer = buffers[index++];
+            int length = buffer.remaining();
+            if (length > MAX_GATHER_COPY)
+                return buffer;
+
+            int end = index;
+            while (end < buffers.length && length + buffers[end].remaining() <= MAX_GATHER_COPY)
+            {
+                length += buffers[end++].remaining();
+            }
+
+            // Fill the frame with the beginning of the large buffer that follows.
+            ByteBuffer large = end < buffers.length ? buffers[end] : null;
+            if (end == index && large == null)
+                return buffer;
+
+            int fill = large == null ? 0 : Math.min(large.remaining(), maxFrameSize - length);
+            ByteBuffer result = BufferUtil.allocate(length + fill);
+            BufferUtil.append(result, buffer);
+            for (; index < end; ++index)
+            {
+                BufferUtil.append(result, buffers[index]);
+            }
+            if (large != null)
+            {
+                int limit = large.limit();
+                large.limit(large.position() + fill);
+                BufferUtil.append(result, large);
+                large.limit(limit);
+            }
+            return result;
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            writeSuccess(callback);
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable cause)
+        {
+            writeFailure(cause, callback);
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return callback.getInvocationType();
+        }
+    }
+
+    private int getMaxFrameSize()
+    {
+        ISession session = stream.getSession();
+        if (session instanceof HTTP2Session)
+            return ((HTTP2Session)session).getGenerator().getMaxFrameSize();
+        return Frame.DEFAULT_MAX_LENGTH;
+    }
+
     private long remaining(ByteBuffer... buffers)
     {
         long total = 0;
@@ -456,10 +561,8 @@ public abstract class HTTP2StreamEndPoint implements EndPoint
         return total;
     }
 
-    private ByteBuffer coalesce(ByteBuffer[] buffers, boolean forceCopy)
+    private ByteBuffer coalesce(ByteBuffer[] buffers)
     {
-        if (buffers.length == 1 && !forceCopy)
-            return buffers[0];
         long capacity = remaining(buffers);
         if (capacity > Integer.MAX_VALUE)
             throw new BufferOverflowException();
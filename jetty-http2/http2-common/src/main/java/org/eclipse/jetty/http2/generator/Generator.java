@@ -81,6 +81,11 @@ public class Generator
         hpackEncoder.setRemoteMaxDynamicTableSize(headerTableSize);
     }
 
+    public int getMaxFrameSize()
+    {
+        return headerGenerator.getMaxFrameSize();
+    }
+
     public void setMaxFrameSize(int maxFrameSize)
     {
         headerGenerator.setMaxFrameSize(maxFrameSize);
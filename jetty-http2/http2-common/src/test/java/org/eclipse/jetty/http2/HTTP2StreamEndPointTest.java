@@ -0,0 +1,119 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class HTTP2StreamEndPointTest
+{
+    private final List<DataFrame> frames = new ArrayList<>();
+    private final HTTP2StreamEndPoint endPoint = new HTTP2StreamEndPoint(new HTTP2Stream(null, null, 1, null, true)
+    {
+        @Override
+        public void data(DataFrame frame, Callback callback)
+        {
+            frames.add(frame);
+            callback.succeeded();
+        }
+    })
+    {
+    };
+
+    @Test
+    public void testSmallBuffersAreGathered() throws Exception
+    {
+        byte[] bytes = write(new int[]{10, 100, 1000});
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(bytes, dataOf(frames));
+    }
+
+    @Test
+    public void testSmallBufferIsGatheredWithLargeBuffer() throws Exception
+    {
+        byte[] bytes = write(new int[]{10, 20000});
+
+        // The header fills the first frame with the beginning of the
+        // large payload, so the DATA frames are not more than needed.
+        assertEquals(2, frames.size());
+        assertEquals(Frame.DEFAULT_MAX_LENGTH, frames.get(0).remaining());
+        assertEquals(20010 - Frame.DEFAULT_MAX_LENGTH, frames.get(1).remaining());
+        assertArrayEquals(bytes, dataOf(frames));
+    }
+
+    @Test
+    public void testLargeBufferIsNotCopied() throws Exception
+    {
+        ByteBuffer large = ByteBuffer.allocate(20000);
+        ByteBuffer small = ByteBuffer.allocate(10);
+        FutureCallback callback = new FutureCallback();
+        endPoint.write(callback, large, small);
+        callback.get();
+
+        assertEquals(2, frames.size());
+        assertSame(large, frames.get(0).getData());
+    }
+
+    private byte[] write(int[] lengths) throws Exception
+    {
+        ByteBuffer[] buffers = new ByteBuffer[lengths.length];
+        int total = 0;
+        for (int i = 0; i < lengths.length; ++i)
+        {
+            byte[] bytes = new byte[lengths[i]];
+            ThreadLocalRandom.current().nextBytes(bytes);
+            buffers[i] = ByteBuffer.wrap(bytes);
+            total += lengths[i];
+        }
+        ByteBuffer all = ByteBuffer.allocate(total);
+        for (ByteBuffer buffer : buffers)
+        {
+            all.put(buffer.slice());
+        }
+
+        FutureCallback callback = new FutureCallback();
+        endPoint.write(callback, buffers);
+        callback.get();
+        return all.array();
+    }
+
+    private static byte[] dataOf(List<DataFrame> frames)
+    {
+        ByteBuffer result = ByteBuffer.allocate(frames.stream().mapToInt(DataFrame::remaining).sum());
+        for (DataFrame frame : frames)
+        {
+            result.put(frame.getData());
+        }
+        return result.array();
+    }
+}
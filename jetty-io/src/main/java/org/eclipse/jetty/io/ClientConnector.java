@@ -46,6 +46,10 @@ public class ClientConnector extends ContainerLifeCycle
     public static final String REMOTE_SOCKET_ADDRESS_CONTEXT_KEY = CLIENT_CONNECTOR_CONTEXT_KEY + ".remoteSocketAddress";
     public static final String CLIENT_CONNECTION_FACTORY_CONTEXT_KEY = CLIENT_CONNECTOR_CONTEXT_KEY + ".clientConnectionFactory";
     public static final String CONNECTION_PROMISE_CONTEXT_KEY = CLIENT_CONNECTOR_CONTEXT_KEY + ".connectionPromise";
+    /**
+     * <p>The context key of the {@link SocketChannel} being connected, that may be closed to cancel the connection attempt.</p>
+     */
+    public static final String SOCKET_CHANNEL_CONTEXT_KEY = CLIENT_CONNECTOR_CONTEXT_KEY + ".socketChannel";
     private static final Logger LOG = LoggerFactory.getLogger(ClientConnector.class);
 
     private Executor executor;
@@ -216,6 +220,7 @@ public class ClientConnector extends ContainerLifeCycle
             context.putIfAbsent(REMOTE_SOCKET_ADDRESS_CONTEXT_KEY, address);
 
             channel = SocketChannel.open();
+            context.put(SOCKET_CHANNEL_CONTEXT_KEY, channel);
             SocketAddress bindAddress = getBindAddress();
             if (bindAddress != null)
             {
@@ -47,6 +47,7 @@ public class SslClientConnectionFactory implements ClientConnectionFactory
     private boolean _directBuffersForEncryption = true;
     private boolean _directBuffersForDecryption = true;
     private boolean _requireCloseMessage;
+    private boolean _dynamicRecordSizing;
 
     public SslClientConnectionFactory(SslContextFactory sslContextFactory, ByteBufferPool byteBufferPool, Executor executor, ClientConnectionFactory connectionFactory)
     {
@@ -99,6 +100,24 @@ public class SslClientConnectionFactory implements ClientConnectionFactory
         _requireCloseMessage = requireCloseMessage;
     }
 
+    /**
+     * @return whether the size of the TLS records is adapted to the connection activity
+     * @see SslConnection#isDynamicRecordSizing()
+     */
+    public boolean isDynamicRecordSizing()
+    {
+        return _dynamicRecordSizing;
+    }
+
+    /**
+     * @param dynamicRecordSizing whether the size of the TLS records is adapted to the connection activity
+     * @see SslConnection#setDynamicRecordSizing(boolean)
+     */
+    public void setDynamicRecordSizing(boolean dynamicRecordSizing)
+    {
+        _dynamicRecordSizing = dynamicRecordSizing;
+    }
+
     @Override
     public org.eclipse.jetty.io.Connection newConnection(EndPoint endPoint, Map<String, Object> context) throws IOException
     {
@@ -132,6 +151,7 @@ public class SslClientConnectionFactory implements ClientConnectionFactory
             sslConnection.setRenegotiationAllowed(sslContextFactory.isRenegotiationAllowed());
             sslConnection.setRenegotiationLimit(sslContextFactory.getRenegotiationLimit());
             sslConnection.setRequireCloseMessage(isRequireCloseMessage());
+            sslConnection.setDynamicRecordSizing(isDynamicRecordSizing());
             ContainerLifeCycle client = (ContainerLifeCycle)context.get(ClientConnectionFactory.CLIENT_CONTEXT_KEY);
             if (client != null)
                 client.getBeans(SslHandshakeListener.class).forEach(sslConnection::addHandshakeListener);
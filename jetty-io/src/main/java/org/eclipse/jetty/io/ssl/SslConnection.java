@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.ToIntFunction;
 import javax.net.ssl.SSLEngine;
@@ -43,6 +44,8 @@ import org.eclipse.jetty.io.WriteFlusher;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,10 +80,19 @@ import org.slf4j.LoggerFactory;
  * themselves.  Instead they simple make the callbacks to the decrypted callbacks, so that the passive encrypted fill/flush will
  * be called again and make another best effort attempt to progress the connection.
  */
+@ManagedObject("TLS connection")
 public class SslConnection extends AbstractConnection implements Connection.UpgradeTo
 {
     private static final Logger LOG = LoggerFactory.getLogger(SslConnection.class);
     private static final String TLS_1_3 = "TLSv1.3";
+    // Dynamic record sizing: the plaintext record sizes fit respectively 1 and 3 TCP segments
+    // of a 1500 bytes MTU path, after the IP, TCP and TLS record overheads.
+    private static final int SMALL_RECORD_SIZE = 1369;
+    private static final int MEDIUM_RECORD_SIZE = 4229;
+    private static final int RECORD_SIZE_THRESHOLD = 40;
+    // An upper bound of the bytes that TLS adds to the plaintext of a record.
+    private static final int RECORD_OVERHEAD = 512;
+    private static final long RECORD_SIZE_IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
 
     private enum HandshakeState
     {
@@ -121,6 +133,12 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
     private FillState _fillState = FillState.IDLE;
     private AtomicReference<HandshakeState> _handshake = new AtomicReference<>(HandshakeState.INITIAL);
     private boolean _underflown;
+    private boolean _dynamicRecordSizing;
+    private int _dynamicRecords;
+    private long _lastWrapNanos;
+    private volatile long _wrappedRecords;
+    private volatile long _wrappedBytes;
+    private volatile long _limitedRecords;
 
     private abstract class RunnableTask implements Runnable, Invocable
     {
@@ -274,6 +292,61 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
         _requireCloseMessage = requireCloseMessage;
     }
 
+    /**
+     * @return whether the size of the TLS records is adapted to the connection activity
+     * @see #setDynamicRecordSizing(boolean)
+     */
+    @ManagedAttribute(value = "Whether the size of the TLS records is adapted to the connection activity", readonly = true)
+    public boolean isDynamicRecordSizing()
+    {
+        return _dynamicRecordSizing;
+    }
+
+    /**
+     * <p>Sets whether the size of the TLS records is adapted to the connection activity.</p>
+     * <p>When enabled, the first TLS records written after the handshake, or after the
+     * connection has been idle for a second, are small enough to fit in one TCP segment,
+     * so that the peer can decrypt and process them as soon as they arrive, without
+     * waiting for a full 16 KiB record that may span multiple round trips.
+     * After a number of records the record size grows to fit 3 TCP segments and then
+     * to the maximum allowed by the {@link SSLEngine}, to minimize the TLS framing
+     * and encryption overhead of bulk transfers.</p>
+     *
+     * @param dynamicRecordSizing whether the size of the TLS records is adapted to the connection activity
+     */
+    public void setDynamicRecordSizing(boolean dynamicRecordSizing)
+    {
+        _dynamicRecordSizing = dynamicRecordSizing;
+    }
+
+    /**
+     * @return the number of TLS records of application data wrapped by this connection
+     */
+    @ManagedAttribute(value = "The number of TLS records of application data wrapped", readonly = true)
+    public long getWrappedRecords()
+    {
+        return _wrappedRecords;
+    }
+
+    /**
+     * @return the number of bytes of application data wrapped by this connection
+     */
+    @ManagedAttribute(value = "The number of bytes of application data wrapped", readonly = true)
+    public long getWrappedBytes()
+    {
+        return _wrappedBytes;
+    }
+
+    /**
+     * @return the number of TLS records of application data whose size
+     * has been limited by {@link #setDynamicRecordSizing(boolean) dynamic record sizing}
+     */
+    @ManagedAttribute(value = "The number of TLS records whose size has been limited", readonly = true)
+    public long getLimitedRecords()
+    {
+        return _limitedRecords;
+    }
+
     private boolean isHandshakeInitial()
     {
         return _handshake.get() == HandshakeState.INITIAL;
@@ -447,6 +520,116 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
         }
     }
 
+    private int nextRecordSize()
+    {
+        if (!_dynamicRecordSizing)
+            return Integer.MAX_VALUE;
+        long now = System.nanoTime();
+        if (now - _lastWrapNanos > RECORD_SIZE_IDLE_TIMEOUT)
+            _dynamicRecords = 0;
+        _lastWrapNanos = now;
+        if (_dynamicRecords < RECORD_SIZE_THRESHOLD)
+            return SMALL_RECORD_SIZE;
+        if (_dynamicRecords < 2 * RECORD_SIZE_THRESHOLD)
+            return MEDIUM_RECORD_SIZE;
+        return Integer.MAX_VALUE;
+    }
+
+    private SSLEngineResult wrapRecord(ByteBuffer[] appOuts, ByteBuffer output, int recordSize) throws SSLException
+    {
+        if (recordSize == Integer.MAX_VALUE || BufferUtil.remaining(appOuts) <= recordSize)
+            return wrap(_sslEngine, appOuts, output);
+
+        // Temporarily limit the application bytes offered
+        // to the SSLEngine, so that it produces a small record.
+        int[] limits = new int[appOuts.length];
+        int available = recordSize;
+        for (int i = 0; i < appOuts.length; ++i)
+        {
+            ByteBuffer appOut = appOuts[i];
+            limits[i] = appOut.limit();
+            int remaining = appOut.remaining();
+            if (remaining > available)
+                appOut.limit(appOut.position() + available);
+            available -= Math.min(remaining, available);
+        }
+        try
+        {
+            SSLEngineResult result = wrap(_sslEngine, appOuts, output);
+            if (result.bytesConsumed() > 0)
+                _limitedRecords++;
+            return result;
+        }
+        finally
+        {
+            for (int i = 0; i < appOuts.length; ++i)
+            {
+                appOuts[i].limit(limits[i]);
+            }
+        }
+    }
+
+    /**
+     * <p>Wraps as many size limited records as fit in the encrypted output buffer,
+     * so that they are written to the network together rather than one by one.</p>
+     * <p>The SSLEngine requires a whole packet buffer of space to wrap even a small
+     * record, so the records are wrapped in a scratch buffer and then copied.</p>
+     */
+    private SSLEngineResult wrapMoreRecords(ByteBuffer[] appOuts, SSLEngineResult wrapResult, int packetBufferSize) throws SSLException
+    {
+        ByteBuffer record = null;
+        try
+        {
+            while (wrapResult.getStatus() == Status.OK &&
+                wrapResult.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING &&
+                !BufferUtil.isEmpty(appOuts))
+            {
+                int recordSize = nextRecordSize();
+                if (recordSize == Integer.MAX_VALUE || _encryptedOutput.remaining() < recordSize + RECORD_OVERHEAD)
+                    break;
+
+                if (record == null)
+                    record = _bufferPool.acquire(packetBufferSize, _encryptedDirectBuffers);
+                else
+                    BufferUtil.clear(record);
+                int pos = BufferUtil.flipToFill(record);
+                SSLEngineResult result;
+                try
+                {
+                    result = wrapRecord(appOuts, record, recordSize);
+                }
+                finally
+                {
+                    BufferUtil.flipToFlush(record, pos);
+                }
+                if (result.bytesProduced() == 0)
+                    break;
+
+                // The encrypted output buffer is in fill mode.
+                _encryptedOutput.put(record);
+                wrapResult = result;
+                onRecordWrapped(wrapResult);
+            }
+            return wrapResult;
+        }
+        finally
+        {
+            if (record != null)
+                _bufferPool.release(record);
+        }
+    }
+
+    private void onRecordWrapped(SSLEngineResult result)
+    {
+        int consumed = result.bytesConsumed();
+        if (consumed > 0)
+        {
+            ++_dynamicRecords;
+            _wrappedRecords++;
+            _wrappedBytes += consumed;
+        }
+    }
+
     protected int networkFill(ByteBuffer input) throws IOException
     {
         return getEndPoint().fill(input);
@@ -1028,6 +1211,10 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
                                     LOG.debug("flush starting handshake {}", SslConnection.this);
                             }
 
+                            // Application data records may be limited in size.
+                            boolean appData = status == HandshakeStatus.NOT_HANDSHAKING && isHandshakeSucceeded();
+                            int recordSize = appData ? nextRecordSize() : Integer.MAX_VALUE;
+
                             // We call sslEngine.wrap to try to take bytes from appOuts
                             // buffers and encrypt them into the _encryptedOutput buffer.
                             BufferUtil.compact(_encryptedOutput);
@@ -1035,7 +1222,13 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
                             SSLEngineResult wrapResult;
                             try
                             {
-                                wrapResult = wrap(_sslEngine, appOuts, _encryptedOutput);
+                                wrapResult = wrapRecord(appOuts, _encryptedOutput, recordSize);
+                                if (appData)
+                                {
+                                    onRecordWrapped(wrapResult);
+                                    if (recordSize != Integer.MAX_VALUE)
+                                        wrapResult = wrapMoreRecords(appOuts, wrapResult, packetBufferSize);
+                                }
                             }
                             finally
                             {
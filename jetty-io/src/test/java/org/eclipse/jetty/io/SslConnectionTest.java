@@ -30,6 +30,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -53,7 +54,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -70,6 +73,8 @@ public class SslConnectionTest
     protected volatile EndPoint _lastEndp;
     private volatile boolean _testFill = true;
     private volatile boolean _onXWriteThenShutdown = false;
+    private volatile boolean _dynamicRecordSizing = false;
+    private final AtomicInteger _applicationFlushes = new AtomicInteger();
 
     private volatile FutureCallback _writeCallback;
     protected ServerSocketChannel _connector;
@@ -91,9 +96,19 @@ public class SslConnectionTest
         {
             SSLEngine engine = _sslCtxFactory.newSSLEngine();
             engine.setUseClientMode(false);
-            SslConnection sslConnection = new SslConnection(__byteBufferPool, getExecutor(), endpoint, engine);
+            SslConnection sslConnection = new SslConnection(__byteBufferPool, getExecutor(), endpoint, engine)
+            {
+                @Override
+                protected boolean networkFlush(ByteBuffer output) throws IOException
+                {
+                    if (getWrappedRecords() > 0)
+                        _applicationFlushes.incrementAndGet();
+                    return super.networkFlush(output);
+                }
+            };
             sslConnection.setRenegotiationAllowed(_sslCtxFactory.isRenegotiationAllowed());
             sslConnection.setRenegotiationLimit(_sslCtxFactory.getRenegotiationLimit());
+            sslConnection.setDynamicRecordSizing(_dynamicRecordSizing);
             Connection appConnection = new TestConnection(sslConnection.getDecryptedEndPoint());
             sslConnection.getDecryptedEndPoint().setConnection(appConnection);
             return sslConnection;
@@ -303,6 +318,40 @@ public class SslConnectionTest
         }
     }
 
+    @Test
+    public void testDynamicRecordSizing() throws Exception
+    {
+        _dynamicRecordSizing = true;
+        startSSL();
+        try (Socket client = newClient())
+        {
+            client.setSoTimeout(TIMEOUT);
+            try (SocketChannel server = _connector.accept())
+            {
+                server.configureBlocking(false);
+                _manager.accept(server);
+
+                byte[] content = new byte[6000];
+                Arrays.fill(content, (byte)'X');
+                client.getOutputStream().write(content);
+                byte[] buffer = new byte[1024];
+                int len = content.length;
+                while (len > 0)
+                {
+                    len -= client.getInputStream().read(buffer);
+                }
+
+                SslConnection sslConnection = (SslConnection)_lastEndp.getConnection();
+                assertEquals(content.length, sslConnection.getWrappedBytes());
+                // The echoed content must have been split in small records.
+                assertThat(sslConnection.getLimitedRecords(), greaterThan(0L));
+                assertThat(sslConnection.getWrappedRecords(), greaterThan(1L));
+                // The small records must have been written together.
+                assertThat((long)_applicationFlushes.get(), lessThan(sslConnection.getLimitedRecords()));
+            }
+        }
+    }
+
     @Test
     public void testRenegotiate() throws Exception
     {
@@ -21,11 +21,18 @@ package org.eclipse.jetty.proxy;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 import javax.servlet.AsyncContext;
@@ -39,17 +46,27 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.ContinueProtocolHandler;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpRequest;
+import org.eclipse.jetty.client.HttpResponse;
 import org.eclipse.jetty.client.ProtocolHandlers;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.dynamic.HttpClientTransportDynamic;
+import org.eclipse.jetty.client.http.HttpClientConnectionFactory;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpHeaderValue;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.ClientConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.CountingCallback;
 import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.Loader;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
@@ -70,6 +87,10 @@ import org.slf4j.LoggerFactory;
  * <li>viaHost - the name to use in the Via header: Via: http/1.1 &lt;viaHost&gt;</li>
  * <li>whiteList - comma-separated list of allowed proxy hosts</li>
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
+ * <li>coalesceRequests - concurrent identical cacheable requests share
+ * a single exchange with the server, see {@link #isCoalescable(HttpServletRequest, Request)}</li>
+ * <li>coalesceHeaders - comma-separated list of request headers that, in addition to the
+ * method and the URI, identify identical requests; defaults to {@code Accept,Accept-Encoding,Accept-Language}</li>
  * </ul>
  * <p>In addition, see {@link #createHttpClient()} for init parameters
  * used to configure the {@link HttpClient} instance.</p>
@@ -84,6 +105,8 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractProxyServlet extends HttpServlet
 {
     protected static final String CLIENT_REQUEST_ATTRIBUTE = "org.eclipse.jetty.proxy.clientRequest";
+    private static final String HTTP2_CLIENT_CLASS = "org.eclipse.jetty.http2.client.HTTP2Client";
+    private static final String HTTP2_INFO_CLASS = "org.eclipse.jetty.http2.client.http.ClientConnectionFactoryOverHTTP2";
     protected static final Set<String> HOP_HEADERS = Set.of(
         "connection",
         "keep-alive",
@@ -102,6 +125,11 @@ public abstract class AbstractProxyServlet extends HttpServlet
     private boolean _preserveHost;
     private String _hostHeader;
     private String _viaHost;
+    private List<String> _upstreamProtocols;
+    private final ConcurrentMap<String, CoalescedExchange> _coalescedExchanges = new ConcurrentHashMap<>();
+    private boolean _coalesceRequests;
+    private Set<String> _coalesceHeaders;
+    private Object _http2Client;
     private HttpClient _client;
     private long _timeout;
 
@@ -120,6 +148,24 @@ public abstract class AbstractProxyServlet extends HttpServlet
         if (_viaHost == null)
             _viaHost = viaHost();
 
+        String upstreamProtocols = config.getInitParameter("upstreamProtocols");
+        if (upstreamProtocols != null)
+        {
+            _upstreamProtocols = new ArrayList<>();
+            for (String protocol : upstreamProtocols.split(","))
+            {
+                protocol = protocol.trim().toLowerCase(Locale.ENGLISH);
+                if (protocol.length() > 0)
+                    _upstreamProtocols.add(protocol);
+            }
+        }
+
+        _coalesceRequests = Boolean.parseBoolean(config.getInitParameter("coalesceRequests"));
+        String coalesceHeaders = config.getInitParameter("coalesceHeaders");
+        if (coalesceHeaders == null)
+            coalesceHeaders = "Accept,Accept-Encoding,Accept-Language";
+        _coalesceHeaders = parseList(coalesceHeaders);
+
         try
         {
             _client = createHttpClient();
@@ -260,6 +306,12 @@ public abstract class AbstractProxyServlet extends HttpServlet
      * <td>cores / 2</td>
      * <td>The number of NIO selectors used by {@link HttpClient}</td>
      * </tr>
+     * <tr>
+     * <td>upstreamProtocols</td>
+     * <td>the protocol of the client request</td>
+     * <td>Comma-separated list of the protocols used to proxy to the server, among
+     * {@code http/1.1}, {@code h2c} and {@code h2}, see {@link #newClientConnectionFactoryInfo(String, ClientConnector)}</td>
+     * </tr>
      * </tbody>
      * </table>
      *
@@ -362,7 +414,65 @@ public abstract class AbstractProxyServlet extends HttpServlet
 
     protected HttpClient newHttpClient(ClientConnector clientConnector)
     {
-        return new HttpClient(new HttpClientTransportDynamic(clientConnector));
+        if (_upstreamProtocols == null)
+            return new HttpClient(new HttpClientTransportDynamic(clientConnector));
+        ClientConnectionFactory.Info[] infos = new ClientConnectionFactory.Info[_upstreamProtocols.size()];
+        for (int i = 0; i < infos.length; ++i)
+        {
+            infos[i] = newClientConnectionFactoryInfo(_upstreamProtocols.get(i), clientConnector);
+        }
+        return new HttpClient(new HttpClientTransportDynamic(clientConnector, infos));
+    }
+
+    /**
+     * <p>Creates the {@link ClientConnectionFactory.Info} for the given upstream protocol.</p>
+     * <p>With HTTP/2, the requests proxied to the same server are multiplexed as streams
+     * over few connections, rather than requiring a connection each.
+     * For cleartext servers, the first of the {@code upstreamProtocols} is used
+     * (so {@code h2c} must be listed first to use HTTP/2 with prior knowledge),
+     * while for secure servers the protocol is negotiated via ALPN among the
+     * {@code upstreamProtocols}.</p>
+     * <p>The {@code h2c} and {@code h2} protocols require the HTTP/2 client transport
+     * classes to be available at runtime.</p>
+     *
+     * @param protocol the protocol, one of {@code http/1.1}, {@code h2c} or {@code h2}
+     * @param clientConnector the ClientConnector used by the HttpClient
+     * @return the ClientConnectionFactory.Info for the given protocol
+     */
+    protected ClientConnectionFactory.Info newClientConnectionFactoryInfo(String protocol, ClientConnector clientConnector)
+    {
+        switch (protocol)
+        {
+            case "http/1.1":
+                return HttpClientConnectionFactory.HTTP11;
+            case "h2c":
+                return newHTTP2ClientConnectionFactoryInfo("H2C", clientConnector);
+            case "h2":
+                return newHTTP2ClientConnectionFactoryInfo("H2", clientConnector);
+            default:
+                throw new IllegalArgumentException("Unsupported upstream protocol " + protocol);
+        }
+    }
+
+    private ClientConnectionFactory.Info newHTTP2ClientConnectionFactoryInfo(String type, ClientConnector clientConnector)
+    {
+        try
+        {
+            // The HTTP/2 client is an optional dependency, so it is loaded by name.
+            // The same HTTP2Client is shared by h2c and h2.
+            if (_http2Client == null)
+                _http2Client = Loader.loadClass(HTTP2_CLIENT_CLASS).getConstructor(ClientConnector.class).newInstance(clientConnector);
+            Class<?> infoClass = Loader.loadClass(HTTP2_INFO_CLASS + "$" + type);
+            return (ClientConnectionFactory.Info)infoClass.getConstructor(_http2Client.getClass()).newInstance(_http2Client);
+        }
+        catch (ClassNotFoundException x)
+        {
+            throw new IllegalStateException("Upstream protocol " + type.toLowerCase(Locale.ENGLISH) + " requires the HTTP/2 client transport", x);
+        }
+        catch (ReflectiveOperationException x)
+        {
+            throw new IllegalStateException(x);
+        }
     }
 
     protected ClientConnector newClientConnector()
@@ -465,6 +575,25 @@ public abstract class AbstractProxyServlet extends HttpServlet
         return HttpHeaderValue.CONTINUE.is(request.getHeader(HttpHeader.EXPECT.asString()));
     }
 
+    /**
+     * <p>Creates the request to the server.</p>
+     * <p>The version of the request to the server is the version of the client request,
+     * unless the {@code upstreamProtocols} init parameter is configured, in which case
+     * the protocol is chosen by the {@link HttpClient} transport.</p>
+     *
+     * @param clientRequest the client request
+     * @param rewrittenTarget the URI of the server
+     * @return the request to the server
+     */
+    protected Request newProxyRequest(HttpServletRequest clientRequest, String rewrittenTarget)
+    {
+        Request proxyRequest = getHttpClient().newRequest(rewrittenTarget)
+            .method(clientRequest.getMethod());
+        if (_upstreamProtocols == null)
+            proxyRequest.version(HttpVersion.fromString(clientRequest.getProtocol()));
+        return proxyRequest;
+    }
+
     protected void copyRequestHeaders(HttpServletRequest clientRequest, Request proxyRequest)
     {
         // First clear possibly existing headers, as we are going to copy those from the client request.
@@ -472,6 +601,7 @@ public abstract class AbstractProxyServlet extends HttpServlet
 
         Set<String> headersToRemove = findConnectionHeaders(clientRequest);
 
+        boolean teTrailers = false;
         for (Enumeration<String> headerNames = clientRequest.getHeaderNames(); headerNames.hasMoreElements(); )
         {
             String headerName = headerNames.nextElement();
@@ -480,6 +610,11 @@ public abstract class AbstractProxyServlet extends HttpServlet
             if (HttpHeader.HOST.is(headerName) && !_preserveHost)
                 continue;
 
+            // TE is hop-by-hop, but "TE: trailers" must reach the server,
+            // for example for gRPC, so that the server sends the trailers.
+            if (HttpHeader.TE.is(headerName))
+                teTrailers |= acceptsTrailers(clientRequest);
+
             // Remove hop-by-hop headers.
             if (HOP_HEADERS.contains(lowerHeaderName))
                 continue;
@@ -494,11 +629,70 @@ public abstract class AbstractProxyServlet extends HttpServlet
             }
         }
 
+        if (teTrailers)
+            proxyRequest.header(HttpHeader.TE, "trailers");
+
         // Force the Host header if configured
         if (_hostHeader != null)
             proxyRequest.header(HttpHeader.HOST, _hostHeader);
     }
 
+    /**
+     * <p>Forwards the trailers of the client request, if any, to the server.</p>
+     * <p>The trailers are only forwarded for client requests with chunked content,
+     * or that announce trailers with the {@code Trailer} header, since forwarding
+     * trailers makes the request to the server chunked.</p>
+     *
+     * @param clientRequest the client request
+     * @param proxyRequest the request to the server
+     */
+    protected void copyRequestTrailers(HttpServletRequest clientRequest, Request proxyRequest)
+    {
+        if (!(proxyRequest instanceof HttpRequest) || !mayHaveTrailers(clientRequest))
+            return;
+        // The supplier is invoked after the request content has been sent,
+        // which happens after the client request content has been read.
+        ((HttpRequest)proxyRequest).trailers(() ->
+        {
+            if (!clientRequest.isTrailerFieldsReady())
+                return null;
+            Map<String, String> trailerFields = clientRequest.getTrailerFields();
+            if (trailerFields.isEmpty())
+                return null;
+            HttpFields trailers = new HttpFields(trailerFields.size());
+            trailerFields.forEach(trailers::add);
+            return trailers;
+        });
+    }
+
+    private boolean mayHaveTrailers(HttpServletRequest clientRequest)
+    {
+        if (clientRequest.getHeader(HttpHeader.TRAILER.asString()) != null)
+            return true;
+        for (Enumeration<String> values = clientRequest.getHeaders(HttpHeader.TRANSFER_ENCODING.asString()); values.hasMoreElements(); )
+        {
+            for (String value : values.nextElement().split(","))
+            {
+                if (HttpHeaderValue.CHUNKED.is(value.trim()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acceptsTrailers(HttpServletRequest clientRequest)
+    {
+        for (Enumeration<String> values = clientRequest.getHeaders(HttpHeader.TE.asString()); values.hasMoreElements(); )
+        {
+            for (String value : values.nextElement().split(","))
+            {
+                if ("trailers".equalsIgnoreCase(value.trim()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
     protected Set<String> findConnectionHeaders(HttpServletRequest clientRequest)
     {
         // Any header listed by the Connection header must be removed:
@@ -574,7 +768,119 @@ public abstract class AbstractProxyServlet extends HttpServlet
                 proxyRequest.getHeaders().toString().trim());
         }
 
-        proxyRequest.send(newProxyResponseListener(clientRequest, proxyResponse));
+        Response.CompleteListener listener = newProxyResponseListener(clientRequest, proxyResponse);
+        if (_coalesceRequests && listener instanceof Response.Listener && isCoalescable(clientRequest, proxyRequest))
+            coalesce(clientRequest, proxyRequest, (Response.Listener)listener);
+        else
+            proxyRequest.send(listener);
+    }
+
+    private void coalesce(HttpServletRequest clientRequest, Request proxyRequest, Response.Listener listener)
+    {
+        String key = coalescingKey(clientRequest, proxyRequest);
+        while (true)
+        {
+            CoalescedExchange exchange = new CoalescedExchange(key, proxyRequest);
+            // Join before publishing, so that the request sent to the server is the first.
+            exchange.join(clientRequest, proxyRequest, listener);
+            CoalescedExchange existing = _coalescedExchanges.putIfAbsent(key, exchange);
+            if (existing == null)
+            {
+                proxyRequest.send(exchange);
+                return;
+            }
+            if (existing.join(clientRequest, proxyRequest, listener))
+            {
+                if (_log.isDebugEnabled())
+                    _log.debug("{} coalesced with {}", getRequestId(clientRequest), existing);
+                return;
+            }
+            // The existing exchange already received the response, start a new one.
+            _coalescedExchanges.remove(key, existing);
+        }
+    }
+
+    /**
+     * <p>Returns whether the given request may share the exchange with the server
+     * of concurrent identical requests, when the {@code coalesceRequests} init
+     * parameter is {@code true}.</p>
+     * <p>Only {@code GET} and {@code HEAD} requests without content, credentials,
+     * cookies, ranges, conditions or cache directives that require a fresh response
+     * are coalesced, since the response to a conditional request, such as a
+     * {@code 304}, cannot be forwarded to an unconditional request.</p>
+     * <p>Requests that arrive after the response from the server started are not
+     * coalesced, and will start a new exchange with the server.</p>
+     *
+     * @param clientRequest the client request
+     * @param proxyRequest the request to the server
+     * @return whether the request may be coalesced
+     * @see #isCoalescable(Response)
+     * @see #coalescingKey(HttpServletRequest, Request)
+     */
+    protected boolean isCoalescable(HttpServletRequest clientRequest, Request proxyRequest)
+    {
+        String method = clientRequest.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method))
+            return false;
+        if (hasContent(clientRequest))
+            return false;
+        HttpFields headers = proxyRequest.getHeaders();
+        if (headers.contains(HttpHeader.AUTHORIZATION) ||
+            headers.contains(HttpHeader.COOKIE) ||
+            headers.contains(HttpHeader.RANGE) ||
+            headers.contains(HttpHeader.IF_RANGE))
+            return false;
+        if (headers.contains(HttpHeader.IF_NONE_MATCH) ||
+            headers.contains(HttpHeader.IF_MODIFIED_SINCE) ||
+            headers.contains(HttpHeader.IF_MATCH) ||
+            headers.contains(HttpHeader.IF_UNMODIFIED_SINCE))
+            return false;
+        return !headers.contains(HttpHeader.CACHE_CONTROL, "no-cache") &&
+            !headers.contains(HttpHeader.CACHE_CONTROL, "no-store") &&
+            !headers.contains(HttpHeader.PRAGMA, "no-cache");
+    }
+
+    /**
+     * <p>Returns whether the given response from the server may be forwarded to
+     * all the coalesced requests.</p>
+     * <p>Responses that are private to the request that originated them, for example
+     * because they set cookies, are only forwarded to that request, while the other
+     * coalesced requests are sent to the server independently.</p>
+     *
+     * @param serverResponse the response from the server
+     * @return whether the response may be shared among coalesced requests
+     */
+    protected boolean isCoalescable(Response serverResponse)
+    {
+        HttpFields headers = serverResponse.getHeaders();
+        if (headers.contains(HttpHeader.SET_COOKIE) || headers.contains(HttpHeader.SET_COOKIE2))
+            return false;
+        if (headers.contains(HttpHeader.VARY, "*"))
+            return false;
+        return !headers.contains(HttpHeader.CACHE_CONTROL, "private") &&
+            !headers.contains(HttpHeader.CACHE_CONTROL, "no-store");
+    }
+
+    /**
+     * <p>Returns the key that identifies identical requests, made of the method,
+     * the URI and the values of the {@code coalesceHeaders} of the request to the server.</p>
+     *
+     * @param clientRequest the client request
+     * @param proxyRequest the request to the server
+     * @return the key that identifies identical requests
+     */
+    protected String coalescingKey(HttpServletRequest clientRequest, Request proxyRequest)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(proxyRequest.getMethod()).append(" ").append(proxyRequest.getURI());
+        HttpFields headers = proxyRequest.getHeaders();
+        for (String name : _coalesceHeaders)
+        {
+            builder.append("|").append(name.toLowerCase(Locale.ENGLISH)).append(":");
+            List<String> values = headers.getValuesList(name);
+            builder.append(String.join(",", values));
+        }
+        return builder.toString();
     }
 
     protected abstract Response.CompleteListener newProxyResponseListener(HttpServletRequest clientRequest, HttpServletResponse proxyResponse);
@@ -612,6 +918,8 @@ public abstract class AbstractProxyServlet extends HttpServlet
             proxyResponse.addHeader(headerName, newHeaderValue);
         }
 
+        copyResponseTrailers(clientRequest, proxyResponse, serverResponse);
+
         if (_log.isDebugEnabled())
         {
             StringBuilder builder = new StringBuilder(System.lineSeparator());
@@ -646,6 +954,43 @@ public abstract class AbstractProxyServlet extends HttpServlet
         return headerValue;
     }
 
+    /**
+     * <p>Forwards the trailers of the server response, if any, to the client.</p>
+     * <p>The trailers are only forwarded if the server announces them with the
+     * {@code Trailer} header, or if the client accepts them with {@code TE: trailers}
+     * and the server response has no {@code Content-Length}, so that it may carry
+     * trailers, since forwarding trailers makes the response to the client chunked.</p>
+     *
+     * @param clientRequest the client request
+     * @param proxyResponse the response to the client
+     * @param serverResponse the response from the server
+     */
+    protected void copyResponseTrailers(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+    {
+        if (!(serverResponse instanceof HttpResponse))
+            return;
+        HttpFields headers = serverResponse.getHeaders();
+        if (!headers.contains(HttpHeader.TRAILER) && (headers.contains(HttpHeader.CONTENT_LENGTH) || !acceptsTrailers(clientRequest)))
+            return;
+        HttpVersion version = HttpVersion.fromString(clientRequest.getProtocol());
+        if (version == null || version.getVersion() < HttpVersion.HTTP_1_1.getVersion())
+            return;
+        // The supplier is invoked when the response to the client completes,
+        // after the server response trailers have been received.
+        proxyResponse.setTrailerFields(() ->
+        {
+            HttpFields trailers = ((HttpResponse)serverResponse).getTrailers();
+            if (trailers == null)
+                return null;
+            Map<String, String> trailerFields = new HashMap<>();
+            for (HttpField field : trailers)
+            {
+                trailerFields.merge(field.getName(), field.getValue(), (v1, v2) -> v1 + "," + v2);
+            }
+            return trailerFields;
+        });
+    }
+
     protected void onProxyResponseSuccess(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
     {
         if (_log.isDebugEnabled())
@@ -715,6 +1060,261 @@ public abstract class AbstractProxyServlet extends HttpServlet
             _log.debug("{} handling 100 Continue", getRequestId(clientRequest));
     }
 
+    /**
+     * <p>A single exchange with the server, shared by concurrent identical requests.</p>
+     * <p>Requests join the exchange until the response from the server begins.
+     * Then, the response events are forwarded to the listener of each request,
+     * and the response content is only demanded to the server when all the
+     * listeners have consumed it, so that each client applies backpressure.
+     * A failure of a single client only completes the listener of that client,
+     * while the exchange is aborted only when all the clients failed.</p>
+     */
+    private class CoalescedExchange extends Response.Listener.Adapter
+    {
+        private final List<Participant> participants = new ArrayList<>();
+        private final String key;
+        private final Request proxyRequest;
+        private boolean begun;
+        private volatile Response serverResponse;
+        private volatile List<Participant> active;
+
+        private CoalescedExchange(String key, Request proxyRequest)
+        {
+            this.key = key;
+            this.proxyRequest = proxyRequest;
+        }
+
+        private boolean join(HttpServletRequest clientRequest, Request proxyRequest, Response.Listener listener)
+        {
+            synchronized (this)
+            {
+                if (begun)
+                    return false;
+                participants.add(new Participant(clientRequest, proxyRequest, listener));
+                return true;
+            }
+        }
+
+        private List<Participant> begin()
+        {
+            synchronized (this)
+            {
+                if (!begun)
+                {
+                    begun = true;
+                    _coalescedExchanges.remove(key, this);
+                }
+                return participants;
+            }
+        }
+
+        @Override
+        public void onBegin(Response serverResponse)
+        {
+            this.serverResponse = serverResponse;
+            begin();
+        }
+
+        @Override
+        public void onHeaders(Response serverResponse)
+        {
+            List<Participant> participants = begin();
+            if (isCoalescable(serverResponse))
+            {
+                active = participants;
+            }
+            else
+            {
+                // The response cannot be shared, send the other requests independently.
+                active = List.of(participants.get(0));
+                for (int i = 1; i < participants.size(); ++i)
+                {
+                    Participant participant = participants.get(i);
+                    participant.proxyRequest.send(participant.listener);
+                }
+            }
+            if (_log.isDebugEnabled())
+                _log.debug("{} response headers for {} coalesced requests", this, active.size());
+            for (Participant participant : active)
+            {
+                participant.listener.onBegin(participant.response);
+                participant.listener.onHeaders(participant.response);
+            }
+        }
+
+        @Override
+        public void onContent(Response serverResponse, ByteBuffer content, Callback callback)
+        {
+            Callback counting = new CountingCallback(callback, active.size());
+            for (Participant participant : active)
+            {
+                participant.onContent(content.slice(), counting);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (serverResponse == null)
+                serverResponse = result.getResponse();
+            List<Participant> participants = begin();
+            // If the response did not begin, all the requests see the failure.
+            List<Participant> completed = active == null ? participants : active;
+            for (Participant participant : completed)
+            {
+                participant.onComplete(result);
+            }
+        }
+
+        private boolean isActive()
+        {
+            List<Participant> active = this.active;
+            if (active == null)
+                return true;
+            for (Participant participant : active)
+            {
+                if (!participant.isFailed())
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), key);
+        }
+
+        private class Participant
+        {
+            private final HttpServletRequest clientRequest;
+            private final Request proxyRequest;
+            private final Response.Listener listener;
+            private final CoalescedResponse response;
+            private Throwable failure;
+
+            private Participant(HttpServletRequest clientRequest, Request proxyRequest, Response.Listener listener)
+            {
+                this.clientRequest = clientRequest;
+                this.proxyRequest = proxyRequest;
+                this.listener = listener;
+                this.response = new CoalescedResponse(this);
+            }
+
+            private boolean isFailed()
+            {
+                synchronized (this)
+                {
+                    return failure != null;
+                }
+            }
+
+            private void onContent(ByteBuffer content, Callback callback)
+            {
+                if (isFailed())
+                {
+                    callback.succeeded();
+                    return;
+                }
+                listener.onContent(response, content, Callback.from(callback::succeeded, x ->
+                {
+                    fail(x);
+                    if (isActive())
+                        callback.succeeded();
+                    else
+                        callback.failed(x);
+                }));
+            }
+
+            private void onComplete(Result result)
+            {
+                if (isFailed())
+                    return;
+                Result participantResult = new Result(result.getRequest(), result.getRequestFailure(), response, result.getResponseFailure());
+                if (participantResult.isSucceeded())
+                    listener.onSuccess(response);
+                else
+                    listener.onFailure(response, participantResult.getFailure());
+                listener.onComplete(participantResult);
+            }
+
+            private boolean fail(Throwable x)
+            {
+                synchronized (this)
+                {
+                    if (failure != null)
+                        return false;
+                    failure = x;
+                }
+                if (_log.isDebugEnabled())
+                    _log.debug("{} coalesced response failed", getRequestId(clientRequest), x);
+                listener.onFailure(response, x);
+                listener.onComplete(new Result(CoalescedExchange.this.proxyRequest, response, x));
+                return true;
+            }
+        }
+
+        /**
+         * <p>The view of the response from the server for a single coalesced request.</p>
+         * <p>Aborting it only fails the coalesced request, not the exchange with the server.</p>
+         */
+        private class CoalescedResponse extends HttpResponse
+        {
+            private final Participant participant;
+
+            private CoalescedResponse(Participant participant)
+            {
+                super(CoalescedExchange.this.proxyRequest, List.of(participant.listener));
+                this.participant = participant;
+            }
+
+            @Override
+            public HttpVersion getVersion()
+            {
+                return serverResponse().getVersion();
+            }
+
+            @Override
+            public int getStatus()
+            {
+                return serverResponse().getStatus();
+            }
+
+            @Override
+            public String getReason()
+            {
+                return serverResponse().getReason();
+            }
+
+            @Override
+            public HttpFields getHeaders()
+            {
+                return serverResponse().getHeaders();
+            }
+
+            @Override
+            public HttpFields getTrailers()
+            {
+                Response response = serverResponse();
+                return response instanceof HttpResponse ? ((HttpResponse)response).getTrailers() : null;
+            }
+
+            @Override
+            public boolean abort(Throwable cause)
+            {
+                boolean aborted = participant.fail(cause);
+                if (aborted && !isActive())
+                    serverResponse().abort(cause);
+                return aborted;
+            }
+
+            private Response serverResponse()
+            {
+                return serverResponse;
+            }
+        }
+    }
+
     /**
      * <p>Utility class that implement transparent proxy functionalities.</p>
      * <p>Configuration parameters:</p>
@@ -24,7 +24,6 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
@@ -48,7 +47,6 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.AsyncRequestContent;
 import org.eclipse.jetty.http.HttpHeader;
-import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.RuntimeIOException;
 import org.eclipse.jetty.util.BufferUtil;
@@ -93,12 +91,12 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
             return;
         }
 
-        final Request proxyRequest = getHttpClient().newRequest(rewrittenTarget)
-            .method(clientRequest.getMethod())
-            .version(HttpVersion.fromString(clientRequest.getProtocol()));
+        final Request proxyRequest = newProxyRequest(clientRequest, rewrittenTarget);
 
         copyRequestHeaders(clientRequest, proxyRequest);
 
+        copyRequestTrailers(clientRequest, proxyRequest);
+
         addProxyHeaders(clientRequest, proxyRequest);
 
         final AsyncContext asyncContext = clientRequest.startAsync();
@@ -749,6 +747,93 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException;
     }
 
+    /**
+     * <p>A {@link ContentTransformer} that pipes the content through a sequence of transformers,
+     * where the output of each transformer is the input of the next one.</p>
+     * <p>The content flows through the whole chain in the context of each call to
+     * {@link #transform(ByteBuffer, boolean, List)}, so that the chain does not buffer
+     * more than its transformers do, and the proxy applies backpressure by not reading
+     * more content until the output of the chain has been written.</p>
+     * <p>Transformers that implement {@link Destroyable} are destroyed when the chain is destroyed.</p>
+     */
+    public static class ChainContentTransformer implements ContentTransformer, Destroyable
+    {
+        private final List<ContentTransformer> transformers;
+        private final List<List<ByteBuffer>> outputs;
+
+        public ChainContentTransformer(ContentTransformer... transformers)
+        {
+            this(List.of(transformers));
+        }
+
+        public ChainContentTransformer(List<ContentTransformer> transformers)
+        {
+            if (transformers.isEmpty())
+                throw new IllegalArgumentException("No transformers");
+            this.transformers = List.copyOf(transformers);
+            this.outputs = new ArrayList<>(transformers.size() - 1);
+            for (int i = 1; i < transformers.size(); ++i)
+            {
+                outputs.add(new ArrayList<>(2));
+            }
+        }
+
+        @Override
+        public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+        {
+            transform(0, input, finished, output);
+        }
+
+        private void transform(int index, ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+        {
+            ContentTransformer transformer = transformers.get(index);
+            if (index == transformers.size() - 1)
+            {
+                transformer.transform(input, finished, output);
+                return;
+            }
+
+            List<ByteBuffer> buffers = outputs.get(index);
+            try
+            {
+                transformer.transform(input, finished, buffers);
+                int size = buffers.size();
+                if (size == 0)
+                {
+                    if (finished)
+                        transform(index + 1, BufferUtil.EMPTY_BUFFER, true, output);
+                }
+                else
+                {
+                    for (int i = 0; i < size; ++i)
+                    {
+                        transform(index + 1, buffers.get(i), finished && i == size - 1, output);
+                    }
+                }
+            }
+            finally
+            {
+                buffers.clear();
+            }
+        }
+
+        @Override
+        public void destroy()
+        {
+            for (ContentTransformer transformer : transformers)
+            {
+                if (transformer instanceof Destroyable)
+                    ((Destroyable)transformer).destroy();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), transformers);
+        }
+    }
+
     private static class IdentityContentTransformer implements ContentTransformer
     {
         @Override
@@ -795,51 +880,62 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
             if (logger.isDebugEnabled())
                 logger.debug("Ungzipping {} bytes, finished={}", input.remaining(), finished);
 
-            List<ByteBuffer> decodeds = Collections.emptyList();
+            boolean transformed = false;
             if (!input.hasRemaining())
             {
                 if (finished)
+                {
                     transformer.transform(input, true, buffers);
+                    transformed = true;
+                    gzip(buffers);
+                }
             }
             else
             {
-                decodeds = new ArrayList<>();
                 while (true)
                 {
                     ByteBuffer decoded = decoder.decode(input);
-                    decodeds.add(decoded);
-                    boolean decodeComplete = !input.hasRemaining() && !decoded.hasRemaining();
-                    boolean complete = finished && decodeComplete;
-                    if (logger.isDebugEnabled())
-                        logger.debug("Ungzipped {} bytes, complete={}", decoded.remaining(), complete);
-                    if (decoded.hasRemaining() || complete)
-                        transformer.transform(decoded, complete, buffers);
-                    if (decodeComplete)
-                        break;
+                    try
+                    {
+                        boolean decodeComplete = !input.hasRemaining() && !decoded.hasRemaining();
+                        boolean complete = finished && decodeComplete;
+                        if (logger.isDebugEnabled())
+                            logger.debug("Ungzipped {} bytes, complete={}", decoded.remaining(), complete);
+                        if (decoded.hasRemaining() || complete)
+                        {
+                            transformer.transform(decoded, complete, buffers);
+                            transformed |= !buffers.isEmpty();
+                            // Compress each decoded chunk as soon as it is transformed, so that
+                            // the decoded content is not accumulated, however large it inflates.
+                            gzip(buffers);
+                        }
+                        if (decodeComplete)
+                            break;
+                    }
+                    finally
+                    {
+                        decoder.release(decoded);
+                    }
                 }
             }
 
-            if (!buffers.isEmpty() || finished)
+            if (transformed || finished)
             {
-                ByteBuffer result = gzip(buffers, finished);
-                buffers.clear();
-                output.add(result);
+                if (finished)
+                    gzipOut.close();
+                byte[] gzipBytes = out.toByteArray();
+                out.reset();
+                output.add(ByteBuffer.wrap(gzipBytes));
             }
-
-            decodeds.forEach(decoder::release);
         }
 
-        private ByteBuffer gzip(List<ByteBuffer> buffers, boolean finished) throws IOException
+        private void gzip(List<ByteBuffer> buffers) throws IOException
         {
             for (ByteBuffer buffer : buffers)
             {
                 write(gzipOut, buffer);
             }
-            if (finished)
-                gzipOut.close();
-            byte[] gzipBytes = out.toByteArray();
-            out.reset();
-            return ByteBuffer.wrap(gzipBytes);
+            buffers.clear();
         }
     }
 
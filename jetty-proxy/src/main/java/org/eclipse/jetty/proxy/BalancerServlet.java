@@ -21,19 +21,56 @@ package org.eclipse.jetty.proxy;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Loader;
 import org.eclipse.jetty.util.URIUtil;
-
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A reverse proxy servlet that balances requests across a set of {@link BalancerMember}s.</p>
+ * <p>The following init parameters may be used to configure the servlet,
+ * in addition to those of {@link AbstractProxyServlet}:</p>
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the URI of the balancer member with the given name</li>
+ * <li>balancerMember.&lt;name&gt;.weight - the weight of the balancer member, used by the weighted strategy, defaults to 1</li>
+ * <li>stickySessions - whether requests with a session are proxied to the member that created the session</li>
+ * <li>proxyPassReverse - whether the location headers of the members are rewritten to the proxy location</li>
+ * <li>balancingStrategy - one of {@code roundRobin} (the default), {@code leastOutstanding},
+ * {@code powerOfTwoChoices}, {@code weighted}, or the class name of a {@link BalancingStrategy}</li>
+ * <li>ejectionErrorRate - the rate of errors, from 0 to 1, above which a member is ejected, defaults to 0 (disabled)</li>
+ * <li>ejectionTimeoutRate - the rate of timeouts, from 0 to 1, above which a member is ejected, defaults to 0 (disabled)</li>
+ * <li>ejectionMinRequests - the number of requests over which the rates are computed, defaults to 20</li>
+ * <li>ejectionTime - the time in ms a member is ejected for, multiplied by the number of consecutive ejections, defaults to 30000</li>
+ * <li>maxEjectionPercent - the max percentage of the members that can be ejected at the same time, defaults to 50</li>
+ * </ul>
+ * <p>Ejection is passive: it is based on the outcome of the proxied requests, where responses
+ * with a 5xx status and failures that are not caused by the client count as errors.
+ * An ejected member receives no requests until its ejection time expires.</p>
+ * <p>The balancer members are added as beans to the {@link #getHttpClient() HttpClient},
+ * so that their statistics are exposed via JMX.</p>
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
@@ -61,11 +98,17 @@ public class BalancerServlet extends ProxyServlet
 
     private static final String JSESSIONID = "jsessionid";
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
+    private static final String ATTEMPT_ATTRIBUTE = BalancerServlet.class.getName() + ".attempt";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
-    private final AtomicLong counter = new AtomicLong();
+    private BalancingStrategy _balancingStrategy;
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private double _ejectionErrorRate;
+    private double _ejectionTimeoutRate;
+    private int _ejectionMinRequests;
+    private long _ejectionTime;
+    private int _maxEjectionPercent;
 
     @Override
     public void init() throws ServletException
@@ -75,6 +118,8 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initBalancingStrategy();
+        initEjection();
     }
 
     private void validateConfig() throws ServletException
@@ -102,9 +147,17 @@ public class BalancerServlet extends ProxyServlet
             String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            BalancerMember member = new BalancerMember(balancerName, proxyTo);
+            String weight = getServletConfig().getInitParameter(BALANCER_MEMBER_PREFIX + balancerName + ".weight");
+            if (weight != null)
+                member.setWeight(Integer.parseInt(weight));
+            members.add(member);
         }
         _balancerMembers.addAll(members);
+        for (BalancerMember member : _balancerMembers)
+        {
+            getHttpClient().addBean(member, false);
+        }
     }
 
     private void initProxyPassReverse()
@@ -112,6 +165,64 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initBalancingStrategy() throws ServletException
+    {
+        String name = getServletConfig().getInitParameter("balancingStrategy");
+        _balancingStrategy = newBalancingStrategy(name == null ? "roundRobin" : name.trim());
+        if (_log.isDebugEnabled())
+            _log.debug("Balancing with {}", _balancingStrategy);
+    }
+
+    private void initEjection()
+    {
+        _ejectionErrorRate = Double.parseDouble(getInitParameter("ejectionErrorRate", "0"));
+        _ejectionTimeoutRate = Double.parseDouble(getInitParameter("ejectionTimeoutRate", "0"));
+        _ejectionMinRequests = Integer.parseInt(getInitParameter("ejectionMinRequests", "20"));
+        _ejectionTime = Long.parseLong(getInitParameter("ejectionTime", "30000"));
+        _maxEjectionPercent = Integer.parseInt(getInitParameter("maxEjectionPercent", "50"));
+    }
+
+    private String getInitParameter(String name, String defaultValue)
+    {
+        String value = getServletConfig().getInitParameter(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * <p>Creates the {@link BalancingStrategy} with the given name.</p>
+     *
+     * @param name the name of a built-in strategy, or the class name of a strategy
+     * @return a new balancing strategy
+     * @throws ServletException if the strategy cannot be created
+     */
+    protected BalancingStrategy newBalancingStrategy(String name) throws ServletException
+    {
+        switch (name)
+        {
+            case "roundRobin":
+                return new RoundRobinStrategy();
+            case "leastOutstanding":
+                return new LeastOutstandingStrategy();
+            case "powerOfTwoChoices":
+                return new PowerOfTwoChoicesStrategy();
+            case "weighted":
+                return new WeightedStrategy();
+            default:
+            {
+                try
+                {
+                    return (BalancingStrategy)Loader.loadClass(name).getConstructor().newInstance();
+                }
+                catch (Exception x)
+                {
+                    UnavailableException failure = new UnavailableException("Invalid balancingStrategy " + name);
+                    failure.initCause(x);
+                    throw failure;
+                }
+            }
+        }
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -135,6 +246,7 @@ public class BalancerServlet extends ProxyServlet
         BalancerMember balancerMember = selectBalancerMember(request);
         if (_log.isDebugEnabled())
             _log.debug("Selected {}", balancerMember);
+        request.setAttribute(ATTEMPT_ATTRIBUTE, new Attempt(balancerMember));
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -144,18 +256,114 @@ public class BalancerServlet extends ProxyServlet
 
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
+        long now = System.nanoTime();
         if (_stickySessions)
         {
             String name = getBalancerMemberNameFromSessionId(request);
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && !balancerMember.isEjected(now))
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+        return _balancingStrategy.select(getAvailableBalancerMembers(now), request);
+    }
+
+    private List<BalancerMember> getAvailableBalancerMembers(long now)
+    {
+        // Avoid allocating in the common case where no member is ejected.
+        List<BalancerMember> available = null;
+        for (int i = 0; i < _balancerMembers.size(); ++i)
+        {
+            BalancerMember balancerMember = _balancerMembers.get(i);
+            if (balancerMember.isEjected(now))
+            {
+                if (available == null)
+                    available = new ArrayList<>(_balancerMembers.subList(0, i));
+            }
+            else if (available != null)
+            {
+                available.add(balancerMember);
+            }
+        }
+        if (available == null || available.isEmpty())
+            return _balancerMembers;
+        return available;
+    }
+
+    @Override
+    protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        // The request is outstanding only once sent, as creating it may throw.
+        Attempt attempt = (Attempt)clientRequest.getAttribute(ATTEMPT_ATTRIBUTE);
+        if (attempt != null)
+            attempt.begin();
+        super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+    }
+
+    @Override
+    protected void onClientRequestFailure(HttpServletRequest clientRequest, Request proxyRequest, HttpServletResponse proxyResponse, Throwable failure)
+    {
+        // The failure is not caused by the balancer member.
+        Attempt attempt = (Attempt)clientRequest.getAttribute(ATTEMPT_ATTRIBUTE);
+        if (attempt != null)
+            attempt.clientFailure = true;
+        super.onClientRequestFailure(clientRequest, proxyRequest, proxyResponse, failure);
+    }
+
+    @Override
+    protected void onProxyResponseSuccess(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+    {
+        onBalancerMemberComplete(clientRequest, serverResponse, null);
+        super.onProxyResponseSuccess(clientRequest, proxyResponse, serverResponse);
+    }
+
+    @Override
+    protected void onProxyResponseFailure(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse, Throwable failure)
+    {
+        onBalancerMemberComplete(clientRequest, serverResponse, failure);
+        super.onProxyResponseFailure(clientRequest, proxyResponse, serverResponse, failure);
+    }
+
+    private void onBalancerMemberComplete(HttpServletRequest clientRequest, Response serverResponse, Throwable failure)
+    {
+        Attempt attempt = (Attempt)clientRequest.getAttribute(ATTEMPT_ATTRIBUTE);
+        if (attempt == null || !attempt.begun)
+            return;
+        clientRequest.removeAttribute(ATTEMPT_ATTRIBUTE);
+
+        long now = System.nanoTime();
+        boolean serverError = serverResponse != null && HttpStatus.isServerError(serverResponse.getStatus());
+        boolean timeout = !attempt.clientFailure && failure instanceof TimeoutException;
+        boolean error = serverError || (!attempt.clientFailure && failure != null && !timeout);
+        BalancerMember balancerMember = attempt.balancerMember;
+        boolean outlier = balancerMember.onComplete(now - attempt.beginNanos, error, timeout,
+            _ejectionMinRequests, _ejectionErrorRate, _ejectionTimeoutRate);
+        if (outlier)
+            eject(balancerMember, now);
+    }
+
+    private void eject(BalancerMember balancerMember, long now)
+    {
+        synchronized (_balancerMembers)
+        {
+            int ejected = 0;
+            for (BalancerMember member : _balancerMembers)
+            {
+                if (member.isEjected(now))
+                    ++ejected;
+            }
+            if ((ejected + 1) * 100 > _maxEjectionPercent * _balancerMembers.size())
+            {
+                if (_log.isDebugEnabled())
+                    _log.debug("Not ejecting {}, {}/{} members already ejected", balancerMember, ejected, _balancerMembers.size());
+                return;
+            }
+            balancerMember.eject(now, TimeUnit.MILLISECONDS.toNanos(_ejectionTime));
+        }
+        if (_log.isDebugEnabled())
+            _log.debug("Ejected {}", balancerMember);
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -259,11 +467,174 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+    /**
+     * <p>The strategy that selects the {@link BalancerMember} a request is proxied to.</p>
+     * <p>Implementations must be thread-safe and, when configured by class name,
+     * must have a public no-argument constructor.</p>
+     */
+    public interface BalancingStrategy
+    {
+        /**
+         * @param balancerMembers the non-empty list of the members that are not ejected
+         * @param request the client request
+         * @return the member to proxy the request to
+         */
+        BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request);
+    }
+
+    /**
+     * <p>Selects the members in turn.</p>
+     */
+    public static class RoundRobinStrategy implements BalancingStrategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int index = (int)(counter.getAndIncrement() % balancerMembers.size());
+            return balancerMembers.get(index);
+        }
+    }
+
+    /**
+     * <p>Selects the member with the least outstanding requests,
+     * breaking ties in turn.</p>
+     */
+    public static class LeastOutstandingStrategy implements BalancingStrategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int size = balancerMembers.size();
+            int start = (int)(counter.getAndIncrement() % size);
+            BalancerMember selected = null;
+            for (int i = 0; i < size; ++i)
+            {
+                BalancerMember balancerMember = balancerMembers.get((start + i) % size);
+                if (selected == null || balancerMember.getOutstandingRequests() < selected.getOutstandingRequests())
+                    selected = balancerMember;
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * <p>Selects two random members and picks the one with the lowest cost,
+     * that is the EWMA latency multiplied by the outstanding requests.</p>
+     * <p>Sampling only two members avoids the herding of all the requests
+     * towards the single member that looks best at a given time.</p>
+     */
+    public static class PowerOfTwoChoicesStrategy implements BalancingStrategy
+    {
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            int size = balancerMembers.size();
+            if (size == 1)
+                return balancerMembers.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int index1 = random.nextInt(size);
+            int index2 = random.nextInt(size - 1);
+            if (index2 >= index1)
+                ++index2;
+            BalancerMember member1 = balancerMembers.get(index1);
+            BalancerMember member2 = balancerMembers.get(index2);
+            double latency1 = member1.getLatency();
+            double latency2 = member2.getLatency();
+            // Members without latency samples yet take the latency of the other member,
+            // rather than a zero cost that would send them all the requests until their
+            // first response, so they are probed in proportion to their outstanding requests.
+            if (latency1 == 0)
+                latency1 = latency2;
+            if (latency2 == 0)
+                latency2 = latency1;
+            return cost(member1, latency1) <= cost(member2, latency2) ? member1 : member2;
+        }
+
+        private double cost(BalancerMember balancerMember, double latency)
+        {
+            return (latency == 0 ? 1 : latency) * (balancerMember.getOutstandingRequests() + 1);
+        }
+    }
+
+    /**
+     * <p>Selects the members in proportion to their weight, with the
+     * smooth weighted round-robin algorithm that interleaves the members
+     * rather than sending bursts of requests to the heaviest one.</p>
+     */
+    public static class WeightedStrategy implements BalancingStrategy
+    {
+        private final Map<BalancerMember, Integer> currentWeights = new HashMap<>();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers, HttpServletRequest request)
+        {
+            synchronized (currentWeights)
+            {
+                BalancerMember selected = null;
+                int selectedWeight = 0;
+                int totalWeight = 0;
+                for (BalancerMember balancerMember : balancerMembers)
+                {
+                    int weight = balancerMember.getWeight();
+                    int currentWeight = currentWeights.getOrDefault(balancerMember, 0) + weight;
+                    currentWeights.put(balancerMember, currentWeight);
+                    totalWeight += weight;
+                    if (selected == null || currentWeight > selectedWeight)
+                    {
+                        selected = balancerMember;
+                        selectedWeight = currentWeight;
+                    }
+                }
+                currentWeights.put(selected, selectedWeight - totalWeight);
+                return selected;
+            }
+        }
+    }
+
+    private static class Attempt
     {
+        private final BalancerMember balancerMember;
+        private volatile long beginNanos;
+        private volatile boolean begun;
+        private volatile boolean clientFailure;
+
+        private Attempt(BalancerMember balancerMember)
+        {
+            this.balancerMember = balancerMember;
+        }
+
+        private void begin()
+        {
+            beginNanos = System.nanoTime();
+            begun = true;
+            balancerMember.onBegin();
+        }
+    }
+
+    @ManagedObject("A balancer member")
+    public static class BalancerMember
+    {
+        private static final double EWMA_WEIGHT = 0.2;
+
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private final AtomicInteger _outstanding = new AtomicInteger();
+        private final LongAdder _requests = new LongAdder();
+        private final LongAdder _errors = new LongAdder();
+        private final LongAdder _timeouts = new LongAdder();
+        private final LongAdder _ejections = new LongAdder();
+        private int _weight = 1;
+        private volatile double _latency;
+        private volatile long _ejectedUntil;
+        private int _windowRequests;
+        private int _windowErrors;
+        private int _windowTimeouts;
+        private int _consecutiveEjections;
 
         public BalancerMember(String name, String proxyTo)
         {
@@ -272,11 +643,13 @@ public class BalancerServlet extends ProxyServlet
             _backendURI = URI.create(_proxyTo).normalize();
         }
 
+        @ManagedAttribute(value = "The name of the member", readonly = true)
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute(value = "The URI requests are proxied to", readonly = true)
         public String getProxyTo()
         {
             return _proxyTo;
@@ -287,6 +660,131 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute(value = "The weight of the member", readonly = true)
+        public int getWeight()
+        {
+            return _weight;
+        }
+
+        private void setWeight(int weight)
+        {
+            if (weight <= 0)
+                throw new IllegalArgumentException("Invalid weight " + weight + " for " + this);
+            _weight = weight;
+        }
+
+        @ManagedAttribute(value = "The number of outstanding requests", readonly = true)
+        public int getOutstandingRequests()
+        {
+            return _outstanding.get();
+        }
+
+        @ManagedAttribute(value = "The exponentially weighted moving average of the latency in ms", readonly = true)
+        public double getLatency()
+        {
+            return _latency / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @ManagedAttribute(value = "The number of requests", readonly = true)
+        public long getRequests()
+        {
+            return _requests.sum();
+        }
+
+        @ManagedAttribute(value = "The number of failed requests and of 5xx responses", readonly = true)
+        public long getErrors()
+        {
+            return _errors.sum();
+        }
+
+        @ManagedAttribute(value = "The number of requests that timed out", readonly = true)
+        public long getTimeouts()
+        {
+            return _timeouts.sum();
+        }
+
+        @ManagedAttribute(value = "The number of times the member was ejected", readonly = true)
+        public long getEjections()
+        {
+            return _ejections.sum();
+        }
+
+        @ManagedAttribute(value = "Whether the member is ejected", readonly = true)
+        public boolean isEjected()
+        {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now)
+        {
+            long ejectedUntil = _ejectedUntil;
+            return ejectedUntil != 0 && ejectedUntil - now > 0;
+        }
+
+        @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+        public void resetStatistics()
+        {
+            _requests.reset();
+            _errors.reset();
+            _timeouts.reset();
+            _ejections.reset();
+        }
+
+        void onBegin()
+        {
+            _outstanding.incrementAndGet();
+            _requests.increment();
+        }
+
+        /**
+         * @return whether the member is an outlier that should be ejected
+         */
+        boolean onComplete(long latency, boolean error, boolean timeout, int minRequests, double maxErrorRate, double maxTimeoutRate)
+        {
+            _outstanding.decrementAndGet();
+            if (error)
+                _errors.increment();
+            if (timeout)
+                _timeouts.increment();
+
+            synchronized (this)
+            {
+                double average = _latency;
+                _latency = average == 0 ? latency : average + EWMA_WEIGHT * (latency - average);
+
+                if (maxErrorRate <= 0 && maxTimeoutRate <= 0)
+                    return false;
+                ++_windowRequests;
+                if (error)
+                    ++_windowErrors;
+                if (timeout)
+                    ++_windowTimeouts;
+                if (_windowRequests < minRequests)
+                    return false;
+
+                boolean outlier = (maxErrorRate > 0 && _windowErrors > maxErrorRate * _windowRequests) ||
+                    (maxTimeoutRate > 0 && _windowTimeouts > maxTimeoutRate * _windowRequests);
+                _windowRequests = 0;
+                _windowErrors = 0;
+                _windowTimeouts = 0;
+                if (!outlier)
+                    _consecutiveEjections = 0;
+                return outlier;
+            }
+        }
+
+        private void eject(long now, long ejectionTime)
+        {
+            synchronized (this)
+            {
+                // Members that keep failing are ejected for longer.
+                _consecutiveEjections = Math.min(_consecutiveEjections + 1, 10);
+                long ejectedUntil = now + ejectionTime * _consecutiveEjections;
+                _ejectedUntil = ejectedUntil == 0 ? 1 : ejectedUntil;
+            }
+            _ejections.increment();
+        }
+
         @Override
         public String toString()
         {
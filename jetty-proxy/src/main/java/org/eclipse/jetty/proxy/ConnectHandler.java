@@ -77,6 +77,7 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private int maxBufferSize = 65536;
 
     public ConnectHandler()
     {
@@ -162,6 +163,27 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the max size of the buffers used to relay the tunneled bytes
+     */
+    public int getMaxBufferSize()
+    {
+        return maxBufferSize;
+    }
+
+    /**
+     * <p>Sets the max size of the buffers used to relay the tunneled bytes.</p>
+     * <p>The relay buffers start at {@link #getBufferSize()} and grow up to
+     * this size for tunnels that carry high throughput.
+     * A value not greater than {@link #getBufferSize()} disables the growth.</p>
+     *
+     * @param maxBufferSize the max size of the relay buffers
+     */
+    public void setMaxBufferSize(int maxBufferSize)
+    {
+        this.maxBufferSize = maxBufferSize;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -344,6 +366,7 @@ public class ConnectHandler extends HandlerWrapper
         EndPoint downstreamEndPoint = connectContext.getEndPoint();
         DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context);
         downstreamConnection.setInputBufferSize(getBufferSize());
+        downstreamConnection.setMaxInputBufferSize(getMaxBufferSize());
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -519,6 +542,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
             connection.setInputBufferSize(getBufferSize());
+            connection.setMaxInputBufferSize(getMaxBufferSize());
             return connection;
         }
 
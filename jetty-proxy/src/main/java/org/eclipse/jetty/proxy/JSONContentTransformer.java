@@ -0,0 +1,202 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * <p>A transformer for {@link AsyncMiddleManServlet} that rewrites the strings
+ * of UTF-8 JSON content, tokenizing the content as it streams through rather
+ * than parsing the whole document.</p>
+ * <p>Subclasses override {@link #rewriteName(String)} to rename object members,
+ * and/or {@link #rewriteValue(String, String)} to replace string values.
+ * Strings are passed in their JSON escaped form, without the enclosing quotes,
+ * and the returned strings must be in JSON escaped form as well.
+ * Numbers, literals, whitespace and the document structure are copied unmodified.</p>
+ * <p>The memory retained by the transformer is bounded by the
+ * {@link #getMaxStringLength() max string length}, regardless of the content length;
+ * strings longer than that fail the transformation.</p>
+ */
+public abstract class JSONContentTransformer implements AsyncMiddleManServlet.ContentTransformer
+{
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream string = new ByteArrayOutputStream();
+    private final StringBuilder containers = new StringBuilder();
+    private int maxStringLength = 64 * 1024;
+    private boolean inString;
+    private boolean escape;
+    private boolean expectName;
+    private boolean afterColon;
+    private String name;
+
+    /**
+     * @return the max length in bytes of the JSON strings
+     */
+    public int getMaxStringLength()
+    {
+        return maxStringLength;
+    }
+
+    /**
+     * @param maxStringLength the max length in bytes of the JSON strings
+     */
+    public void setMaxStringLength(int maxStringLength)
+    {
+        this.maxStringLength = maxStringLength;
+    }
+
+    @Override
+    public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+    {
+        while (input.hasRemaining())
+        {
+            byte b = input.get();
+            if (inString)
+                onStringByte(b);
+            else
+                onByte(b);
+        }
+
+        if (finished && inString)
+        {
+            // Truncated content, copy the partial string as is.
+            out.write('"');
+            string.writeTo(out);
+            string.reset();
+            inString = false;
+        }
+
+        if (out.size() > 0)
+        {
+            output.add(ByteBuffer.wrap(out.toByteArray()));
+            out.reset();
+        }
+    }
+
+    private void onStringByte(byte b) throws IOException
+    {
+        // The bytes of multi-byte UTF-8 characters never
+        // match the ASCII quote and backslash characters.
+        if (escape)
+        {
+            escape = false;
+        }
+        else if (b == '\\')
+        {
+            escape = true;
+        }
+        else if (b == '"')
+        {
+            inString = false;
+            onString(string.toString(StandardCharsets.UTF_8));
+            string.reset();
+            return;
+        }
+
+        if (string.size() == maxStringLength)
+            throw new IOException("JSON string exceeds max length " + maxStringLength);
+        string.write(b);
+    }
+
+    private void onString(String value) throws IOException
+    {
+        String result;
+        if (expectName)
+        {
+            name = value;
+            result = rewriteName(value);
+        }
+        else
+        {
+            result = rewriteValue(afterColon ? name : null, value);
+            afterColon = false;
+        }
+        out.write('"');
+        out.write(result.getBytes(StandardCharsets.UTF_8));
+        out.write('"');
+    }
+
+    private void onByte(byte b)
+    {
+        switch (b)
+        {
+            case '"':
+                inString = true;
+                return;
+            case '{':
+                containers.append('{');
+                expectName = true;
+                afterColon = false;
+                break;
+            case '[':
+                containers.append('[');
+                expectName = false;
+                afterColon = false;
+                break;
+            case '}':
+            case ']':
+                if (containers.length() > 0)
+                    containers.setLength(containers.length() - 1);
+                expectName = false;
+                afterColon = false;
+                break;
+            case ':':
+                expectName = false;
+                afterColon = true;
+                break;
+            case ',':
+                expectName = containers.length() > 0 && containers.charAt(containers.length() - 1) == '{';
+                afterColon = false;
+                break;
+            default:
+                break;
+        }
+        out.write(b);
+    }
+
+    /**
+     * <p>Rewrites the name of an object member.</p>
+     * <p>The default implementation returns the given name.</p>
+     *
+     * @param name the member name, in JSON escaped form
+     * @return the rewritten member name, in JSON escaped form
+     */
+    protected String rewriteName(String name)
+    {
+        return name;
+    }
+
+    /**
+     * <p>Rewrites a string value.</p>
+     * <p>The default implementation returns the given value.</p>
+     *
+     * @param name the original name of the object member whose value is the given value,
+     * or null if the value is an array element or the top-level value
+     * @param value the string value, in JSON escaped form
+     * @return the rewritten string value, in JSON escaped form
+     */
+    protected String rewriteValue(String name, String value)
+    {
+        return value;
+    }
+}
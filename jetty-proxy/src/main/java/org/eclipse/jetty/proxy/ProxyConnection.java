@@ -22,22 +22,40 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.slf4j.Logger;
 
+/**
+ * <p>A connection that relays the bytes read from its {@link EndPoint}
+ * to the {@link EndPoint} of its peer {@link #getConnection() connection}.</p>
+ * <p>The buffer used to relay the bytes is retained while the bytes flow,
+ * and released when there are no more bytes to read, so that idle tunnels
+ * do not hold buffers.
+ * The buffer size adapts to the observed throughput: it starts at the
+ * {@link #getInputBufferSize() input buffer size}, doubles up to the
+ * {@link #getMaxInputBufferSize() max input buffer size} when reads fill
+ * the buffer, and halves back when reads consistently use a small part of it.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
+    private static final int SHRINK_READS = 16;
+
     private final IteratingCallback pipe = new ProxyIteratingCallback();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private ProxyConnection connection;
+    private int maxInputBufferSize;
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -66,6 +84,63 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return the max size of the buffer used to relay the bytes read from this connection
+     */
+    public int getMaxInputBufferSize()
+    {
+        return Math.max(maxInputBufferSize, getInputBufferSize());
+    }
+
+    /**
+     * @param maxInputBufferSize the max size of the buffer used to relay the bytes read from this connection;
+     * if not greater than the {@link #getInputBufferSize() input buffer size} the buffer size does not adapt
+     */
+    public void setMaxInputBufferSize(int maxInputBufferSize)
+    {
+        this.maxInputBufferSize = maxInputBufferSize;
+    }
+
+    /**
+     * @return the number of bytes read from this connection
+     */
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn.longValue();
+    }
+
+    /**
+     * @return the number of bytes relayed by the peer connection and written to this connection
+     */
+    @Override
+    public long getBytesOut()
+    {
+        return bytesOut.longValue();
+    }
+
+    /**
+     * @return the average number of bytes per second read from this connection since it was created
+     */
+    public long getBytesInRate()
+    {
+        return rate(getBytesIn());
+    }
+
+    /**
+     * @return the average number of bytes per second written to this connection since it was created
+     */
+    public long getBytesOutRate()
+    {
+        return rate(getBytesOut());
+    }
+
+    private long rate(long bytes)
+    {
+        long elapsed = Math.max(1, System.currentTimeMillis() - getCreatedTimeStamp());
+        return bytes * 1000 / elapsed;
+    }
+
     @Override
     public void onFillable()
     {
@@ -81,25 +156,41 @@ public abstract class ProxyConnection extends AbstractConnection
         getEndPoint().close(failure);
     }
 
+    @Override
+    public void onClose(Throwable cause)
+    {
+        super.onClose(cause);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} closed, in={} bytes ({} B/s), out={} bytes ({} B/s)",
+                this, getBytesIn(), getBytesInRate(), getBytesOut(), getBytesOutRate());
+    }
+
     @Override
     public String toConnectionString()
     {
-        return String.format("%s@%x[l:%d<=>r:%d]",
+        return String.format("%s@%x[l:%d<=>r:%d,in=%d,out=%d]",
             getClass().getSimpleName(),
             hashCode(),
             getEndPoint().getLocalAddress().getPort(),
-            getEndPoint().getRemoteAddress().getPort());
+            getEndPoint().getRemoteAddress().getPort(),
+            getBytesIn(),
+            getBytesOut());
     }
 
     private class ProxyIteratingCallback extends IteratingCallback
     {
         private ByteBuffer buffer;
+        private int bufferSize;
+        private int smallReads;
         private int filled;
 
         @Override
         protected Action process()
         {
-            buffer = bufferPool.acquire(getInputBufferSize(), true);
+            if (buffer == null)
+                acquire();
+            else
+                BufferUtil.clear(buffer);
             try
             {
                 int filled = this.filled = read(getEndPoint(), buffer);
@@ -107,18 +198,19 @@ public abstract class ProxyConnection extends AbstractConnection
                     LOG.debug("{} filled {} bytes", ProxyConnection.this, filled);
                 if (filled > 0)
                 {
+                    bytesIn.add(filled);
                     write(connection.getEndPoint(), buffer, this);
                     return Action.SCHEDULED;
                 }
                 else if (filled == 0)
                 {
-                    bufferPool.release(buffer);
+                    release();
                     fillInterested();
                     return Action.IDLE;
                 }
                 else
                 {
-                    bufferPool.release(buffer);
+                    release();
                     connection.getEndPoint().shutdownOutput();
                     return Action.SUCCEEDED;
                 }
@@ -127,7 +219,7 @@ public abstract class ProxyConnection extends AbstractConnection
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug(ProxyConnection.this + " could not fill", x);
-                bufferPool.release(buffer);
+                release();
                 disconnect(x);
                 return Action.SUCCEEDED;
             }
@@ -138,7 +230,8 @@ public abstract class ProxyConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} wrote {} bytes", ProxyConnection.this, filled);
-            bufferPool.release(buffer);
+            connection.bytesOut.add(filled);
+            adapt();
             super.succeeded();
         }
 
@@ -152,10 +245,56 @@ public abstract class ProxyConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug(ProxyConnection.this + " failed to write " + filled + " bytes", x);
-            bufferPool.release(buffer);
+            release();
             disconnect(x);
         }
 
+        private void acquire()
+        {
+            if (bufferSize == 0)
+                bufferSize = getInputBufferSize();
+            buffer = bufferPool.acquire(bufferSize, true);
+        }
+
+        private void release()
+        {
+            if (buffer != null)
+                bufferPool.release(buffer);
+            buffer = null;
+        }
+
+        private void adapt()
+        {
+            // A read that fills the buffer means that more bytes are likely
+            // available, so a larger buffer relays them with fewer reads and writes.
+            int newBufferSize = bufferSize;
+            if (filled >= bufferSize)
+            {
+                smallReads = 0;
+                newBufferSize = Math.min(bufferSize * 2, getMaxInputBufferSize());
+            }
+            else if (filled < bufferSize / 4 && bufferSize > getInputBufferSize())
+            {
+                if (++smallReads >= SHRINK_READS)
+                {
+                    smallReads = 0;
+                    newBufferSize = Math.max(bufferSize / 2, getInputBufferSize());
+                }
+            }
+            else
+            {
+                smallReads = 0;
+            }
+
+            if (newBufferSize != bufferSize)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} resizing buffer {} -> {}", ProxyConnection.this, bufferSize, newBufferSize);
+                bufferSize = newBufferSize;
+                release();
+            }
+        }
+
         private void disconnect(Throwable x)
         {
             ProxyConnection.this.close(x);
@@ -34,7 +34,6 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.AsyncRequestContent;
 import org.eclipse.jetty.client.util.InputStreamRequestContent;
-import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.util.Callback;
 
 /**
@@ -71,12 +70,12 @@ public class ProxyServlet extends AbstractProxyServlet
             return;
         }
 
-        Request proxyRequest = getHttpClient().newRequest(rewrittenTarget)
-            .method(request.getMethod())
-            .version(HttpVersion.fromString(request.getProtocol()));
+        Request proxyRequest = newProxyRequest(request, rewrittenTarget);
 
         copyRequestHeaders(request, proxyRequest);
 
+        copyRequestTrailers(request, proxyRequest);
+
         addProxyHeaders(request, proxyRequest);
 
         AsyncContext asyncContext = request.startAsync();
@@ -0,0 +1,142 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>A transformer for {@link AsyncMiddleManServlet} that replaces the matches
+ * of a regular expression in textual content, as the content streams through.</p>
+ * <p>Matches may span the boundaries of the content chunks: the transformer retains
+ * the last {@link #getMaxMatchLength() max match length} characters of each chunk,
+ * so that a match that starts in one chunk and ends in the next one is found.
+ * For this reason the regular expression must not match more than
+ * {@link #getMaxMatchLength() max match length} characters, otherwise matches
+ * that span chunk boundaries may be missed or truncated.
+ * Boundary matchers such as {@code ^} and look-behinds only see the retained characters.</p>
+ * <p>The memory retained by the transformer is bounded by the max match length,
+ * regardless of the content length.</p>
+ * <p>The replacement string may refer to the groups of the match, as in
+ * {@link Matcher#appendReplacement(StringBuilder, String)}.</p>
+ */
+public class RegexContentTransformer implements AsyncMiddleManServlet.ContentTransformer
+{
+    private final StringBuilder text = new StringBuilder();
+    private final Pattern pattern;
+    private final String replacement;
+    private final int maxMatchLength;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private ByteBuffer undecoded = BufferUtil.EMPTY_BUFFER;
+
+    public RegexContentTransformer(Pattern pattern, String replacement, int maxMatchLength)
+    {
+        this(pattern, replacement, maxMatchLength, StandardCharsets.UTF_8);
+    }
+
+    public RegexContentTransformer(Pattern pattern, String replacement, int maxMatchLength, Charset charset)
+    {
+        if (maxMatchLength <= 0)
+            throw new IllegalArgumentException("Invalid max match length " + maxMatchLength);
+        this.pattern = Objects.requireNonNull(pattern);
+        this.replacement = Objects.requireNonNull(replacement);
+        this.maxMatchLength = maxMatchLength;
+        this.charset = Objects.requireNonNull(charset);
+        this.decoder = charset.newDecoder();
+    }
+
+    /**
+     * @return the max number of characters matched by the regular expression
+     */
+    public int getMaxMatchLength()
+    {
+        return maxMatchLength;
+    }
+
+    @Override
+    public void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+    {
+        decode(input, finished);
+
+        // Characters beyond the limit may be part of a match
+        // that ends in the next chunk, so they are retained.
+        int limit = finished ? text.length() : text.length() - maxMatchLength;
+        StringBuilder result = new StringBuilder();
+        int end = 0;
+        if (limit > 0)
+        {
+            Matcher matcher = pattern.matcher(text);
+            while (matcher.find() && matcher.start() < limit)
+            {
+                matcher.appendReplacement(result, replacement);
+                end = matcher.end();
+            }
+            int consumed = Math.max(end, limit);
+            result.append(text, end, consumed);
+            text.delete(0, consumed);
+        }
+
+        if (result.length() > 0)
+            output.add(ByteBuffer.wrap(result.toString().getBytes(charset)));
+    }
+
+    private void decode(ByteBuffer input, boolean finished) throws IOException
+    {
+        ByteBuffer bytes = input;
+        if (undecoded.hasRemaining())
+        {
+            bytes = ByteBuffer.allocate(undecoded.remaining() + input.remaining());
+            bytes.put(undecoded).put(input).flip();
+        }
+
+        CharBuffer chars = CharBuffer.allocate((int)(bytes.remaining() * decoder.maxCharsPerByte()) + 1);
+        CoderResult result = decoder.decode(bytes, chars, finished);
+        if (result.isError())
+            result.throwException();
+        if (finished)
+        {
+            decoder.flush(chars);
+            decoder.reset();
+        }
+        text.append(chars.flip());
+
+        // Retain the bytes of an incomplete character until the next chunk;
+        // they must be copied because the input buffer is reused.
+        undecoded = bytes.hasRemaining() ? BufferUtil.copy(bytes) : BufferUtil.EMPTY_BUFFER;
+        input.position(input.limit());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s->%s]", getClass().getSimpleName(), hashCode(), pattern, replacement);
+    }
+}
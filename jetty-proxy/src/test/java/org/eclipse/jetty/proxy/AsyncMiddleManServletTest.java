@@ -39,6 +39,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
@@ -359,6 +360,69 @@ public class AsyncMiddleManServletTest
         assertArrayEquals(expected, response.getContent());
     }
 
+    @Test
+    public void testChainedStreamingTransformationsGzipped() throws Exception
+    {
+        int count = 1000;
+        StringBuilder json = new StringBuilder("[");
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < count; ++i)
+        {
+            if (i > 0)
+            {
+                json.append(", ");
+                expected.append(", ");
+            }
+            json.append("{\"id\": \"").append(i).append("\", \"url\": \"http://backend/").append(i).append("\"}");
+            expected.append("{\"key\": \"").append(i).append("\", \"url\": \"http://proxy/").append(i).append("\"}");
+        }
+        json.append("]");
+        expected.append("]");
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                GZIPOutputStream output = new GZIPOutputStream(response.getOutputStream(), true);
+                // Write small chunks, so that strings and matches span chunk boundaries.
+                for (int i = 0; i < bytes.length; i += 7)
+                {
+                    output.write(bytes, i, Math.min(7, bytes.length - i));
+                    output.flush();
+                }
+                output.close();
+            }
+        });
+        startProxy(new AsyncMiddleManServlet()
+        {
+            @Override
+            protected ContentTransformer newServerResponseContentTransformer(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+            {
+                ContentTransformer regex = new RegexContentTransformer(Pattern.compile("http://backend/"), "http://proxy/", 32);
+                ContentTransformer json = new JSONContentTransformer()
+                {
+                    @Override
+                    protected String rewriteName(String name)
+                    {
+                        return "id".equals(name) ? "key" : name;
+                    }
+                };
+                return new GZIPContentTransformer(new ChainContentTransformer(regex, json));
+            }
+        });
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(expected.toString(), response.getContentAsString());
+    }
+
     @Test
     public void testManySequentialTransformations() throws Exception
     {
@@ -22,6 +22,10 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletException;
@@ -31,6 +35,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.session.DefaultSessionIdManager;
@@ -41,13 +46,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BalancerServletTest
 {
     private static final String CONTEXT_PATH = "/context";
     private static final String SERVLET_PATH = "/mapping";
 
+    private final Map<String, String> initParams = new HashMap<>();
     private boolean stickySessions;
+    private ServletHolder balancerServletHolder;
     private Server server1;
     private Server server2;
     private Server balancer;
@@ -71,17 +81,23 @@ public class BalancerServletTest
 
     protected void startBalancer(Class<? extends HttpServlet> servletClass) throws Exception
     {
-        server1 = createServer(new ServletHolder(servletClass), "node1");
+        startBalancer(servletClass, servletClass);
+    }
+
+    protected void startBalancer(Class<? extends HttpServlet> servletClass1, Class<? extends HttpServlet> servletClass2) throws Exception
+    {
+        server1 = createServer(new ServletHolder(servletClass1), "node1");
         server1.start();
 
-        server2 = createServer(new ServletHolder(servletClass), "node2");
+        server2 = createServer(new ServletHolder(servletClass2), "node2");
         server2.start();
 
-        ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder = new ServletHolder(BalancerServlet.class);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
         balancerServletHolder.setInitParameter("balancerMember." + "node2" + ".proxyTo", "http://localhost:" + getServerPort(server2));
+        initParams.forEach(balancerServletHolder::setInitParameter);
 
         balancer = createServer(balancerServletHolder, null);
         balancer.start();
@@ -113,11 +129,21 @@ public class BalancerServletTest
 
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return sendToBalancer(path).getContent();
+    }
+
+    private ContentResponse sendToBalancer(String path) throws Exception
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
             .path(CONTEXT_PATH + SERVLET_PATH + path)
             .timeout(5, TimeUnit.SECONDS)
             .send();
-        return response.getContent();
+    }
+
+    private Collection<BalancerServlet.BalancerMember> getBalancerMembers() throws Exception
+    {
+        BalancerServlet servlet = (BalancerServlet)balancerServletHolder.getServlet();
+        return servlet.getHttpClient().getBeans(BalancerServlet.BalancerMember.class);
     }
 
     @Test
@@ -160,6 +186,92 @@ public class BalancerServletTest
         assertEquals("success", msg);
     }
 
+    @Test
+    public void testWeightedBalancer() throws Exception
+    {
+        stickySessions = false;
+        initParams.put("balancingStrategy", "weighted");
+        initParams.put("balancerMember.node1.weight", "3");
+        startBalancer(CounterServlet.class);
+        for (int i = 0; i < 8; i++)
+        {
+            sendRequestToBalancer("/weighted");
+        }
+        for (BalancerServlet.BalancerMember member : getBalancerMembers())
+        {
+            long expected = "node1".equals(member.getName()) ? 6 : 2;
+            assertEquals(expected, member.getRequests());
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingBalancer() throws Exception
+    {
+        stickySessions = false;
+        initParams.put("balancingStrategy", "leastOutstanding");
+        startBalancer(CounterServlet.class);
+        // Sequential requests have no outstanding requests, so ties alternate.
+        for (int i = 0; i < 10; i++)
+        {
+            byte[] responseBytes = sendRequestToBalancer("/leastOutstanding");
+            String returnedCounter = readFirstLine(responseBytes);
+            assertEquals(String.valueOf(i / 2), returnedCounter);
+        }
+    }
+
+    @Test
+    public void testFailingMemberIsEjected() throws Exception
+    {
+        stickySessions = false;
+        initParams.put("ejectionErrorRate", "0.5");
+        initParams.put("ejectionMinRequests", "2");
+        startBalancer(ErrorServlet.class, CounterServlet.class);
+
+        // Send requests until the failing member has been ejected.
+        for (int i = 0; i < 20; i++)
+        {
+            sendToBalancer("/ejection");
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(HttpStatus.OK_200, sendToBalancer("/ejection").getStatus());
+        }
+
+        for (BalancerServlet.BalancerMember member : getBalancerMembers())
+        {
+            if ("node1".equals(member.getName()))
+            {
+                assertTrue(member.isEjected());
+                assertEquals(1, member.getEjections());
+                assertEquals(member.getRequests(), member.getErrors());
+            }
+            else
+            {
+                assertFalse(member.isEjected());
+                assertEquals(0, member.getErrors());
+            }
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesDoesNotFavorNewMembers()
+    {
+        BalancerServlet.BalancerMember sampled = new BalancerServlet.BalancerMember("node1", "http://localhost:8080");
+        sampled.onBegin();
+        sampled.onComplete(TimeUnit.MILLISECONDS.toNanos(10), false, false, 0, 0, 0);
+        sampled.onBegin();
+
+        // A new member without latency samples is not free while it has outstanding requests.
+        BalancerServlet.BalancerMember fresh = new BalancerServlet.BalancerMember("node2", "http://localhost:8081");
+        BalancerServlet.PowerOfTwoChoicesStrategy strategy = new BalancerServlet.PowerOfTwoChoicesStrategy();
+        List<BalancerServlet.BalancerMember> members = List.of(sampled, fresh);
+        assertSame(fresh, strategy.select(members, null));
+        fresh.onBegin();
+        fresh.onBegin();
+        assertSame(sampled, strategy.select(members, null));
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
@@ -180,6 +292,15 @@ public class BalancerServletTest
         }
     }
 
+    public static final class ErrorServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            resp.sendError(HttpStatus.SERVICE_UNAVAILABLE_503);
+        }
+    }
+
     public static final class RelocationServlet extends HttpServlet
     {
         @Override
@@ -31,6 +31,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -51,7 +52,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -663,6 +667,73 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
         }
     }
 
+    @Test
+    public void testCONNECTAndPOSTRelayStatistics() throws Exception
+    {
+        AtomicReference<ConnectHandler.UpstreamConnection> upstreamRef = new AtomicReference<>();
+        disposeProxy();
+        ConnectHandler handler = new ConnectHandler()
+        {
+            @Override
+            protected UpstreamConnection newUpstreamConnection(EndPoint endPoint, ConnectContext connectContext)
+            {
+                UpstreamConnection connection = super.newUpstreamConnection(endPoint, connectContext);
+                upstreamRef.set(connection);
+                return connection;
+            }
+        };
+        handler.setBufferSize(1024);
+        handler.setMaxBufferSize(32 * 1024);
+        proxy.setHandler(handler);
+        proxy.start();
+
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+        String request =
+            "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            // Expect 200 OK from the CONNECT request
+            HttpTester.Input in = HttpTester.from(input);
+            HttpTester.Response response = HttpTester.parseResponse(in);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+
+            StringBuilder body = new StringBuilder();
+            String chunk = "0123456789ABCDEF";
+            for (int i = 0; i < 64 * 1024; ++i)
+            {
+                body.append(chunk);
+            }
+
+            request =
+                "POST /echo HTTP/1.1\r\n" +
+                    "Host: " + hostPort + "\r\n" +
+                    "Content-Length: " + body.length() + "\r\n" +
+                    "\r\n" +
+                    body;
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            response = HttpTester.parseResponse(in);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("POST /echo\r\n" + body, response.getContent());
+
+            ConnectHandler.UpstreamConnection upstream = upstreamRef.get();
+            assertNotNull(upstream);
+            // The bytes are counted when read, before they are relayed.
+            assertThat(upstream.getBytesIn(), greaterThan((long)body.length()));
+            assertThat(((ProxyConnection)upstream.getConnection()).getBytesIn(), greaterThan((long)body.length()));
+            assertThat(upstream.getBytesInRate(), greaterThan(0L));
+        }
+    }
+
     @Test
     public void testCONNECTAndPOSTWithContext() throws Exception
     {
@@ -42,6 +42,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
@@ -1472,4 +1473,126 @@ public class ProxyServletTest
         assertFalse(contentLatch.await(1, TimeUnit.SECONDS));
         assertTrue(clientLatch.await(5, TimeUnit.SECONDS));
     }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testCoalescedRequests(Class<? extends ProxyServlet> proxyServletClass) throws Exception
+    {
+        testCoalescedRequests(proxyServletClass, false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testCoalescedRequestsWithPrivateResponse(Class<? extends ProxyServlet> proxyServletClass) throws Exception
+    {
+        testCoalescedRequests(proxyServletClass, true);
+    }
+
+    private void testCoalescedRequests(Class<? extends ProxyServlet> proxyServletClass, boolean privateResponse) throws Exception
+    {
+        byte[] content = new byte[64 * 1024];
+        new Random().nextBytes(content);
+        AtomicInteger serverRequests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                serverRequests.incrementAndGet();
+                try
+                {
+                    // Give time to the other requests to arrive to the proxy.
+                    Thread.sleep(1000);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new InterruptedIOException();
+                }
+                if (privateResponse)
+                    response.addCookie(new Cookie("name", "value"));
+                response.getOutputStream().write(content);
+            }
+        });
+        Map<String, String> params = new HashMap<>();
+        params.put("coalesceRequests", "true");
+        startProxy(proxyServletClass, params);
+        startClient();
+
+        int requests = 8;
+        CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", serverConnector.getLocalPort())
+                .path("/coalesced")
+                .send(new BufferingResponseListener(content.length)
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded() && Arrays.equals(content, getContent()))
+                            latch.countDown();
+                    }
+                });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(privateResponse ? requests : 1, serverRequests.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("impls")
+    public void testConditionalRequestIsNotCoalesced(Class<? extends ProxyServlet> proxyServletClass) throws Exception
+    {
+        String etag = "\"abc\"";
+        byte[] content = new byte[1024];
+        new Random().nextBytes(content);
+        AtomicInteger serverRequests = new AtomicInteger();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                serverRequests.incrementAndGet();
+                try
+                {
+                    // Give time to the other request to arrive to the proxy.
+                    Thread.sleep(1000);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new InterruptedIOException();
+                }
+                response.setHeader(HttpHeader.ETAG.asString(), etag);
+                if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                else
+                    response.getOutputStream().write(content);
+            }
+        });
+        Map<String, String> params = new HashMap<>();
+        params.put("coalesceRequests", "true");
+        startProxy(proxyServletClass, params);
+        startClient();
+
+        CountDownLatch conditionalLatch = new CountDownLatch(1);
+        client.newRequest("localhost", serverConnector.getLocalPort())
+            .path("/conditional")
+            .header(HttpHeader.IF_NONE_MATCH, etag)
+            .send(result ->
+            {
+                if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.NOT_MODIFIED_304)
+                    conditionalLatch.countDown();
+            });
+        // The plain request arrives while the conditional one is outstanding.
+        Thread.sleep(250);
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+            .path("/conditional")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(content, response.getContent());
+        assertTrue(conditionalLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, serverRequests.get());
+    }
 }
@@ -26,12 +26,11 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -44,11 +43,21 @@ import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>A {@link HttpContent.ContentFactory} that caches the content of the resources.</p>
+ * <p>The cache is bounded by the number of cached files and by the total size of the
+ * cached buffers. When a bound is exceeded, the entries to evict are chosen by the
+ * {@link EvictionPolicy}, by default a {@link TinyLFUEvictionPolicy}.</p>
+ */
+@ManagedObject("Cache of static content")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(CachedContentFactory.class);
@@ -63,6 +72,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private final boolean _etags;
     private final CompressedContentFormat[] _precompressedFormats;
     private final boolean _useFileMappedBuffer;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private EvictionPolicy _evictionPolicy;
 
     private int _maxCachedFileSize = 128 * 1024 * 1024;
     private int _maxCachedFiles = 2048;
@@ -89,18 +102,83 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         _useFileMappedBuffer = useFileMappedBuffer;
         _etags = etags;
         _precompressedFormats = precompressedFormats;
+        _evictionPolicy = new TinyLFUEvictionPolicy();
+        _evictionPolicy.setMaxCachedFiles(_maxCachedFiles);
     }
 
+    @ManagedAttribute(value = "The total size of the cached buffers", readonly = true)
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
 
+    @ManagedAttribute(value = "The number of cached files", readonly = true)
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
 
+    @ManagedAttribute(value = "The number of requests served from the cache", readonly = true)
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute(value = "The number of requests not served from the cache", readonly = true)
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute(value = "The ratio of requests served from the cache", readonly = true)
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    @ManagedAttribute(value = "The number of entries evicted from the cache", readonly = true)
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    /**
+     * @return the policy that chooses the entries to evict from the cache
+     */
+    @ManagedAttribute(value = "The eviction policy", readonly = true)
+    public EvictionPolicy getEvictionPolicy()
+    {
+        return _evictionPolicy;
+    }
+
+    /**
+     * <p>Sets the policy that chooses the entries to evict from the cache.</p>
+     * <p>The entries already cached are added to the new policy.</p>
+     *
+     * @param evictionPolicy the policy that chooses the entries to evict from the cache
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy)
+    {
+        evictionPolicy.setMaxCachedFiles(_maxCachedFiles);
+        for (CachedHttpContent content : _cache.values())
+        {
+            evictionPolicy.onAdded(content);
+        }
+        _evictionPolicy = evictionPolicy;
+        shrinkCache();
+    }
+
+    @ManagedAttribute("The max size of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -112,6 +190,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         shrinkCache();
     }
 
+    @ManagedAttribute("The max total size of the cached buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -126,6 +205,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return the max number of cached files.
      */
+    @ManagedAttribute("The max number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -137,6 +217,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     public void setMaxCachedFiles(int maxCachedFiles)
     {
         _maxCachedFiles = maxCachedFiles;
+        _evictionPolicy.setMaxCachedFiles(maxCachedFiles);
         shrinkCache();
     }
 
@@ -153,7 +234,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             {
                 CachedHttpContent content = _cache.remove(path);
                 if (content != null)
+                {
+                    _evictionPolicy.onRemoved(content);
                     content.invalidate();
+                }
             }
         }
     }
@@ -176,7 +260,13 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
+            _evictionPolicy.onAccess(pathInContext, content);
             return content;
+        }
+        _misses.increment();
+        _evictionPolicy.onAccess(pathInContext, null);
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -245,6 +335,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                                 compressedContent.invalidate();
                                 compressedContent = added;
                             }
+                            else
+                            {
+                                added(compressedContent);
+                            }
                         }
                     }
                     if (compressedContent != null)
@@ -262,6 +356,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content.invalidate();
                 content = added;
             }
+            else
+            {
+                added(content);
+            }
 
             return content;
         }
@@ -293,34 +391,24 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
+    private void added(CachedHttpContent content)
+    {
+        _evictionPolicy.onAdded(content);
+        shrinkCache();
+    }
+
     private void shrinkCache()
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        // While we need to shrink, evict the entries chosen by the policy.
+        while (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize)
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
+            CachedHttpContent content = _evictionPolicy.evict();
+            if (content == null)
+                break;
+            if (_cache.remove(content.getKey(), content))
             {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
-
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
-
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
-
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
-
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
-            {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
-                    break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
+                _evictions.increment();
+                content.invalidate();
             }
         }
     }
@@ -395,7 +483,6 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         private final AtomicReference<ByteBuffer> _indirectBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _directBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _mappedBuffer = new AtomicReference<>();
-        private volatile long _lastAccessed;
 
         CachedHttpContent(String pathInContext, Resource resource, Map<CompressedContentFormat, CachedHttpContent> precompressedResources)
         {
@@ -415,10 +502,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             _contentLengthValue = exists ? resource.length() : 0;
             _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(_contentLengthValue));
 
-            if (_cachedFiles.incrementAndGet() > _maxCachedFiles)
-                shrinkCache();
-
-            _lastAccessed = System.currentTimeMillis();
+            _cachedFiles.incrementAndGet();
 
             _etag = CachedContentFactory.this._etags ? new PreEncodedHttpField(HttpHeader.ETAG, resource.getWeakETag()) : null;
 
@@ -467,13 +551,13 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         boolean isValid()
         {
             if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
-            {
-                _lastAccessed = System.currentTimeMillis();
                 return true;
-            }
 
-            if (this == _cache.remove(_key))
+            if (_cache.remove(_key, this))
+            {
+                _evictionPolicy.onRemoved(this);
                 invalidate();
+            }
             return false;
         }
 
@@ -717,4 +801,42 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return "Cached" + super.toString();
         }
     }
+
+    /**
+     * <p>A policy that chooses the entries to evict when the cache exceeds its bounds.</p>
+     * <p>Implementations must be thread safe. The {@link #onAccess(String, CachedHttpContent)}
+     * method is invoked for every request, so it must be cheap and should not block.</p>
+     */
+    public interface EvictionPolicy
+    {
+        /**
+         * @param maxCachedFiles the max number of cached files
+         */
+        void setMaxCachedFiles(int maxCachedFiles);
+
+        /**
+         * <p>Records an access to the given path.</p>
+         *
+         * @param pathInContext the path in context
+         * @param content the cached content, or null if the content is not cached
+         */
+        void onAccess(String pathInContext, CachedHttpContent content);
+
+        /**
+         * @param content the content added to the cache
+         */
+        void onAdded(CachedHttpContent content);
+
+        /**
+         * @param content the content removed from the cache
+         */
+        void onRemoved(CachedHttpContent content);
+
+        /**
+         * <p>Chooses and removes from this policy the next content to evict.</p>
+         *
+         * @return the content to evict, or null if there is no content to evict
+         */
+        CachedHttpContent evict();
+    }
 }
@@ -0,0 +1,113 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jetty.server.CachedContentFactory.CachedHttpContent;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * <p>A {@link CachedContentFactory.EvictionPolicy} that evicts the least recently used content.</p>
+ * <p>Accesses only reorder the entries if the policy is not busy, so that they never
+ * block; under contention, the order of the entries is therefore approximated.</p>
+ */
+@ManagedObject("Least recently used eviction policy")
+public class LRUEvictionPolicy implements CachedContentFactory.EvictionPolicy
+{
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Set<CachedHttpContent> _entries = new LinkedHashSet<>();
+
+    @Override
+    public void setMaxCachedFiles(int maxCachedFiles)
+    {
+    }
+
+    @Override
+    public void onAccess(String pathInContext, CachedHttpContent content)
+    {
+        if (content == null || !_lock.tryLock())
+            return;
+        try
+        {
+            if (_entries.remove(content))
+                _entries.add(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void onAdded(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            _entries.add(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemoved(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            _entries.remove(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public CachedHttpContent evict()
+    {
+        _lock.lock();
+        try
+        {
+            Iterator<CachedHttpContent> iterator = _entries.iterator();
+            if (!iterator.hasNext())
+                return null;
+            CachedHttpContent content = iterator.next();
+            iterator.remove();
+            return content;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+    }
+}
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 
@@ -28,10 +29,14 @@ import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ssl.SslConnection;
 import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 
+@ManagedObject("TLS connection factory")
 public class SslConnectionFactory extends AbstractConnectionFactory implements ConnectionFactory.Detecting
 {
     private static final int TLS_ALERT_FRAME_TYPE = 0x15;
@@ -42,6 +47,21 @@ public class SslConnectionFactory extends AbstractConnectionFactory implements C
     private final String _nextProtocol;
     private boolean _directBuffersForEncryption = false;
     private boolean _directBuffersForDecryption = false;
+    private boolean _dynamicRecordSizing = false;
+    private final LongAdder _wrappedRecords = new LongAdder();
+    private final LongAdder _wrappedBytes = new LongAdder();
+    private final LongAdder _limitedRecords = new LongAdder();
+    private final Connection.Listener _recordStatistics = new Connection.Listener.Adapter()
+    {
+        @Override
+        public void onClosed(Connection connection)
+        {
+            SslConnection sslConnection = (SslConnection)connection;
+            _wrappedRecords.add(sslConnection.getWrappedRecords());
+            _wrappedBytes.add(sslConnection.getWrappedBytes());
+            _limitedRecords.add(sslConnection.getLimitedRecords());
+        }
+    };
 
     public SslConnectionFactory()
     {
@@ -86,11 +106,66 @@ public class SslConnectionFactory extends AbstractConnectionFactory implements C
         return _directBuffersForEncryption;
     }
 
+    /**
+     * @return whether the size of the TLS records is adapted to the connection activity
+     * @see SslConnection#isDynamicRecordSizing()
+     */
+    @ManagedAttribute("Whether the size of the TLS records is adapted to the connection activity")
+    public boolean isDynamicRecordSizing()
+    {
+        return _dynamicRecordSizing;
+    }
+
+    /**
+     * @param dynamicRecordSizing whether the size of the TLS records is adapted to the connection activity
+     * @see SslConnection#setDynamicRecordSizing(boolean)
+     */
+    public void setDynamicRecordSizing(boolean dynamicRecordSizing)
+    {
+        _dynamicRecordSizing = dynamicRecordSizing;
+    }
+
     public String getNextProtocol()
     {
         return _nextProtocol;
     }
 
+    /**
+     * @return the number of TLS records of application data wrapped by the closed connections
+     */
+    @ManagedAttribute(value = "The number of TLS records of application data wrapped by the closed connections", readonly = true)
+    public long getWrappedRecords()
+    {
+        return _wrappedRecords.sum();
+    }
+
+    /**
+     * @return the number of bytes of application data wrapped by the closed connections
+     */
+    @ManagedAttribute(value = "The number of bytes of application data wrapped by the closed connections", readonly = true)
+    public long getWrappedBytes()
+    {
+        return _wrappedBytes.sum();
+    }
+
+    /**
+     * @return the number of TLS records wrapped by the closed connections whose size has been limited
+     * by {@link #setDynamicRecordSizing(boolean) dynamic record sizing}
+     */
+    @ManagedAttribute(value = "The number of TLS records wrapped by the closed connections whose size has been limited", readonly = true)
+    public long getLimitedRecords()
+    {
+        return _limitedRecords.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _wrappedRecords.reset();
+        _wrappedBytes.reset();
+        _limitedRecords.reset();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -124,6 +199,8 @@ public class SslConnectionFactory extends AbstractConnectionFactory implements C
         SslConnection sslConnection = newSslConnection(connector, endPoint, engine);
         sslConnection.setRenegotiationAllowed(_sslContextFactory.isRenegotiationAllowed());
         sslConnection.setRenegotiationLimit(_sslContextFactory.getRenegotiationLimit());
+        sslConnection.setDynamicRecordSizing(isDynamicRecordSizing());
+        sslConnection.addEventListener(_recordStatistics);
         configure(sslConnection, connector, endPoint);
 
         ConnectionFactory next = connector.getConnectionFactory(_nextProtocol);
@@ -0,0 +1,445 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jetty.server.CachedContentFactory.CachedHttpContent;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A {@link CachedContentFactory.EvictionPolicy} that implements W-TinyLFU.</p>
+ * <p>New content enters a small LRU admission window, sized 1% of the max number of
+ * cached files. Content that overflows the window becomes a candidate for the main
+ * segmented LRU cache, where content accessed again is promoted from the probation
+ * segment to the protected segment, sized 80% of the main cache.
+ * When the main cache is full, a candidate is only admitted if it has been accessed
+ * more frequently than the probation content it would evict, so that content that is
+ * accessed once, for example by a crawler scan, does not evict frequently accessed content.
+ * The admission is size aware: a candidate larger than the victim must also be
+ * proportionally more frequently accessed.</p>
+ * <p>The access frequencies of the paths, whether cached or not, are estimated by
+ * a count-min sketch with 4-bit counters that are periodically halved, so that
+ * frequencies age.</p>
+ * <p>All the operations are O(1). Accesses never block: when the policy is busy,
+ * they are buffered (or dropped if the buffer is full) and replayed by the next
+ * thread that acquires the policy.</p>
+ */
+@ManagedObject("W-TinyLFU eviction policy")
+public class TinyLFUEvictionPolicy implements CachedContentFactory.EvictionPolicy
+{
+    private static final int ACCESS_BUFFER_SIZE = 1024;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Queue<Object> _accesses = new ArrayBlockingQueue<>(ACCESS_BUFFER_SIZE);
+    private final Set<CachedHttpContent> _window = new LinkedHashSet<>();
+    private final Set<CachedHttpContent> _candidates = new LinkedHashSet<>();
+    private final Set<CachedHttpContent> _probation = new LinkedHashSet<>();
+    private final Set<CachedHttpContent> _protected = new LinkedHashSet<>();
+    private final LongAdder _admissions = new LongAdder();
+    private final LongAdder _rejections = new LongAdder();
+    private FrequencySketch _sketch = new FrequencySketch(0);
+    private int _maxWindow = 1;
+    private int _maxMain;
+    private int _maxProtected;
+
+    @Override
+    public void setMaxCachedFiles(int maxCachedFiles)
+    {
+        _lock.lock();
+        try
+        {
+            _maxWindow = Math.max(1, maxCachedFiles / 100);
+            _maxMain = Math.max(0, maxCachedFiles - _maxWindow);
+            _maxProtected = _maxMain * 4 / 5;
+            FrequencySketch sketch = new FrequencySketch(maxCachedFiles);
+            if (sketch.capacity() != _sketch.capacity())
+                _sketch = sketch;
+            demote();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of candidates admitted to the main cache", readonly = true)
+    public long getAdmissions()
+    {
+        return _admissions.sum();
+    }
+
+    @ManagedAttribute(value = "The number of candidates rejected from the main cache", readonly = true)
+    public long getRejections()
+    {
+        return _rejections.sum();
+    }
+
+    @ManagedAttribute(value = "The number of entries in the admission window", readonly = true)
+    public int getWindowSize()
+    {
+        _lock.lock();
+        try
+        {
+            return _window.size() + _candidates.size();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of entries in the probation segment", readonly = true)
+    public int getProbationSize()
+    {
+        _lock.lock();
+        try
+        {
+            return _probation.size();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of entries in the protected segment", readonly = true)
+    public int getProtectedSize()
+    {
+        _lock.lock();
+        try
+        {
+            return _protected.size();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _admissions.reset();
+        _rejections.reset();
+    }
+
+    /**
+     * @param pathInContext the path in context
+     * @return the estimated access frequency of the given path, between 0 and 15
+     */
+    public int getFrequency(String pathInContext)
+    {
+        _lock.lock();
+        try
+        {
+            drain();
+            return _sketch.frequency(pathInContext);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void onAccess(String pathInContext, CachedHttpContent content)
+    {
+        Object access = content == null ? pathInContext : content;
+        if (_lock.tryLock())
+        {
+            try
+            {
+                drain();
+                record(access);
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+        else
+        {
+            // Do not block, the access is recorded by the thread holding the lock.
+            _accesses.offer(access);
+        }
+    }
+
+    @Override
+    public void onAdded(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            drain();
+            _window.add(content);
+            while (_window.size() > _maxWindow)
+            {
+                CachedHttpContent overflow = removeFirst(_window);
+                if (_probation.size() + _protected.size() < _maxMain)
+                    _probation.add(overflow);
+                else
+                    _candidates.add(overflow);
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemoved(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            if (!_window.remove(content) && !_candidates.remove(content) && !_probation.remove(content))
+                _protected.remove(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public CachedHttpContent evict()
+    {
+        _lock.lock();
+        try
+        {
+            drain();
+            while (true)
+            {
+                CachedHttpContent candidate = removeFirst(_candidates);
+                if (candidate == null)
+                    break;
+
+                CachedHttpContent victim = first(_probation);
+                if (victim == null)
+                    victim = first(_protected);
+                if (victim == null)
+                {
+                    // The main cache is empty, no need to compete.
+                    _probation.add(candidate);
+                    continue;
+                }
+
+                if (admit(candidate, victim))
+                {
+                    _admissions.increment();
+                    if (!_probation.remove(victim))
+                        _protected.remove(victim);
+                    _probation.add(candidate);
+                    return victim;
+                }
+                _rejections.increment();
+                return candidate;
+            }
+
+            CachedHttpContent victim = removeFirst(_probation);
+            if (victim == null)
+                victim = removeFirst(_window);
+            if (victim == null)
+                victim = removeFirst(_protected);
+            return victim;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    private boolean admit(CachedHttpContent candidate, CachedHttpContent victim)
+    {
+        int candidateFrequency = _sketch.frequency(candidate.getKey());
+        int victimFrequency = _sketch.frequency(victim.getKey());
+        if (candidateFrequency <= victimFrequency)
+            return false;
+        long candidateSize = Math.max(1, candidate.getContentLengthValue());
+        long victimSize = Math.max(1, victim.getContentLengthValue());
+        return candidateSize <= victimSize || candidateFrequency * victimSize >= victimFrequency * candidateSize;
+    }
+
+    private void drain()
+    {
+        Object access;
+        while ((access = _accesses.poll()) != null)
+        {
+            record(access);
+        }
+    }
+
+    private void record(Object access)
+    {
+        if (access instanceof CachedHttpContent)
+        {
+            CachedHttpContent content = (CachedHttpContent)access;
+            _sketch.increment(content.getKey());
+            if (_window.remove(content))
+            {
+                _window.add(content);
+            }
+            else if (_probation.remove(content))
+            {
+                _protected.add(content);
+                demote();
+            }
+            else if (_protected.remove(content))
+            {
+                _protected.add(content);
+            }
+        }
+        else
+        {
+            _sketch.increment((String)access);
+        }
+    }
+
+    private void demote()
+    {
+        while (_protected.size() > _maxProtected)
+        {
+            _probation.add(removeFirst(_protected));
+        }
+    }
+
+    private static CachedHttpContent first(Set<CachedHttpContent> segment)
+    {
+        Iterator<CachedHttpContent> iterator = segment.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static CachedHttpContent removeFirst(Set<CachedHttpContent> segment)
+    {
+        Iterator<CachedHttpContent> iterator = segment.iterator();
+        if (!iterator.hasNext())
+            return null;
+        CachedHttpContent content = iterator.next();
+        iterator.remove();
+        return content;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[window=%d/%d,main=%d/%d]", getClass().getSimpleName(), hashCode(), _window.size(), _maxWindow, _probation.size() + _protected.size(), _maxMain);
+    }
+
+    /**
+     * <p>A count-min sketch with 4 rows of 4-bit counters, packed 16 per {@code long}.</p>
+     */
+    private static class FrequencySketch
+    {
+        private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MAX_CAPACITY = 1 << 24;
+
+        private final long[] _table;
+        private final int _sampleSize;
+        private int _additions;
+
+        private FrequencySketch(int maxEntries)
+        {
+            int capacity = 16;
+            while (capacity < maxEntries && capacity < MAX_CAPACITY)
+            {
+                capacity <<= 1;
+            }
+            _table = new long[capacity];
+            _sampleSize = 10 * capacity;
+        }
+
+        private int capacity()
+        {
+            return _table.length;
+        }
+
+        private int frequency(String key)
+        {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; ++i)
+            {
+                int shift = shift(hash, i);
+                frequency = Math.min(frequency, (int)((_table[index(hash, i)] >>> shift) & 0xF));
+            }
+            return frequency;
+        }
+
+        private void increment(String key)
+        {
+            int hash = spread(key.hashCode());
+            boolean incremented = false;
+            for (int i = 0; i < SEEDS.length; ++i)
+            {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                long mask = 0xFL << shift;
+                if ((_table[index] & mask) != mask)
+                {
+                    _table[index] += 1L << shift;
+                    incremented = true;
+                }
+            }
+            if (incremented && ++_additions >= _sampleSize)
+                reset();
+        }
+
+        private void reset()
+        {
+            // Halve all the counters, so that old accesses weigh less.
+            for (int i = 0; i < _table.length; ++i)
+            {
+                _table[i] = (_table[i] >>> 1) & RESET_MASK;
+            }
+            _additions /= 2;
+        }
+
+        private int index(int hash, int row)
+        {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int)h & (_table.length - 1);
+        }
+
+        private static int shift(int hash, int row)
+        {
+            // Each row uses its own group of 4 counters in each long.
+            int counter = (row << 2) + ((hash >>> (row << 3)) & 3);
+            return counter << 2;
+        }
+
+        private static int spread(int hash)
+        {
+            hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+            hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A bounded cache of compressed responses, used by {@link GzipHttpOutputInterceptor}
+ * to avoid compressing again the same entity.</p>
+ * <p>Entries are keyed by the content coding, the request URI and the strong
+ * {@code ETag} of the response, and are stored in direct
+ * buffers, so that they do not weigh on the heap. When the cache is full, the least
+ * recently used entries are evicted.</p>
+ * <p>Concurrent compressions of the same entity are coalesced: the first request
+ * compresses the entity, while the others wait for the compressed bytes, up to
+ * {@link #getMaxCoalesceWait()} milliseconds, after which they compress the
+ * entity themselves. At most {@link #getMaxCompressions()} compressions are tracked,
+ * beyond which the compressions are not coalesced.</p>
+ */
+@ManagedObject("Cache of compressed responses")
+public class GzipContentCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GzipContentCache.class);
+
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, ByteBuffer> _entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<String, Compression> _compressions = new HashMap<>();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final long _maxCacheSize;
+    private final int _maxEntrySize;
+    private long _maxCoalesceWait = 5000;
+    private int _maxCompressions = 1024;
+    private long _cacheSize;
+
+    /**
+     * @param maxCacheSize the max total size in bytes of the cached compressed entities
+     * @param maxEntrySize the max size in bytes of a cached compressed entity
+     */
+    public GzipContentCache(long maxCacheSize, int maxEntrySize)
+    {
+        _maxCacheSize = maxCacheSize;
+        _maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute(value = "The max total size of the cached compressed entities", readonly = true)
+    public long getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    @ManagedAttribute(value = "The max size of a cached compressed entity", readonly = true)
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    @ManagedAttribute("The max time in ms to wait for a concurrent compression of the same entity")
+    public long getMaxCoalesceWait()
+    {
+        return _maxCoalesceWait;
+    }
+
+    public void setMaxCoalesceWait(long maxCoalesceWait)
+    {
+        _maxCoalesceWait = maxCoalesceWait;
+    }
+
+    @ManagedAttribute("The max number of concurrent compressions that can be coalesced")
+    public int getMaxCompressions()
+    {
+        return _maxCompressions;
+    }
+
+    public void setMaxCompressions(int maxCompressions)
+    {
+        _maxCompressions = maxCompressions;
+    }
+
+    @ManagedAttribute(value = "The total size of the cached compressed entities", readonly = true)
+    public long getCacheSize()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _cacheSize;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of cached compressed entities", readonly = true)
+    public int getEntries()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _entries.size();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of responses served from the cache", readonly = true)
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute(value = "The number of responses compressed", readonly = true)
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute(value = "The number of responses that waited for a concurrent compression", readonly = true)
+    public long getCoalesced()
+    {
+        return _coalesced.sum();
+    }
+
+    @ManagedAttribute(value = "The number of entries evicted from the cache", readonly = true)
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _coalesced.reset();
+        _evictions.reset();
+    }
+
+    @ManagedOperation(value = "Clears the cache", impact = "ACTION")
+    public void clear()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            _entries.clear();
+            _cacheSize = 0;
+        }
+    }
+
+    /**
+     * <p>Looks up the compressed entity with the given key.</p>
+     * <p>If the entity is cached, or it is being compressed by a concurrent request,
+     * a future completed with the compressed bytes (or with {@code null} if the
+     * concurrent compression could not be cached) is returned.
+     * Otherwise {@code null} is returned, and the caller must compress the entity
+     * and then either {@link #put(String, ByteBuffer) put} it or
+     * {@link #abandon(String) abandon} the compression.</p>
+     *
+     * @param key the key of the compressed entity
+     * @return a future for the compressed bytes, or null if the caller must compress the entity
+     */
+    public CompletableFuture<ByteBuffer> acquire(String key)
+    {
+        Compression replaced = null;
+        List<Compression> stale = null;
+        try (AutoLock l = _lock.lock())
+        {
+            ByteBuffer buffer = _entries.get(key);
+            if (buffer != null)
+            {
+                _hits.increment();
+                return CompletableFuture.completedFuture(buffer.slice());
+            }
+
+            long now = System.nanoTime();
+            Compression compression = _compressions.get(key);
+            if (compression != null && !compression.isStale(now))
+            {
+                _coalesced.increment();
+                return compression.future;
+            }
+
+            // No compression, or a stale one that will never complete, take over.
+            _misses.increment();
+            if (compression == null && _compressions.size() >= _maxCompressions)
+                stale = removeStaleCompressions(now);
+            // With too many concurrent compressions, the caller compresses without coalescing.
+            if (compression != null || _compressions.size() < _maxCompressions)
+                replaced = _compressions.put(key, new Compression(now));
+        }
+
+        if (replaced != null)
+            replaced.future.complete(null);
+        if (stale != null)
+            stale.forEach(compression -> compression.future.complete(null));
+        return null;
+    }
+
+    private List<Compression> removeStaleCompressions(long now)
+    {
+        List<Compression> stale = new ArrayList<>();
+        for (Iterator<Compression> iterator = _compressions.values().iterator(); iterator.hasNext(); )
+        {
+            Compression compression = iterator.next();
+            if (compression.isStale(now))
+            {
+                iterator.remove();
+                stale.add(compression);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * <p>Stores the given compressed entity, completing the concurrent requests
+     * waiting for it.</p>
+     *
+     * @param key the key of the compressed entity
+     * @param compressed the compressed bytes
+     */
+    public void put(String key, ByteBuffer compressed)
+    {
+        int length = compressed.remaining();
+        ByteBuffer buffer = null;
+        if (length <= _maxEntrySize && length <= _maxCacheSize)
+        {
+            ByteBuffer direct = BufferUtil.allocateDirect(length);
+            BufferUtil.append(direct, compressed.slice());
+            buffer = direct.asReadOnlyBuffer();
+        }
+
+        Compression compression;
+        try (AutoLock l = _lock.lock())
+        {
+            compression = _compressions.remove(key);
+            if (buffer != null)
+            {
+                ByteBuffer existing = _entries.put(key, buffer);
+                if (existing != null)
+                    _cacheSize -= existing.remaining();
+                _cacheSize += length;
+                Iterator<ByteBuffer> iterator = _entries.values().iterator();
+                while (_cacheSize > _maxCacheSize && iterator.hasNext())
+                {
+                    ByteBuffer evicted = iterator.next();
+                    iterator.remove();
+                    _cacheSize -= evicted.remaining();
+                    _evictions.increment();
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {} {} bytes for {}", this, buffer == null ? "not cached" : "cached", length, key);
+
+        if (compression != null)
+            compression.future.complete(buffer == null ? null : buffer.slice());
+    }
+
+    /**
+     * <p>Abandons the compression of the entity with the given key, so that the
+     * concurrent requests waiting for it compress the entity themselves.</p>
+     *
+     * @param key the key of the compressed entity
+     */
+    public void abandon(String key)
+    {
+        Compression compression;
+        try (AutoLock l = _lock.lock())
+        {
+            compression = _compressions.remove(key);
+        }
+        if (compression != null)
+            compression.future.complete(null);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d/%d}", getClass().getSimpleName(), hashCode(), getCacheSize(), _maxCacheSize);
+    }
+
+    private class Compression
+    {
+        private final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        private final long begin;
+
+        private Compression(long begin)
+        {
+            this.begin = begin;
+        }
+
+        private boolean isStale(long now)
+        {
+            return TimeUnit.NANOSECONDS.toMillis(now - begin) >= _maxCoalesceWait;
+        }
+    }
+}
@@ -18,8 +18,11 @@
 
 package org.eclipse.jetty.server.handler.gzip;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.server.Request;
 
 public interface GzipFactory
@@ -29,4 +32,32 @@ public interface GzipFactory
     boolean isMimeTypeGzipable(String mimetype);
 
     void recycle(Deflater deflater);
+
+    /**
+     * <p>Negotiates a content coding other than gzip for the response to the given request.</p>
+     *
+     * @param request the request
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return the content codec to compress the response with, or null to gzip the response
+     */
+    default ContentCodec getContentCodec(Request request, long contentLength)
+    {
+        return null;
+    }
+
+    /**
+     * @return the content codecs that may compress responses besides gzip
+     */
+    default List<ContentCodec> getContentCodecs()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the cache of compressed responses, or null if compressed responses are not cached
+     */
+    default GzipContentCache getContentCache()
+    {
+        return null;
+    }
 }
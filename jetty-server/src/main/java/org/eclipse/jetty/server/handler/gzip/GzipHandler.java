@@ -19,9 +19,14 @@
 package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
@@ -32,6 +37,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -39,6 +45,7 @@ import org.eclipse.jetty.http.HttpHeaderValue;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http.QuotedQualityCSV;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
@@ -148,6 +155,21 @@ import org.slf4j.LoggerFactory;
  * Since the introduction of Async I/O in Servlet 3.1, this older form of Gzip support
  * in web applications has been problematic and bug ridden.
  * </p>
+ * <p>
+ * If a {@link #setContentCacheSize(long) content cache size} is configured, the compressed
+ * form of {@code 200} responses to {@code GET} requests that carry a strong {@code ETag},
+ * and are not private, is kept in a {@link GzipContentCache}, so that subsequent
+ * requests for the same entity are served without compressing it again, and concurrent
+ * requests for the same entity wait for a single compression.
+ * </p>
+ * <p>
+ * Besides {@code gzip}, responses may be compressed with the {@link ContentCodec}s,
+ * such as {@code br} or {@code zstd}, discovered with the {@link java.util.ServiceLoader}
+ * or configured with {@link #setContentCodecs(List)}. The content coding is negotiated
+ * with the quality values of the {@code Accept-Encoding} request header; among the
+ * codings of equal quality, the content codecs are preferred over {@code gzip}, in the
+ * order they are configured.
+ * </p>
  */
 public class GzipHandler extends HandlerWrapper implements GzipFactory
 {
@@ -162,6 +184,13 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
 
     private int poolCapacity = -1;
     private DeflaterPool _deflaterPool = null;
+    private long _contentCacheSize = 0;
+    private int _contentCacheMaxEntrySize = 1024 * 1024;
+    private GzipContentCache _contentCache;
+    private List<ContentCodec> _contentCodecs;
+    private Map<String, ContentCodec> _encodings = Collections.emptyMap();
+    private String[] _preferredEncodings;
+    private CompressedContentFormat[] _formats = {CompressedContentFormat.GZIP};
 
     private int _minGzipSize = DEFAULT_MIN_GZIP_SIZE;
     private boolean _syncFlush = false;
@@ -195,6 +224,7 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _mimeTypes.exclude("application/bzip2");
         _mimeTypes.exclude("application/brotli");
         _mimeTypes.exclude("application/x-xz");
+        _mimeTypes.exclude("application/zstd");
         _mimeTypes.exclude("application/x-rar-compressed");
 
         if (LOG.isDebugEnabled())
@@ -415,27 +445,54 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         _deflaterPool = newDeflaterPool(poolCapacity);
         _vary = (_agentPatterns.size() > 0) ? GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING_USER_AGENT : GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
+        if (_contentCodecs == null)
+            _contentCodecs = ContentCodec.getContentCodecs();
+        Map<String, ContentCodec> encodings = new HashMap<>();
+        List<String> preferred = new ArrayList<>();
+        List<CompressedContentFormat> formats = new ArrayList<>();
+        for (ContentCodec codec : _contentCodecs)
+        {
+            String encoding = StringUtil.asciiToLowerCase(codec.getEncoding());
+            if (GZIP.equals(encoding) || encodings.putIfAbsent(encoding, codec) != null)
+                continue;
+            preferred.add(encoding);
+            formats.add(codec.getFormat());
+        }
+        preferred.add(GZIP);
+        formats.add(CompressedContentFormat.GZIP);
+        _encodings = encodings;
+        _preferredEncodings = preferred.toArray(new String[0]);
+        _formats = formats.toArray(new CompressedContentFormat[0]);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} encodings {}", this, preferred);
+
+        if (_contentCacheSize > 0)
+        {
+            _contentCache = new GzipContentCache(_contentCacheSize, _contentCacheMaxEntrySize);
+            addBean(_contentCache);
+        }
         super.doStart();
     }
 
     @Override
-    public Deflater getDeflater(Request request, long contentLength)
+    protected void doStop() throws Exception
     {
-        HttpFields httpFields = request.getHttpFields();
-        String ua = httpFields.get(HttpHeader.USER_AGENT);
-        if (ua != null && !isAgentGzipable(ua))
+        super.doStop();
+        if (_contentCache != null)
         {
-            LOG.debug("{} excluded user agent {}", this, request);
-            return null;
+            removeBean(_contentCache);
+            _contentCache = null;
         }
+    }
 
-        if (contentLength >= 0 && contentLength < _minGzipSize)
-        {
-            LOG.debug("{} excluded minGzipSize {}", this, request);
+    @Override
+    public Deflater getDeflater(Request request, long contentLength)
+    {
+        if (!isCompressible(request, contentLength))
             return null;
-        }
 
         // check the accept encoding header
+        HttpFields httpFields = request.getHttpFields();
         if (!httpFields.contains(HttpHeader.ACCEPT_ENCODING, "gzip"))
         {
             LOG.debug("{} excluded not gzip accept {}", this, request);
@@ -662,16 +719,20 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             if (field.getHeader() == HttpHeader.IF_NONE_MATCH || field.getHeader() == HttpHeader.IF_MATCH)
             {
                 String etag = field.getValue();
-                int i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote);
-                if (i > 0)
+                String original = etag;
+                for (CompressedContentFormat format : _formats)
                 {
-                    baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag", etag);
-                    while (i >= 0)
+                    int i = etag.indexOf(format._etagQuote);
+                    while (i > 0)
                     {
-                        etag = etag.substring(0, i) + etag.substring(i + CompressedContentFormat.GZIP._etag.length());
-                        i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote, i);
+                        etag = etag.substring(0, i) + etag.substring(i + format._etag.length());
+                        i = etag.indexOf(format._etagQuote, i);
                     }
+                }
 
+                if (!etag.equals(original))
+                {
+                    baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag", original);
                     fields.set(new HttpField(field.getHeader(), etag));
                 }
             }
@@ -765,6 +826,80 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         return _paths.test(requestURI);
     }
 
+    @Override
+    public ContentCodec getContentCodec(Request request, long contentLength)
+    {
+        if (_encodings.isEmpty() || !isCompressible(request, contentLength))
+            return null;
+
+        // Negotiate the content coding, preferring the content codecs over gzip.
+        QuotedQualityCSV accept = null;
+        for (HttpField field : request.getHttpFields())
+        {
+            if (field.getHeader() == HttpHeader.ACCEPT_ENCODING)
+            {
+                if (accept == null)
+                    accept = new QuotedQualityCSV(_preferredEncodings);
+                accept.addValue(StringUtil.asciiToLowerCase(field.getValue()));
+            }
+        }
+        if (accept == null)
+            return null;
+
+        for (String encoding : accept)
+        {
+            if (GZIP.equals(encoding) || "*".equals(encoding))
+                return null;
+            ContentCodec codec = _encodings.get(encoding);
+            if (codec != null)
+            {
+                LOG.debug("{} negotiated {} {}", this, encoding, request);
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private boolean isCompressible(Request request, long contentLength)
+    {
+        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
+        if (ua != null && !isAgentGzipable(ua))
+        {
+            LOG.debug("{} excluded user agent {}", this, request);
+            return false;
+        }
+
+        if (contentLength >= 0 && contentLength < _minGzipSize)
+        {
+            LOG.debug("{} excluded minGzipSize {}", this, request);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the content codecs used to compress responses besides gzip, in order of preference
+     */
+    @Override
+    public List<ContentCodec> getContentCodecs()
+    {
+        return _contentCodecs == null ? Collections.emptyList() : _contentCodecs;
+    }
+
+    /**
+     * <p>Sets the content codecs used to compress responses besides gzip, in order of preference.</p>
+     * <p>By default the content codecs discovered with the {@link java.util.ServiceLoader} are used.</p>
+     *
+     * @param codecs the content codecs, or an empty list to only compress with gzip
+     */
+    public void setContentCodecs(List<ContentCodec> codecs)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+
+        _contentCodecs = codecs == null ? null : new ArrayList<>(codecs);
+    }
+
     @Override
     public void recycle(Deflater deflater)
     {
@@ -955,6 +1090,55 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         poolCapacity = capacity;
     }
 
+    /**
+     * @return the maximum number of bytes of compressed content cached, or 0 if compressed content is not cached
+     */
+    public long getContentCacheSize()
+    {
+        return _contentCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of compressed responses to cache.
+     *
+     * @param size the maximum number of bytes of compressed content cached, or 0 to not cache compressed content
+     */
+    public void setContentCacheSize(long size)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+
+        _contentCacheSize = size;
+    }
+
+    /**
+     * @return the maximum size in bytes of a single cached compressed response
+     */
+    public int getContentCacheMaxEntrySize()
+    {
+        return _contentCacheMaxEntrySize;
+    }
+
+    /**
+     * Sets the maximum size of a single cached compressed response.
+     * Larger responses are compressed for every request.
+     *
+     * @param size the maximum size in bytes of a single cached compressed response
+     */
+    public void setContentCacheMaxEntrySize(int size)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+
+        _contentCacheMaxEntrySize = size;
+    }
+
+    @Override
+    public GzipContentCache getContentCache()
+    {
+        return _contentCache;
+    }
+
     protected DeflaterPool newDeflaterPool(int capacity)
     {
         return new DeflaterPool(capacity, Deflater.DEFAULT_COMPRESSION, true);
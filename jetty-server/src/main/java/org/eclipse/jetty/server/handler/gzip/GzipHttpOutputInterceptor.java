@@ -20,22 +20,32 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingNestedCallback;
 import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +61,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
@@ -65,7 +75,12 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final boolean _syncFlush;
 
     private Deflater _deflater;
+    private ContentCodec.Encoder _encoder;
+    private CompressedContentFormat _format = GZIP;
     private ByteBuffer _buffer;
+    private GzipContentCache _cache;
+    private String _cacheKey;
+    private ByteArrayOutputStream2 _compressed;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -111,7 +126,15 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 break;
 
             case COMPRESSING:
-                gzip(content, complete, callback);
+                compress(content, complete, callback);
+                break;
+
+            case CACHED:
+                // The compressed content has already been written from the cache.
+                if (complete)
+                    _interceptor.write(BufferUtil.EMPTY_BUFFER, true, callback);
+                else
+                    callback.succeeded();
                 break;
 
             default:
@@ -126,14 +149,33 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         BufferUtil.putIntLittleEndian(_buffer, _deflater.getTotalIn());
     }
 
-    private void gzip(ByteBuffer content, boolean complete, final Callback callback)
+    private void compress(ByteBuffer content, boolean complete, final Callback callback)
     {
         if (content.hasRemaining() || complete)
-            new GzipBufferCB(content, complete, callback).iterate();
+        {
+            if (_encoder != null)
+                new EncoderCB(content, complete, callback).iterate();
+            else
+                new GzipBufferCB(content, complete, callback).iterate();
+        }
         else
             callback.succeeded();
     }
 
+    private void release()
+    {
+        if (_deflater != null)
+        {
+            _factory.recycle(_deflater);
+            _deflater = null;
+        }
+        if (_encoder != null)
+        {
+            _encoder.end();
+            _encoder = null;
+        }
+    }
+
     protected void commit(ByteBuffer content, boolean complete, Callback callback)
     {
         // Are we excluding because of status?
@@ -150,9 +192,9 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 String responseEtag = response.getHttpFields().get(HttpHeader.ETAG);
                 if (requestEtags != null && responseEtag != null)
                 {
-                    String responseEtagGzip = etagGzip(responseEtag);
-                    if (requestEtags.contains(responseEtagGzip))
-                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagGzip);
+                    String responseEtagCompressed = etagCompressed(requestEtags, responseEtag);
+                    if (responseEtagCompressed != null)
+                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagCompressed);
                 }
             }
 
@@ -201,9 +243,18 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
-            _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
+            ContentCodec codec = _factory.getContentCodec(_channel.getRequest(), contentLength);
+            if (codec != null)
+            {
+                _encoder = codec.newEncoder();
+                _format = codec.getFormat();
+            }
+            else
+            {
+                _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
+            }
 
-            if (_deflater == null)
+            if (_deflater == null && _encoder == null)
             {
                 LOG.debug("{} exclude no deflater", this);
                 _state.set(GZState.NOT_COMPRESSING);
@@ -211,28 +262,182 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 return;
             }
 
-            fields.put(GZIP._contentEncoding);
+            fields.put(_format._contentEncoding);
             _crc.reset();
 
             // Adjust headers
             response.setContentLength(-1);
             String etag = fields.get(HttpHeader.ETAG);
             if (etag != null)
-                fields.put(HttpHeader.ETAG, etagGzip(etag));
+                fields.put(HttpHeader.ETAG, etagCompressed(etag, _format));
 
-            LOG.debug("{} compressing {}", this, _deflater);
+            // Is the compressed content cached, or being compressed by a concurrent request?
+            String key = contentCacheKey(response, etag);
+            if (key != null)
+            {
+                CompletableFuture<ByteBuffer> cached = _cache.acquire(key);
+                if (cached != null)
+                {
+                    LOG.debug("{} compressed content from cache {}", this, key);
+                    fromCache(cached, content, complete, callback);
+                    return;
+                }
+                _cacheKey = key;
+                _compressed = new ByteArrayOutputStream2(Math.min(_bufferSize, _cache.getMaxEntrySize()));
+                // The response may complete without the last write, for example
+                // if it is aborted, so never leave the compression pending.
+                _channel.addListener(new HttpChannel.Listener()
+                {
+                    @Override
+                    public void onComplete(Request request)
+                    {
+                        abandonCache();
+                    }
+                });
+            }
+
+            LOG.debug("{} compressing {} {}", this, _format._encoding, _deflater == null ? _encoder : _deflater);
             _state.set(GZState.COMPRESSING);
 
-            gzip(content, complete, callback);
+            compress(content, complete, callback);
         }
         else
             callback.failed(new WritePendingException());
     }
 
-    private String etagGzip(String etag)
+    private String contentCacheKey(Response response, String etag)
+    {
+        _cache = _factory.getContentCache();
+        if (_cache == null)
+            return null;
+
+        // Only cache complete entities that are not private.
+        Request request = _channel.getRequest();
+        if (response.getStatus() != HttpStatus.OK_200 || !HttpMethod.GET.is(request.getMethod()))
+            return null;
+        HttpFields fields = response.getHttpFields();
+        if (fields.contains(HttpHeader.SET_COOKIE) ||
+            fields.contains(HttpHeader.CACHE_CONTROL, "private") ||
+            fields.contains(HttpHeader.CACHE_CONTROL, "no-store"))
+            return null;
+
+        // Responses to authorized requests are shared only if explicitly allowed, see RFC 7234 section 3.2.
+        if (request.getHttpFields().contains(HttpHeader.AUTHORIZATION) && !isShareable(fields))
+            return null;
+
+        // The entity is identified by its strong ETag, as a weak ETag or a
+        // Last-Modified date may be shared by different representations.
+        if (etag == null || etag.startsWith("W/"))
+            return null;
+
+        StringBuilder key = new StringBuilder(_format._encoding).append(' ').append(request.getRequestURI());
+        String query = request.getQueryString();
+        if (query != null)
+            key.append('?').append(query);
+        return key.append(' ').append(etag).toString();
+    }
+
+    private static boolean isShareable(HttpFields fields)
+    {
+        for (String directive : fields.getCSV(HttpHeader.CACHE_CONTROL, false))
+        {
+            directive = StringUtil.asciiToLowerCase(directive);
+            if ("public".equals(directive) || directive.startsWith("s-maxage="))
+                return true;
+        }
+        return false;
+    }
+
+    private void fromCache(CompletableFuture<ByteBuffer> cached, ByteBuffer content, boolean complete, Callback callback)
+    {
+        if (cached.isDone())
+        {
+            writeCached(cached.getNow(null), content, complete, callback);
+            return;
+        }
+
+        // Wait for the concurrent compression, but not forever.
+        AtomicBoolean once = new AtomicBoolean();
+        Scheduler.Task timeout = _channel.getScheduler().schedule(() ->
+        {
+            if (once.compareAndSet(false, true))
+                _channel.getConnector().getExecutor().execute(() -> writeCached(null, content, complete, callback));
+        }, _cache.getMaxCoalesceWait(), TimeUnit.MILLISECONDS);
+        cached.whenComplete((compressed, failure) ->
+        {
+            if (once.compareAndSet(false, true))
+            {
+                timeout.cancel();
+                _channel.getConnector().getExecutor().execute(() -> writeCached(compressed, content, complete, callback));
+            }
+        });
+    }
+
+    private void writeCached(ByteBuffer compressed, ByteBuffer content, boolean complete, Callback callback)
+    {
+        if (compressed == null)
+        {
+            // The concurrent compression could not be cached, compress the content.
+            LOG.debug("{} compressing {} {}", this, _format._encoding, _deflater == null ? _encoder : _deflater);
+            _state.set(GZState.COMPRESSING);
+            compress(content, complete, callback);
+            return;
+        }
+
+        release();
+        _state.set(GZState.CACHED);
+        _interceptor.write(compressed, complete, callback);
+    }
+
+    private void toCache(ByteBuffer buffer, boolean last)
+    {
+        if (_cacheKey == null)
+            return;
+
+        int length = buffer.remaining();
+        if (_compressed.getCount() + length > _cache.getMaxEntrySize())
+        {
+            // Too large to be cached.
+            abandonCache();
+            return;
+        }
+
+        _compressed.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        if (last)
+        {
+            _cache.put(_cacheKey, ByteBuffer.wrap(_compressed.getBuf(), 0, _compressed.getCount()));
+            _cacheKey = null;
+            _compressed = null;
+        }
+    }
+
+    private void abandonCache()
+    {
+        if (_cacheKey == null)
+            return;
+        _cache.abandon(_cacheKey);
+        _cacheKey = null;
+        _compressed = null;
+    }
+
+    private String etagCompressed(String requestEtags, String responseEtag)
+    {
+        String etag = etagCompressed(responseEtag, GZIP);
+        if (requestEtags.contains(etag))
+            return etag;
+        for (ContentCodec codec : _factory.getContentCodecs())
+        {
+            etag = etagCompressed(responseEtag, codec.getFormat());
+            if (requestEtags.contains(etag))
+                return etag;
+        }
+        return null;
+    }
+
+    private String etagCompressed(String etag, CompressedContentFormat format)
     {
         int end = etag.length() - 1;
-        return (etag.charAt(end) == '"') ? etag.substring(0, end) + GZIP._etag + '"' : etag + GZIP._etag;
+        return (etag.charAt(end) == '"') ? etag.substring(0, end) + format._etag + '"' : etag + format._etag;
     }
 
     public void noCompression()
@@ -297,6 +502,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         @Override
         protected void onCompleteFailure(Throwable x)
         {
+            abandonCache();
             _factory.recycle(_deflater);
             _deflater = null;
             super.onCompleteFailure(x);
@@ -398,6 +604,9 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 _deflater = null;
             }
 
+            // store the compressed buffer, if the content is cacheable.
+            toCache(_buffer, _deflater == null);
+
             // write the compressed buffer.
             _interceptor.write(_buffer, _deflater == null, this);
             return Action.SCHEDULED;
@@ -416,4 +625,80 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 _deflater != null && _deflater.finished() ? "(finished)" : "");
         }
     }
+
+    private class EncoderCB extends IteratingNestedCallback
+    {
+        private final ByteBuffer _content;
+        private final boolean _last;
+
+        public EncoderCB(ByteBuffer content, boolean complete, Callback callback)
+        {
+            super(callback);
+            _content = content;
+            _last = complete;
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            abandonCache();
+            release();
+            super.onCompleteFailure(x);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            // If we have no encoder, then the encoded stream has been terminated and written below.
+            if (_encoder == null)
+            {
+                if (_buffer != null)
+                {
+                    _channel.getByteBufferPool().release(_buffer);
+                    _buffer = null;
+                }
+                return Action.SUCCEEDED;
+            }
+
+            if (_buffer == null)
+                _buffer = _channel.getByteBufferPool().acquire(_bufferSize, false);
+            else
+                BufferUtil.clear(_buffer);
+
+            // encode the content into the available space in the buffer
+            ContentCodec.Flush flush = _last ? ContentCodec.Flush.FINISH : _syncFlush ? ContentCodec.Flush.SYNC : ContentCodec.Flush.NONE;
+            boolean done = _encoder.encode(_content, _buffer, flush);
+
+            if (done && _last)
+            {
+                // the encoded stream is terminated, release the encoder to flag that we will
+                // have had completeSuccess when the write below completes.
+                _encoder.end();
+                _encoder = null;
+            }
+            else if (done && BufferUtil.isEmpty(_buffer))
+            {
+                // all the content has been consumed, nothing to write until more content.
+                return Action.SUCCEEDED;
+            }
+
+            // store the encoded buffer, if the content is cacheable.
+            toCache(_buffer, _encoder == null);
+
+            // write the encoded buffer.
+            _interceptor.write(_buffer, _encoder == null, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[content=%s last=%b buffer=%s encoder=%s]",
+                super.toString(),
+                BufferUtil.toDetailString(_content),
+                _last,
+                BufferUtil.toDetailString(_buffer),
+                _encoder);
+        }
+    }
 }
@@ -42,10 +42,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -205,6 +208,8 @@ public class ResourceCacheTest
         directory = Resource.newResource(files[0].getParentFile().getAbsolutePath());
 
         cache = new CachedContentFactory(null, directory, new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        // Test the least recently used order of eviction.
+        cache.setEvictionPolicy(new LRUEvictionPolicy());
 
         cache.setMaxCacheSize(95);
         cache.setMaxCachedFileSize(85);
@@ -232,6 +237,7 @@ public class ResourceCacheTest
             assertEquals(0, cache.getCachedFiles());
 
             cache = new CachedContentFactory(null, directory, new MimeTypes(), true, false, CompressedContentFormat.NONE);
+            cache.setEvictionPolicy(new LRUEvictionPolicy());
             cache.setMaxCacheSize(95);
             cache.setMaxCachedFileSize(85);
             cache.setMaxCachedFiles(4);
@@ -346,6 +352,57 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testFrequentContentSurvivesScan() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        String[] names = new String[200];
+        for (int i = 0; i < names.length; i++)
+        {
+            names[i] = "F-" + i + ".txt";
+            makeFile(basePath.resolve(names[i]), "content " + i);
+        }
+        Resource directory = new PathResource(basePath);
+
+        CachedContentFactory cache = new CachedContentFactory(null, directory, new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(20);
+
+        // Access the hot content frequently.
+        int hot = 10;
+        for (int r = 0; r < 5; r++)
+        {
+            for (int i = 0; i < hot; i++)
+            {
+                assertThat(cache.getContent(names[i], 4096), instanceOf(CachedContentFactory.CachedHttpContent.class));
+            }
+        }
+        assertEquals(hot, cache.getCachedFiles());
+
+        // Scan all the other content once.
+        for (int i = hot; i < names.length; i++)
+        {
+            cache.getContent(names[i], 4096);
+        }
+        assertThat(cache.getCachedFiles(), lessThanOrEqualTo(20));
+        assertThat(cache.getEvictions(), greaterThan(0L));
+
+        // The hot content is still cached.
+        cache.resetStatistics();
+        for (int i = 0; i < hot; i++)
+        {
+            cache.getContent(names[i], 4096);
+        }
+        assertEquals(hot, cache.getHits());
+        assertEquals(1.0, cache.getHitRatio());
+
+        TinyLFUEvictionPolicy policy = (TinyLFUEvictionPolicy)cache.getEvictionPolicy();
+        assertThat(policy.getRejections(), greaterThan(0L));
+        assertThat(policy.getFrequency(names[0]), greaterThan(policy.getFrequency(names[hot])));
+
+        cache.flushCache();
+        assertEquals(0, cache.getCachedFiles());
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -22,6 +22,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,34 +49,52 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.ssl.KeyStoreScanner;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+@ExtendWith(WorkDirExtension.class)
 public class SslContextFactoryReloadTest
 {
     public static final String KEYSTORE_1 = "src/test/resources/reload_keystore_1.p12";
     public static final String KEYSTORE_2 = "src/test/resources/reload_keystore_2.p12";
 
+    public WorkDir workDir;
     private Server server;
     private SslContextFactory.Server sslContextFactory;
     private ServerConnector connector;
 
     private void start(Handler handler) throws Exception
+    {
+        start(handler, false);
+    }
+
+    private void start(Handler handler, boolean hotSwapKeyManagers) throws Exception
+    {
+        start(handler, hotSwapKeyManagers, KEYSTORE_1);
+    }
+
+    private void start(Handler handler, boolean hotSwapKeyManagers, String keyStorePath) throws Exception
     {
         server = new Server();
 
         sslContextFactory = new SslContextFactory.Server();
-        sslContextFactory.setKeyStorePath(KEYSTORE_1);
+        sslContextFactory.setKeyStorePath(keyStorePath);
         sslContextFactory.setKeyStorePassword("storepwd");
+        sslContextFactory.setHotSwapKeyManagers(hotSwapKeyManagers);
 
         HttpConfiguration httpsConfig = new HttpConfiguration();
         httpsConfig.addCustomizer(new SecureRequestCustomizer());
@@ -151,6 +173,94 @@ public class SslContextFactoryReloadTest
         }
     }
 
+    @Test
+    public void testReloadKeyManagers() throws Exception
+    {
+        start(new EchoHandler(), true);
+        SSLContext serverContext = sslContextFactory.getSslContext();
+
+        SSLContext ctx = SSLContext.getInstance("TLSv1.2");
+        ctx.init(null, SslContextFactory.TRUST_ALL_CERTS, null);
+        SSLSocketFactory socketFactory = ctx.getSocketFactory();
+        try (SSLSocket client1 = (SSLSocket)socketFactory.createSocket("localhost", connector.getLocalPort()))
+        {
+            String serverDN1 = client1.getSession().getPeerPrincipal().getName();
+            assertThat(serverDN1, Matchers.startsWith("CN=localhost1"));
+
+            String request =
+                "GET / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "\r\n";
+
+            OutputStream output1 = client1.getOutputStream();
+            output1.write(request.getBytes(StandardCharsets.UTF_8));
+            output1.flush();
+
+            HttpTester.Response response1 = HttpTester.parseResponse(HttpTester.from(client1.getInputStream()));
+            assertNotNull(response1);
+            assertThat(response1.getStatus(), Matchers.equalTo(HttpStatus.OK_200));
+
+            // Swap the key managers.
+            sslContextFactory.reloadKeyManagers(sslContextFactory -> sslContextFactory.setKeyStorePath(KEYSTORE_2));
+
+            // The SSLContext must not be recreated.
+            assertSame(serverContext, sslContextFactory.getSslContext());
+
+            // New connection should use the new keystore.
+            try (SSLSocket client2 = (SSLSocket)socketFactory.createSocket("localhost", connector.getLocalPort()))
+            {
+                String serverDN2 = client2.getSession().getPeerPrincipal().getName();
+                assertThat(serverDN2, Matchers.startsWith("CN=localhost2"));
+            }
+
+            // Must still be possible to make requests with the first connection.
+            output1.write(request.getBytes(StandardCharsets.UTF_8));
+            output1.flush();
+
+            response1 = HttpTester.parseResponse(HttpTester.from(client1.getInputStream()));
+            assertNotNull(response1);
+            assertThat(response1.getStatus(), Matchers.equalTo(HttpStatus.OK_200));
+        }
+    }
+
+    @Test
+    public void testKeyStoreScannerReload() throws Exception
+    {
+        Path keyStore = workDir.getEmptyPathDir().resolve("keystore.p12");
+        Files.copy(Paths.get(KEYSTORE_1), keyStore);
+        start(new EchoHandler(), true, keyStore.toString());
+        KeyStoreScanner keyStoreScanner = new KeyStoreScanner(sslContextFactory);
+        server.addBean(keyStoreScanner);
+
+        SSLContext ctx = SSLContext.getInstance("TLSv1.2");
+        ctx.init(null, SslContextFactory.TRUST_ALL_CERTS, null);
+        SSLSocketFactory socketFactory = ctx.getSocketFactory();
+        try (SSLSocket client1 = (SSLSocket)socketFactory.createSocket("localhost", connector.getLocalPort()))
+        {
+            String serverDN1 = client1.getSession().getPeerPrincipal().getName();
+            assertThat(serverDN1, Matchers.startsWith("CN=localhost1"));
+        }
+
+        // Replace the key store file, the scanner must reload the key managers.
+        Path replacement = keyStore.resolveSibling("keystore.tmp");
+        Files.copy(Paths.get(KEYSTORE_2), replacement);
+        Files.move(replacement, keyStore, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (keyStoreScanner.getReloads() == 0 && System.nanoTime() < end)
+        {
+            Thread.sleep(100);
+        }
+        assertEquals(1, keyStoreScanner.getReloads());
+        assertEquals(0, keyStoreScanner.getReloadFailures());
+
+        try (SSLSocket client2 = (SSLSocket)socketFactory.createSocket("localhost", connector.getLocalPort()))
+        {
+            String serverDN2 = client2.getSession().getPeerPrincipal().getName();
+            assertThat(serverDN2, Matchers.startsWith("CN=localhost2"));
+        }
+    }
+
     @Test
     public void testReloadWhileServing() throws Exception
     {
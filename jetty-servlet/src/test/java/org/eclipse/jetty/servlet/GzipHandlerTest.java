@@ -28,8 +28,13 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -44,10 +49,13 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.ContentCodec;
 import org.eclipse.jetty.http.tools.HttpTester;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.GzipContentCache;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -88,6 +96,8 @@ public class GzipHandlerTest
 
     private static final String __contentETag = String.format("W/\"%x\"", __content.hashCode());
     private static final String __contentETagGzip = String.format("W/\"%x--gzip\"", __content.hashCode());
+    private static final String __contentStrongETag = String.format("\"%x\"", __content.hashCode());
+    private static final String __contentStrongETagGzip = String.format("\"%x--gzip\"", __content.hashCode());
     private static final String __icontent = "BEFORE" + __content + "AFTER";
 
     private Server _server;
@@ -113,6 +123,7 @@ public class GzipHandlerTest
         servlets.addServletWithMapping(MicroServlet.class, "/micro");
         servlets.addServletWithMapping(MicroChunkedServlet.class, "/microchunked");
         servlets.addServletWithMapping(TestServlet.class, "/content");
+        servlets.addServletWithMapping(CacheableServlet.class, "/cacheable");
         servlets.addServletWithMapping(ForwardServlet.class, "/forward");
         servlets.addServletWithMapping(IncludeServlet.class, "/include");
         servlets.addServletWithMapping(EchoServlet.class, "/echo/*");
@@ -184,6 +195,19 @@ public class GzipHandlerTest
         }
     }
 
+    public static class CacheableServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setHeader("ETag", __contentStrongETag);
+            if (req.getParameter("cacheControl") != null)
+                response.setHeader("Cache-Control", req.getParameter("cacheControl"));
+            PrintWriter writer = response.getWriter();
+            writer.write(__content);
+        }
+    }
+
     public static class AsyncServlet extends HttpServlet
     {
         @Override
@@ -581,6 +605,131 @@ public class GzipHandlerTest
         assertThat(response.get("ETag"), is(__contentETagGzip));
     }
 
+    @Test
+    public void testContentCacheGzipHandler() throws Exception
+    {
+        GzipContentCache cache = startContentCache();
+
+        byte[] first = null;
+        for (int i = 0; i < 2; i++)
+        {
+            HttpTester.Response response = getGzipped("/ctx/cacheable", null);
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+            assertThat(response.get("ETag"), is(__contentStrongETagGzip));
+
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(__content, testOut.toString("UTF8"));
+
+            if (first == null)
+                first = response.getContentBytes();
+            else
+                assertThat(response.getContentBytes(), is(first));
+        }
+
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getEntries(), is(1));
+    }
+
+    @Test
+    public void testContentCacheWeakETagNotCached() throws Exception
+    {
+        GzipContentCache cache = startContentCache();
+
+        // A weak ETag may be shared by representations that differ in their bytes.
+        HttpTester.Response response = getGzipped("/ctx/content", null);
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("ETag"), is(__contentETagGzip));
+
+        assertThat(cache.getMisses(), is(0L));
+        assertThat(cache.getEntries(), is(0));
+    }
+
+    @Test
+    public void testContentCacheAuthorizationNotCachedUnlessPublic() throws Exception
+    {
+        GzipContentCache cache = startContentCache();
+
+        HttpTester.Response response = getGzipped("/ctx/cacheable", "Basic dXNlcjpwYXNzd29yZA==");
+        assertThat(response.getStatus(), is(200));
+        assertThat(cache.getEntries(), is(0));
+
+        response = getGzipped("/ctx/cacheable?cacheControl=s-maxage%3D60", "Basic dXNlcjpwYXNzd29yZA==");
+        assertThat(response.getStatus(), is(200));
+        assertThat(cache.getEntries(), is(1));
+    }
+
+    private GzipContentCache startContentCache() throws Exception
+    {
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        _server.stop();
+        gzipHandler.setContentCacheSize(64 * 1024);
+        _server.start();
+        return gzipHandler.getContentCache();
+    }
+
+    private HttpTester.Response getGzipped(String uri, String authorization) throws Exception
+    {
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI(uri);
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip");
+        if (authorization != null)
+            request.setHeader("Authorization", authorization);
+        return HttpTester.parseResponse(_connector.getResponse(request.generate()));
+    }
+
+    @Test
+    public void testContentCodecGzipHandler() throws Exception
+    {
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        _server.stop();
+        gzipHandler.setContentCodecs(List.of(new DeflateCodec()));
+        _server.start();
+
+        // generated and parsed test
+        HttpTester.Request request = HttpTester.newRequest();
+        HttpTester.Response response;
+
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip, deflate");
+
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("deflate"));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+        assertThat(response.getCSV("Vary", false), Matchers.contains("Accept-Encoding"));
+
+        InputStream testIn = new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+        IO.copy(testIn, testOut);
+        assertEquals(__content, testOut.toString("UTF8"));
+
+        // gzip is preferred by the quality values.
+        request.setHeader("accept-encoding", "gzip, deflate;q=0.5");
+
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertThat(response.get("ETag"), is(__contentETagGzip));
+
+        testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        testOut = new ByteArrayOutputStream();
+        IO.copy(testIn, testOut);
+        assertEquals(__content, testOut.toString("UTF8"));
+    }
+
     @Test
     public void testDeleteETagGzipHandler() throws Exception
     {
@@ -802,6 +951,76 @@ public class GzipHandlerTest
         assertThat(response.getContentBytes().length, is(512 * 1024));
     }
 
+    public static class DeflateCodec implements ContentCodec
+    {
+        private static final CompressedContentFormat DEFLATE = new CompressedContentFormat("deflate", ".zz");
+
+        @Override
+        public CompressedContentFormat getFormat()
+        {
+            return DEFLATE;
+        }
+
+        @Override
+        public Encoder newEncoder()
+        {
+            Deflater deflater = new Deflater();
+            return new Encoder()
+            {
+                @Override
+                public boolean encode(ByteBuffer input, ByteBuffer output, Flush flush)
+                {
+                    deflater.setInput(input);
+                    if (flush == Flush.FINISH)
+                        deflater.finish();
+                    int position = BufferUtil.flipToFill(output);
+                    deflater.deflate(output, flush == Flush.SYNC ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                    boolean full = !output.hasRemaining();
+                    BufferUtil.flipToFlush(output, position);
+                    if (flush == Flush.FINISH)
+                        return deflater.finished();
+                    return !input.hasRemaining() && (flush == Flush.NONE || !full);
+                }
+
+                @Override
+                public void end()
+                {
+                    deflater.end();
+                }
+            };
+        }
+
+        @Override
+        public Decoder newDecoder()
+        {
+            Inflater inflater = new Inflater();
+            return new Decoder()
+            {
+                @Override
+                public ByteBuffer decode(ByteBuffer input)
+                {
+                    try
+                    {
+                        inflater.setInput(input);
+                        ByteBuffer output = ByteBuffer.allocate(4096);
+                        inflater.inflate(output);
+                        return output.flip();
+                    }
+                    catch (DataFormatException x)
+                    {
+                        throw new IllegalArgumentException(x);
+                    }
+                }
+
+                @Override
+                public void end()
+                {
+                    inflater.end();
+                }
+            };
+        }
+    }
+
     public static class CheckFilter implements Filter
     {
         @Override
@@ -23,14 +23,20 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -199,4 +205,407 @@ public interface SocketAddressResolver
             });
         }
     }
+
+    /**
+     * <p>Caches the addresses resolved by another {@link SocketAddressResolver}.</p>
+     * <p>The JVM caches DNS lookups with a single, JVM-wide, time to live, and a slow DNS
+     * server stalls every connection setup that misses that cache.
+     * This class caches the resolved addresses of each host for a configurable time to live,
+     * possibly different for each host, and refreshes them in the background via the nested
+     * resolver when they are accessed after a fraction of their time to live, so that hosts
+     * that are in use never wait for a DNS lookup.
+     * Hosts that do not exist are cached for a shorter time, to avoid repeated lookups.
+     * Concurrent lookups for the same host are coalesced into a single lookup.</p>
+     * <p>Each resolution returns the addresses of the host rotated by one position, so that
+     * new connections to a host with multiple addresses are spread across all of them.</p>
+     * <p>Example usage:</p>
+     * <pre>
+     * SocketAddressResolver async = new SocketAddressResolver.Async(executor, scheduler, timeout);
+     * httpClient.setSocketAddressResolver(new SocketAddressResolver.Caching(async));
+     * </pre>
+     */
+    @ManagedObject("The caching address resolver")
+    public static class Caching implements SocketAddressResolver
+    {
+        private static final Logger LOG = LoggerFactory.getLogger(Caching.class);
+
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<String, Lookup> lookups = new ConcurrentHashMap<>();
+        private final Map<String, Long> timeToLives = new ConcurrentHashMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder negativeHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder refreshes = new LongAdder();
+        private final SocketAddressResolver resolver;
+        private long timeToLive = TimeUnit.SECONDS.toMillis(30);
+        private long negativeTimeToLive = TimeUnit.SECONDS.toMillis(5);
+        private double refreshAheadFactor = 0.75;
+        private int maxEntries = 1024;
+
+        /**
+         * @param resolver the resolver that performs the DNS lookups
+         */
+        public Caching(SocketAddressResolver resolver)
+        {
+            this.resolver = resolver;
+        }
+
+        public SocketAddressResolver getResolver()
+        {
+            return resolver;
+        }
+
+        @ManagedAttribute("The time, in milliseconds, resolved addresses are cached")
+        public long getTimeToLive()
+        {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(long timeToLive)
+        {
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * @param host the host
+         * @return the time, in milliseconds, the addresses of the given host are cached
+         */
+        public long getTimeToLive(String host)
+        {
+            return timeToLives.getOrDefault(normalize(host), getTimeToLive());
+        }
+
+        /**
+         * <p>Sets the time, in milliseconds, the addresses of the given host are cached,
+         * overriding the {@link #setTimeToLive(long) default time to live}.</p>
+         *
+         * @param host the host
+         * @param timeToLive the time to live in milliseconds, or a negative value to use the default time to live
+         */
+        public void setTimeToLive(String host, long timeToLive)
+        {
+            if (timeToLive < 0)
+                timeToLives.remove(normalize(host));
+            else
+                timeToLives.put(normalize(host), timeToLive);
+        }
+
+        @ManagedAttribute("The time, in milliseconds, unknown hosts are cached")
+        public long getNegativeTimeToLive()
+        {
+            return negativeTimeToLive;
+        }
+
+        public void setNegativeTimeToLive(long negativeTimeToLive)
+        {
+            this.negativeTimeToLive = negativeTimeToLive;
+        }
+
+        @ManagedAttribute("The fraction of the time to live after which cached addresses are refreshed in the background")
+        public double getRefreshAheadFactor()
+        {
+            return refreshAheadFactor;
+        }
+
+        /**
+         * @param refreshAheadFactor the fraction of the time to live after which cached
+         * addresses are refreshed in the background when accessed, or 1 to disable refresh-ahead
+         */
+        public void setRefreshAheadFactor(double refreshAheadFactor)
+        {
+            if (refreshAheadFactor <= 0 || refreshAheadFactor > 1)
+                throw new IllegalArgumentException("Invalid refresh ahead factor " + refreshAheadFactor);
+            this.refreshAheadFactor = refreshAheadFactor;
+        }
+
+        @ManagedAttribute("The max number of cached hosts")
+        public int getMaxEntries()
+        {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries)
+        {
+            this.maxEntries = maxEntries;
+        }
+
+        @ManagedAttribute(value = "The number of cached hosts", readonly = true)
+        public int getEntries()
+        {
+            return entries.size();
+        }
+
+        @ManagedAttribute(value = "The number of resolutions served from the cache", readonly = true)
+        public long getHits()
+        {
+            return hits.longValue();
+        }
+
+        @ManagedAttribute(value = "The number of unknown host failures served from the cache", readonly = true)
+        public long getNegativeHits()
+        {
+            return negativeHits.longValue();
+        }
+
+        @ManagedAttribute(value = "The number of resolutions not served from the cache", readonly = true)
+        public long getMisses()
+        {
+            return misses.longValue();
+        }
+
+        @ManagedAttribute(value = "The number of background refreshes", readonly = true)
+        public long getRefreshes()
+        {
+            return refreshes.longValue();
+        }
+
+        @ManagedOperation(value = "Clears the cached addresses", impact = "ACTION")
+        public void clear()
+        {
+            entries.clear();
+        }
+
+        @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+        public void resetStatistics()
+        {
+            hits.reset();
+            negativeHits.reset();
+            misses.reset();
+            refreshes.reset();
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            String key = normalize(host);
+            long now = System.nanoTime();
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isValid(now))
+            {
+                if (entry.failure != null)
+                {
+                    negativeHits.increment();
+                    promise.failed(entry.failure);
+                    return;
+                }
+
+                hits.increment();
+                if (entry.isRefreshable(now) && entry.refreshing.compareAndSet(false, true))
+                    refresh(host, key);
+                promise.succeeded(entry.toSocketAddresses(port));
+                return;
+            }
+
+            misses.increment();
+            Lookup lookup = new Lookup();
+            lookup.add(port, promise);
+            while (true)
+            {
+                Lookup existing = lookups.putIfAbsent(key, lookup);
+                if (existing == null)
+                    break;
+                if (existing.add(port, promise))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Coalescing lookup of {}", host);
+                    return;
+                }
+                // The existing lookup completed concurrently.
+                lookups.remove(key, existing);
+            }
+
+            resolver.resolve(host, 0, new Promise<>()
+            {
+                @Override
+                public void succeeded(List<InetSocketAddress> result)
+                {
+                    Entry entry = store(key, newEntry(key, result, null));
+                    lookups.remove(key, lookup);
+                    lookup.succeeded(entry);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    if (x instanceof UnknownHostException)
+                        store(key, newEntry(key, null, x));
+                    lookups.remove(key, lookup);
+                    lookup.failed(x);
+                }
+            });
+        }
+
+        private void refresh(String host, String key)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Refreshing addresses of {}", host);
+            refreshes.increment();
+            resolver.resolve(host, 0, new Promise<>()
+            {
+                @Override
+                public void succeeded(List<InetSocketAddress> result)
+                {
+                    store(key, newEntry(key, result, null));
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    // Keep the cached addresses until they expire;
+                    // the next access after expiration will lookup again.
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Could not refresh addresses of {}", host, x);
+                }
+            });
+        }
+
+        private Entry newEntry(String key, List<InetSocketAddress> addresses, Throwable failure)
+        {
+            long now = System.nanoTime();
+            long timeToLive = failure == null ? getTimeToLive(key) : getNegativeTimeToLive();
+            long expires = now + TimeUnit.MILLISECONDS.toNanos(timeToLive);
+            long refreshAt = now + (long)(TimeUnit.MILLISECONDS.toNanos(timeToLive) * getRefreshAheadFactor());
+            InetAddress[] result = null;
+            if (addresses != null)
+            {
+                result = new InetAddress[addresses.size()];
+                for (int i = 0; i < result.length; ++i)
+                {
+                    result[i] = addresses.get(i).getAddress();
+                }
+            }
+            return new Entry(result, failure, expires, refreshAt);
+        }
+
+        private Entry store(String key, Entry entry)
+        {
+            if (entries.size() >= getMaxEntries() && !entries.containsKey(key))
+                evict();
+            entries.put(key, entry);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Cached {} for {}", entry, key);
+            return entry;
+        }
+
+        private void evict()
+        {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> !entry.isValid(now));
+            // Still full, evict arbitrary entries.
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() >= getMaxEntries() && iterator.hasNext())
+            {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        private static String normalize(String host)
+        {
+            return StringUtil.asciiToLowerCase(host);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[entries=%d,resolver=%s]", getClass().getSimpleName(), hashCode(), entries.size(), resolver);
+        }
+
+        private static class Entry
+        {
+            private final AtomicInteger cursor = new AtomicInteger();
+            private final AtomicBoolean refreshing = new AtomicBoolean();
+            private final InetAddress[] addresses;
+            private final Throwable failure;
+            private final long expires;
+            private final long refreshAt;
+
+            private Entry(InetAddress[] addresses, Throwable failure, long expires, long refreshAt)
+            {
+                this.addresses = addresses;
+                this.failure = failure;
+                this.expires = expires;
+                this.refreshAt = refreshAt;
+            }
+
+            private boolean isValid(long now)
+            {
+                return now - expires < 0;
+            }
+
+            private boolean isRefreshable(long now)
+            {
+                return now - refreshAt >= 0;
+            }
+
+            private List<InetSocketAddress> toSocketAddresses(int port)
+            {
+                int length = addresses.length;
+                int start = length == 0 ? 0 : Math.floorMod(cursor.getAndIncrement(), length);
+                List<InetSocketAddress> result = new ArrayList<>(length);
+                for (int i = 0; i < length; ++i)
+                {
+                    result.add(new InetSocketAddress(addresses[(start + i) % length], port));
+                }
+                return result;
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("%s@%x[addresses=%d,failure=%s]", getClass().getSimpleName(), hashCode(), addresses == null ? 0 : addresses.length, failure);
+            }
+        }
+
+        private static class Lookup
+        {
+            private final List<Waiter> waiters = new ArrayList<>();
+            private boolean complete;
+
+            private synchronized boolean add(int port, Promise<List<InetSocketAddress>> promise)
+            {
+                if (complete)
+                    return false;
+                waiters.add(new Waiter(port, promise));
+                return true;
+            }
+
+            private List<Waiter> complete()
+            {
+                synchronized (this)
+                {
+                    complete = true;
+                    return new ArrayList<>(waiters);
+                }
+            }
+
+            private void succeeded(Entry entry)
+            {
+                for (Waiter waiter : complete())
+                {
+                    waiter.promise.succeeded(entry.toSocketAddresses(waiter.port));
+                }
+            }
+
+            private void failed(Throwable failure)
+            {
+                for (Waiter waiter : complete())
+                {
+                    waiter.promise.failed(failure);
+                }
+            }
+        }
+
+        private static class Waiter
+        {
+            private final int port;
+            private final Promise<List<InetSocketAddress>> promise;
+
+            private Waiter(int port, Promise<List<InetSocketAddress>> promise)
+            {
+                this.port = port;
+                this.promise = promise;
+            }
+        }
+    }
 }
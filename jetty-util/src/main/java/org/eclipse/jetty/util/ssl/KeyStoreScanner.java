@@ -0,0 +1,166 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.ssl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.eclipse.jetty.util.Scanner;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Scanner} listener that watches the key store file of a {@link SslContextFactory}
+ * and reloads its key managers when the file is created or modified.</p>
+ * <p>The reload is performed via {@link SslContextFactory#reloadKeyManagers(Consumer)}, so
+ * that when {@link SslContextFactory#isHotSwapKeyManagers()} is {@code true} the key managers
+ * are swapped without recreating the {@link javax.net.ssl.SSLContext} and without pausing the
+ * creation of new TLS connections.</p>
+ * <p>The parent directory of the key store file is watched, rather than the file itself,
+ * so that key stores replaced by an atomic rename are detected as well.</p>
+ */
+@ManagedObject("Watches the key store file and reloads the SslContextFactory key managers")
+public class KeyStoreScanner extends ContainerLifeCycle implements Scanner.DiscreteListener
+{
+    private static final Logger LOG = LoggerFactory.getLogger(KeyStoreScanner.class);
+
+    private final AtomicLong _reloads = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private final SslContextFactory _sslContextFactory;
+    private final Path _keyStorePath;
+    private final Scanner _scanner;
+
+    public KeyStoreScanner(SslContextFactory sslContextFactory)
+    {
+        _sslContextFactory = sslContextFactory;
+        try
+        {
+            Resource keyStoreResource = sslContextFactory.getKeyStoreResource();
+            File keyStoreFile = keyStoreResource == null ? null : keyStoreResource.getFile();
+            if (keyStoreFile == null || !keyStoreFile.exists())
+                throw new IllegalArgumentException("Key store does not exist: " + keyStoreResource);
+            if (keyStoreFile.isDirectory())
+                throw new IllegalArgumentException("Expected a key store file not a directory: " + keyStoreResource);
+            _keyStorePath = keyStoreFile.toPath().toRealPath();
+        }
+        catch (IOException x)
+        {
+            throw new IllegalArgumentException(x);
+        }
+
+        Path keyStoreName = _keyStorePath.getFileName();
+        _scanner = new Scanner();
+        _scanner.setScanInterval(1);
+        _scanner.setReportDirs(false);
+        _scanner.setReportExistingFilesOnStartup(false);
+        _scanner.setScanDepth(1);
+        try
+        {
+            _scanner.addDirectory(_keyStorePath.getParent()).include(path -> keyStoreName.equals(path.getFileName()));
+        }
+        catch (IOException x)
+        {
+            throw new IllegalArgumentException(x);
+        }
+        _scanner.addListener(this);
+        addBean(_scanner);
+    }
+
+    @Override
+    public void fileAdded(String filename) throws Exception
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Key store added {}", filename);
+        reload();
+    }
+
+    @Override
+    public void fileChanged(String filename) throws Exception
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Key store changed {}", filename);
+        reload();
+    }
+
+    @Override
+    public void fileRemoved(String filename)
+    {
+        // The key store may be temporarily removed while it is replaced,
+        // keep the current key managers until a new key store is available.
+        if (LOG.isDebugEnabled())
+            LOG.debug("Key store removed {}", filename);
+    }
+
+    /**
+     * <p>Reloads the key managers of the {@link SslContextFactory} from its key store.</p>
+     */
+    @ManagedOperation(value = "Reloads the key managers from the key store", impact = "ACTION")
+    public void reload()
+    {
+        try
+        {
+            _sslContextFactory.reloadKeyManagers(sslContextFactory -> {});
+            _reloads.incrementAndGet();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Reloaded key store {} for {}", _keyStorePath, _sslContextFactory);
+        }
+        catch (Throwable x)
+        {
+            _failures.incrementAndGet();
+            LOG.warn("Unable to reload key store {} for {}", _keyStorePath, _sslContextFactory, x);
+        }
+    }
+
+    @ManagedAttribute("The number of successful key store reloads")
+    public long getReloads()
+    {
+        return _reloads.get();
+    }
+
+    @ManagedAttribute("The number of failed key store reloads")
+    public long getReloadFailures()
+    {
+        return _failures.get();
+    }
+
+    @ManagedAttribute("The scan interval in seconds")
+    public int getScanInterval()
+    {
+        return _scanner.getScanInterval();
+    }
+
+    public void setScanInterval(int scanInterval)
+    {
+        _scanner.setScanInterval(scanInterval);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _keyStorePath);
+    }
+}
@@ -53,6 +53,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -141,9 +142,10 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
     private final Set<String> _includeProtocols = new LinkedHashSet<>();
     private final Set<String> _excludeCipherSuites = new LinkedHashSet<>();
     private final List<String> _includeCipherSuites = new ArrayList<>();
-    protected final Map<String, X509> _aliasX509 = new HashMap<>();
-    protected final Map<String, X509> _certHosts = new HashMap<>();
-    protected final Map<String, X509> _certWilds = new HashMap<>();
+    protected final Map<String, X509> _aliasX509 = new ConcurrentHashMap<>();
+    protected final Map<String, X509> _certHosts = new ConcurrentHashMap<>();
+    protected final Map<String, X509> _certWilds = new ConcurrentHashMap<>();
+    private final Object _keyManagersLock = new Object();
     private String[] _selectedProtocols;
     private boolean _useCipherSuitesOrder = true;
     private Comparator<String> _cipherComparator;
@@ -180,6 +182,7 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
     private boolean _trustAll;
     private boolean _renegotiationAllowed = true;
     private int _renegotiationLimit = 5;
+    private boolean _hotSwapKeyManagers;
     private Factory _factory;
     private PKIXCertPathChecker _pkixCertPathChecker;
     private HostnameVerifier _hostnameVerifier;
@@ -270,6 +273,7 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
         SSLContext context = _setContext;
         KeyStore keyStore = _setKeyStore;
         KeyStore trustStore = _setTrustStore;
+        SwappableX509ExtendedKeyManager swappableKeyManager = null;
 
         if (context == null)
         {
@@ -299,53 +303,22 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
                 Collection<? extends CRL> crls = loadCRL(getCrlPath());
 
                 // Look for X.509 certificates to create alias map
-                if (keyStore != null)
-                {
-                    for (String alias : Collections.list(keyStore.aliases()))
-                    {
-                        Certificate certificate = keyStore.getCertificate(alias);
-                        if (certificate != null && "X.509".equals(certificate.getType()))
-                        {
-                            X509Certificate x509C = (X509Certificate)certificate;
-
-                            // Exclude certificates with special uses
-                            if (X509.isCertSign(x509C))
-                            {
-                                if (LOG.isDebugEnabled())
-                                    LOG.debug("Skipping " + x509C);
-                                continue;
-                            }
-                            X509 x509 = new X509(alias, x509C);
-                            _aliasX509.put(alias, x509);
-
-                            if (isValidateCerts())
-                            {
-                                CertificateValidator validator = new CertificateValidator(trustStore, crls);
-                                validator.setMaxCertPathLength(getMaxCertPathLength());
-                                validator.setEnableCRLDP(isEnableCRLDP());
-                                validator.setEnableOCSP(isEnableOCSP());
-                                validator.setOcspResponderURL(getOcspResponderURL());
-                                validator.validate(keyStore, x509C); // TODO what about truststore?
-                            }
-
-                            LOG.info("x509={} for {}", x509, this);
-
-                            for (String h : x509.getHosts())
-                            {
-                                _certHosts.put(h, x509);
-                            }
-                            for (String w : x509.getWilds())
-                            {
-                                _certWilds.put(w, x509);
-                            }
-                        }
-                    }
-                }
+                loadX509(keyStore, trustStore, crls, _aliasX509, _certHosts, _certWilds);
 
                 // Instantiate key and trust managers
                 KeyManager[] keyManagers = getKeyManagers(keyStore);
                 TrustManager[] trustManagers = getTrustManagers(trustStore, crls);
 
+                if (isHotSwapKeyManagers())
+                {
+                    X509ExtendedKeyManager keyManager = findX509ExtendedKeyManager(keyManagers);
+                    if (keyManager != null)
+                    {
+                        swappableKeyManager = new SwappableX509ExtendedKeyManager(keyManager);
+                        keyManagers = new KeyManager[]{swappableKeyManager};
+                    }
+                }
+
                 // Initialize context
                 context = getSSLContextInstance();
                 context.init(keyManagers, trustManagers, getSecureRandomInstance());
@@ -368,7 +341,7 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
         selectCipherSuites(enabled.getCipherSuites(), supported.getCipherSuites());
         selectProtocols(enabled.getProtocols(), supported.getProtocols());
 
-        _factory = new Factory(keyStore, trustStore, context);
+        _factory = new Factory(keyStore, trustStore, context, swappableKeyManager);
         if (LOG.isDebugEnabled())
         {
             LOG.debug("Selected Protocols {} of {}", Arrays.asList(_selectedProtocols), Arrays.asList(supported.getProtocols()));
@@ -376,6 +349,66 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
         }
     }
 
+    private void loadX509(KeyStore keyStore, KeyStore trustStore, Collection<? extends CRL> crls, Map<String, X509> aliases, Map<String, X509> hosts, Map<String, X509> wilds) throws Exception
+    {
+        if (keyStore != null)
+        {
+            for (String alias : Collections.list(keyStore.aliases()))
+            {
+                Certificate certificate = keyStore.getCertificate(alias);
+                if (certificate != null && "X.509".equals(certificate.getType()))
+                {
+                    X509Certificate x509C = (X509Certificate)certificate;
+
+                    // Exclude certificates with special uses
+                    if (X509.isCertSign(x509C))
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Skipping " + x509C);
+                        continue;
+                    }
+                    X509 x509 = new X509(alias, x509C);
+                    aliases.put(alias, x509);
+
+                    if (isValidateCerts())
+                    {
+                        CertificateValidator validator = new CertificateValidator(trustStore, crls);
+                        validator.setMaxCertPathLength(getMaxCertPathLength());
+                        validator.setEnableCRLDP(isEnableCRLDP());
+                        validator.setEnableOCSP(isEnableOCSP());
+                        validator.setOcspResponderURL(getOcspResponderURL());
+                        validator.validate(keyStore, x509C); // TODO what about truststore?
+                    }
+
+                    LOG.info("x509={} for {}", x509, this);
+
+                    for (String h : x509.getHosts())
+                    {
+                        hosts.put(h, x509);
+                    }
+                    for (String w : x509.getWilds())
+                    {
+                        wilds.put(w, x509);
+                    }
+                }
+            }
+        }
+    }
+
+    private static X509ExtendedKeyManager findX509ExtendedKeyManager(KeyManager[] keyManagers)
+    {
+        if (keyManagers != null)
+        {
+            // The JSSE implementation only uses the first X509 key manager.
+            for (KeyManager keyManager : keyManagers)
+            {
+                if (keyManager instanceof X509ExtendedKeyManager)
+                    return (X509ExtendedKeyManager)keyManager;
+            }
+        }
+        return null;
+    }
+
     @Override
     public String dump()
     {
@@ -934,6 +967,28 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
             setEndpointIdentificationAlgorithm(null);
     }
 
+    /**
+     * @return whether the key managers can be swapped by {@link #reloadKeyManagers(Consumer)}
+     */
+    @ManagedAttribute("Whether the key managers can be swapped without recreating the SSLContext")
+    public boolean isHotSwapKeyManagers()
+    {
+        return _hotSwapKeyManagers;
+    }
+
+    /**
+     * <p>Sets whether the key managers are wrapped in a {@link SwappableX509ExtendedKeyManager},
+     * so that they can be swapped by {@link #reloadKeyManagers(Consumer)} without recreating
+     * the {@link SSLContext}.</p>
+     * <p>This setting takes effect when this SslContextFactory is started or reloaded.</p>
+     *
+     * @param hotSwapKeyManagers whether the key managers can be swapped
+     */
+    public void setHotSwapKeyManagers(boolean hotSwapKeyManagers)
+    {
+        _hotSwapKeyManagers = hotSwapKeyManagers;
+    }
+
     /**
      * @param algorithm The algorithm name (default "SunX509") used by the {@link TrustManagerFactory}
      * Use the string "TrustAll" to install a trust manager that trusts all.
@@ -1867,6 +1922,73 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
         }
     }
 
+    /**
+     * <p>Reloads the key store and swaps the key managers of the current {@link SSLContext}.</p>
+     * <p>Differently from {@link #reload(Consumer)}, the SSLContext is not recreated, so that
+     * its TLS session cache is retained, and the key store is loaded without holding the lock
+     * that guards the creation of new {@link SSLEngine}s, so that accepting new connections is
+     * not paused while the key store is reloaded.
+     * Existing connections and in-flight TLS handshakes are not affected by the swap.</p>
+     * <p>This method falls back to {@link #reload(Consumer)} if {@link #isHotSwapKeyManagers()}
+     * was {@code false} when this SslContextFactory was started, or if the SSLContext was
+     * configured via {@link #setSslContext(SSLContext)}.</p>
+     *
+     * @param consumer the function that reconfigures this SslContextFactory, for example with a new key store path
+     * @throws Exception if the key store cannot be reloaded
+     * @see KeyStoreScanner
+     */
+    public void reloadKeyManagers(Consumer<SslContextFactory> consumer) throws Exception
+    {
+        synchronized (_keyManagersLock)
+        {
+            Factory factory;
+            synchronized (this)
+            {
+                factory = _factory;
+                if (factory == null || factory._keyManager == null)
+                {
+                    reload(consumer);
+                    return;
+                }
+                consumer.accept(this);
+            }
+
+            KeyStore keyStore = _setKeyStore;
+            if (keyStore == null)
+                keyStore = loadKeyStore(_keyStoreResource);
+            Collection<? extends CRL> crls = loadCRL(getCrlPath());
+
+            Map<String, X509> aliases = new HashMap<>();
+            Map<String, X509> hosts = new HashMap<>();
+            Map<String, X509> wilds = new HashMap<>();
+            loadX509(keyStore, factory._trustStore, crls, aliases, hosts, wilds);
+            replaceX509(_aliasX509, aliases);
+            replaceX509(_certHosts, hosts);
+            replaceX509(_certWilds, wilds);
+
+            X509ExtendedKeyManager keyManager = findX509ExtendedKeyManager(getKeyManagers(keyStore));
+            if (keyManager == null)
+                throw new IllegalStateException("No X509ExtendedKeyManager for " + this);
+            factory._keyManager.swap(keyManager);
+
+            synchronized (this)
+            {
+                _factory = new Factory(keyStore, factory._trustStore, factory._context, factory._keyManager);
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Swapped key managers {} for {}", factory._keyManager, this);
+        }
+    }
+
+    private static void replaceX509(Map<String, X509> target, Map<String, X509> source)
+    {
+        // Add first and then remove, so that concurrent
+        // handshakes always find the aliases that are kept.
+        target.putAll(source);
+        target.keySet().retainAll(source.keySet());
+    }
+
     /**
      * Obtain the X509 Certificate Chain from the provided SSLSession using the
      * default {@link CertificateFactory} behaviors
@@ -2000,12 +2122,14 @@ public abstract class SslContextFactory extends AbstractLifeCycle implements Dum
         private final KeyStore _keyStore;
         private final KeyStore _trustStore;
         private final SSLContext _context;
+        private final SwappableX509ExtendedKeyManager _keyManager;
 
-        private Factory(KeyStore keyStore, KeyStore trustStore, SSLContext context)
+        private Factory(KeyStore keyStore, KeyStore trustStore, SSLContext context, SwappableX509ExtendedKeyManager keyManager)
         {
             _keyStore = keyStore;
             _trustStore = trustStore;
             _context = context;
+            _keyManager = keyManager;
         }
     }
 
@@ -0,0 +1,211 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.ssl;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An {@link X509ExtendedKeyManager} whose nested X509ExtendedKeyManager
+ * can be atomically replaced while the {@link javax.net.ssl.SSLContext} that
+ * uses it is serving TLS handshakes.</p>
+ * <p>The aliases returned by the {@code choose*Alias(...)} methods are tagged
+ * with the generation of the nested key manager that chose them, so that a
+ * handshake that straddles a {@link #swap(X509ExtendedKeyManager) swap} obtains
+ * the private key and the certificate chain from the same key manager.
+ * The key managers of the last {@value #GENERATIONS} generations are retained;
+ * a handshake whose alias is older than that falls back to the current key manager.</p>
+ * <p>Can be used both with server and client sockets.</p>
+ */
+public class SwappableX509ExtendedKeyManager extends X509ExtendedKeyManager
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SwappableX509ExtendedKeyManager.class);
+    private static final char SEPARATOR = '|';
+    private static final int GENERATIONS = 8;
+
+    private volatile Delegates _delegates;
+
+    public SwappableX509ExtendedKeyManager(X509ExtendedKeyManager keyManager)
+    {
+        _delegates = new Delegates(0, new X509ExtendedKeyManager[]{Objects.requireNonNull(keyManager)});
+    }
+
+    /**
+     * @return the current nested key manager
+     */
+    public X509ExtendedKeyManager getDelegate()
+    {
+        return _delegates.current();
+    }
+
+    /**
+     * @return the number of times the nested key manager has been swapped
+     */
+    public int getGeneration()
+    {
+        return _delegates._generation;
+    }
+
+    /**
+     * <p>Replaces the nested key manager.</p>
+     * <p>Handshakes that already chose an alias from the previous key manager
+     * keep using it; new handshakes use the given key manager.</p>
+     *
+     * @param keyManager the new nested key manager
+     */
+    public synchronized void swap(X509ExtendedKeyManager keyManager)
+    {
+        Delegates delegates = _delegates;
+        X509ExtendedKeyManager[] history = new X509ExtendedKeyManager[Math.min(GENERATIONS, delegates._history.length + 1)];
+        history[0] = Objects.requireNonNull(keyManager);
+        System.arraycopy(delegates._history, 0, history, 1, history.length - 1);
+        _delegates = new Delegates(delegates._generation + 1, history);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Swapped {} with {} generation {}", delegates.current(), keyManager, delegates._generation + 1);
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers)
+    {
+        return _delegates.current().getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket)
+    {
+        Delegates delegates = _delegates;
+        return delegates.tag(delegates.current().chooseClientAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine)
+    {
+        Delegates delegates = _delegates;
+        return delegates.tag(delegates.current().chooseEngineClientAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers)
+    {
+        return _delegates.current().getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket)
+    {
+        Delegates delegates = _delegates;
+        return delegates.tag(delegates.current().chooseServerAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine)
+    {
+        Delegates delegates = _delegates;
+        return delegates.tag(delegates.current().chooseEngineServerAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias)
+    {
+        Delegates delegates = _delegates;
+        X509ExtendedKeyManager keyManager = delegates.delegateFor(alias);
+        return keyManager == null ? null : keyManager.getCertificateChain(delegates.untag(alias));
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias)
+    {
+        Delegates delegates = _delegates;
+        X509ExtendedKeyManager keyManager = delegates.delegateFor(alias);
+        return keyManager == null ? null : keyManager.getPrivateKey(delegates.untag(alias));
+    }
+
+    @Override
+    public String toString()
+    {
+        Delegates delegates = _delegates;
+        return String.format("%s@%x[generation=%d,delegate=%s]", getClass().getSimpleName(), hashCode(), delegates._generation, delegates.current());
+    }
+
+    private static class Delegates
+    {
+        private final int _generation;
+        // The key managers of the most recent generations, the current one first.
+        private final X509ExtendedKeyManager[] _history;
+
+        private Delegates(int generation, X509ExtendedKeyManager[] history)
+        {
+            _generation = generation;
+            _history = history;
+        }
+
+        private X509ExtendedKeyManager current()
+        {
+            return _history[0];
+        }
+
+        private String tag(String alias)
+        {
+            return alias == null ? null : _generation + "" + SEPARATOR + alias;
+        }
+
+        private int generationOf(String alias)
+        {
+            if (alias == null)
+                return -1;
+            int separator = alias.indexOf(SEPARATOR);
+            if (separator <= 0)
+                return -1;
+            try
+            {
+                return Integer.parseInt(alias.substring(0, separator));
+            }
+            catch (NumberFormatException x)
+            {
+                return -1;
+            }
+        }
+
+        private X509ExtendedKeyManager delegateFor(String alias)
+        {
+            int generation = generationOf(alias);
+            int age = _generation - generation;
+            // Untagged aliases are not from us, and aliases older than the
+            // retained generations are unknown, use the current key manager.
+            if (generation < 0 || age < 0 || age >= _history.length)
+                return current();
+            return _history[age];
+        }
+
+        private String untag(String alias)
+        {
+            if (generationOf(alias) < 0)
+                return alias;
+            return alias.substring(alias.indexOf(SEPARATOR) + 1);
+        }
+    }
+}
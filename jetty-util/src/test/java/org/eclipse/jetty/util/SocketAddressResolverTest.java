@@ -0,0 +1,205 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SocketAddressResolverTest
+{
+    private static final String HOSTS =
+        "127.0.0.1 localhost\n" +
+        "10.0.0.1 multi\n" +
+        "10.0.0.2 multi\n" +
+        "10.0.0.3 multi\n";
+
+    @Test
+    public void testCachingResolverCachesAndRotatesAddresses() throws Exception
+    {
+        HostsResolver hosts = new HostsResolver(HOSTS);
+        SocketAddressResolver.Caching resolver = new SocketAddressResolver.Caching(hosts);
+
+        List<InetSocketAddress> first = resolve(resolver, "multi", 8080);
+        List<InetSocketAddress> second = resolve(resolver, "MULTI", 8443);
+
+        assertEquals(1, hosts.lookups.get());
+        assertEquals(1, resolver.getMisses());
+        assertEquals(1, resolver.getHits());
+        assertEquals(3, first.size());
+        assertEquals(3, second.size());
+        assertEquals(8443, second.get(0).getPort());
+        // Addresses are rotated to spread connections.
+        assertNotEquals(first.get(0).getAddress(), second.get(0).getAddress());
+        assertEquals(first.get(1).getAddress(), second.get(0).getAddress());
+    }
+
+    @Test
+    public void testCachingResolverCachesUnknownHosts()
+    {
+        HostsResolver hosts = new HostsResolver(HOSTS);
+        SocketAddressResolver.Caching resolver = new SocketAddressResolver.Caching(hosts);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            ExecutionException x = assertThrows(ExecutionException.class, () -> resolve(resolver, "unknown", 80));
+            assertThat(x.getCause(), instanceOf(UnknownHostException.class));
+        }
+
+        assertEquals(1, hosts.lookups.get());
+        assertEquals(1, resolver.getNegativeHits());
+    }
+
+    @Test
+    public void testCachingResolverPerHostTimeToLive() throws Exception
+    {
+        HostsResolver hosts = new HostsResolver(HOSTS);
+        SocketAddressResolver.Caching resolver = new SocketAddressResolver.Caching(hosts);
+        resolver.setTimeToLive("localhost", 0);
+
+        resolve(resolver, "localhost", 80);
+        resolve(resolver, "localhost", 80);
+        resolve(resolver, "multi", 80);
+        resolve(resolver, "multi", 80);
+
+        assertEquals(3, hosts.lookups.get());
+        assertEquals(0, resolver.getTimeToLive("localhost"));
+        assertEquals(resolver.getTimeToLive(), resolver.getTimeToLive("multi"));
+    }
+
+    @Test
+    public void testCachingResolverRefreshAhead() throws Exception
+    {
+        HostsResolver hosts = new HostsResolver(HOSTS);
+        SocketAddressResolver.Caching resolver = new SocketAddressResolver.Caching(hosts);
+        resolver.setTimeToLive(1000);
+        resolver.setRefreshAheadFactor(0.1);
+
+        resolve(resolver, "localhost", 80);
+        Thread.sleep(200);
+        // Served from the cache, but refreshed in the background.
+        resolve(resolver, "localhost", 80);
+        resolve(resolver, "localhost", 80);
+
+        assertEquals(2, hosts.lookups.get());
+        assertEquals(1, resolver.getRefreshes());
+        assertEquals(2, resolver.getHits());
+    }
+
+    @Test
+    public void testCachingResolverCoalescesLookups() throws Exception
+    {
+        HostsResolver hosts = new HostsResolver(HOSTS);
+        hosts.deferred = true;
+        SocketAddressResolver.Caching resolver = new SocketAddressResolver.Caching(hosts);
+
+        Promise.Completable<List<InetSocketAddress>> promise1 = new Promise.Completable<>();
+        resolver.resolve("multi", 80, promise1);
+        Promise.Completable<List<InetSocketAddress>> promise2 = new Promise.Completable<>();
+        resolver.resolve("multi", 81, promise2);
+        hosts.complete();
+
+        assertEquals(80, promise1.get(5, TimeUnit.SECONDS).get(0).getPort());
+        assertEquals(81, promise2.get(5, TimeUnit.SECONDS).get(0).getPort());
+        assertEquals(1, hosts.lookups.get());
+    }
+
+    private static List<InetSocketAddress> resolve(SocketAddressResolver resolver, String host, int port) throws Exception
+    {
+        Promise.Completable<List<InetSocketAddress>> promise = new Promise.Completable<>();
+        resolver.resolve(host, port, promise);
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * <p>A stand-in resolver backed by a hosts file, so that tests do not depend on DNS.</p>
+     */
+    private static class HostsResolver implements SocketAddressResolver
+    {
+        private final Map<String, List<InetAddress>> hosts = new HashMap<>();
+        private final List<Runnable> pending = new ArrayList<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private boolean deferred;
+
+        private HostsResolver(String content)
+        {
+            for (String line : content.split("\\n"))
+            {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 2)
+                    continue;
+                try
+                {
+                    InetAddress address = InetAddress.getByName(parts[0]);
+                    for (int i = 1; i < parts.length; ++i)
+                    {
+                        hosts.computeIfAbsent(parts[i], k -> new ArrayList<>()).add(address);
+                    }
+                }
+                catch (UnknownHostException x)
+                {
+                    throw new IllegalArgumentException(x);
+                }
+            }
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            lookups.incrementAndGet();
+            Runnable lookup = () ->
+            {
+                List<InetAddress> addresses = hosts.get(StringUtil.asciiToLowerCase(host));
+                if (addresses == null)
+                {
+                    promise.failed(new UnknownHostException(host));
+                    return;
+                }
+                List<InetSocketAddress> result = new ArrayList<>();
+                addresses.forEach(address -> result.add(new InetSocketAddress(address, port)));
+                promise.succeeded(result);
+            };
+            if (deferred)
+                pending.add(lookup);
+            else
+                lookup.run();
+        }
+
+        private void complete()
+        {
+            pending.forEach(Runnable::run);
+            pending.clear();
+        }
+    }
+}
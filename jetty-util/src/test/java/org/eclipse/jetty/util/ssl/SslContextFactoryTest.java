@@ -47,6 +47,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -68,6 +69,23 @@ public class SslContextFactoryTest
         cf.setPkixCertPathChecker(revocationChecker);
     }
 
+    @Test
+    public void testReloadKeyManagersRetainsSSLContext() throws Exception
+    {
+        cf.setKeyStoreResource(Resource.newSystemResource("keystore.p12"));
+        cf.setKeyStorePassword("storepwd");
+        cf.setHotSwapKeyManagers(true);
+        cf.start();
+
+        SSLContext sslContext = cf.getSslContext();
+        assertThat(cf.getAliases(), hasItem("mykey"));
+
+        cf.reloadKeyManagers(sslContextFactory -> sslContextFactory.setKeyStoreResource(Resource.newSystemResource("keystore_sni.p12")));
+
+        assertSame(sslContext, cf.getSslContext());
+        assertThat(cf.getAliases(), containsInAnyOrder("jetty", "other", "san", "wild"));
+    }
+
     @Test
     public void testSLOTH() throws Exception
     {
@@ -0,0 +1,74 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.ssl;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.eclipse.jetty.util.resource.Resource;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class SwappableX509ExtendedKeyManagerTest
+{
+    private static X509ExtendedKeyManager newKeyManager(String keyStore) throws Exception
+    {
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Resource.newSystemResource(keyStore).getInputStream())
+        {
+            ks.load(input, "storepwd".toCharArray());
+        }
+        KeyManagerFactory factory = KeyManagerFactory.getInstance("SunX509");
+        factory.init(ks, "storepwd".toCharArray());
+        for (KeyManager keyManager : factory.getKeyManagers())
+        {
+            if (keyManager instanceof X509ExtendedKeyManager)
+                return (X509ExtendedKeyManager)keyManager;
+        }
+        throw new IllegalStateException();
+    }
+
+    @Test
+    public void testHandshakeSpanningSwaps() throws Exception
+    {
+        X509ExtendedKeyManager keyManager1 = newKeyManager("keystore.p12");
+        PrivateKey privateKey1 = keyManager1.getPrivateKey("mykey");
+        assertNotNull(privateKey1);
+
+        SwappableX509ExtendedKeyManager swappable = new SwappableX509ExtendedKeyManager(keyManager1);
+        String alias = swappable.chooseServerAlias(privateKey1.getAlgorithm(), null, null);
+        assertNotNull(alias);
+        PrivateKey privateKey = swappable.getPrivateKey(alias);
+        assertNotNull(privateKey);
+
+        // The handshake that chose the alias spans several swaps.
+        swappable.swap(newKeyManager("keystore_sni.p12"));
+        swappable.swap(newKeyManager("keystore_sni.p12"));
+        assertEquals(2, swappable.getGeneration());
+
+        assertEquals(privateKey, swappable.getPrivateKey(alias));
+        assertNotNull(swappable.getCertificateChain(alias));
+    }
+}
@@ -0,0 +1,231 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>Automatic batching of outgoing WebSocket frames.</p>
+ * <p>When a {@link #setMaxBatchDelay(long) max batch delay} is configured, data frames are
+ * coalesced into a single write until either {@link #setMaxBatchSize(int) max batch size}
+ * bytes have been batched, or the first batched frame has waited for the max batch delay,
+ * whichever comes first; this trades a bounded latency for far fewer writes when many
+ * small messages are sent, regardless of the batch flag passed to
+ * {@link CoreSession#sendFrame(Frame, org.eclipse.jetty.util.Callback, boolean)}.</p>
+ * <p>Control frames are never delayed, and latency sensitive frames can bypass the batch
+ * delay with {@link CoreSession#flush(org.eclipse.jetty.util.Callback)}, which writes
+ * them along with the frames batched so far.</p>
+ * <p>The callback of an automatically batched frame is completed only when the frame is
+ * written, so a sender that waits for each callback before sending the next frame waits
+ * up to the max batch delay per frame; such senders should pass {@code batch=true} and
+ * call {@link CoreSession#flush(org.eclipse.jetty.util.Callback)}, or not enable automatic
+ * batching.</p>
+ * <p>The histograms exposed by this class have power of two buckets: bucket {@code 0}
+ * counts the zero values and bucket {@code i} counts the values from {@code 2^(i-1)}
+ * to {@code 2^i - 1}.</p>
+ */
+@ManagedObject("Automatic batching of outgoing WebSocket frames")
+public class AutoBatching
+{
+    private final Histogram framesPerWrite = new Histogram();
+    private final Histogram addedLatency = new Histogram();
+    private final LongAdder batchedFrames = new LongAdder();
+    private final LongAdder sizeFlushes = new LongAdder();
+    private final LongAdder delayFlushes = new LongAdder();
+    private int maxBatchSize = 4096;
+    private long maxBatchDelay = -1;
+
+    @ManagedAttribute("The max number of bytes batched before they are written, limited by the output buffer size")
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @ManagedAttribute("The max time in microseconds a frame is batched before it is written, or -1 to not batch automatically")
+    public long getMaxBatchDelay()
+    {
+        return maxBatchDelay;
+    }
+
+    public void setMaxBatchDelay(long maxBatchDelay)
+    {
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    public boolean isEnabled()
+    {
+        return maxBatchDelay > 0;
+    }
+
+    @ManagedAttribute(value = "The number of frames that were batched automatically", readonly = true)
+    public long getBatchedFrames()
+    {
+        return batchedFrames.sum();
+    }
+
+    @ManagedAttribute(value = "The number of batches written because they reached the max batch size", readonly = true)
+    public long getSizeFlushes()
+    {
+        return sizeFlushes.sum();
+    }
+
+    @ManagedAttribute(value = "The number of batches written because they reached the max batch delay", readonly = true)
+    public long getDelayFlushes()
+    {
+        return delayFlushes.sum();
+    }
+
+    @ManagedAttribute(value = "The histogram of the number of frames per write", readonly = true)
+    public long[] getFramesPerWriteHistogram()
+    {
+        return framesPerWrite.getBuckets();
+    }
+
+    @ManagedAttribute(value = "The average number of frames per write", readonly = true)
+    public double getFramesPerWriteMean()
+    {
+        return framesPerWrite.getMean();
+    }
+
+    @ManagedAttribute(value = "The histogram of the latency in microseconds added to the first frame of each batch", readonly = true)
+    public long[] getAddedLatencyHistogram()
+    {
+        return addedLatency.getBuckets();
+    }
+
+    @ManagedAttribute(value = "The average latency in microseconds added to the first frame of each batch", readonly = true)
+    public double getAddedLatencyMean()
+    {
+        return addedLatency.getMean();
+    }
+
+    @ManagedAttribute(value = "The max latency in microseconds added to the first frame of a batch", readonly = true)
+    public long getAddedLatencyMax()
+    {
+        return addedLatency.getMax();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        framesPerWrite.reset();
+        addedLatency.reset();
+        batchedFrames.reset();
+        sizeFlushes.reset();
+        delayFlushes.reset();
+    }
+
+    public void onBatched()
+    {
+        batchedFrames.increment();
+    }
+
+    public void onSizeFlush()
+    {
+        sizeFlushes.increment();
+    }
+
+    public void onDelayFlush()
+    {
+        delayFlushes.increment();
+    }
+
+    /**
+     * @param frames the number of frames written by a single write
+     * @param latency the time in microseconds the first frame of the write was batched, or -1 if no frame was batched
+     */
+    public void onWrite(int frames, long latency)
+    {
+        framesPerWrite.record(frames);
+        if (latency >= 0)
+            addedLatency.record(latency);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[maxBatchSize=%d,maxBatchDelay=%d,framesPerWrite=%.2f,addedLatency=%.2f]", getClass().getSimpleName(), hashCode(),
+            getMaxBatchSize(), getMaxBatchDelay(), getFramesPerWriteMean(), getAddedLatencyMean());
+    }
+
+    private static class Histogram
+    {
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private volatile long max;
+
+        private void record(long value)
+        {
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+            count.increment();
+            total.add(value);
+            if (value > max)
+                max = value;
+        }
+
+        private long[] getBuckets()
+        {
+            // Trim the trailing empty buckets.
+            int length = buckets.length();
+            while (length > 1 && buckets.get(length - 1) == 0)
+            {
+                length--;
+            }
+            long[] result = new long[length];
+            for (int i = 0; i < length; ++i)
+            {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        private double getMean()
+        {
+            long count = this.count.sum();
+            return count == 0 ? 0.0 : (double)total.sum() / count;
+        }
+
+        private long getMax()
+        {
+            return max;
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < buckets.length(); ++i)
+            {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            total.reset();
+            max = 0;
+        }
+    }
+}
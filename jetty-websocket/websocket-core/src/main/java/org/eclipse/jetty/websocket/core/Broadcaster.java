@@ -0,0 +1,412 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.websocket.core.internal.EncodedFrame;
+import org.eclipse.jetty.websocket.core.internal.PerMessageDeflateExtension;
+import org.eclipse.jetty.websocket.core.internal.WebSocketCoreSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Sends the same message to many {@link CoreSession}s.</p>
+ * <p>Rather than sending the message to each session, which would generate the frame and,
+ * if {@code permessage-deflate} is negotiated, compress the payload once per session,
+ * the Broadcaster encodes the message once per distinct negotiated extension configuration,
+ * and writes the same encoded bytes to all the sessions that negotiated that configuration.</p>
+ * <p>The message can be shared by the sessions that:</p>
+ * <ul>
+ * <li>are server sessions, since client frames are masked with a different key for each frame;</li>
+ * <li>negotiated either no extensions, or {@code permessage-deflate} with
+ * {@code server_no_context_takeover}, since with context takeover the compressed bytes
+ * depend on the messages previously sent to each session;</li>
+ * <li>have a max frame size large enough for the encoded message.</li>
+ * </ul>
+ * <p>The message is sent to the other sessions via {@link CoreSession#sendFrame(Frame, Callback, boolean)}.</p>
+ * <p>A slow session may accumulate broadcast messages that it has not written yet;
+ * when the bytes queued for a session exceed {@link #getMaxQueuedBytes()}, the
+ * {@link OverflowPolicy} determines whether the message is dropped for that session,
+ * or the session is closed.</p>
+ */
+@ManagedObject("WebSocket message broadcaster")
+public class Broadcaster
+{
+    private static final Logger LOG = LoggerFactory.getLogger(Broadcaster.class);
+    private static final String IDENTITY = "identity";
+    private static final String DEFLATE = "permessage-deflate";
+    private static final int TAIL_LENGTH = 4;
+
+    /**
+     * What to do when a session has too many bytes queued.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * The message is not sent to the session.
+         */
+        DROP,
+        /**
+         * The session is closed with {@link CloseStatus#POLICY_VIOLATION}.
+         */
+        CLOSE
+    }
+
+    private final Map<CoreSession, AtomicLong> queued = new ConcurrentHashMap<>();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder encodings = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder unshared = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final WebSocketComponents components;
+    private long maxQueuedBytes = 1024 * 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    public Broadcaster(WebSocketComponents components)
+    {
+        this.components = components;
+    }
+
+    /**
+     * @return the max number of broadcast bytes that may be queued for a session, or -1 for no limit
+     */
+    @ManagedAttribute("The max number of broadcast bytes that may be queued for a session")
+    public long getMaxQueuedBytes()
+    {
+        return maxQueuedBytes;
+    }
+
+    /**
+     * @param maxQueuedBytes the max number of broadcast bytes that may be queued for a session, or -1 for no limit
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes)
+    {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * @return what to do when a session has more than {@link #getMaxQueuedBytes()} queued
+     */
+    @ManagedAttribute("What to do when a session has too many bytes queued")
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * @param overflowPolicy what to do when a session has more than {@link #getMaxQueuedBytes()} queued
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @ManagedAttribute(value = "The number of messages broadcast", readonly = true)
+    public long getBroadcastCount()
+    {
+        return broadcasts.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of times a message was encoded", readonly = true)
+    public long getEncodingCount()
+    {
+        return encodings.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of messages sent with shared encoded bytes", readonly = true)
+    public long getSharedCount()
+    {
+        return shared.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of messages sent to sessions that cannot share encoded bytes", readonly = true)
+    public long getUnsharedCount()
+    {
+        return unshared.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of messages dropped because sessions had too many bytes queued", readonly = true)
+    public long getDroppedCount()
+    {
+        return dropped.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of sessions closed because they had too many bytes queued", readonly = true)
+    public long getClosedCount()
+    {
+        return closed.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of messages that failed to be sent", readonly = true)
+    public long getFailedCount()
+    {
+        return failed.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        broadcasts.reset();
+        encodings.reset();
+        shared.reset();
+        unshared.reset();
+        dropped.reset();
+        closed.reset();
+        failed.reset();
+    }
+
+    /**
+     * @param session the session
+     * @return the number of broadcast bytes queued for the given session
+     */
+    public long getQueuedBytes(CoreSession session)
+    {
+        AtomicLong bytes = queued.get(session);
+        return bytes == null ? 0 : bytes.get();
+    }
+
+    /**
+     * <p>Sends the given whole message frame to the given sessions.</p>
+     * <p>The callback is succeeded when the message has been sent, dropped or failed
+     * for all the sessions, since the failure to send to one session must not affect
+     * the others; failures are reported by {@link #getFailedCount()}.</p>
+     *
+     * @param frame the TEXT or BINARY frame to send, with the FIN bit set
+     * @param sessions the sessions to send the frame to
+     * @param callback the callback notified when the frame has been sent to all sessions
+     */
+    public void broadcast(Frame frame, Collection<? extends CoreSession> sessions, Callback callback)
+    {
+        if (!frame.isDataFrame() || frame.getOpCode() == OpCode.CONTINUATION || !frame.isFin() || frame.isMasked())
+            throw new IllegalArgumentException("Not a whole message frame: " + frame);
+
+        broadcasts.increment();
+        if (sessions.isEmpty())
+        {
+            callback.succeeded();
+            return;
+        }
+
+        Completion completion = new Completion(sessions.size(), callback);
+        Map<String, RetainableByteBuffer> encoded = new HashMap<>();
+        Map<String, EncodedFrame> frames = new HashMap<>();
+        List<CoreSession> unsharable = new ArrayList<>();
+        try
+        {
+            for (CoreSession session : sessions)
+            {
+                String key = sharingKey(session);
+                EncodedFrame encodedFrame = null;
+                if (key != null)
+                {
+                    encodedFrame = frames.computeIfAbsent(key, k -> encode(frame, k, encoded));
+                    // The encoded frame may be too large for this session.
+                    long maxFrameSize = session.getMaxFrameSize();
+                    if (encodedFrame != null && maxFrameSize > 0 && encodedFrame.getPayloadLength() > maxFrameSize)
+                        encodedFrame = null;
+                }
+
+                if (encodedFrame == null)
+                    unsharable.add(session);
+                else
+                    send(session, encodedFrame.newFrame(), encodedFrame.getEncoded(), completion);
+            }
+        }
+        finally
+        {
+            // Each session has retained the encoded buffers it uses.
+            encoded.values().forEach(RetainableByteBuffer::release);
+        }
+
+        for (CoreSession session : unsharable)
+        {
+            Frame copy = Frame.copyWithoutPayload(frame);
+            copy.setPayload(frame.getPayload().slice());
+            send(session, copy, null, completion);
+        }
+    }
+
+    private String sharingKey(CoreSession session)
+    {
+        if (!(session instanceof WebSocketCoreSession) || session.getBehavior() != Behavior.SERVER)
+            return null;
+        List<ExtensionConfig> extensions = session.getNegotiatedExtensions();
+        if (extensions.isEmpty())
+            return IDENTITY;
+        if (extensions.size() == 1)
+        {
+            ExtensionConfig config = extensions.get(0);
+            if (DEFLATE.equals(config.getName()) && config.getParameterKeys().contains("server_no_context_takeover"))
+                return DEFLATE;
+        }
+        return null;
+    }
+
+    private EncodedFrame encode(Frame frame, String key, Map<String, RetainableByteBuffer> encoded)
+    {
+        encodings.increment();
+        Frame header = Frame.copyWithoutPayload(frame);
+        ByteBuffer payload = frame.getPayload().slice();
+        if (DEFLATE.equals(key))
+        {
+            header.setRsv1(true);
+            payload = deflate(payload);
+        }
+        header.setPayload(payload);
+
+        EncodedFrame encodedFrame = EncodedFrame.encode(header, components.getBufferPool());
+        encoded.put(key, encodedFrame.getEncoded());
+        if (LOG.isDebugEnabled())
+            LOG.debug("Encoded {} for {}: {}", frame, key, encodedFrame);
+        return encodedFrame;
+    }
+
+    private ByteBuffer deflate(ByteBuffer payload)
+    {
+        Deflater deflater = components.getDeflaterPool().acquire();
+        try
+        {
+            deflater.setInput(payload);
+            byte[] output = new byte[Math.max(64, payload.remaining() + 64)];
+            int length = 0;
+            while (true)
+            {
+                int compressed = deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                length += compressed;
+                if (length < output.length)
+                    break;
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+
+            // Drop the tail bytes generated by SYNC_FLUSH, see RFC 7692, section 7.2.1.
+            ByteBuffer result = ByteBuffer.wrap(output, 0, length);
+            if (PerMessageDeflateExtension.endsWithTail(result))
+                result.limit(result.limit() - TAIL_LENGTH);
+            if (!result.hasRemaining())
+                result = ByteBuffer.wrap(new byte[]{0x00});
+            return result;
+        }
+        finally
+        {
+            components.getDeflaterPool().release(deflater);
+        }
+    }
+
+    private void send(CoreSession session, Frame frame, RetainableByteBuffer encoded, Completion completion)
+    {
+        int length = frame.getPayloadLength();
+        AtomicLong bytes = queued.computeIfAbsent(session, s -> new AtomicLong());
+        long total = bytes.addAndGet(length);
+        long maxQueuedBytes = getMaxQueuedBytes();
+        if (maxQueuedBytes >= 0 && total > maxQueuedBytes && total > length)
+        {
+            dequeue(session, bytes, length);
+            if (getOverflowPolicy() == OverflowPolicy.CLOSE)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Closing {}, {} bytes queued", session, total - length);
+                closed.increment();
+                session.close(CloseStatus.POLICY_VIOLATION, "Slow consumer", Callback.NOOP);
+            }
+            else
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dropping {} for {}, {} bytes queued", frame, session, total - length);
+                dropped.increment();
+            }
+            completion.succeeded();
+            return;
+        }
+
+        if (encoded != null)
+        {
+            encoded.retain();
+            shared.increment();
+        }
+        else
+        {
+            unshared.increment();
+        }
+
+        session.sendFrame(frame, Callback.from(() -> sent(session, bytes, length, encoded, completion), x ->
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Failed broadcast to {}", session, x);
+            failed.increment();
+            sent(session, bytes, length, encoded, completion);
+        }), false);
+    }
+
+    private void sent(CoreSession session, AtomicLong bytes, int length, RetainableByteBuffer encoded, Completion completion)
+    {
+        if (encoded != null)
+            encoded.release();
+        dequeue(session, bytes, length);
+        completion.succeeded();
+    }
+
+    private void dequeue(CoreSession session, AtomicLong bytes, int length)
+    {
+        if (bytes.addAndGet(-length) == 0)
+            queued.remove(session, bytes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[maxQueuedBytes=%d,policy=%s]", getClass().getSimpleName(), hashCode(), getMaxQueuedBytes(), getOverflowPolicy());
+    }
+
+    private static class Completion
+    {
+        private final AtomicInteger count;
+        private final Callback callback;
+
+        private Completion(int count, Callback callback)
+        {
+            this.count = new AtomicInteger(count);
+            this.callback = callback;
+        }
+
+        private void succeeded()
+        {
+            if (count.decrementAndGet() == 0)
+                callback.succeeded();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A budget for the native memory held by the {@link java.util.zip.Deflater} and {@link java.util.zip.Inflater}
+ * instances of the {@code permessage-deflate} extension.</p>
+ * <p>A session negotiating context takeover keeps its zlib state for its whole lifetime, which for
+ * many idle sessions adds up to a large amount of native memory. When a {@link #setMaxMemory(long) maximum}
+ * is configured the budget is enforced as follows:</p>
+ * <ul>
+ * <li>new sessions reserve the memory of the inflater they keep for context takeover when they are
+ * negotiated, and are negotiated with {@code client_no_context_takeover} if the budget has no room
+ * for it, so that their inflater is only held for the duration of a message;</li>
+ * <li>an idle session keeping its deflater for context takeover is hibernated, releasing the deflater,
+ * when another session needs the memory. Its next message is compressed with a fresh deflater, which
+ * the remote inflater can always decode;</li>
+ * <li>if no deflater can be obtained within the budget the message is sent uncompressed.</li>
+ * </ul>
+ * <p>Inflaters are always obtained when needed to decode a compressed message, even if this
+ * exceeds the budget. The memory of each instance is estimated from the zlib defaults used by
+ * {@code java.util.zip}, a window of 15 bits and a memory level of 8.</p>
+ * <p>A single instance may be shared by many {@link WebSocketComponents} to have a server wide budget.</p>
+ */
+@ManagedObject("Budget for the native memory of permessage-deflate")
+public class DeflateMemoryBudget
+{
+    /**
+     * zlib deflate state: {@code (1 << (windowBits + 2)) + (1 << (memLevel + 9))} plus the stream structures.
+     */
+    public static final long DEFAULT_DEFLATER_MEMORY = (1 << 17) + (1 << 17) + 6 * 1024;
+    /**
+     * zlib inflate state: {@code 1 << windowBits} plus the stream structures.
+     */
+    public static final long DEFAULT_INFLATER_MEMORY = (1 << 15) + 7 * 1024;
+
+    private final AtomicLong memory = new AtomicLong();
+    private final Set<Hibernatable> idle = new LinkedHashSet<>();
+    private final LongAdder deflaters = new LongAdder();
+    private final LongAdder inflaters = new LongAdder();
+    private final LongAdder hibernated = new LongAdder();
+    private final LongAdder uncompressed = new LongAdder();
+    private final LongAdder noContextTakeover = new LongAdder();
+    private final LongAdder deflateIn = new LongAdder();
+    private final LongAdder deflateOut = new LongAdder();
+    private final LongAdder inflateIn = new LongAdder();
+    private final LongAdder inflateOut = new LongAdder();
+    private long maxMemory = -1;
+    private long deflaterMemory = DEFAULT_DEFLATER_MEMORY;
+    private long inflaterMemory = DEFAULT_INFLATER_MEMORY;
+
+    @ManagedAttribute("The max native memory in bytes for deflaters and inflaters, or -1 for no limit")
+    public long getMaxMemory()
+    {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(long maxMemory)
+    {
+        this.maxMemory = maxMemory;
+    }
+
+    @ManagedAttribute("The estimated native memory in bytes of a deflater")
+    public long getDeflaterMemory()
+    {
+        return deflaterMemory;
+    }
+
+    public void setDeflaterMemory(long deflaterMemory)
+    {
+        this.deflaterMemory = deflaterMemory;
+    }
+
+    @ManagedAttribute("The estimated native memory in bytes of an inflater")
+    public long getInflaterMemory()
+    {
+        return inflaterMemory;
+    }
+
+    public void setInflaterMemory(long inflaterMemory)
+    {
+        this.inflaterMemory = inflaterMemory;
+    }
+
+    /**
+     * @return whether a maximum memory is configured
+     */
+    public boolean isBounded()
+    {
+        return maxMemory >= 0;
+    }
+
+    @ManagedAttribute(value = "The estimated native memory in bytes held by deflaters and inflaters", readonly = true)
+    public long getMemoryUsed()
+    {
+        return memory.get();
+    }
+
+    @ManagedAttribute(value = "The number of deflaters currently held", readonly = true)
+    public long getDeflatersHeld()
+    {
+        return deflaters.sum();
+    }
+
+    @ManagedAttribute(value = "The number of inflaters currently held or reserved", readonly = true)
+    public long getInflatersHeld()
+    {
+        return inflaters.sum();
+    }
+
+    @ManagedAttribute(value = "The number of times an idle session released its deflater", readonly = true)
+    public long getHibernatedCount()
+    {
+        return hibernated.sum();
+    }
+
+    @ManagedAttribute(value = "The number of messages sent uncompressed because the budget was exhausted", readonly = true)
+    public long getUncompressedMessageCount()
+    {
+        return uncompressed.sum();
+    }
+
+    @ManagedAttribute(value = "The number of sessions negotiated without client context takeover because the budget was exhausted", readonly = true)
+    public long getNoContextTakeoverCount()
+    {
+        return noContextTakeover.sum();
+    }
+
+    @ManagedAttribute(value = "The ratio of compressed to uncompressed bytes sent", readonly = true)
+    public double getDeflateRatio()
+    {
+        return ratio(deflateOut.sum(), deflateIn.sum());
+    }
+
+    @ManagedAttribute(value = "The ratio of compressed to uncompressed bytes received", readonly = true)
+    public double getInflateRatio()
+    {
+        return ratio(inflateIn.sum(), inflateOut.sum());
+    }
+
+    private static double ratio(long compressed, long uncompressed)
+    {
+        return uncompressed == 0 ? 0.0 : (double)compressed / uncompressed;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hibernated.reset();
+        uncompressed.reset();
+        noContextTakeover.reset();
+        deflateIn.reset();
+        deflateOut.reset();
+        inflateIn.reset();
+        inflateOut.reset();
+    }
+
+    /**
+     * <p>Reserves the memory of an inflater kept for context takeover for the lifetime of a session,
+     * hibernating idle sessions if needed to make room.</p>
+     * <p>The reservation is released with {@link #releaseInflater()} when the session is closed.</p>
+     *
+     * @return whether the inflater fits within the budget
+     */
+    public boolean tryReserveInflater()
+    {
+        if (!tryReserve(inflaterMemory))
+        {
+            noContextTakeover.increment();
+            return false;
+        }
+        inflaters.increment();
+        return true;
+    }
+
+    /**
+     * <p>Accounts for a deflater, hibernating idle sessions if needed to make room.</p>
+     *
+     * @return whether the deflater fits within the budget
+     */
+    public boolean tryAcquireDeflater()
+    {
+        if (!tryReserve(deflaterMemory))
+        {
+            uncompressed.increment();
+            return false;
+        }
+        deflaters.increment();
+        return true;
+    }
+
+    public void releaseDeflater()
+    {
+        memory.addAndGet(-deflaterMemory);
+        deflaters.decrement();
+    }
+
+    /**
+     * <p>Accounts for an inflater, which is always granted as compressed
+     * data from the remote peer must be decoded.</p>
+     */
+    public void acquireInflater()
+    {
+        if (!tryReserve(inflaterMemory))
+            memory.addAndGet(inflaterMemory);
+        inflaters.increment();
+    }
+
+    public void releaseInflater()
+    {
+        memory.addAndGet(-inflaterMemory);
+        inflaters.decrement();
+    }
+
+    /**
+     * <p>Records that the given session is idle and may release its deflater
+     * if the budget needs the memory.</p>
+     *
+     * @param hibernatable the idle session state
+     */
+    public void idle(Hibernatable hibernatable)
+    {
+        if (!isBounded())
+            return;
+        synchronized (idle)
+        {
+            idle.add(hibernatable);
+        }
+    }
+
+    /**
+     * <p>Records that the given session is no longer idle, either because it is
+     * processing a message or because it is closed.</p>
+     *
+     * @param hibernatable the session state
+     */
+    public void busy(Hibernatable hibernatable)
+    {
+        if (!isBounded())
+            return;
+        synchronized (idle)
+        {
+            idle.remove(hibernatable);
+        }
+    }
+
+    private Hibernatable pollIdle()
+    {
+        synchronized (idle)
+        {
+            Iterator<Hibernatable> iterator = idle.iterator();
+            if (!iterator.hasNext())
+                return null;
+            Hibernatable hibernatable = iterator.next();
+            iterator.remove();
+            return hibernatable;
+        }
+    }
+
+    public void onDeflated(long in, long out)
+    {
+        deflateIn.add(in);
+        deflateOut.add(out);
+    }
+
+    public void onInflated(long in, long out)
+    {
+        inflateIn.add(in);
+        inflateOut.add(out);
+    }
+
+    private boolean tryReserve(long bytes)
+    {
+        if (!isBounded())
+        {
+            memory.addAndGet(bytes);
+            return true;
+        }
+
+        while (true)
+        {
+            long used = memory.get();
+            if (used + bytes <= maxMemory)
+            {
+                if (memory.compareAndSet(used, used + bytes))
+                    return true;
+                continue;
+            }
+
+            // Try to make room by hibernating the least recently idle sessions.
+            Hibernatable hibernatable = pollIdle();
+            if (hibernatable == null)
+                return false;
+            if (hibernatable.hibernate())
+                hibernated.increment();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[memory=%d/%d,deflaters=%d,inflaters=%d]", getClass().getSimpleName(), hashCode(),
+            getMemoryUsed(), getMaxMemory(), getDeflatersHeld(), getInflatersHeld());
+    }
+
+    /**
+     * <p>The state of an idle session that can be released to free memory.</p>
+     * <p>Implementations must not call back into the budget while holding a lock
+     * that {@link #hibernate()} needs.</p>
+     */
+    public interface Hibernatable
+    {
+        /**
+         * <p>Releases the state if still idle, accounting for it with
+         * {@link #releaseDeflater()} or {@link #releaseInflater()}.</p>
+         *
+         * @return whether the state was released
+         */
+        boolean hibernate();
+    }
+}
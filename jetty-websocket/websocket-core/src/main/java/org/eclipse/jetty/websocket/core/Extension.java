@@ -78,6 +78,13 @@ public interface Extension extends IncomingFrames, OutgoingFrames
      */
     void setNextIncomingFrames(IncomingFrames nextIncoming);
 
+    /**
+     * Called when the session is closed, so that the extension can release its resources.
+     */
+    default void close()
+    {
+    }
+
     /**
      * Set the next {@link OutgoingFrames} to call in the chain.
      *
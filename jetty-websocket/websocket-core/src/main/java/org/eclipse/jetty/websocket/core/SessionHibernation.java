@@ -0,0 +1,234 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.Sweeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Hibernation of idle WebSocket sessions.</p>
+ * <p>When an {@link #setIdleTimeout(long) idle timeout} is configured, a connection that has not read
+ * nor written for that time releases the resources that it can rebuild on demand: the pooled buffers
+ * of the flusher and of the parser, the latter keeping only the bytes of a partially received frame,
+ * and the deflater kept by {@code permessage-deflate} for context takeover.
+ * What remains is the session and connection state needed to resume on the next read or write,
+ * which rehydrates the released resources lazily.</p>
+ * <p>The inflater kept for context takeover cannot be released, see {@link DeflateMemoryBudget}
+ * to bound its memory.</p>
+ * <p>Rather than scheduling a task per connection, a single task sweeps the sessions opened while
+ * hibernation is enabled every half idle timeout, so a session hibernates after being idle for
+ * between one and one and a half times the idle timeout.</p>
+ * <p>The sweep task runs on the {@link #setScheduler(Scheduler) scheduler} of this component,
+ * by default its own, while it is started; the WebSocket containers start and stop it with them.
+ * Sessions opened while it is stopped are not swept.</p>
+ */
+@ManagedObject("Hibernation of idle WebSocket sessions")
+public class SessionHibernation extends ContainerLifeCycle
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SessionHibernation.class);
+
+    private final Set<Sweeper.Sweepable> sessions = ConcurrentHashMap.newKeySet();
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder hibernatedSessions = new LongAdder();
+    private final LongAdder hibernations = new LongAdder();
+    private final LongAdder wakeUps = new LongAdder();
+    private long idleTimeout = -1;
+    private Scheduler scheduler;
+    private Scheduler.Task sweepTask;
+
+    @ManagedAttribute("The time in ms a session must be idle before it hibernates, or -1 to never hibernate")
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Scheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler the scheduler to run the sweep task, or null to use a scheduler owned by this component
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        updateBean(this.scheduler, scheduler);
+        this.scheduler = scheduler;
+    }
+
+    public boolean isEnabled()
+    {
+        return idleTimeout > 0;
+    }
+
+    @ManagedAttribute(value = "The number of open sessions that are not hibernated", readonly = true)
+    public long getActiveSessions()
+    {
+        return activeSessions.sum();
+    }
+
+    @ManagedAttribute(value = "The number of open sessions that are hibernated", readonly = true)
+    public long getHibernatedSessions()
+    {
+        return hibernatedSessions.sum();
+    }
+
+    @ManagedAttribute(value = "The number of times a session hibernated", readonly = true)
+    public long getHibernationCount()
+    {
+        return hibernations.sum();
+    }
+
+    @ManagedAttribute(value = "The number of times a hibernated session woke up", readonly = true)
+    public long getWakeUpCount()
+    {
+        return wakeUps.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hibernations.reset();
+        wakeUps.reset();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (scheduler == null)
+        {
+            scheduler = new ScheduledExecutorScheduler(String.format("SessionHibernation@%x", hashCode()), false);
+            addBean(scheduler);
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        synchronized (this)
+        {
+            if (sweepTask != null)
+                sweepTask.cancel();
+            sweepTask = null;
+        }
+        sessions.clear();
+        super.doStop();
+    }
+
+    /**
+     * <p>Notifies that a session opened.</p>
+     * <p>If hibernation is enabled and this component is started, the session is swept
+     * periodically until it is closed, and its {@link Sweeper.Sweepable#sweep()} method
+     * hibernates it if it is idle, and returns whether it is closed and should not be
+     * swept anymore.</p>
+     *
+     * @param session the session to sweep
+     */
+    public void onOpened(Sweeper.Sweepable session)
+    {
+        activeSessions.increment();
+        if (!isEnabled() || !isRunning())
+            return;
+        sessions.add(session);
+        synchronized (this)
+        {
+            if (sweepTask == null && isRunning())
+                sweepTask = scheduler.schedule(this::sweep, getSweepPeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void onClosed(Sweeper.Sweepable session, boolean hibernated)
+    {
+        sessions.remove(session);
+        if (hibernated)
+            hibernatedSessions.decrement();
+        else
+            activeSessions.decrement();
+    }
+
+    public void onHibernated()
+    {
+        hibernations.increment();
+        activeSessions.decrement();
+        hibernatedSessions.increment();
+    }
+
+    public void onWokenUp()
+    {
+        wakeUps.increment();
+        hibernatedSessions.decrement();
+        activeSessions.increment();
+    }
+
+    private long getSweepPeriod()
+    {
+        return Math.max(1, getIdleTimeout() / 2);
+    }
+
+    private void sweep()
+    {
+        for (Sweeper.Sweepable session : sessions)
+        {
+            try
+            {
+                if (session.sweep())
+                    sessions.remove(session);
+            }
+            catch (Throwable x)
+            {
+                LOG.info("Exception while sweeping {}", session, x);
+            }
+        }
+
+        synchronized (this)
+        {
+            sweepTask = null;
+            if (sessions.isEmpty() || !isEnabled() || !isRunning())
+                return;
+            sweepTask = scheduler.schedule(this::sweep, getSweepPeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[idleTimeout=%d,active=%d,hibernated=%d]", getClass().getSimpleName(), hashCode(),
+            getIdleTimeout(), getActiveSessions(), getHibernatedSessions());
+    }
+}
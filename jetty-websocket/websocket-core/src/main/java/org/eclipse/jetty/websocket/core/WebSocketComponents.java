@@ -61,12 +61,22 @@ public class WebSocketComponents
 
     public WebSocketComponents(WebSocketExtensionRegistry extensionRegistry, DecoratedObjectFactory objectFactory,
                                ByteBufferPool bufferPool, InflaterPool inflaterPool, DeflaterPool deflaterPool)
+    {
+        this(extensionRegistry, objectFactory, bufferPool, inflaterPool, deflaterPool, new DeflateMemoryBudget());
+    }
+
+    public WebSocketComponents(WebSocketExtensionRegistry extensionRegistry, DecoratedObjectFactory objectFactory,
+                               ByteBufferPool bufferPool, InflaterPool inflaterPool, DeflaterPool deflaterPool,
+                               DeflateMemoryBudget deflateMemoryBudget)
     {
         this.extensionRegistry = extensionRegistry;
         this.objectFactory = objectFactory;
         this.bufferPool = bufferPool;
         this.deflaterPool = deflaterPool;
         this.inflaterPool = inflaterPool;
+        this.deflateMemoryBudget = deflateMemoryBudget;
+        this.sessionHibernation = new SessionHibernation();
+        this.autoBatching = new AutoBatching();
     }
 
     private DecoratedObjectFactory objectFactory;
@@ -74,6 +84,9 @@ public class WebSocketComponents
     private ByteBufferPool bufferPool;
     private InflaterPool inflaterPool;
     private DeflaterPool deflaterPool;
+    private DeflateMemoryBudget deflateMemoryBudget;
+    private SessionHibernation sessionHibernation;
+    private AutoBatching autoBatching;
 
     public ByteBufferPool getBufferPool()
     {
@@ -99,4 +112,19 @@ public class WebSocketComponents
     {
         return deflaterPool;
     }
+
+    public DeflateMemoryBudget getDeflateMemoryBudget()
+    {
+        return deflateMemoryBudget;
+    }
+
+    public SessionHibernation getSessionHibernation()
+    {
+        return sessionHibernation;
+    }
+
+    public AutoBatching getAutoBatching()
+    {
+        return autoBatching;
+    }
 }
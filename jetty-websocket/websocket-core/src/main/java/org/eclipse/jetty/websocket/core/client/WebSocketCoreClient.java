@@ -67,6 +67,7 @@ public class WebSocketCoreClient extends ContainerLifeCycle
         this.httpClient = httpClient;
         this.components = webSocketComponents;
         addBean(httpClient);
+        addBean(webSocketComponents.getSessionHibernation());
     }
 
     public CompletableFuture<CoreSession> connect(FrameHandler frameHandler, URI wsUri) throws IOException
@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.internal;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.core.Frame;
+
+/**
+ * <p>A frame whose header and payload have already been generated, and
+ * possibly transformed by the extensions, into a {@link RetainableByteBuffer}.</p>
+ * <p>An EncodedFrame is immutable, so the same instance can be sent to many connections:
+ * each send uses its own {@link #newFrame() frame}, which is not passed to the extensions
+ * nor to the {@link Generator}, and the {@link FrameFlusher} writes a slice of the encoded bytes.
+ * The sender is responsible to retain the encoded buffer once per connection,
+ * and to release it when the send of each connection completes.</p>
+ * <p>EncodedFrames cannot be masked, so they cannot be sent by clients.</p>
+ */
+public final class EncodedFrame
+{
+    private final Frame header;
+    private final RetainableByteBuffer encoded;
+    private final int headerLength;
+
+    private EncodedFrame(Frame header, RetainableByteBuffer encoded, int headerLength)
+    {
+        this.header = header;
+        this.encoded = encoded;
+        this.headerLength = headerLength;
+    }
+
+    /**
+     * <p>Generates the given frame into a buffer acquired from the given pool.</p>
+     *
+     * @param frame the frame to encode, with its payload already transformed by the extensions
+     * @param bufferPool the pool to acquire the encoded buffer from
+     * @return a new EncodedFrame, whose encoded buffer must be released by the caller
+     */
+    public static EncodedFrame encode(Frame frame, ByteBufferPool bufferPool)
+    {
+        if (frame.isMasked())
+            throw new IllegalArgumentException("Masked frame " + frame);
+
+        RetainableByteBuffer encoded = new RetainableByteBuffer(bufferPool, Generator.MAX_HEADER_LENGTH + frame.getPayloadLength());
+        ByteBuffer buffer = encoded.getBuffer();
+        BufferUtil.clear(buffer);
+        // Frames may be encoded concurrently, so do not share a Generator.
+        new Generator().generateHeader(frame, buffer);
+        int headerLength = buffer.remaining();
+        if (frame.hasPayload())
+            BufferUtil.append(buffer, frame.getPayload().slice());
+        return new EncodedFrame(Frame.copyWithoutPayload(frame), encoded, headerLength);
+    }
+
+    public byte getOpCode()
+    {
+        return header.getOpCode();
+    }
+
+    public int getPayloadLength()
+    {
+        return encoded.remaining() - headerLength;
+    }
+
+    /**
+     * @return the shared encoded buffer
+     */
+    public RetainableByteBuffer getEncoded()
+    {
+        return encoded;
+    }
+
+    /**
+     * @return a new slice of the encoded bytes, with its own position and limit
+     */
+    public ByteBuffer getEncodedBuffer()
+    {
+        return encoded.getBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a new frame to send the encoded bytes to one connection
+     */
+    public Frame newFrame()
+    {
+        return new Send(this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,headerLength=%d,%s]", getClass().getSimpleName(), hashCode(), header, headerLength, encoded);
+    }
+
+    /**
+     * <p>The frame carrying an {@link EncodedFrame} through the send path of one connection,
+     * which uses its headers and payload length, while the encoded bytes are written.</p>
+     */
+    static class Send extends Frame
+    {
+        private final EncodedFrame encodedFrame;
+
+        private Send(EncodedFrame encodedFrame)
+        {
+            super(encodedFrame.getOpCode());
+            copyHeaders(encodedFrame.header);
+            this.encodedFrame = encodedFrame;
+            ByteBuffer payload = encodedFrame.getEncodedBuffer();
+            payload.position(payload.position() + encodedFrame.headerLength);
+            this.payload = payload.slice();
+        }
+
+        EncodedFrame getEncodedFrame()
+        {
+            return encodedFrame;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.websocket.core.Behavior;
+import org.eclipse.jetty.websocket.core.DeflateMemoryBudget;
 import org.eclipse.jetty.websocket.core.Extension;
 import org.eclipse.jetty.websocket.core.ExtensionConfig;
 import org.eclipse.jetty.websocket.core.Frame;
@@ -189,6 +190,10 @@ public class ExtensionStack implements IncomingFrames, OutgoingFrames, Dumpable
                 continue;
             }
 
+            // The server decides whether permessage-deflate context takeover fits the memory budget.
+            if (behavior == Behavior.SERVER && ext instanceof PerMessageDeflateExtension)
+                ((PerMessageDeflateExtension)ext).negotiateMemoryBudget();
+
             // Add Extension
             extensions.add(ext);
 
@@ -258,6 +263,42 @@ public class ExtensionStack implements IncomingFrames, OutgoingFrames, Dumpable
         }
     }
 
+    /**
+     * Closes all the extensions, releasing their resources.
+     */
+    public void close()
+    {
+        if (extensions == null)
+            return;
+
+        for (Extension extension : extensions)
+        {
+            try
+            {
+                extension.close();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Failed to close extension {}", extension, x);
+            }
+        }
+    }
+
+    /**
+     * Releases the state that the extensions can rebuild when the session is next used.
+     */
+    public void hibernate()
+    {
+        if (extensions == null)
+            return;
+
+        for (Extension extension : extensions)
+        {
+            if (extension instanceof DeflateMemoryBudget.Hibernatable)
+                ((DeflateMemoryBudget.Hibernatable)extension).hibernate();
+        }
+    }
+
     public Extension getRsv1User()
     {
         return rsvClaims[0];
@@ -50,7 +50,7 @@ public abstract class FragmentingFlusher extends TransformingFlusher
     protected boolean onFrame(Frame frame, Callback callback, boolean batch)
     {
         long maxFrameSize = configuration.getMaxFrameSize();
-        if (frame.isControlFrame() || maxFrameSize <= 0 || frame.getPayloadLength() <= maxFrameSize)
+        if (frame.isControlFrame() || frame instanceof EncodedFrame.Send || maxFrameSize <= 0 || frame.getPayloadLength() <= maxFrameSize)
         {
             forwardFrame(frame, callback, batch);
             return true;
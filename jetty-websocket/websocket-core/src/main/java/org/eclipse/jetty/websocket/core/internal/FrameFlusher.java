@@ -36,6 +36,7 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.websocket.core.AutoBatching;
 import org.eclipse.jetty.websocket.core.CloseStatus;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
@@ -63,14 +64,21 @@ public class FrameFlusher extends IteratingCallback
     private final List<Entry> entries;
     private final List<Entry> previousEntries;
     private final List<Entry> failedEntries;
+    private final List<Entry> autoBatchedEntries = new ArrayList<>();
 
     private List<ByteBuffer> releasableBuffers = new ArrayList<>();
     private ByteBuffer batchBuffer;
+    private boolean batchBuffered;
     private boolean canEnqueue = true;
     private boolean flushed = true;
     private Throwable closedCause;
     private long idleTimeout;
     private boolean useDirectByteBuffers;
+    private AutoBatching autoBatching;
+    private Scheduler.Task autoFlushTask;
+    private boolean autoBatched;
+    private long batchStartNanos;
+    private int framesSinceWrite;
 
     public FrameFlusher(ByteBufferPool bufferPool, Scheduler scheduler, Generator generator, EndPoint endPoint, int bufferSize, int maxGather)
     {
@@ -96,6 +104,20 @@ public class FrameFlusher extends IteratingCallback
         this.useDirectByteBuffers = useDirectByteBuffers;
     }
 
+    public AutoBatching getAutoBatching()
+    {
+        return autoBatching;
+    }
+
+    /**
+     * @param autoBatching the configuration and statistics of automatic batching, or null to only batch
+     * the frames enqueued in batch mode
+     */
+    public void setAutoBatching(AutoBatching autoBatching)
+    {
+        this.autoBatching = autoBatching;
+    }
+
     /**
      * Enqueue a Frame to be written to the endpoint.
      *
@@ -149,7 +171,7 @@ public class FrameFlusher extends IteratingCallback
                     entry when it expires. When the timeout expires we will go over entries in the queue and
                     entries list to see if any of them have expired, it will then reset the timeout for the frame
                     with the soonest expiry time. */
-                    if ((idleTimeout > 0) && (queue.size() == 1) && entries.isEmpty())
+                    if ((idleTimeout > 0) && (queue.size() == 1) && entries.isEmpty() && autoBatchedEntries.isEmpty())
                         timeoutScheduler.schedule(this::timeoutExpired, idleTimeout, TimeUnit.MILLISECONDS);
                 }
             }
@@ -184,6 +206,28 @@ public class FrameFlusher extends IteratingCallback
         return false;
     }
 
+    /**
+     * <p>Releases the aggregate buffer of an idle flusher, which is acquired again when frames are batched.</p>
+     *
+     * @return whether the flusher was idle, with no frames queued, being flushed or batched
+     */
+    public boolean hibernate()
+    {
+        synchronized (this)
+        {
+            if (!queue.isEmpty() || !entries.isEmpty() || !previousEntries.isEmpty() || !autoBatchedEntries.isEmpty() ||
+                !buffers.isEmpty() || BufferUtil.hasContent(batchBuffer))
+                return false;
+
+            if (batchBuffer != null)
+            {
+                bufferPool.release(batchBuffer);
+                batchBuffer = null;
+            }
+            return true;
+        }
+    }
+
     public void onClose(Throwable cause)
     {
         synchronized (this)
@@ -202,11 +246,18 @@ public class FrameFlusher extends IteratingCallback
 
         boolean flush = false;
         Callback releasingCallback = this;
+        Scheduler.Task cancelAutoFlush = null;
+        int writeFrames = 0;
+        long batchLatency = -1;
+        boolean gathered = false;
         synchronized (this)
         {
             if (closedCause != null)
                 throw closedCause;
 
+            AutoBatching autoBatching = this.autoBatching;
+            boolean autoBatch = autoBatching != null && autoBatching.isEnabled();
+
             // Remember entries to succeed from previous process
             previousEntries.addAll(entries);
             entries.clear();
@@ -218,6 +269,7 @@ public class FrameFlusher extends IteratingCallback
             {
                 Entry entry = queue.poll();
                 entries.add(entry);
+                gathered = true;
                 if (entry.frame == FLUSH_FRAME)
                 {
                     flush = true;
@@ -225,10 +277,21 @@ public class FrameFlusher extends IteratingCallback
                 }
 
                 messagesOut.increment();
+                framesSinceWrite++;
+
+                if (entry.frame instanceof EncodedFrame.Send)
+                {
+                    // The frame was already generated, and may be shared with other connections.
+                    buffers.add(((EncodedFrame.Send)entry.frame).getEncodedFrame().getEncodedBuffer());
+                    flush = true;
+                    flushed = true;
+                    continue;
+                }
 
                 int batchSpace = batchBuffer == null ? bufferSize : BufferUtil.space(batchBuffer);
 
-                boolean batch = entry.batch &&
+                boolean batch = (entry.batch || autoBatch) &&
+                    canAppendToBatchBuffer() &&
                     !entry.frame.isControlFrame() &&
                     entry.frame.getPayloadLength() < bufferSize / 4 &&
                     (batchSpace - Generator.MAX_HEADER_LENGTH) >= entry.frame.getPayloadLength();
@@ -237,19 +300,39 @@ public class FrameFlusher extends IteratingCallback
                 {
                     // Acquire a batchBuffer if we don't have one.
                     if (batchBuffer == null)
-                    {
                         batchBuffer = acquireBuffer(bufferSize);
-                        buffers.add(batchBuffer);
+                    addBatchBuffer();
+
+                    if (autoBatch && !entry.batch)
+                    {
+                        entry.autoBatched = true;
+                        autoBatching.onBatched();
+
+                        // The first frame of a batch starts the batch delay.
+                        if (!autoBatched && !flush)
+                        {
+                            long batchStart = System.nanoTime();
+                            autoBatched = true;
+                            batchStartNanos = batchStart;
+                            autoFlushTask = timeoutScheduler.schedule(() -> autoFlush(batchStart), autoBatching.getMaxBatchDelay(), TimeUnit.MICROSECONDS);
+                        }
                     }
 
                     // Generate the frame into the batchBuffer.
                     generator.generateWholeFrame(entry.frame, batchBuffer);
+
+                    if (autoBatch && !flush && batchBuffer.remaining() >= getMaxBatchSize(autoBatching))
+                    {
+                        autoBatching.onSizeFlush();
+                        flush = true;
+                    }
                 }
                 else
                 {
-                    if (batchBuffer != null && batchSpace >= Generator.MAX_HEADER_LENGTH)
+                    if (batchBuffer != null && batchSpace >= Generator.MAX_HEADER_LENGTH && canAppendToBatchBuffer())
                     {
                         // Use the batch space for our header.
+                        addBatchBuffer();
                         generator.generateHeader(entry.frame, batchBuffer);
                     }
                     else
@@ -274,15 +357,45 @@ public class FrameFlusher extends IteratingCallback
 
                         buffers.add(payload.slice());
                     }
+
                     flush = true;
                 }
 
                 flushed = flush;
             }
 
+            if (flush)
+            {
+                // The auto batched frames held from previous iterations are written now.
+                entries.addAll(0, autoBatchedEntries);
+                autoBatchedEntries.clear();
+            }
+            else
+            {
+                // The application did not ask to batch these frames, so
+                // their callbacks are held until they are written, which
+                // may be up to the max batch delay from now.
+                entries.removeIf(entry ->
+                {
+                    if (entry.autoBatched)
+                        autoBatchedEntries.add(entry);
+                    return entry.autoBatched;
+                });
+            }
+
             // If we are going to flush we should release any buffers we have allocated after the callback completes.
             if (flush)
             {
+                writeFrames = framesSinceWrite;
+                framesSinceWrite = 0;
+                if (autoBatched)
+                {
+                    autoBatched = false;
+                    cancelAutoFlush = autoFlushTask;
+                    autoFlushTask = null;
+                    batchLatency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - batchStartNanos);
+                }
+
                 final List<ByteBuffer> callbackBuffers = releasableBuffers;
                 releasableBuffers = new ArrayList<>();
                 releasingCallback = Callback.from(releasingCallback, () ->
@@ -303,6 +416,11 @@ public class FrameFlusher extends IteratingCallback
                 BufferUtil.toDetailString(batchBuffer),
                 entries);
 
+        if (cancelAutoFlush != null)
+            cancelAutoFlush.cancel();
+        if (flush && autoBatching != null)
+            autoBatching.onWrite(writeFrames, batchLatency);
+
         // succeed previous entries
         for (Entry entry : previousEntries)
         {
@@ -313,7 +431,7 @@ public class FrameFlusher extends IteratingCallback
         previousEntries.clear();
 
         // If we did not get any new entries go to IDLE state
-        if (entries.isEmpty())
+        if (!gathered)
         {
             releaseAggregate();
             return Action.IDLE;
@@ -332,6 +450,7 @@ public class FrameFlusher extends IteratingCallback
             bytesOut.add(bytes);
             endPoint.write(releasingCallback, bufferArray);
             buffers.clear();
+            batchBuffered = false;
         }
         else
         {
@@ -342,6 +461,45 @@ public class FrameFlusher extends IteratingCallback
         return Action.SCHEDULED;
     }
 
+    private boolean canAppendToBatchBuffer()
+    {
+        // Bytes appended to the batchBuffer are written where the batchBuffer
+        // is in the buffers, so only while no other buffer follows it.
+        return !batchBuffered || buffers.get(buffers.size() - 1) == batchBuffer;
+    }
+
+    private void addBatchBuffer()
+    {
+        // A batchBuffer reused after a flush must be written again.
+        if (!batchBuffered)
+        {
+            buffers.add(batchBuffer);
+            batchBuffered = true;
+        }
+    }
+
+    private int getMaxBatchSize(AutoBatching autoBatching)
+    {
+        int maxBatchSize = autoBatching.getMaxBatchSize();
+        return maxBatchSize > 0 ? Math.min(maxBatchSize, bufferSize) : bufferSize;
+    }
+
+    private void autoFlush(long batchStart)
+    {
+        synchronized (this)
+        {
+            // The batch may have been written already, because of its size or of a flush.
+            if (!autoBatched || batchStartNanos != batchStart)
+                return;
+            autoFlushTask = null;
+        }
+
+        if (autoBatching != null)
+            autoBatching.onDelayFlush();
+        if (enqueue(FLUSH_FRAME, Callback.NOOP, false))
+            iterate();
+    }
+
     private ByteBuffer acquireBuffer(int capacity)
     {
         return bufferPool.acquire(capacity, isUseDirectByteBuffers());
@@ -370,7 +528,7 @@ public class FrameFlusher extends IteratingCallback
             /* Iterate through entries in both the queue and entries list.
             If any entry has expired then we fail the FrameFlusher.
             Otherwise we will try to schedule a new timeout. */
-            Iterator<Entry> iterator = TypeUtil.concat(entries.iterator(), queue.iterator());
+            Iterator<Entry> iterator = TypeUtil.concat(TypeUtil.concat(autoBatchedEntries.iterator(), entries.iterator()), queue.iterator());
             while (iterator.hasNext())
             {
                 Entry entry = iterator.next();
@@ -381,8 +539,10 @@ public class FrameFlusher extends IteratingCallback
                     failed = true;
                     canEnqueue = false;
                     closedCause = new WebSocketWriteTimeoutException("FrameFlusher Write Timeout");
+                    failedEntries.addAll(autoBatchedEntries);
                     failedEntries.addAll(entries);
                     failedEntries.addAll(queue);
+                    autoBatchedEntries.clear();
                     entries.clear();
                     queue.clear();
                     break;
@@ -393,7 +553,7 @@ public class FrameFlusher extends IteratingCallback
             }
 
             // if a timeout is set schedule a new timeout if we haven't failed and still have entries
-            if (!failed && idleTimeout > 0 && !(entries.isEmpty() && queue.isEmpty()))
+            if (!failed && idleTimeout > 0 && !(autoBatchedEntries.isEmpty() && entries.isEmpty() && queue.isEmpty()))
             {
                 long nextTimeout = earliestEntry + idleTimeout - currentTime;
                 timeoutScheduler.schedule(this::timeoutExpired, nextTimeout, TimeUnit.MILLISECONDS);
@@ -409,14 +569,22 @@ public class FrameFlusher extends IteratingCallback
     {
         BufferUtil.clear(batchBuffer);
         releaseAggregate();
+        Scheduler.Task cancelAutoFlush;
         synchronized (this)
         {
+            autoBatched = false;
+            cancelAutoFlush = autoFlushTask;
+            autoFlushTask = null;
+
             failedEntries.addAll(queue);
             queue.clear();
 
             failedEntries.addAll(entries);
             entries.clear();
 
+            failedEntries.addAll(autoBatchedEntries);
+            autoBatchedEntries.clear();
+
             for (ByteBuffer buffer : releasableBuffers)
             {
                 bufferPool.release(buffer);
@@ -435,6 +603,8 @@ public class FrameFlusher extends IteratingCallback
         }
 
         failedEntries.clear();
+        if (cancelAutoFlush != null)
+            cancelAutoFlush.cancel();
         endPoint.close(closedCause);
     }
 
@@ -512,6 +682,7 @@ public class FrameFlusher extends IteratingCallback
     {
         private ByteBuffer headerBuffer;
         private long timeOfCreation = System.currentTimeMillis();
+        private boolean autoBatched;
 
         private Entry(Frame frame, Callback callback, boolean batch)
         {
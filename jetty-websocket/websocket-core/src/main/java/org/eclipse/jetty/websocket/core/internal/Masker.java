@@ -0,0 +1,133 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>Applies the 4 byte WebSocket masking key to payload bytes, as specified by
+ * <a href="https://tools.ietf.org/html/rfc6455#section-5.3">RFC 6455, section 5.3</a>.</p>
+ * <p>The bytes are masked 8 at a time, XOR-ing a {@code long} made of the masking key
+ * repeated twice, and rotated to the mask offset of the first byte of the word.
+ * For direct buffers the first bytes are masked one at a time until the destination
+ * index is aligned to 8 bytes; the remaining bytes that do not fill a word are
+ * masked one at a time.</p>
+ */
+public final class Masker
+{
+    private static final int WORD = Long.BYTES;
+
+    private Masker()
+    {
+    }
+
+    /**
+     * <p>Masks, or unmasks, in place the bytes between the position and the limit of the given buffer.</p>
+     * <p>The position and the limit of the buffer are not modified.</p>
+     *
+     * @param buffer the buffer to mask
+     * @param mask the 4 bytes masking key
+     */
+    public static void mask(ByteBuffer buffer, byte[] mask)
+    {
+        int position = buffer.position();
+        mask(buffer, position, buffer, position, buffer.remaining(), mask, 0);
+    }
+
+    /**
+     * <p>Copies the bytes between the position and the limit of the {@code source} buffer
+     * at the position of the {@code target} buffer, masking them.</p>
+     * <p>The position of the {@code target} buffer is advanced by the number of bytes copied,
+     * while the position of the {@code source} buffer is not modified.</p>
+     *
+     * @param source the buffer to copy the bytes from
+     * @param target the buffer to copy the masked bytes to
+     * @param mask the 4 bytes masking key
+     */
+    public static void mask(ByteBuffer source, ByteBuffer target, byte[] mask)
+    {
+        int length = source.remaining();
+        int position = target.position();
+        mask(source, source.position(), target, position, length, mask, 0);
+        target.position(position + length);
+    }
+
+    /**
+     * <p>Copies {@code length} bytes of the {@code source} buffer starting at {@code sourceIndex}
+     * to the {@code target} buffer starting at {@code targetIndex}, masking them.</p>
+     * <p>The buffers may be the same buffer, to mask in place.
+     * The positions and limits of the buffers are not modified.</p>
+     *
+     * @param source the buffer to copy the bytes from
+     * @param sourceIndex the index of the first byte to copy
+     * @param target the buffer to copy the masked bytes to
+     * @param targetIndex the index of the first byte to write
+     * @param length the number of bytes to mask
+     * @param mask the 4 bytes masking key
+     * @param maskOffset the offset in the masking key of the first byte
+     */
+    public static void mask(ByteBuffer source, int sourceIndex, ByteBuffer target, int targetIndex, int length, byte[] mask, int maskOffset)
+    {
+        int i = 0;
+
+        // Mask the unaligned head one byte at a time.
+        int head = Math.min(length, head(target, targetIndex));
+        for (; i < head; ++i)
+        {
+            target.put(targetIndex + i, (byte)(source.get(sourceIndex + i) ^ mask[(maskOffset + i) & 3]));
+        }
+
+        // Mask the aligned words 8 bytes at a time.
+        if (length - i >= WORD)
+        {
+            long word = word(mask, maskOffset + i, source.order());
+            boolean swap = source.order() != target.order();
+            for (; i <= length - WORD; i += WORD)
+            {
+                long masked = source.getLong(sourceIndex + i) ^ word;
+                target.putLong(targetIndex + i, swap ? Long.reverseBytes(masked) : masked);
+            }
+        }
+
+        // Mask the tail one byte at a time.
+        for (; i < length; ++i)
+        {
+            target.put(targetIndex + i, (byte)(source.get(sourceIndex + i) ^ mask[(maskOffset + i) & 3]));
+        }
+    }
+
+    private static int head(ByteBuffer buffer, int index)
+    {
+        // Only direct buffers have a stable alignment.
+        if (!buffer.isDirect())
+            return 0;
+        return (WORD - buffer.alignmentOffset(index, WORD)) & (WORD - 1);
+    }
+
+    private static long word(byte[] mask, int maskOffset, ByteOrder order)
+    {
+        long word = 0;
+        for (int i = 0; i < WORD; ++i)
+        {
+            word = (word << 8) | (mask[(maskOffset + i) & 3] & 0xFF);
+        }
+        return order == ByteOrder.BIG_ENDIAN ? word : Long.reverseBytes(word);
+    }
+}
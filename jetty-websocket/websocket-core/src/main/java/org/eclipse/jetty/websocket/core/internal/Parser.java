@@ -61,6 +61,7 @@ public class Parser
     private byte[] mask;
     private int payloadLength;
     private ByteBuffer aggregate;
+    private boolean aggregateHibernated;
 
     public Parser(ByteBufferPool bufferPool)
     {
@@ -80,9 +81,25 @@ public class Parser
         mask = null;
         cursor = 0;
         aggregate = null;
+        aggregateHibernated = false;
         payloadLength = -1;
     }
 
+    /**
+     * <p>Releases the pooled buffer aggregating the payload of a partial frame, keeping
+     * only a copy of the bytes received so far, which is aggregated again when more
+     * bytes are parsed.</p>
+     */
+    public void hibernate()
+    {
+        if (aggregate == null || aggregateHibernated)
+            return;
+        ByteBuffer pooled = aggregate;
+        aggregate = BufferUtil.copy(pooled);
+        aggregateHibernated = true;
+        bufferPool.release(pooled);
+    }
+
     /**
      * Parse the buffer.
      *
@@ -362,6 +379,14 @@ public class Parser
         }
         else
         {
+            if (aggregateHibernated)
+            {
+                ByteBuffer pooled = bufferPool.acquire(payloadLength, false);
+                BufferUtil.append(pooled, aggregate);
+                aggregate = pooled;
+                aggregateHibernated = false;
+            }
+
             int aggregated = aggregate.remaining();
             int expecting = payloadLength - aggregated;
 
@@ -28,6 +28,7 @@ import java.util.zip.Inflater;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.websocket.core.AbstractExtension;
+import org.eclipse.jetty.websocket.core.DeflateMemoryBudget;
 import org.eclipse.jetty.websocket.core.ExtensionConfig;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
@@ -43,7 +44,7 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Attempts to follow <a href="https://tools.ietf.org/html/rfc7692">Compression Extensions for WebSocket</a>
  */
-public class PerMessageDeflateExtension extends AbstractExtension
+public class PerMessageDeflateExtension extends AbstractExtension implements DeflateMemoryBudget.Hibernatable
 {
     private static final byte[] TAIL_BYTES = new byte[]{0x00, 0x00, (byte)0xFF, (byte)0xFF};
     private static final ByteBuffer TAIL_BYTES_BUF = ByteBuffer.wrap(TAIL_BYTES);
@@ -52,9 +53,15 @@ public class PerMessageDeflateExtension extends AbstractExtension
 
     private final TransformingFlusher outgoingFlusher;
     private final TransformingFlusher incomingFlusher;
+    private DeflateMemoryBudget memoryBudget;
     private Deflater deflaterImpl;
     private Inflater inflaterImpl;
+    private boolean outgoingBusy;
+    private boolean incomingBusy;
+    private boolean inflaterReserved;
+    private boolean closed;
     private boolean incomingCompressed;
+    private boolean outgoingCompressed;
 
     private ExtensionConfig configRequested;
     private ExtensionConfig configNegotiated;
@@ -144,9 +151,37 @@ public class PerMessageDeflateExtension extends AbstractExtension
         configNegotiated = new ExtensionConfig(config.getName(), paramsNegotiated);
         LOG.debug("config: outgoingContextTakover={}, incomingContextTakeover={} : {}", outgoingContextTakeover, incomingContextTakeover, this);
 
+        memoryBudget = components.getDeflateMemoryBudget();
         super.init(configNegotiated, components);
     }
 
+    /**
+     * <p>Called on the server after {@link #init(ExtensionConfig, WebSocketComponents)} to negotiate
+     * {@code client_no_context_takeover} when the {@link DeflateMemoryBudget} has no room to keep
+     * an inflater for the lifetime of the session, otherwise the memory of the inflater is reserved
+     * until the extension is closed.</p>
+     */
+    void negotiateMemoryBudget()
+    {
+        if (!incomingContextTakeover)
+            return;
+
+        if (memoryBudget.tryReserveInflater())
+        {
+            synchronized (this)
+            {
+                inflaterReserved = true;
+            }
+        }
+        else
+        {
+            configNegotiated.setParameter("client_no_context_takeover");
+            incomingContextTakeover = false;
+            if (LOG.isDebugEnabled())
+                LOG.debug("No client context takeover, memory budget exhausted {}", memoryBudget);
+        }
+    }
+
     private static String toDetail(Inflater inflater)
     {
         return String.format("Inflater[finished=%b,read=%d,written=%d,remaining=%d,in=%d,out=%d]", inflater.finished(), inflater.getBytesRead(),
@@ -178,28 +213,197 @@ public class PerMessageDeflateExtension extends AbstractExtension
 
     public Deflater getDeflater()
     {
-        if (deflaterImpl == null)
-            deflaterImpl = getDeflaterPool().acquire();
-        return deflaterImpl;
+        synchronized (this)
+        {
+            if (deflaterImpl != null)
+                return deflaterImpl;
+        }
+
+        // Account for the deflater outside of the lock, as the budget may hibernate other extensions.
+        if (!memoryBudget.tryAcquireDeflater())
+            return null;
+        Deflater deflater = getDeflaterPool().acquire();
+        synchronized (this)
+        {
+            deflaterImpl = deflater;
+        }
+        return deflater;
     }
 
     public Inflater getInflater()
     {
-        if (inflaterImpl == null)
-            inflaterImpl = getInflaterPool().acquire();
-        return inflaterImpl;
+        boolean reserved;
+        synchronized (this)
+        {
+            if (inflaterImpl != null)
+                return inflaterImpl;
+            reserved = inflaterReserved;
+        }
+
+        if (!reserved)
+            memoryBudget.acquireInflater();
+        Inflater inflater = getInflaterPool().acquire();
+        synchronized (this)
+        {
+            inflaterImpl = inflater;
+        }
+        return inflater;
     }
 
     public void releaseInflater()
     {
-        getInflaterPool().release(inflaterImpl);
-        inflaterImpl = null;
+        Inflater inflater;
+        boolean reserved;
+        boolean releaseReservation;
+        synchronized (this)
+        {
+            inflater = inflaterImpl;
+            inflaterImpl = null;
+            reserved = inflaterReserved;
+            // Once closed, the reservation is released along with the last inflater.
+            releaseReservation = reserved && closed;
+            if (releaseReservation)
+                inflaterReserved = false;
+        }
+        release(inflater, reserved);
+        if (releaseReservation)
+            memoryBudget.releaseInflater();
     }
 
     public void releaseDeflater()
     {
-        getDeflaterPool().release(deflaterImpl);
-        deflaterImpl = null;
+        Deflater deflater;
+        synchronized (this)
+        {
+            deflater = deflaterImpl;
+            deflaterImpl = null;
+        }
+        release(deflater);
+    }
+
+    private void release(Inflater inflater, boolean reserved)
+    {
+        if (inflater != null)
+        {
+            getInflaterPool().release(inflater);
+            if (!reserved)
+                memoryBudget.releaseInflater();
+        }
+    }
+
+    private void release(Deflater deflater)
+    {
+        if (deflater != null)
+        {
+            getDeflaterPool().release(deflater);
+            memoryBudget.releaseDeflater();
+        }
+    }
+
+    @Override
+    public boolean hibernate()
+    {
+        Deflater deflater;
+        synchronized (this)
+        {
+            // A deflater can be released between messages, even with context takeover,
+            // as the remote inflater can decode the output of a fresh deflater.
+            if (outgoingBusy || closed || deflaterImpl == null)
+                return false;
+            deflater = deflaterImpl;
+            deflaterImpl = null;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Hibernating {}", this);
+        release(deflater);
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        // State in use by a message is released when the message completes.
+        Deflater deflater = null;
+        Inflater inflater = null;
+        boolean reserved = false;
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            closed = true;
+            if (!outgoingBusy)
+            {
+                deflater = deflaterImpl;
+                deflaterImpl = null;
+            }
+            if (!incomingBusy)
+            {
+                inflater = inflaterImpl;
+                inflaterImpl = null;
+                reserved = inflaterReserved;
+                inflaterReserved = false;
+            }
+        }
+
+        memoryBudget.busy(this);
+        release(deflater);
+        release(inflater, reserved);
+        if (reserved)
+            memoryBudget.releaseInflater();
+    }
+
+    private void startOutgoingMessage()
+    {
+        synchronized (this)
+        {
+            outgoingBusy = true;
+        }
+        memoryBudget.busy(this);
+    }
+
+    private void endOutgoingMessage()
+    {
+        boolean release;
+        synchronized (this)
+        {
+            outgoingBusy = false;
+            release = closed || !outgoingContextTakeover;
+        }
+
+        if (release)
+        {
+            LOG.debug("Outgoing Context Reset");
+            releaseDeflater();
+        }
+        else
+        {
+            memoryBudget.idle(this);
+        }
+    }
+
+    private void startIncomingMessage()
+    {
+        synchronized (this)
+        {
+            incomingBusy = true;
+        }
+    }
+
+    private void endIncomingMessage()
+    {
+        boolean release;
+        synchronized (this)
+        {
+            incomingBusy = false;
+            release = closed || !incomingContextTakeover;
+        }
+
+        if (release)
+        {
+            LOG.debug("Incoming Context Reset");
+            releaseInflater();
+        }
     }
 
     @Override
@@ -214,22 +418,16 @@ public class PerMessageDeflateExtension extends AbstractExtension
     @Override
     protected void nextIncomingFrame(Frame frame, Callback callback)
     {
-        if (frame.isFin() && !incomingContextTakeover)
-        {
-            LOG.debug("Incoming Context Reset");
-            releaseInflater();
-        }
+        if (frame.isFin() && !OpCode.isControlFrame(frame.getOpCode()))
+            endIncomingMessage();
         super.nextIncomingFrame(frame, callback);
     }
 
     @Override
     protected void nextOutgoingFrame(Frame frame, Callback callback, boolean batch)
     {
-        if (frame.isFin() && !outgoingContextTakeover)
-        {
-            LOG.debug("Outgoing Context Reset");
-            releaseDeflater();
-        }
+        if (frame.isFin() && !OpCode.isControlFrame(frame.getOpCode()))
+            endOutgoingMessage();
         super.nextOutgoingFrame(frame, callback, batch);
     }
 
@@ -248,11 +446,27 @@ public class PerMessageDeflateExtension extends AbstractExtension
                 return true;
             }
 
+            if (frame.getOpCode() != OpCode.CONTINUATION)
+            {
+                startOutgoingMessage();
+                outgoingCompressed = getDeflater() != null;
+                if (!outgoingCompressed && LOG.isDebugEnabled())
+                    LOG.debug("Sending uncompressed, memory budget exhausted {}", memoryBudget);
+            }
+
+            // Without a deflater within the memory budget the message is sent uncompressed.
+            if (!outgoingCompressed)
+            {
+                nextOutgoingFrame(frame, callback, batch);
+                return true;
+            }
+
             _first = true;
             _frame = frame;
             _batch = batch;
 
             // Provide the frames payload as input to the Deflater.
+            memoryBudget.onDeflated(frame.getPayloadLength(), 0);
             getDeflater().setInput(frame.getPayload().slice());
             callback.succeeded();
             return false;
@@ -321,6 +535,7 @@ public class PerMessageDeflateExtension extends AbstractExtension
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Compressed {}: payload:{}", _frame, payload.remaining());
+            memoryBudget.onDeflated(0, payload.remaining());
 
             Frame chunk = new Frame(_first ? _frame.getOpCode() : OpCode.CONTINUATION);
             chunk.setRsv1(_first && _frame.getOpCode() != OpCode.CONTINUATION);
@@ -375,10 +590,13 @@ public class PerMessageDeflateExtension extends AbstractExtension
                 return true;
             }
 
+            if (_frame.getOpCode() != OpCode.CONTINUATION)
+                startIncomingMessage();
             if (_frame.isFin())
                 incomingCompressed = false;
 
             // Provide the frames payload as input to the Inflater.
+            memoryBudget.onInflated(_frame.getPayloadLength(), 0);
             getInflater().setInput(_frame.getPayload().slice());
             callback.succeeded();
             return false;
@@ -440,6 +658,7 @@ public class PerMessageDeflateExtension extends AbstractExtension
                 }
             }
 
+            memoryBudget.onInflated(0, payload.remaining());
             Frame chunk = new Frame(_first ? _frame.getOpCode() : OpCode.CONTINUATION);
             chunk.setRsv1(false);
             chunk.setPayload(payload);
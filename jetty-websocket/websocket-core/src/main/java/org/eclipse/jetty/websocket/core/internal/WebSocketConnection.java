@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.AbstractConnection;
@@ -35,8 +36,10 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.Sweeper;
 import org.eclipse.jetty.websocket.core.Behavior;
 import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.SessionHibernation;
 import org.eclipse.jetty.websocket.core.exception.WebSocketTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +47,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Provides the implementation of {@link org.eclipse.jetty.io.Connection} that is suitable for WebSocket
  */
-public class WebSocketConnection extends AbstractConnection implements Connection.UpgradeTo, Dumpable, Runnable
+public class WebSocketConnection extends AbstractConnection implements Connection.UpgradeTo, Dumpable, Runnable, Sweeper.Sweepable
 {
     private static final Logger LOG = LoggerFactory.getLogger(WebSocketConnection.class);
 
@@ -60,6 +63,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
 
     private final Flusher flusher;
     private final Random random;
+    private final SessionHibernation hibernation;
 
     private long demand;
     private boolean fillingAndParsing;
@@ -71,6 +75,11 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
     private boolean useInputDirectByteBuffers;
     private boolean useOutputDirectByteBuffers;
 
+    // Hibernation variables
+    private boolean opened;
+    private volatile boolean hibernated;
+    private volatile long lastActivity = System.nanoTime();
+
     /**
      * Create a WSConnection.
      * <p>
@@ -101,6 +110,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
         this.setInputBufferSize(coreSession.getInputBufferSize());
 
         this.random = this.coreSession.getBehavior() == Behavior.CLIENT ? new Random(endp.hashCode()) : null;
+        this.hibernation = coreSession.getWebSocketComponents().getSessionHibernation();
     }
 
     @Override
@@ -169,6 +179,15 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
             coreSession.onEof();
         flusher.onClose(cause);
         super.onClose(cause);
+
+        synchronized (this)
+        {
+            if (opened)
+            {
+                opened = false;
+                hibernation.onClosed(this, hibernated);
+            }
+        }
     }
 
     @Override
@@ -389,6 +408,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
     private void fillAndParse()
     {
         acquireNetworkBuffer();
+        wakeUp();
 
         try
         {
@@ -443,6 +463,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
                 }
 
                 bytesIn.add(filled);
+                lastActivity = System.nanoTime();
             }
         }
         catch (Throwable t)
@@ -491,6 +512,11 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
             LOG.debug("onOpen() {}", this);
 
         // Open Session
+        synchronized (this)
+        {
+            opened = true;
+            hibernation.onOpened(this);
+        }
         super.onOpen();
         coreSession.onOpen();
     }
@@ -583,6 +609,8 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
      */
     void enqueueFrame(Frame frame, Callback callback, boolean batch)
     {
+        lastActivity = System.nanoTime();
+
         if (coreSession.getBehavior() == Behavior.CLIENT)
         {
             byte[] mask = new byte[4];
@@ -590,16 +618,89 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
             frame.setMask(mask);
         }
 
-        if (flusher.enqueue(frame, callback, batch))
+        boolean iterate = flusher.enqueue(frame, callback, batch);
+        wakeUp();
+        if (iterate)
             flusher.iterate();
     }
 
+    /**
+     * @return whether this connection is hibernated
+     * @see SessionHibernation
+     */
+    public boolean isHibernated()
+    {
+        return hibernated;
+    }
+
+    /**
+     * <p>Hibernates this connection if it has not read nor written for the
+     * {@link SessionHibernation#getIdleTimeout() hibernation idle timeout}.</p>
+     *
+     * @return whether this connection is closed and should not be swept anymore
+     */
+    @Override
+    public boolean sweep()
+    {
+        if (!getEndPoint().isOpen())
+            return true;
+
+        long idleTimeout = hibernation.getIdleTimeout();
+        if (idleTimeout <= 0)
+            return false;
+
+        synchronized (this)
+        {
+            // Frames are being read or parsed.
+            if (!opened || hibernated || networkBuffer != null)
+                return false;
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity) < idleTimeout)
+                return false;
+
+            // Flag before checking the flusher, so that a concurrent enqueueFrame()
+            // either is seen by the flusher or sees the flag and wakes us up.
+            hibernated = true;
+            if (!flusher.hibernate())
+            {
+                hibernated = false;
+                return false;
+            }
+            // The parser is only used while the network buffer is held, under this lock.
+            parser.hibernate();
+            hibernation.onHibernated();
+        }
+
+        // Release the extension state outside of the lock, as it may be shared with other sessions.
+        coreSession.getExtensionStack().hibernate();
+        if (LOG.isDebugEnabled())
+            LOG.debug("Hibernated {}", this);
+        return false;
+    }
+
+    private void wakeUp()
+    {
+        if (!hibernated)
+            return;
+
+        synchronized (this)
+        {
+            if (!hibernated)
+                return;
+            hibernated = false;
+            hibernation.onWokenUp();
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Woken up {}", this);
+    }
+
     private class Flusher extends FrameFlusher
     {
         private Flusher(Scheduler scheduler, int bufferSize, Generator generator, EndPoint endpoint)
         {
             super(bufferPool, scheduler, generator, endpoint, bufferSize, 8);
             setUseDirectByteBuffers(isUseOutputDirectByteBuffers());
+            setAutoBatching(coreSession.getWebSocketComponents().getAutoBatching());
         }
 
         @Override
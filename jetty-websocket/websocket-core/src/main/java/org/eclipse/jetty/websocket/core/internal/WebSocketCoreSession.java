@@ -342,6 +342,7 @@ public class WebSocketCoreSession implements IncomingFrames, CoreSession, Dumpab
             LOG.debug("closeConnection() {} {} {}", closeStatus, this);
 
         abort();
+        negotiated.getExtensions().close();
 
         // Forward Errors to Local WebSocket EndPoint
         if (closeStatus.isAbnormal() && closeStatus.getCause() != null)
@@ -828,7 +829,11 @@ public class WebSocketCoreSession implements IncomingFrames, CoreSession, Dumpab
         @Override
         void forwardFrame(Frame frame, Callback callback, boolean batch)
         {
-            negotiated.getExtensions().sendFrame(frame, callback, batch);
+            // Encoded frames have already been transformed by the extensions.
+            if (frame instanceof EncodedFrame.Send)
+                connection.enqueueFrame(frame, callback, batch);
+            else
+                negotiated.getExtensions().sendFrame(frame, callback, batch);
         }
     }
 }
@@ -0,0 +1,159 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.core.client.WebSocketCoreClient;
+import org.eclipse.jetty.websocket.core.server.WebSocketNegotiator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BroadcasterTest
+{
+    private final List<TestFrameHandler> serverHandlers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<TestFrameHandler> opened = new BlockingArrayQueue<>();
+    private final WebSocketComponents components = new WebSocketComponents();
+    private WebSocketServer server;
+    private WebSocketCoreClient client;
+
+    @BeforeEach
+    public void startup() throws Exception
+    {
+        WebSocketNegotiator negotiator = WebSocketNegotiator.from((negotiation) ->
+        {
+            TestFrameHandler handler = new TestFrameHandler()
+            {
+                @Override
+                public void onOpen(CoreSession coreSession)
+                {
+                    super.onOpen(coreSession);
+                    opened.offer(this);
+                }
+            };
+            serverHandlers.add(handler);
+            return handler;
+        });
+        server = new WebSocketServer(negotiator);
+        client = new WebSocketCoreClient(null, components);
+
+        server.start();
+        client.start();
+    }
+
+    @AfterEach
+    public void shutdown() throws Exception
+    {
+        server.stop();
+        client.stop();
+    }
+
+    private TestFrameHandler connect(String extensions) throws Exception
+    {
+        TestFrameHandler clientHandler = new TestFrameHandler();
+        ClientUpgradeRequest upgradeRequest = ClientUpgradeRequest.from(client, server.getUri(), clientHandler);
+        if (extensions != null)
+            upgradeRequest.addExtensions(extensions);
+        client.connect(upgradeRequest).get(5, TimeUnit.SECONDS);
+        assertNotNull(opened.poll(5, TimeUnit.SECONDS));
+        return clientHandler;
+    }
+
+    @Test
+    public void testBroadcastEncodesOncePerExtensionConfiguration() throws Exception
+    {
+        List<TestFrameHandler> clientHandlers = new ArrayList<>();
+        clientHandlers.add(connect(null));
+        clientHandlers.add(connect(null));
+        clientHandlers.add(connect("permessage-deflate;server_no_context_takeover"));
+        clientHandlers.add(connect("permessage-deflate;server_no_context_takeover"));
+        // With context takeover the compressed bytes cannot be shared.
+        clientHandlers.add(connect("permessage-deflate"));
+
+        List<CoreSession> sessions = new ArrayList<>();
+        serverHandlers.forEach(handler -> sessions.add(handler.getCoreSession()));
+
+        Broadcaster broadcaster = new Broadcaster(components);
+        for (int i = 0; i < 2; ++i)
+        {
+            Callback.Completable callback = new Callback.Completable();
+            broadcaster.broadcast(new Frame(OpCode.TEXT, "hello " + i), sessions, callback);
+            callback.get(5, TimeUnit.SECONDS);
+        }
+
+        for (TestFrameHandler clientHandler : clientHandlers)
+        {
+            for (int i = 0; i < 2; ++i)
+            {
+                Frame frame = clientHandler.receivedFrames.poll(5, TimeUnit.SECONDS);
+                assertNotNull(frame);
+                assertThat(frame.getOpCode(), is(OpCode.TEXT));
+                assertThat(frame.getPayloadAsUTF8(), is("hello " + i));
+            }
+        }
+
+        assertThat(broadcaster.getBroadcastCount(), is(2L));
+        assertThat(broadcaster.getEncodingCount(), is(4L));
+        assertThat(broadcaster.getSharedCount(), is(8L));
+        assertThat(broadcaster.getUnsharedCount(), is(2L));
+        assertThat(broadcaster.getFailedCount(), is(0L));
+        for (CoreSession session : sessions)
+        {
+            assertThat(broadcaster.getQueuedBytes(session), is(0L));
+        }
+
+        // Sessions can still send regular messages after a broadcast.
+        for (TestFrameHandler serverHandler : serverHandlers)
+        {
+            serverHandler.sendText("regular");
+        }
+        for (TestFrameHandler clientHandler : clientHandlers)
+        {
+            Frame frame = clientHandler.receivedFrames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertThat(frame.getPayloadAsUTF8(), is("regular"));
+            clientHandler.sendClose();
+            assertTrue(clientHandler.closed.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBroadcastRequiresWholeMessage()
+    {
+        Broadcaster broadcaster = new Broadcaster(components);
+        assertThrows(IllegalArgumentException.class, () ->
+            broadcaster.broadcast(new Frame(OpCode.TEXT, false, "partial"), List.of(), Callback.NOOP));
+        assertThrows(IllegalArgumentException.class, () ->
+            broadcaster.broadcast(new Frame(OpCode.PING), List.of(), Callback.NOOP));
+    }
+}
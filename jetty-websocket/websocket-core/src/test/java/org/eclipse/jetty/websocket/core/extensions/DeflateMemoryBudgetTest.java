@@ -0,0 +1,189 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.extensions;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.Behavior;
+import org.eclipse.jetty.websocket.core.DeflateMemoryBudget;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.OutgoingFramesCapture;
+import org.eclipse.jetty.websocket.core.TestMessageHandler;
+import org.eclipse.jetty.websocket.core.internal.ExtensionStack;
+import org.eclipse.jetty.websocket.core.internal.Negotiated;
+import org.eclipse.jetty.websocket.core.internal.PerMessageDeflateExtension;
+import org.eclipse.jetty.websocket.core.internal.WebSocketCoreSession;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DeflateMemoryBudgetTest extends AbstractExtensionTest
+{
+    private PerMessageDeflateExtension newExtension(OutgoingFramesCapture capture)
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.init(ExtensionConfig.parse("permessage-deflate"), components);
+        ext.setCoreSession(newSession());
+        ext.setNextOutgoingFrames(capture);
+        return ext;
+    }
+
+    private WebSocketCoreSession newSession()
+    {
+        ExtensionStack exStack = new ExtensionStack(components, Behavior.SERVER);
+        exStack.negotiate(Collections.emptyList(), Collections.emptyList());
+        return new WebSocketCoreSession(new TestMessageHandler(), Behavior.SERVER, Negotiated.from(exStack), components);
+    }
+
+    private String inflate(PerMessageDeflateExtension inflater, Frame frame) throws Exception
+    {
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        inflater.setNextIncomingFrames(capture);
+        inflater.onFrame(frame, Callback.NOOP);
+        return capture.frames.poll().getPayloadAsUTF8();
+    }
+
+    @Test
+    public void testUnboundedBudgetTracksMemory() throws Exception
+    {
+        DeflateMemoryBudget budget = components.getDeflateMemoryBudget();
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        PerMessageDeflateExtension ext = newExtension(capture);
+
+        String message = "Hello Hello Hello Hello Hello Hello Hello Hello";
+        ext.sendFrame(new Frame(OpCode.TEXT, message), Callback.NOOP, false);
+
+        Frame frame = capture.frames.poll();
+        assertThat(frame.isRsv1(), is(true));
+        assertThat(budget.getDeflatersHeld(), is(1L));
+        assertThat(budget.getMemoryUsed(), is(budget.getDeflaterMemory()));
+        assertThat(budget.getDeflateRatio() < 1.0, is(true));
+
+        ext.close();
+        assertThat(budget.getDeflatersHeld(), is(0L));
+        assertThat(budget.getMemoryUsed(), is(0L));
+    }
+
+    @Test
+    public void testExhaustedBudgetSendsUncompressed() throws Exception
+    {
+        DeflateMemoryBudget budget = components.getDeflateMemoryBudget();
+        budget.setMaxMemory(0);
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        PerMessageDeflateExtension ext = newExtension(capture);
+
+        ext.sendFrame(new Frame(OpCode.TEXT, false, "Hello "), Callback.NOOP, false);
+        ext.sendFrame(new Frame(OpCode.CONTINUATION, true, "World"), Callback.NOOP, false);
+
+        capture.assertFrameCount(2);
+        Frame frame = capture.frames.poll();
+        assertThat(frame.isRsv1(), is(false));
+        assertThat(frame.getPayloadAsUTF8(), is("Hello "));
+        frame = capture.frames.poll();
+        assertThat(frame.isRsv1(), is(false));
+        assertThat(frame.getPayloadAsUTF8(), is("World"));
+        assertThat(budget.getUncompressedMessageCount(), is(1L));
+        assertThat(budget.getMemoryUsed(), is(0L));
+    }
+
+    @Test
+    public void testIdleSessionHibernated() throws Exception
+    {
+        DeflateMemoryBudget budget = components.getDeflateMemoryBudget();
+        budget.setMaxMemory(budget.getDeflaterMemory() + 2 * budget.getInflaterMemory());
+        OutgoingFramesCapture capture1 = new OutgoingFramesCapture();
+        PerMessageDeflateExtension ext1 = newExtension(capture1);
+        OutgoingFramesCapture capture2 = new OutgoingFramesCapture();
+        PerMessageDeflateExtension ext2 = newExtension(capture2);
+        PerMessageDeflateExtension remote = newExtension(new OutgoingFramesCapture());
+
+        String message = "Hello World";
+        ext1.sendFrame(new Frame(OpCode.TEXT, message), Callback.NOOP, false);
+        assertThat(inflate(remote, capture1.frames.poll()), is(message));
+
+        // The second session takes the deflater of the idle first session.
+        ext2.sendFrame(new Frame(OpCode.TEXT, message), Callback.NOOP, false);
+        assertThat(capture2.frames.poll().isRsv1(), is(true));
+        assertThat(budget.getHibernatedCount(), is(1L));
+        assertThat(budget.getDeflatersHeld(), is(1L));
+
+        // The first session wakes up with a fresh deflater, which the remote context can still inflate.
+        ext1.sendFrame(new Frame(OpCode.TEXT, message), Callback.NOOP, false);
+        Frame frame = capture1.frames.poll();
+        assertThat(frame.isRsv1(), is(true));
+        assertThat(inflate(remote, frame), is(message));
+        assertThat(budget.getHibernatedCount(), is(2L));
+        assertThat(budget.getDeflatersHeld(), is(1L));
+        assertThat(budget.getUncompressedMessageCount(), is(0L));
+    }
+
+    @Test
+    public void testExhaustedBudgetNegotiatesNoClientContextTakeover()
+    {
+        DeflateMemoryBudget budget = components.getDeflateMemoryBudget();
+        budget.setMaxMemory(0);
+
+        List<ExtensionConfig> offered = ExtensionConfig.parseList("permessage-deflate");
+        ExtensionStack stack = new ExtensionStack(components, Behavior.SERVER);
+        stack.negotiate(offered, offered);
+
+        List<ExtensionConfig> negotiated = stack.getNegotiatedExtensions();
+        assertThat(negotiated.size(), is(1));
+        assertThat(negotiated.get(0).getParameterizedName(), is("permessage-deflate;client_no_context_takeover"));
+        assertThat(budget.getNoContextTakeoverCount(), is(1L));
+    }
+
+    @Test
+    public void testNegotiationReservesInflaterUntilClosed()
+    {
+        DeflateMemoryBudget budget = components.getDeflateMemoryBudget();
+        budget.setMaxMemory(budget.getInflaterMemory());
+        List<ExtensionConfig> offered = ExtensionConfig.parseList("permessage-deflate");
+
+        // The first session reserves the only inflater that fits the budget.
+        ExtensionStack stack1 = new ExtensionStack(components, Behavior.SERVER);
+        stack1.negotiate(offered, offered);
+        assertThat(stack1.getNegotiatedExtensions().get(0).getParameterizedName(), is("permessage-deflate"));
+        assertThat(budget.getMemoryUsed(), is(budget.getInflaterMemory()));
+        assertThat(budget.getInflatersHeld(), is(1L));
+
+        ExtensionStack stack2 = new ExtensionStack(components, Behavior.SERVER);
+        stack2.negotiate(offered, offered);
+        assertThat(stack2.getNegotiatedExtensions().get(0).getParameterizedName(), is("permessage-deflate;client_no_context_takeover"));
+        assertThat(budget.getNoContextTakeoverCount(), is(1L));
+
+        // Closing the first session releases its reservation.
+        stack1.close();
+        assertThat(budget.getMemoryUsed(), is(0L));
+        assertThat(budget.getInflatersHeld(), is(0L));
+
+        ExtensionStack stack3 = new ExtensionStack(components, Behavior.SERVER);
+        stack3.negotiate(offered, offered);
+        assertThat(stack3.getNegotiatedExtensions().get(0).getParameterizedName(), is("permessage-deflate"));
+        stack2.close();
+        stack3.close();
+        assertThat(budget.getMemoryUsed(), is(0L));
+    }
+}
@@ -29,6 +29,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -37,6 +38,7 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FutureCallback;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.websocket.core.AutoBatching;
 import org.eclipse.jetty.websocket.core.CloseStatus;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
@@ -51,6 +53,7 @@ import org.slf4j.LoggerFactory;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -231,10 +234,162 @@ public class FrameFlusherTest
         assertTrue(succeededCloseFrame.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testBatchAfterFlush() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        int bufferSize = WebSocketConstants.DEFAULT_MAX_TEXT_MESSAGE_SIZE;
+        int maxGather = 8;
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, bufferSize, maxGather);
+
+        // The batchBuffer written by the first flush is reused for the second batch.
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("one"), Callback.NOOP, true));
+        assertTrue(frameFlusher.enqueue(FrameFlusher.FLUSH_FRAME, Callback.NOOP, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("two"), Callback.NOOP, true));
+        assertTrue(frameFlusher.enqueue(FrameFlusher.FLUSH_FRAME, Callback.NOOP, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("three"), Callback.NOOP, false));
+        frameFlusher.iterate();
+
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("one"));
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("two"));
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("three"));
+    }
+
+    @Test
+    public void testEncodedFrameOrderWithBatchedFrames() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        int bufferSize = WebSocketConstants.DEFAULT_MAX_TEXT_MESSAGE_SIZE;
+        int maxGather = 8;
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, bufferSize, maxGather);
+
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("batch1"), Callback.NOOP, true));
+        assertTrue(frameFlusher.enqueue(encode("broadcast1"), Callback.NOOP, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("batch2"), Callback.NOOP, true));
+        assertTrue(frameFlusher.enqueue(encode("broadcast2"), Callback.NOOP, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("batch3"), Callback.NOOP, true));
+        assertTrue(frameFlusher.enqueue(FrameFlusher.FLUSH_FRAME, Callback.NOOP, false));
+        frameFlusher.iterate();
+
+        for (String payload : Arrays.asList("batch1", "broadcast1", "batch2", "broadcast2", "batch3"))
+        {
+            assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is(payload));
+        }
+        assertThat(endPoint.writes.get(), is(1));
+    }
+
+    private Frame encode(String payload)
+    {
+        return EncodedFrame.encode(new Frame(OpCode.TEXT).setPayload(payload), bufferPool).newFrame();
+    }
+
+    @Test
+    public void testAutoBatching() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        int bufferSize = WebSocketConstants.DEFAULT_MAX_TEXT_MESSAGE_SIZE;
+        int maxGather = 8;
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, bufferSize, maxGather);
+        CountDownLatch batchedLatch = new CountDownLatch(12);
+        AutoBatching autoBatching = new AutoBatching()
+        {
+            @Override
+            public void onBatched()
+            {
+                super.onBatched();
+                batchedLatch.countDown();
+            }
+        };
+        autoBatching.setMaxBatchSize(20);
+        autoBatching.setMaxBatchDelay(TimeUnit.MILLISECONDS.toMicros(100));
+        frameFlusher.setAutoBatching(autoBatching);
+
+        // Frames of 4 bytes are written 5 at a time.
+        for (int i = 0; i < 10; ++i)
+        {
+            if (frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("m" + i), Callback.NOOP, false))
+                frameFlusher.iterate();
+        }
+        for (int i = 0; i < 10; ++i)
+        {
+            assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("m" + i));
+        }
+        assertThat(endPoint.writes.get(), is(2));
+        assertThat(autoBatching.getSizeFlushes(), is(2L));
+
+        // The batched frame is written after the max batch delay.
+        if (frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("late"), Callback.NOOP, false))
+            frameFlusher.iterate();
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("late"));
+        assertThat(endPoint.writes.get(), is(3));
+        assertThat(autoBatching.getDelayFlushes(), is(1L));
+
+        // Control frames are not delayed, and write the batched frames along with them.
+        if (frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("early"), Callback.NOOP, false))
+            frameFlusher.iterate();
+        // Wait for the frame to be batched, otherwise the control frame would be queued before it.
+        assertTrue(batchedLatch.await(5, TimeUnit.SECONDS));
+        if (frameFlusher.enqueue(new Frame(OpCode.PING), Callback.NOOP, false))
+            frameFlusher.iterate();
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("early"));
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getOpCode(), is(OpCode.PING));
+        assertThat(endPoint.writes.get(), is(4));
+        assertThat(autoBatching.getDelayFlushes(), is(1L));
+
+        assertThat(autoBatching.getBatchedFrames(), is(12L));
+        assertThat(autoBatching.getFramesPerWriteHistogram()[3], is(2L));
+    }
+
+    @Test
+    public void testAutoBatchingOrderWithLargeFrame() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        int bufferSize = WebSocketConstants.DEFAULT_MAX_TEXT_MESSAGE_SIZE;
+        int maxGather = 8;
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, bufferSize, maxGather);
+        AutoBatching autoBatching = new AutoBatching();
+        autoBatching.setMaxBatchDelay(TimeUnit.MILLISECONDS.toMicros(100));
+        frameFlusher.setAutoBatching(autoBatching);
+
+        byte[] large = new byte[bufferSize];
+        Arrays.fill(large, (byte)'x');
+        String largeMessage = new String(large, UTF_8);
+
+        FutureCallback small1Callback = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("small1"), small1Callback, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload(largeMessage), Callback.NOOP, false));
+        FutureCallback small3Callback = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("small3"), small3Callback, false));
+        frameFlusher.iterate();
+
+        // The frames following the large frame are gathered into the same write, in order.
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("small1"));
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is(largeMessage));
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("small3"));
+        small1Callback.get(5, TimeUnit.SECONDS);
+        small3Callback.get(5, TimeUnit.SECONDS);
+        assertThat(endPoint.writes.get(), is(1));
+
+        // An auto batched frame on its own is written after the max batch delay,
+        // and its callback is not completed before it is written.
+        FutureCallback small4Callback = new FutureCallback();
+        if (frameFlusher.enqueue(new Frame(OpCode.TEXT).setPayload("small4"), small4Callback, false))
+            frameFlusher.iterate();
+        assertFalse(small4Callback.isDone());
+        assertThat(endPoint.incomingFrames.poll(5, TimeUnit.SECONDS).getPayloadAsUTF8(), is("small4"));
+        small4Callback.get(5, TimeUnit.SECONDS);
+        assertThat(endPoint.writes.get(), is(2));
+    }
+
     public static class CapturingEndPoint extends MockEndpoint
     {
         public Parser parser;
         public LinkedBlockingQueue<Frame> incomingFrames = new LinkedBlockingQueue<>();
+        public AtomicInteger writes = new AtomicInteger();
 
         public CapturingEndPoint(ByteBufferPool bufferPool)
         {
@@ -253,12 +408,14 @@ public class FrameFlusherTest
             Objects.requireNonNull(callback);
             try
             {
+                writes.incrementAndGet();
                 for (ByteBuffer buffer : buffers)
                 {
-                    Parser.ParsedFrame frame = parser.parse(buffer);
-                    if (frame != null)
+                    Parser.ParsedFrame frame;
+                    while ((frame = parser.parse(buffer)) != null)
                     {
-                        incomingFrames.offer(frame);
+                        // Copy, as the buffer may be reused for a later write.
+                        incomingFrames.offer(Frame.copy(frame));
                     }
                 }
                 callback.succeeded();
@@ -0,0 +1,107 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MaskerTest
+{
+    private static ByteBuffer allocate(int capacity, boolean direct, Random random)
+    {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        if (random.nextBoolean())
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testMaskMatchesByteAtATime(boolean direct)
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; ++i)
+        {
+            byte[] mask = new byte[4];
+            random.nextBytes(mask);
+            int length = random.nextInt(100);
+            int sourceIndex = random.nextInt(9);
+            int targetIndex = random.nextInt(9);
+            int maskOffset = random.nextInt(4);
+
+            byte[] bytes = new byte[length + 16];
+            random.nextBytes(bytes);
+            ByteBuffer source = allocate(bytes.length, direct, random);
+            source.put(bytes).clear();
+            ByteBuffer target = allocate(bytes.length, !direct, random);
+
+            Masker.mask(source, sourceIndex, target, targetIndex, length, mask, maskOffset);
+
+            for (int j = 0; j < length; ++j)
+            {
+                byte expected = (byte)(bytes[sourceIndex + j] ^ mask[(maskOffset + j) & 3]);
+                assertEquals(expected, target.get(targetIndex + j), "i=" + i + " j=" + j);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testMaskInPlaceTwiceRestoresPayload(boolean direct)
+    {
+        byte[] mask = new byte[]{0x11, 0x22, 0x33, 0x44};
+        byte[] bytes = "The quick brown fox jumps over the lazy dog".getBytes();
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length + 3) : ByteBuffer.allocate(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes).flip().position(3);
+
+        Masker.mask(buffer, mask);
+        assertEquals(3, buffer.position());
+        assertEquals((byte)('T' ^ 0x11), buffer.get(3));
+        assertEquals((byte)('h' ^ 0x22), buffer.get(4));
+
+        Masker.mask(buffer, mask);
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        assertEquals(new String(bytes), new String(result));
+    }
+
+    @Test
+    public void testMaskIntoTarget()
+    {
+        byte[] mask = new byte[]{0x01, 0x02, 0x03, 0x04};
+        ByteBuffer source = ByteBuffer.wrap("hello world, masked".getBytes());
+        ByteBuffer target = ByteBuffer.allocate(64);
+
+        Masker.mask(source, target, mask);
+        assertEquals(0, source.position());
+        assertEquals(source.remaining(), target.position());
+
+        target.flip();
+        Masker.mask(target, mask);
+        assertEquals("hello world, masked", new String(target.array(), 0, target.remaining()));
+    }
+}
@@ -0,0 +1,213 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.internal;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.websocket.core.Behavior;
+import org.eclipse.jetty.websocket.core.CloseStatus;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.FrameHandler;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.SessionHibernation;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionHibernationTest
+{
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private WebSocketComponents components;
+    private QueuedThreadPool executor;
+    private ScheduledExecutorScheduler scheduler;
+    private ByteArrayEndPoint endPoint;
+    private WebSocketConnection connection;
+    private WebSocketCoreSession session;
+
+    @BeforeEach
+    public void start() throws Exception
+    {
+        components = new WebSocketComponents();
+        components.getSessionHibernation().setIdleTimeout(100);
+        components.getSessionHibernation().start();
+        executor = new QueuedThreadPool();
+        executor.start();
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+
+        ExtensionStack extensionStack = new ExtensionStack(components, Behavior.SERVER);
+        List<ExtensionConfig> extensions = List.of(ExtensionConfig.parse("permessage-deflate"));
+        extensionStack.negotiate(extensions, extensions);
+        session = new WebSocketCoreSession(new CaptureHandler(), Behavior.SERVER, Negotiated.from(extensionStack), components);
+        endPoint = new ByteArrayEndPoint(scheduler, 0);
+        endPoint.setGrowOutput(true);
+        connection = new WebSocketConnection(endPoint, executor, scheduler, components.getBufferPool(), session);
+        endPoint.setConnection(connection);
+        session.setWebSocketConnection(connection);
+        connection.onOpen();
+    }
+
+    @AfterEach
+    public void stop() throws Exception
+    {
+        endPoint.close();
+        components.getSessionHibernation().stop();
+        scheduler.stop();
+        executor.stop();
+    }
+
+    @Test
+    public void testIdleSessionHibernatesAndWakesUp() throws Exception
+    {
+        SessionHibernation hibernation = components.getSessionHibernation();
+        assertThat(hibernation.getActiveSessions(), is(1L));
+
+        session.sendFrame(new Frame(OpCode.TEXT, "hello"), Callback.NOOP, false);
+        assertThat(components.getDeflateMemoryBudget().getDeflatersHeld(), is(1L));
+
+        // The idle session releases the deflater it kept for context takeover.
+        awaitTrue(connection::isHibernated);
+        assertThat(hibernation.getActiveSessions(), is(0L));
+        assertThat(hibernation.getHibernatedSessions(), is(1L));
+        assertThat(components.getDeflateMemoryBudget().getDeflatersHeld(), is(0L));
+
+        // A write wakes the session up.
+        session.sendFrame(new Frame(OpCode.TEXT, "hello again"), Callback.NOOP, false);
+        assertThat(connection.isHibernated(), is(false));
+        assertThat(hibernation.getActiveSessions(), is(1L));
+        assertThat(hibernation.getWakeUpCount(), is(1L));
+
+        // So does a read, once the session hibernated again.
+        awaitTrue(connection::isHibernated);
+        Frame frame = new Frame(OpCode.TEXT, "from client");
+        frame.setMask(new byte[]{1, 2, 3, 4});
+        ByteBuffer buffer = BufferUtil.allocate(64);
+        new Generator().generateWholeFrame(frame, buffer);
+        endPoint.addInput(buffer);
+        assertThat(received.poll(5, TimeUnit.SECONDS), is("from client"));
+        assertThat(hibernation.getHibernationCount(), is(2L));
+        assertThat(hibernation.getWakeUpCount(), is(2L));
+
+        // Both messages were sent compressed and can be read back.
+        ByteBuffer output = endPoint.takeOutput();
+        Parser parser = new Parser(components.getBufferPool());
+        int frames = 0;
+        while (parser.parse(output) != null)
+        {
+            frames++;
+        }
+        assertThat(frames, is(2));
+
+        connection.onClose(null);
+        assertThat(hibernation.getActiveSessions(), is(0L));
+        assertThat(hibernation.getHibernatedSessions(), is(0L));
+    }
+
+    @Test
+    public void testPartialFrameSurvivesHibernation() throws Exception
+    {
+        // Control frames are not auto fragmented, so a partial one is aggregated by the parser.
+        Frame frame = new Frame(OpCode.PING, "partial ping payload");
+        frame.setMask(new byte[]{1, 2, 3, 4});
+        ByteBuffer buffer = BufferUtil.allocate(64);
+        new Generator().generateWholeFrame(frame, buffer);
+        ByteBuffer rest = buffer.slice();
+        rest.position(buffer.remaining() - 10);
+        buffer.limit(buffer.limit() - 10);
+
+        endPoint.addInput(buffer);
+        awaitTrue(connection::isHibernated);
+
+        endPoint.addInput(rest);
+        assertThat(received.poll(5, TimeUnit.SECONDS), is("partial ping payload"));
+        assertThat(connection.isHibernated(), is(false));
+    }
+
+    @Test
+    public void testStopCancelsSweep() throws Exception
+    {
+        SessionHibernation hibernation = components.getSessionHibernation();
+        Scheduler sweepScheduler = hibernation.getScheduler();
+        assertTrue(sweepScheduler.isRunning());
+
+        // The sweep task and the scheduler are stopped with the component.
+        hibernation.stop();
+        assertTrue(sweepScheduler.isStopped());
+
+        hibernation.start();
+        assertThat(hibernation.getScheduler(), is(sweepScheduler));
+        assertTrue(sweepScheduler.isRunning());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException
+    {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private class CaptureHandler implements FrameHandler
+    {
+        @Override
+        public void onOpen(CoreSession coreSession, Callback callback)
+        {
+            callback.succeeded();
+        }
+
+        @Override
+        public void onFrame(Frame frame, Callback callback)
+        {
+            received.add(frame.getPayloadAsUTF8());
+            callback.succeeded();
+        }
+
+        @Override
+        public void onError(Throwable cause, Callback callback)
+        {
+            callback.succeeded();
+        }
+
+        @Override
+        public void onClosed(CloseStatus closeStatus, Callback callback)
+        {
+            callback.succeeded();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.javax.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.Broadcaster;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+
+/**
+ * <p>Sends the same message to many javax.websocket {@link Session}s,
+ * encoding the message only once per distinct negotiated extension configuration.</p>
+ *
+ * @see Broadcaster
+ */
+public class JavaxWebSocketBroadcaster
+{
+    private final Broadcaster broadcaster;
+
+    public JavaxWebSocketBroadcaster(Broadcaster broadcaster)
+    {
+        this.broadcaster = broadcaster;
+    }
+
+    /**
+     * @return the core {@link Broadcaster}, to configure the per-session backpressure
+     */
+    public Broadcaster getBroadcaster()
+    {
+        return broadcaster;
+    }
+
+    /**
+     * Sends a text message to the given sessions.
+     *
+     * @param text the text message
+     * @param sessions the sessions to send the message to
+     * @param handler the handler notified when the message has been sent to all sessions, may be null
+     */
+    public void broadcastText(String text, Collection<? extends Session> sessions, SendHandler handler)
+    {
+        broadcast(new Frame(OpCode.TEXT, text), sessions, handler);
+    }
+
+    /**
+     * Sends a binary message to the given sessions.
+     *
+     * @param data the binary message
+     * @param sessions the sessions to send the message to
+     * @param handler the handler notified when the message has been sent to all sessions, may be null
+     */
+    public void broadcastBinary(ByteBuffer data, Collection<? extends Session> sessions, SendHandler handler)
+    {
+        broadcast(new Frame(OpCode.BINARY, data), sessions, handler);
+    }
+
+    private void broadcast(Frame frame, Collection<? extends Session> sessions, SendHandler handler)
+    {
+        List<CoreSession> coreSessions = new ArrayList<>(sessions.size());
+        for (Session session : sessions)
+        {
+            if (!(session instanceof JavaxWebSocketSession))
+                throw new IllegalArgumentException("Unsupported session " + session);
+            coreSessions.add(((JavaxWebSocketSession)session).getCoreSession());
+        }
+        broadcaster.broadcast(frame, coreSessions, handler == null ? Callback.NOOP : new SendHandlerCallback(handler));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), broadcaster);
+    }
+}
@@ -31,6 +31,7 @@ import javax.websocket.WebSocketContainer;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.DecoratedObjectFactory;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.websocket.core.Broadcaster;
 import org.eclipse.jetty.websocket.core.Configuration;
 import org.eclipse.jetty.websocket.core.WebSocketComponents;
 import org.eclipse.jetty.websocket.core.WebSocketExtensionRegistry;
@@ -44,12 +45,26 @@ public abstract class JavaxWebSocketContainer extends ContainerLifeCycle impleme
     private final List<JavaxWebSocketSessionListener> sessionListeners = new ArrayList<>();
     protected final Configuration.ConfigurationCustomizer defaultCustomizer = new Configuration.ConfigurationCustomizer();
     protected final WebSocketComponents components;
+    private final JavaxWebSocketBroadcaster broadcaster;
 
     public JavaxWebSocketContainer(WebSocketComponents components)
     {
         this.components = components;
+        this.broadcaster = new JavaxWebSocketBroadcaster(new Broadcaster(components));
         addSessionListener(sessionTracker);
         addBean(sessionTracker);
+        addBean(broadcaster.getBroadcaster());
+        addBean(components.getDeflateMemoryBudget(), false);
+        addBean(components.getSessionHibernation());
+        addBean(components.getAutoBatching(), false);
+    }
+
+    /**
+     * @return the {@link JavaxWebSocketBroadcaster} to send the same message to many sessions
+     */
+    public JavaxWebSocketBroadcaster getBroadcaster()
+    {
+        return broadcaster;
     }
 
     public abstract Executor getExecutor();
@@ -35,7 +35,9 @@ import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WebSocketContainer;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.WebSocketSessionListener;
+import org.eclipse.jetty.websocket.common.JettyWebSocketBroadcaster;
 import org.eclipse.jetty.websocket.common.SessionTracker;
+import org.eclipse.jetty.websocket.core.Broadcaster;
 import org.eclipse.jetty.websocket.core.Configuration;
 import org.eclipse.jetty.websocket.core.WebSocketComponents;
 import org.eclipse.jetty.websocket.core.exception.WebSocketException;
@@ -92,6 +94,7 @@ public class JettyWebSocketServerContainer extends ContainerLifeCycle implements
 
     private final List<WebSocketSessionListener> sessionListeners = new ArrayList<>();
     private final SessionTracker sessionTracker = new SessionTracker();
+    private final JettyWebSocketBroadcaster broadcaster;
 
     /**
      * Main entry point for {@link JettyWebSocketServletContainerInitializer}.
@@ -105,6 +108,11 @@ public class JettyWebSocketServerContainer extends ContainerLifeCycle implements
         this.webSocketMapping = webSocketMapping;
         this.webSocketComponents = webSocketComponents;
         this.executor = executor;
+        this.broadcaster = new JettyWebSocketBroadcaster(new Broadcaster(webSocketComponents));
+        addBean(broadcaster.getBroadcaster());
+        addBean(webSocketComponents.getDeflateMemoryBudget(), false);
+        addBean(webSocketComponents.getSessionHibernation());
+        addBean(webSocketComponents.getAutoBatching(), false);
 
         // Ensure there is a FrameHandlerFactory
         JettyServerFrameHandlerFactory factory = contextHandler.getBean(JettyServerFrameHandlerFactory.class);
@@ -130,6 +138,14 @@ public class JettyWebSocketServerContainer extends ContainerLifeCycle implements
             frameHandlerFactory, customizer);
     }
 
+    /**
+     * @return the {@link JettyWebSocketBroadcaster} to send the same message to many sessions
+     */
+    public JettyWebSocketBroadcaster getBroadcaster()
+    {
+        return broadcaster;
+    }
+
     @Override
     public Executor getExecutor()
     {
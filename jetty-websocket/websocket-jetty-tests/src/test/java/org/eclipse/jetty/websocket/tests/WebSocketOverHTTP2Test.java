@@ -23,6 +23,8 @@ import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.URI;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -177,6 +179,93 @@ public class WebSocketOverHTTP2Test
         assertNull(wsEndPoint.error);
     }
 
+    @Test
+    public void testManyWebSocketsOverHTTP1() throws Exception
+    {
+        int count = 32;
+        testManyWebSockets(clientConnector -> HttpClientConnectionFactory.HTTP11, count, count);
+    }
+
+    @Test
+    public void testManyWebSocketsOverHTTP2() throws Exception
+    {
+        // All the WebSockets are streams of the same connection.
+        testManyWebSockets(clientConnector -> new ClientConnectionFactoryOverHTTP2.H2C(new HTTP2Client(clientConnector)), 32, 1);
+    }
+
+    private void testManyWebSockets(Function<ClientConnector, ClientConnectionFactory.Info> protocolFn, int count, int connections) throws Exception
+    {
+        startServer();
+        startClient(protocolFn);
+
+        URI uri = URI.create("ws://localhost:" + connector.getLocalPort() + "/ws/echo");
+        List<EventSocket> wsEndPoints = new ArrayList<>();
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            EventSocket wsEndPoint = new EventSocket();
+            wsEndPoints.add(wsEndPoint);
+            sessions.add(wsClient.connect(wsEndPoint, uri).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(connections, connector.getConnectedEndPoints().size());
+
+        for (int i = 0; i < count; ++i)
+        {
+            sessions.get(i).getRemote().sendString("websocket" + i);
+        }
+        for (int i = 0; i < count; ++i)
+        {
+            assertEquals("websocket" + i, wsEndPoints.get(i).messageQueue.poll(5, TimeUnit.SECONDS));
+        }
+
+        for (int i = 0; i < count; ++i)
+        {
+            sessions.get(i).close(StatusCode.NORMAL, null);
+            assertTrue(wsEndPoints.get(i).closeLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(StatusCode.NORMAL, wsEndPoints.get(i).statusCode);
+        }
+    }
+
+    @Test
+    public void testLargeMessagesOverHTTP1() throws Exception
+    {
+        testLargeMessages(clientConnector -> HttpClientConnectionFactory.HTTP11);
+    }
+
+    @Test
+    public void testLargeMessagesOverHTTP2() throws Exception
+    {
+        testLargeMessages(clientConnector -> new ClientConnectionFactoryOverHTTP2.H2C(new HTTP2Client(clientConnector)));
+    }
+
+    private void testLargeMessages(Function<ClientConnector, ClientConnectionFactory.Info> protocolFn) throws Exception
+    {
+        startServer();
+        startClient(protocolFn);
+
+        EventSocket wsEndPoint = new EventSocket();
+        URI uri = URI.create("ws://localhost:" + connector.getLocalPort() + "/ws/echo");
+        Session session = wsClient.connect(wsEndPoint, uri).get(5, TimeUnit.SECONDS);
+
+        // Frame headers and payloads are written with gathering writes, that
+        // over HTTP/2 are split into DATA frames of the tunnelled stream.
+        for (int size : new int[]{1, 4000, 5000, 20000, 60000})
+        {
+            char[] chars = new char[size];
+            for (int i = 0; i < size; ++i)
+            {
+                chars[i] = (char)('a' + i % 26);
+            }
+            String text = new String(chars);
+            session.getRemote().sendString(text);
+            assertEquals(text, wsEndPoint.messageQueue.poll(5, TimeUnit.SECONDS));
+        }
+
+        session.close(StatusCode.NORMAL, null);
+        assertTrue(wsEndPoint.closeLatch.await(5, TimeUnit.SECONDS));
+        assertNull(wsEndPoint.error);
+    }
+
     @Test
     public void testConnectProtocolDisabled() throws Exception
     {
@@ -18,11 +18,8 @@
 
 package org.eclipse.jetty.websocket.util.messages;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodType;
-import java.nio.ByteBuffer;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -34,8 +31,7 @@ import org.eclipse.jetty.websocket.util.InvalidSignatureException;
 public class ByteArrayMessageSink extends AbstractMessageSink
 {
     private static final byte[] EMPTY_BUFFER = new byte[0];
-    private static final int BUFFER_SIZE = 65535;
-    private ByteArrayOutputStream out;
+    private final ByteBufferAccumulator accumulator = new ByteBufferAccumulator();
     private int size;
 
     public ByteArrayMessageSink(CoreSession session, MethodHandle methodHandle)
@@ -63,8 +59,8 @@ public class ByteArrayMessageSink extends AbstractMessageSink
                     size, maxBinaryMessageSize));
             }
 
-            // If we are fin and no OutputStream has been created we don't need to aggregate.
-            if (frame.isFin() && (out == null))
+            // If we are fin and nothing has been aggregated we don't need to aggregate.
+            if (frame.isFin() && (accumulator.getLength() == 0))
             {
                 if (frame.hasPayload())
                 {
@@ -78,10 +74,11 @@ public class ByteArrayMessageSink extends AbstractMessageSink
                 return;
             }
 
-            aggregatePayload(frame);
+            if (frame.hasPayload())
+                accumulator.append(frame.getPayload());
             if (frame.isFin())
             {
-                byte[] buf = out.toByteArray();
+                byte[] buf = accumulator.takeByteArray();
                 methodHandle.invoke(buf, 0, buf.length);
             }
             callback.succeeded();
@@ -95,20 +92,9 @@ public class ByteArrayMessageSink extends AbstractMessageSink
             if (frame.isFin())
             {
                 // reset
-                out = null;
+                accumulator.clear();
                 size = 0;
             }
         }
     }
-
-    private void aggregatePayload(Frame frame) throws IOException
-    {
-        if (frame.hasPayload())
-        {
-            ByteBuffer payload = frame.getPayload();
-            if (out == null)
-                out = new ByteArrayOutputStream(BUFFER_SIZE);
-            BufferUtil.writeTo(payload, out);
-        }
-    }
 }
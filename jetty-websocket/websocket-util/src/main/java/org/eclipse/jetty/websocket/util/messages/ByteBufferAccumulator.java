@@ -0,0 +1,93 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.util.messages;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Aggregates the frame payloads of a whole message.</p>
+ * <p>A frame payload is only valid until the frame callback is completed, so each payload is
+ * copied once into an array of exactly its size. Unlike a growing {@link java.io.ByteArrayOutputStream}
+ * nothing is copied again as the message grows, and the message is only copied once more when it
+ * is taken as a single array, or not at all if it was received in a single payload.</p>
+ */
+public class ByteBufferAccumulator
+{
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int length;
+
+    /**
+     * Copies and consumes the remaining bytes of the given buffer.
+     *
+     * @param buffer the payload to aggregate
+     */
+    public void append(ByteBuffer buffer)
+    {
+        int remaining = buffer.remaining();
+        if (remaining == 0)
+            return;
+
+        byte[] chunk = new byte[remaining];
+        buffer.get(chunk);
+        chunks.add(chunk);
+        length += remaining;
+    }
+
+    /**
+     * @return the number of bytes aggregated
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Takes the aggregated bytes as a single array and clears this accumulator.
+     *
+     * @return the aggregated bytes
+     */
+    public byte[] takeByteArray()
+    {
+        byte[] array;
+        if (chunks.size() == 1)
+        {
+            array = chunks.get(0);
+        }
+        else
+        {
+            array = new byte[length];
+            int offset = 0;
+            for (byte[] chunk : chunks)
+            {
+                System.arraycopy(chunk, 0, array, offset, chunk.length);
+                offset += chunk.length;
+            }
+        }
+        clear();
+        return array;
+    }
+
+    public void clear()
+    {
+        chunks.clear();
+        length = 0;
+    }
+}
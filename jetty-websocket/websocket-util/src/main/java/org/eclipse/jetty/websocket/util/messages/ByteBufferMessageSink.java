@@ -18,8 +18,6 @@
 
 package org.eclipse.jetty.websocket.util.messages;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
@@ -34,8 +32,7 @@ import org.eclipse.jetty.websocket.util.InvalidSignatureException;
 
 public class ByteBufferMessageSink extends AbstractMessageSink
 {
-    private static final int BUFFER_SIZE = 65535;
-    private ByteArrayOutputStream out;
+    private final ByteBufferAccumulator accumulator = new ByteBufferAccumulator();
     private int size;
 
     public ByteBufferMessageSink(CoreSession session, MethodHandle methodHandle)
@@ -64,8 +61,8 @@ public class ByteBufferMessageSink extends AbstractMessageSink
                     size, maxBinaryMessageSize));
             }
 
-            // If we are fin and no OutputStream has been created we don't need to aggregate.
-            if (frame.isFin() && (out == null))
+            // If we are fin and nothing has been aggregated we don't need to aggregate.
+            if (frame.isFin() && (accumulator.getLength() == 0))
             {
                 if (frame.hasPayload())
                     methodHandle.invoke(frame.getPayload());
@@ -76,9 +73,10 @@ public class ByteBufferMessageSink extends AbstractMessageSink
                 return;
             }
 
-            aggregatePayload(frame);
+            if (frame.hasPayload())
+                accumulator.append(frame.getPayload());
             if (frame.isFin())
-                methodHandle.invoke(ByteBuffer.wrap(out.toByteArray()));
+                methodHandle.invoke(ByteBuffer.wrap(accumulator.takeByteArray()));
 
             callback.succeeded();
         }
@@ -91,23 +89,9 @@ public class ByteBufferMessageSink extends AbstractMessageSink
             if (frame.isFin())
             {
                 // reset
-                out = null;
+                accumulator.clear();
                 size = 0;
             }
         }
     }
-
-    private void aggregatePayload(Frame frame) throws IOException
-    {
-        if (frame.hasPayload())
-        {
-            ByteBuffer payload = frame.getPayload();
-
-            if (out == null)
-                out = new ByteArrayOutputStream(BUFFER_SIZE);
-
-            BufferUtil.writeTo(payload, out);
-            payload.position(payload.limit()); // consume buffer
-        }
-    }
 }
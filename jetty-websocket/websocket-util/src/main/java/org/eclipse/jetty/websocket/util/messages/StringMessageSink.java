@@ -19,8 +19,13 @@
 package org.eclipse.jetty.websocket.util.messages;
 
 import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.Utf8Appendable;
 import org.eclipse.jetty.util.Utf8StringBuilder;
 import org.eclipse.jetty.websocket.core.CoreSession;
 import org.eclipse.jetty.websocket.core.Frame;
@@ -28,7 +33,8 @@ import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
 
 public class StringMessageSink extends AbstractMessageSink
 {
-    private Utf8StringBuilder out;
+    private final ByteBufferAccumulator accumulator = new ByteBufferAccumulator();
+    private final Utf8Validator validator = new Utf8Validator();
     private int size;
 
     public StringMessageSink(CoreSession session, MethodHandle methodHandle)
@@ -50,12 +56,26 @@ public class StringMessageSink extends AbstractMessageSink
                     size, maxTextMessageSize));
             }
 
-            if (out == null)
-                out = new Utf8StringBuilder(session.getInputBufferSize());
-
-            out.append(frame.getPayload());
-            if (frame.isFin())
-                methodHandle.invoke(out.toString());
+            ByteBuffer payload = frame.hasPayload() ? frame.getPayload() : BufferUtil.EMPTY_BUFFER;
+            if (frame.isFin() && accumulator.getLength() == 0)
+            {
+                // A whole message in a single frame is validated while it is decoded.
+                Utf8StringBuilder utf8 = new Utf8StringBuilder(payload.remaining());
+                utf8.append(payload.slice());
+                methodHandle.invoke(utf8.toString());
+            }
+            else
+            {
+                // Validate as the frames arrive, so that invalid UTF-8 fails fast,
+                // and decode only once when the whole message has been received.
+                validator.append(payload);
+                accumulator.append(payload);
+                if (frame.isFin())
+                {
+                    validator.checkState();
+                    methodHandle.invoke(new String(accumulator.takeByteArray(), StandardCharsets.UTF_8));
+                }
+            }
 
             callback.succeeded();
         }
@@ -69,8 +89,80 @@ public class StringMessageSink extends AbstractMessageSink
             {
                 // reset
                 size = 0;
-                out = null;
+                accumulator.clear();
+                validator.reset();
+            }
+        }
+    }
+
+    /**
+     * <p>Validates UTF-8 sequences that may be split across fragments, without decoding them.</p>
+     */
+    private static class Utf8Validator
+    {
+        // The number of continuation bytes still expected for the current sequence.
+        private int remaining;
+        // The range of the next continuation byte, restricted after some lead bytes
+        // to reject overlong encodings, surrogates and code points above U+10FFFF.
+        private int lower = 0x80;
+        private int upper = 0xBF;
+
+        private void append(ByteBuffer buffer)
+        {
+            for (int i = buffer.position(); i < buffer.limit(); i++)
+            {
+                int b = buffer.get(i) & 0xFF;
+                if (remaining == 0)
+                {
+                    if (b < 0x80)
+                        continue;
+                    if (b >= 0xC2 && b <= 0xDF)
+                    {
+                        remaining = 1;
+                    }
+                    else if (b >= 0xE0 && b <= 0xEF)
+                    {
+                        remaining = 2;
+                        if (b == 0xE0)
+                            lower = 0xA0;
+                        else if (b == 0xED)
+                            upper = 0x9F;
+                    }
+                    else if (b >= 0xF0 && b <= 0xF4)
+                    {
+                        remaining = 3;
+                        if (b == 0xF0)
+                            lower = 0x90;
+                        else if (b == 0xF4)
+                            upper = 0x8F;
+                    }
+                    else
+                    {
+                        throw new Utf8Appendable.NotUtf8Exception("byte " + TypeUtil.toHexString((byte)b));
+                    }
+                }
+                else
+                {
+                    if (b < lower || b > upper)
+                        throw new Utf8Appendable.NotUtf8Exception("byte " + TypeUtil.toHexString((byte)b));
+                    lower = 0x80;
+                    upper = 0xBF;
+                    --remaining;
+                }
             }
         }
+
+        private void checkState()
+        {
+            if (remaining != 0)
+                throw new Utf8Appendable.NotUtf8Exception("incomplete UTF8 sequence");
+        }
+
+        private void reset()
+        {
+            remaining = 0;
+            lower = 0x80;
+            upper = 0xBF;
+        }
     }
 }
@@ -0,0 +1,105 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.util.messages.ByteArrayMessageSink;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class ByteArrayMessageSinkTest
+{
+    private CoreSession coreSession = new CoreSession.Empty();
+    private OnMessageEndpoint endpoint = new OnMessageEndpoint();
+
+    @Test
+    public void testSingleFrame() throws Exception
+    {
+        ByteArrayMessageSink messageSink = new ByteArrayMessageSink(coreSession, endpoint.getMethodHandle());
+
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.BINARY, BufferUtil.toBuffer(new byte[]{1, 2, 3})).setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, endpoint.messages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMultipleFrames() throws Exception
+    {
+        ByteArrayMessageSink messageSink = new ByteArrayMessageSink(coreSession, endpoint.getMethodHandle());
+        byte[] expected = new byte[3 * 1024];
+        Arrays.fill(expected, (byte)'x');
+
+        for (int i = 0; i < 3; i++)
+        {
+            // The frame payload is reused as soon as the callback is completed.
+            ByteBuffer payload = ByteBuffer.wrap(Arrays.copyOfRange(expected, i * 1024, (i + 1) * 1024));
+            FutureCallback callback = new FutureCallback();
+            messageSink.accept(new Frame(i == 0 ? OpCode.BINARY : OpCode.CONTINUATION, payload).setFin(i == 2), callback);
+            callback.block(5, TimeUnit.SECONDS);
+            Arrays.fill(payload.array(), (byte)0);
+        }
+
+        assertArrayEquals(expected, endpoint.messages.poll(5, TimeUnit.SECONDS));
+
+        // The sink is reset for the next message.
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.BINARY, BufferUtil.toBuffer(new byte[]{4})).setFin(false), callback);
+        callback.block(5, TimeUnit.SECONDS);
+        callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION).setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(new byte[]{4}, endpoint.messages.poll(5, TimeUnit.SECONDS));
+        assertThat(endpoint.messages.size(), is(0));
+    }
+
+    public static class OnMessageEndpoint
+    {
+        private BlockingArrayQueue<byte[]> messages = new BlockingArrayQueue<>();
+
+        public void onMessage(byte[] buffer, int offset, int length)
+        {
+            messages.add(Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+
+        public MethodHandle getMethodHandle() throws Exception
+        {
+            return MethodHandles.lookup()
+                .findVirtual(this.getClass(), "onMessage", MethodType.methodType(void.class, byte[].class, int.class, int.class))
+                .bindTo(this);
+        }
+    }
+}
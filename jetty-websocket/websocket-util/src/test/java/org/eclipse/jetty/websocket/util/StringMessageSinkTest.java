@@ -0,0 +1,177 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.Utf8Appendable;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
+import org.eclipse.jetty.websocket.util.messages.StringMessageSink;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StringMessageSinkTest
+{
+    private CoreSession.Empty coreSession = new CoreSession.Empty();
+    private OnMessageEndpoint endpoint = new OnMessageEndpoint();
+
+    @Test
+    public void testSingleFrame() throws Exception
+    {
+        StringMessageSink messageSink = new StringMessageSink(coreSession, endpoint.getMethodHandle());
+
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, "Hello World").setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        assertThat(endpoint.messages.poll(5, TimeUnit.SECONDS), is("Hello World"));
+    }
+
+    @Test
+    public void testFragmentedMessage() throws Exception
+    {
+        StringMessageSink messageSink = new StringMessageSink(coreSession, endpoint.getMethodHandle());
+        // The multi-byte characters are split across the fragments.
+        String message = "\u20ACuro \uD83D\uDE00 \u00A5en";
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < bytes.length; i++)
+        {
+            // The frame payload is reused as soon as the callback is completed.
+            ByteBuffer payload = ByteBuffer.wrap(Arrays.copyOfRange(bytes, i, i + 1));
+            FutureCallback callback = new FutureCallback();
+            messageSink.accept(new Frame(i == 0 ? OpCode.TEXT : OpCode.CONTINUATION, payload).setFin(i == bytes.length - 1), callback);
+            callback.block(5, TimeUnit.SECONDS);
+            Arrays.fill(payload.array(), (byte)0);
+        }
+
+        assertThat(endpoint.messages.poll(5, TimeUnit.SECONDS), is(message));
+    }
+
+    @Test
+    public void testInvalidUtf8SplitAcrossFragments() throws Exception
+    {
+        StringMessageSink messageSink = new StringMessageSink(coreSession, endpoint.getMethodHandle());
+
+        // A 3-byte sequence for a surrogate, which is invalid, split across two fragments.
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, ByteBuffer.wrap(new byte[]{'a', (byte)0xED})).setFin(false), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        FutureCallback failedCallback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION, ByteBuffer.wrap(new byte[]{(byte)0xA0, (byte)0x80})).setFin(true), failedCallback);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failedCallback.get(5, TimeUnit.SECONDS));
+        assertThat(failure.getCause(), instanceOf(Utf8Appendable.NotUtf8Exception.class));
+
+        // A sequence that is incomplete at the end of the message.
+        FutureCallback incompleteCallback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, ByteBuffer.wrap(new byte[]{'a', (byte)0xE2})).setFin(false), incompleteCallback);
+        incompleteCallback.block(5, TimeUnit.SECONDS);
+        FutureCallback finCallback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION, ByteBuffer.wrap(new byte[]{(byte)0x82})).setFin(true), finCallback);
+        failure = assertThrows(ExecutionException.class, () -> finCallback.get(5, TimeUnit.SECONDS));
+        assertThat(failure.getCause(), instanceOf(Utf8Appendable.NotUtf8Exception.class));
+
+        assertThat(endpoint.messages.size(), is(0));
+    }
+
+    @Test
+    public void testResetBetweenMessages() throws Exception
+    {
+        StringMessageSink messageSink = new StringMessageSink(coreSession, endpoint.getMethodHandle());
+
+        // An invalid message leaves no state behind for the next message.
+        FutureCallback failedCallback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, ByteBuffer.wrap(new byte[]{'a', (byte)0xC3})).setFin(true), failedCallback);
+        assertThrows(ExecutionException.class, () -> failedCallback.get(5, TimeUnit.SECONDS));
+
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, "first").setFin(false), callback);
+        callback.block(5, TimeUnit.SECONDS);
+        callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION, " message").setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, "second").setFin(false), callback);
+        callback.block(5, TimeUnit.SECONDS);
+        callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION).setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        assertThat(endpoint.messages.poll(5, TimeUnit.SECONDS), is("first message"));
+        assertThat(endpoint.messages.poll(5, TimeUnit.SECONDS), is("second"));
+        assertThat(endpoint.messages.size(), is(0));
+    }
+
+    @Test
+    public void testMaxTextMessageSize() throws Exception
+    {
+        coreSession.setMaxTextMessageSize(8);
+        StringMessageSink messageSink = new StringMessageSink(coreSession, endpoint.getMethodHandle());
+
+        FutureCallback callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, "12345").setFin(false), callback);
+        callback.block(5, TimeUnit.SECONDS);
+
+        FutureCallback failedCallback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.CONTINUATION, "6789").setFin(true), failedCallback);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failedCallback.get(5, TimeUnit.SECONDS));
+        assertThat(failure.getCause(), instanceOf(MessageTooLargeException.class));
+
+        // The size is reset for the next message.
+        callback = new FutureCallback();
+        messageSink.accept(new Frame(OpCode.TEXT, "12345678").setFin(true), callback);
+        callback.block(5, TimeUnit.SECONDS);
+        assertThat(endpoint.messages.poll(5, TimeUnit.SECONDS), is("12345678"));
+    }
+
+    public static class OnMessageEndpoint
+    {
+        private BlockingArrayQueue<String> messages = new BlockingArrayQueue<>();
+
+        public void onMessage(String message)
+        {
+            messages.add(message);
+        }
+
+        public MethodHandle getMethodHandle() throws Exception
+        {
+            return MethodHandles.lookup()
+                .findVirtual(this.getClass(), "onMessage", MethodType.methodType(void.class, String.class))
+                .bindTo(this);
+        }
+    }
+}
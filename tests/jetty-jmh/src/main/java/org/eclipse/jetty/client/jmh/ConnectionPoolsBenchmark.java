@@ -0,0 +1,163 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.DuplexConnectionPool;
+import org.eclipse.jetty.client.LockFreeConnectionPool;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.RoundRobinConnectionPool;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class ConnectionPoolsBenchmark
+{
+    private static final int MAX_CONNECTIONS = 16;
+
+    private ConnectionPool pool;
+
+    @Param({"duplex", "multiplex", "round-robin", "lock-free"})
+    public static String poolType;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        Destination destination = new MockDestination();
+        switch (poolType)
+        {
+            case "duplex":
+                pool = new DuplexConnectionPool(destination, MAX_CONNECTIONS, Callback.NOOP);
+                break;
+            case "multiplex":
+                pool = new MultiplexConnectionPool(destination, MAX_CONNECTIONS, Callback.NOOP, 1);
+                break;
+            case "round-robin":
+                pool = new RoundRobinConnectionPool(destination, MAX_CONNECTIONS, Callback.NOOP, 1);
+                break;
+            case "lock-free":
+                pool = new LockFreeConnectionPool(destination, MAX_CONNECTIONS, Callback.NOOP);
+                break;
+            default:
+                throw new IllegalStateException("Unknown poolType Parameter");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pool.close();
+        pool = null;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public void testAcquireRelease()
+    {
+        // The pool creates connections synchronously, so
+        // acquire() fails only if all connections are in use.
+        Connection connection = pool.acquire();
+        if (connection != null)
+            pool.release(connection);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ConnectionPoolsBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .threads(12)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    private static class MockDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 8080;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new MockConnection());
+        }
+    }
+
+    private static class MockConnection implements Connection
+    {
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.core.internal.Masker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class MaskingBenchmark
+{
+    @Param({"7", "125", "1024", "16384", "65536"})
+    public int size;
+
+    @Param({"HEAP", "DIRECT"})
+    public String bufferType;
+
+    private final byte[] mask = new byte[4];
+    private ByteBuffer payload;
+    private ByteBuffer output;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        ThreadLocalRandom.current().nextBytes(mask);
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        boolean direct = "DIRECT".equals(bufferType);
+        // Offset the payload by one byte to exercise the unaligned head.
+        payload = allocate(size + 1, direct);
+        payload.position(1);
+        payload.put(bytes).flip().position(1);
+        output = allocate(size + 1, direct);
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct)
+    {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testByteAtATime()
+    {
+        output.clear();
+        int start = payload.position();
+        int end = payload.limit();
+        for (int i = start; i < end; ++i)
+        {
+            output.put((byte)(payload.get(i) ^ mask[(i - start) & 3]));
+        }
+        return output;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testIntAtATime()
+    {
+        output.clear();
+        int maskInt = 0;
+        for (byte maskByte : mask)
+        {
+            maskInt = (maskInt << 8) + (maskByte & 0xFF);
+        }
+        int start = payload.position();
+        int end = payload.limit();
+        int maskOffset = 0;
+        int remaining;
+        while ((remaining = end - start) > 0)
+        {
+            if (remaining >= 4)
+            {
+                output.putInt(payload.getInt(start) ^ maskInt);
+                start += 4;
+            }
+            else
+            {
+                output.put((byte)(payload.get(start) ^ mask[maskOffset & 3]));
+                ++start;
+                ++maskOffset;
+            }
+        }
+        return output;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testWordAtATime()
+    {
+        output.clear();
+        Masker.mask(payload, output, mask);
+        return output;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testWordAtATimeInPlace()
+    {
+        Masker.mask(payload, mask);
+        return payload;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(MaskingBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.http.client;
 
+import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -27,6 +28,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -36,12 +38,14 @@ import org.eclipse.jetty.client.AbstractConnectionPool;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.HttpResponse;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.dynamic.HttpClientTransportDynamic;
 import org.eclipse.jetty.client.http.HttpClientConnectionFactory;
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpVersion;
@@ -64,6 +68,7 @@ import org.eclipse.jetty.io.ClientConnector;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.proxy.AsyncProxyServlet;
 import org.eclipse.jetty.proxy.ConnectHandler;
+import org.eclipse.jetty.proxy.ProxyServlet;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -86,11 +91,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ProxyWithDynamicTransportTest
@@ -190,6 +198,23 @@ public class ProxyWithDynamicTransportTest
         LOG.info("Started proxy on :{} and :{}", proxyConnector.getLocalPort(), proxyTLSConnector.getLocalPort());
     }
 
+    private void startReverseProxy(String upstreamProtocols) throws Exception
+    {
+        QueuedThreadPool proxyThreads = new QueuedThreadPool();
+        proxyThreads.setName("proxy");
+        proxy = new Server(proxyThreads);
+        proxyConnector = new ServerConnector(proxy, 1, 1, new HttpConnectionFactory());
+        proxy.addConnector(proxyConnector);
+
+        ServletContextHandler context = new ServletContextHandler(proxy, "/");
+        ServletHolder holder = new ServletHolder(new ProxyServlet.Transparent());
+        holder.setInitParameter("proxyTo", "http://localhost:" + serverConnector.getLocalPort());
+        holder.setInitParameter("upstreamProtocols", upstreamProtocols);
+        context.addServlet(holder, "/*");
+        proxy.start();
+        LOG.info("Started reverse proxy on :{}", proxyConnector.getLocalPort());
+    }
+
     private void startClient() throws Exception
     {
         QueuedThreadPool clientThreads = new QueuedThreadPool();
@@ -295,6 +320,154 @@ public class ProxyWithDynamicTransportTest
         assertEquals(1, connectionPool.getConnectionCount());
     }
 
+    @ParameterizedTest(name = "upstreamProtocols={0}")
+    @ValueSource(strings = {"http/1.1", "h2c"})
+    public void testReverseProxyUpstreamConnections(String upstreamProtocols) throws Exception
+    {
+        byte[] content = new byte[16 * 1024];
+        startServer(new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                // Make the requests overlap, so that HTTP/1.1 needs more connections.
+                sleep(50);
+                response.getOutputStream().write(content);
+            }
+        });
+        startReverseProxy(upstreamProtocols);
+        startClient();
+
+        // Warm up the upstream connection, so that HTTP/2 knows the max concurrent streams.
+        ContentResponse warmup = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, warmup.getStatus());
+
+        int requests = 32;
+        CountDownLatch latch = new CountDownLatch(requests);
+        long begin = System.nanoTime();
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", proxyConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send(result ->
+                {
+                    if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.OK_200)
+                        latch.countDown();
+                });
+        }
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        int upstreamConnections = serverConnector.getConnectedEndPoints().size();
+        LOG.info("Proxied {} requests over {} in {} ms ({} KiB/s) with {} upstream connections",
+            requests, upstreamProtocols, elapsed, requests * content.length / Math.max(1, elapsed), upstreamConnections);
+        if ("h2c".equals(upstreamProtocols))
+            assertEquals(1, upstreamConnections);
+        else
+            assertThat(upstreamConnections, Matchers.greaterThan(1));
+    }
+
+    @Test
+    public void testReverseProxyUpstreamHTTP2ResponseTrailers() throws Exception
+    {
+        String trailerName = "grpc-status";
+        String trailerValue = "0";
+        startServer(new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                assertEquals("trailers", request.getHeader("TE"));
+                assertEquals(HttpVersion.HTTP_2.asString(), request.getProtocol());
+                HttpFields trailers = new HttpFields();
+                trailers.put(trailerName, trailerValue);
+                jettyRequest.getResponse().setTrailers(() -> trailers);
+                response.getOutputStream().write("data".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startReverseProxy("h2c");
+        startClient();
+
+        AtomicReference<HttpFields> trailersRef = new AtomicReference<>();
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .header("TE", "trailers")
+            .onResponseSuccess(r -> trailersRef.set(((HttpResponse)r).getTrailers()))
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("data", response.getContentAsString());
+        HttpFields trailers = trailersRef.get();
+        assertNotNull(trailers);
+        assertEquals(trailerValue, trailers.get(trailerName));
+    }
+
+    @Test
+    public void testReverseProxyGETHasNoTransferEncoding() throws Exception
+    {
+        startServer(new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                // A request without content must not be made chunked to carry trailers.
+                assertNull(request.getHeader("Transfer-Encoding"));
+                assertEquals(-1, request.getContentLengthLong());
+                response.getOutputStream().write("data".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startReverseProxy("http/1.1");
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("data", response.getContentAsString());
+    }
+
+    @Test
+    public void testReverseProxyResponseWithoutTrailersKeepsContentLength() throws Exception
+    {
+        byte[] content = "data".getBytes(StandardCharsets.UTF_8);
+        startServer(new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setContentLength(content.length);
+                response.getOutputStream().write(content);
+            }
+        });
+        startReverseProxy("http/1.1");
+        startClient();
+
+        // The client accepts trailers, but the server does not announce any.
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .header("TE", "trailers")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(String.valueOf(content.length), response.getHeaders().get(HttpHeader.CONTENT_LENGTH));
+        assertNull(response.getHeaders().get(HttpHeader.TRANSFER_ENCODING));
+    }
+
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
     @Test
     public void testHTTP2TunnelClosedByClient() throws Exception
     {